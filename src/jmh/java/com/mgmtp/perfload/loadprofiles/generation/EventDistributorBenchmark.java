@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.generation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.mgmtp.perfload.loadprofiles.model.EventTable;
+import com.mgmtp.perfload.loadprofiles.model.LoadEvent;
+import com.mgmtp.perfload.loadprofiles.model.LoadTestConfiguration;
+import com.mgmtp.perfload.loadprofiles.model.Operation;
+import com.mgmtp.perfload.loadprofiles.model.Target;
+
+/**
+ * Benchmarks of the event generation pipeline of the {@link EventDistributor} for synthetic
+ * configurations created by the {@link SyntheticConfigurationFactory}. Each invocation creates all
+ * events of the configuration, so the score divided by {@code totalEvents} is the time per event.
+ * The distribution alone is measured by {@link #distributeEvents(Blackhole)}, which passes the
+ * events to a handler without storing them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx2g" })
+public class EventDistributorBenchmark {
+
+	@Param({ "100", "1000" })
+	private int pointsPerCurve;
+
+	@Param({ "4", "32" })
+	private int numAssignments;
+
+	@Param({ "10", "200" })
+	private int numClients;
+
+	@Param({ "5" })
+	private int processesPerClient;
+
+	@Param({ "100000", "1000000" })
+	private long totalEvents;
+
+	/** The number of threads creating the events of the load curve assignments. */
+	@Param({ "1" })
+	private int parallelism;
+
+	private LoadTestConfiguration loadTestConfiguration;
+	private GenerationOptions options;
+	private File file;
+
+	@Setup
+	public void setUp() throws IOException {
+		SyntheticConfigurationFactory factory = new SyntheticConfigurationFactory();
+		factory.setPointsPerCurve(pointsPerCurve);
+		factory.setNumAssignments(numAssignments);
+		factory.setNumOperations(numAssignments);
+		factory.setNumClients(numClients);
+		factory.setProcessesPerClient(processesPerClient);
+		factory.setTotalEvents(totalEvents);
+		loadTestConfiguration = factory.create();
+
+		options = new GenerationOptions();
+		options.setParallelism(parallelism);
+		options.setTrace(GenerationTrace.NONE);
+
+		file = File.createTempFile("EventDistributorBenchmark", ".perfload");
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public List<LoadEvent> createClientEventList() {
+		return EventDistributor.createClientEventList(loadTestConfiguration, options);
+	}
+
+	@Benchmark
+	public EventTable createClientEventTable() {
+		return EventDistributor.createClientEventTable(loadTestConfiguration, options);
+	}
+
+	@Benchmark
+	public long distributeEvents(final Blackhole blackhole) {
+		return EventDistributor.generateClientEvents(loadTestConfiguration, options, new ClientEventHandler() {
+			@Override
+			public void handleEvent(final double time, final Operation operation, final Target target, final int clientId,
+					final int daemonId, final int processId) {
+				blackhole.consume(clientId + processId);
+			}
+		});
+	}
+
+	@Benchmark
+	public long writeEventListForPerfLoadClientsToFile() throws IOException {
+		EventDistributor.writeEventListForPerfLoadClientsToFile(file, "# benchmark",
+				EventDistributor.createClientEventIterator(loadTestConfiguration, options));
+		return file.length();
+	}
+}
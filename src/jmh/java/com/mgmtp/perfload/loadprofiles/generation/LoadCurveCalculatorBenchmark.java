@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.generation;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mgmtp.perfload.loadprofiles.model.LoadCurve;
+
+/**
+ * Benchmarks of the per event calculations of the {@link LoadCurveCalculator} depending on the
+ * number of points of the load curve. The event indices are taken from a fixed random sequence,
+ * so that the searches are not always served from the same segment.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoadCurveCalculatorBenchmark {
+	private static final int NUM_INDICES = 1 << 12;
+
+	@Param({ "10", "100", "1000", "10000" })
+	private int pointsPerCurve;
+
+	private LoadCurve loadCurve;
+	private double[] eventIndices;
+	private double[] normalizedEventIndices;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		SyntheticConfigurationFactory factory = new SyntheticConfigurationFactory();
+		factory.setPointsPerCurve(pointsPerCurve);
+		Random random = new Random(factory.getSeed());
+		loadCurve = factory.createLoadCurve("benchmark", 1000000., random);
+
+		eventIndices = new double[NUM_INDICES];
+		normalizedEventIndices = new double[NUM_INDICES];
+		for (int i = 0; i < NUM_INDICES; i++) {
+			normalizedEventIndices[i] = random.nextDouble();
+			eventIndices[i] = normalizedEventIndices[i] * loadCurve.getNEvents();
+		}
+	}
+
+	private int nextIndex() {
+		next = next + 1 & NUM_INDICES - 1;
+		return next;
+	}
+
+	@Benchmark
+	public double deriveStartTime() {
+		return LoadCurveCalculator.deriveStartTime(loadCurve, eventIndices[nextIndex()]);
+	}
+
+	@Benchmark
+	public int getLineSegment() {
+		return LoadCurveCalculator.getLineSegment(loadCurve, normalizedEventIndices[nextIndex()]);
+	}
+
+	@Benchmark
+	public LoadCurve fillStatisticsAndNormValuesOfLoadCurve() {
+		return LoadCurveCalculator.fillStatisticsAndNormValuesOfLoadCurve(loadCurve);
+	}
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.cli;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
+import static com.google.common.collect.Sets.newHashSet;
+import static org.apache.commons.io.FilenameUtils.getBaseName;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.odell.glazedlists.GlazedLists;
+
+import com.mgmtp.perfload.loadprofiles.generation.GenerationMonitor;
+import com.mgmtp.perfload.loadprofiles.generation.GenerationOptions;
+import com.mgmtp.perfload.loadprofiles.generation.GenerationReport;
+import com.mgmtp.perfload.loadprofiles.model.LoadTestConfiguration;
+import com.mgmtp.perfload.loadprofiles.ui.ctrl.EventFileExport;
+import com.mgmtp.perfload.loadprofiles.ui.ctrl.LoadProfilesController;
+import com.mgmtp.perfload.loadprofiles.ui.model.LoadProfileConfig;
+import com.mgmtp.perfload.loadprofiles.ui.model.Settings;
+import com.mgmtp.perfload.loadprofiles.ui.util.LoadProfileException;
+
+/**
+ * Headless generator of the events files of a batch of load profile configurations, e. g. on a
+ * build server. The configurations are read with the operations, targets and clients of a
+ * settings file and exported like in the editor with all of their targets and clients, but
+ * without Guice and without starting AWT.
+ * <p>
+ * Several configurations are exported concurrently. Their events are created in one shared
+ * {@link ForkJoinPool}, so that the number of threads is bounded independently of the size of the
+ * batch. Each events file is written as {@code <config name>.perfload} next to the configuration
+ * or into the output directory, together with the plot files and the JSON report.
+ */
+public class BatchGenerator {
+	private static final Logger log = LoggerFactory.getLogger(BatchGenerator.class);
+
+	private static final String USAGE = "Usage: batch-generator -settings <file> [-out <dir>] [-jobs <n>] "
+			+ "[-threads <n>] [-eventDistri] [-operationHistograms] [-clientLoadHistograms] <config file>...";
+
+	private final File settingsFile;
+	private final File outputDir;
+	private final int numJobs;
+	private final int parallelism;
+
+	private boolean eventDistributionPlots;
+	private boolean operationHistograms;
+	private boolean clientLoadHistograms;
+
+	/**
+	 * @param settingsFile
+	 *            the settings file with the operations, targets and clients of the configurations
+	 * @param outputDir
+	 *            the directory of the events files, {@code null} to write them next to the
+	 *            configurations
+	 * @param numJobs
+	 *            the number of configurations exported concurrently
+	 * @param parallelism
+	 *            the number of threads of the pool shared by all exports
+	 */
+	public BatchGenerator(final File settingsFile, final File outputDir, final int numJobs, final int parallelism) {
+		checkArgument(numJobs > 0, "numJobs must be positive: %s", numJobs);
+		checkArgument(parallelism > 0, "parallelism must be positive: %s", parallelism);
+		this.settingsFile = settingsFile;
+		this.outputDir = outputDir;
+		this.numJobs = numJobs;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @param eventDistributionPlots
+	 *            {@code true} to create an event distribution plot per client and load curve
+	 */
+	public void setEventDistributionPlots(final boolean eventDistributionPlots) {
+		this.eventDistributionPlots = eventDistributionPlots;
+	}
+
+	/**
+	 * @param operationHistograms
+	 *            {@code true} to create a histogram per operation
+	 */
+	public void setOperationHistograms(final boolean operationHistograms) {
+		this.operationHistograms = operationHistograms;
+	}
+
+	/**
+	 * @param clientLoadHistograms
+	 *            {@code true} to create a load histogram per client
+	 */
+	public void setClientLoadHistograms(final boolean clientLoadHistograms) {
+		this.clientLoadHistograms = clientLoadHistograms;
+	}
+
+	/**
+	 * @return the events file of the given configuration
+	 */
+	public File getEventsFile(final File configFile) {
+		File dir = outputDir != null ? outputDir : configFile.getAbsoluteFile().getParentFile();
+		return new File(dir, getBaseName(configFile.getName()) + ".perfload");
+	}
+
+	/**
+	 * Exports all configurations. A failed export is logged and does not stop the others.
+	 *
+	 * @param configFiles
+	 *            the load profile configuration files
+	 * @return the number of failed exports
+	 */
+	public int run(final List<File> configFiles) throws InterruptedException {
+		Set<File> eventsFiles = newHashSet();
+		for (File configFile : configFiles) {
+			checkArgument(eventsFiles.add(getEventsFile(configFile).getAbsoluteFile()),
+					"Several configurations are written to %s", getEventsFile(configFile));
+		}
+		if (outputDir != null) {
+			outputDir.mkdirs();
+		}
+
+		final ForkJoinPool pool = new ForkJoinPool(parallelism);
+		ExecutorService executor = Executors.newFixedThreadPool(numJobs);
+		try {
+			List<Future<GenerationReport>> futures = newArrayListWithCapacity(configFiles.size());
+			for (final File configFile : configFiles) {
+				futures.add(executor.submit(new Callable<GenerationReport>() {
+					@Override
+					public GenerationReport call() throws Exception {
+						return export(configFile, pool);
+					}
+				}));
+			}
+
+			int numFailed = 0;
+			for (int i = 0; i < configFiles.size(); i++) {
+				File configFile = configFiles.get(i);
+				try {
+					GenerationReport report = futures.get(i).get();
+					log.info("Wrote {} events of {} to {} in {} s", report.getNumEvents(), configFile,
+							getEventsFile(configFile), report.getTotalWallNanos() / 1e9);
+				} catch (ExecutionException ex) {
+					numFailed++;
+					log.error("Export of " + configFile + " failed", ex.getCause());
+				}
+			}
+			return numFailed;
+		} finally {
+			executor.shutdownNow();
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Exports one configuration. The settings are read for each configuration, so that concurrent
+	 * exports do not share the operations, targets and clients the configurations refer to.
+	 *
+	 * @param configFile
+	 *            the load profile configuration file
+	 * @param pool
+	 *            the pool creating the events
+	 * @return the report of the generation
+	 */
+	GenerationReport export(final File configFile, final ForkJoinPool pool) throws IOException, JAXBException {
+		Settings settings = loadSettings(settingsFile);
+		LoadProfilesController controller = new LoadProfilesController();
+		controller.setOperations(GlazedLists.eventList(settings.getOperations()));
+		controller.setTargets(GlazedLists.eventList(settings.getTargets()));
+		controller.setClients(GlazedLists.eventList(settings.getClients()));
+
+		LoadProfileConfig lpc = controller.loadProfileConfig(configFile);
+		controller.validateProfileConfig(lpc, settings);
+		controller.setTreeItems(GlazedLists.eventList(lpc.getLoadProfileEntities()));
+
+		LoadTestConfiguration ltc = controller.createLoadTestConfiguration(lpc, lpc.getTargets(), lpc.getClients());
+		File eventsFile = getEventsFile(configFile);
+		EventFileExport export = new EventFileExport(eventsFile, EventFileExport.createHeaderLines(
+				configFile.getName(), lpc.getName()), ltc, controller.createAdditionalEvents());
+		export.setEventDistributionPlots(eventDistributionPlots);
+		export.setOperationHistograms(operationHistograms);
+		export.setClientLoadHistograms(clientLoadHistograms);
+
+		GenerationOptions options = new GenerationOptions();
+		options.setPool(pool);
+		GenerationMonitor monitor = new GenerationMonitor();
+		options.setMonitor(monitor);
+		monitor.register(eventsFile.getAbsolutePath());
+		try {
+			return export.run(options);
+		} finally {
+			monitor.unregister();
+		}
+	}
+
+	/**
+	 * Reads the settings from the given file.
+	 */
+	static Settings loadSettings(final File file) throws IOException {
+		Reader r = null;
+		try {
+			r = new InputStreamReader(new FileInputStream(file), "UTF-8");
+			JAXBContext context = JAXBContext.newInstance(Settings.class);
+			return (Settings) context.createUnmarshaller().unmarshal(r);
+		} catch (JAXBException ex) {
+			throw new LoadProfileException("Error unmarshalling contents from file: " + file, ex);
+		} finally {
+			IOUtils.closeQuietly(r);
+		}
+	}
+
+	/**
+	 * Exports the configurations given as arguments. Exits with {@code 1}, if an export fails,
+	 * and with {@code 2}, if the arguments are invalid.
+	 */
+	public static void main(final String[] args) {
+		System.setProperty("java.awt.headless", "true");
+
+		File settingsFile = null;
+		File outputDir = null;
+		int numJobs = Runtime.getRuntime().availableProcessors();
+		int parallelism = Runtime.getRuntime().availableProcessors();
+		boolean eventDistributionPlots = false;
+		boolean operationHistograms = false;
+		boolean clientLoadHistograms = false;
+		List<File> configFiles = newArrayList();
+
+		BatchGenerator generator;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if ("-settings".equals(arg)) {
+					settingsFile = new File(value(args, ++i, arg));
+				} else if ("-out".equals(arg)) {
+					outputDir = new File(value(args, ++i, arg));
+				} else if ("-jobs".equals(arg)) {
+					numJobs = Integer.parseInt(value(args, ++i, arg));
+				} else if ("-threads".equals(arg)) {
+					parallelism = Integer.parseInt(value(args, ++i, arg));
+				} else if ("-eventDistri".equals(arg)) {
+					eventDistributionPlots = true;
+				} else if ("-operationHistograms".equals(arg)) {
+					operationHistograms = true;
+				} else if ("-clientLoadHistograms".equals(arg)) {
+					clientLoadHistograms = true;
+				} else {
+					checkArgument(!arg.startsWith("-"), "Unknown option %s", arg);
+					configFiles.add(new File(arg));
+				}
+			}
+			checkArgument(settingsFile != null, "No settings file");
+			checkArgument(!configFiles.isEmpty(), "No config files");
+
+			generator = new BatchGenerator(settingsFile, outputDir, numJobs, parallelism);
+		} catch (IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			System.err.println(USAGE);
+			System.exit(2);
+			return;
+		}
+		generator.setEventDistributionPlots(eventDistributionPlots);
+		generator.setOperationHistograms(operationHistograms);
+		generator.setClientLoadHistograms(clientLoadHistograms);
+
+		try {
+			int numFailed = generator.run(configFiles);
+			if (numFailed > 0) {
+				log.error("{} of {} exports failed", numFailed, configFiles.size());
+				System.exit(1);
+			}
+		} catch (Exception ex) {
+			log.error("Batch generation failed", ex);
+			System.exit(1);
+		}
+	}
+
+	private static String value(final String[] args, final int index, final String option) {
+		checkArgument(index < args.length, "Missing value of %s", option);
+		return args[index];
+	}
+}
@@ -0,0 +1,390 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.generation;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.mgmtp.perfload.loadprofiles.generation.GenerationReport.Phase;
+import com.mgmtp.perfload.loadprofiles.model.LoadCurveAssignment;
+import com.mgmtp.perfload.loadprofiles.model.Operation;
+import com.mgmtp.perfload.loadprofiles.model.Target;
+
+/**
+ * Lazily creates the events of a single load curve assignment. The source works like a cursor:
+ * each call of {@link #next()} derives the start time of the next event from the load curve and
+ * assigns it to a target according to the load part of the targets. The events of one source are
+ * created in the order of increasing time. Only the current block of events is kept, so any
+ * number of events can be created with constant memory.
+ * <p>
+ * The distribution onto the targets is analogous to the distribution of events to clients
+ * described in {@link EventDistributor}. The shift value is used to shift each event within its
+ * time interval. The time interval is the time for which the integral over the load curve
+ * increases from the last integer number of events to the next integer number of events. The
+ * value indicates the relative shift within this interval. A value of 0.5 puts the event at the
+ * time, where the integral value is equal to the last integer number plus 0.5. The shifting is
+ * used to be able to smooth out the distribution of events on small time scales. If the load of
+ * an operation following a load curve is created separately for parts of the load, then it is
+ * possible to shift the start time of each event to smooth out the distribution. Creating events
+ * for half the load of a load curve with a shift value of 0. and another list of events with a
+ * shift value of 0.5 and combining them is equal to creating a list of events with the full load
+ * and a shift value of 0.
+ * <p>
+ * The events are computed in blocks. If a {@link ForkJoinPool} is given, the next block is
+ * computed in the pool while the current block is consumed, so the sources of several
+ * assignments are computed in parallel. Since the blocks of one source are computed one after
+ * the other, the events do not depend on the number of threads.
+ * <p>
+ * A source may start at any event, if the number of events assigned to each target before this
+ * event is given, and may end before the end of the load curve, e. g. in order to create the
+ * events of a time window only.
+ */
+public class AssignmentEventSource {
+	private static final int BLOCK_SIZE = 4096;
+
+	private final int assignmentIndex;
+	private final CompiledLoadCurve.Cursor loadCurve;
+	private final Operation operation;
+	private final List<Target> targets;
+	private final double shift;
+	private final int firstEvent;
+	private final int endEvent;
+
+	private final ForkJoinPool pool;
+	private final GenerationTrace trace;
+	private final GenerationReport report;
+	private final GenerationMonitor monitor;
+
+	// state of the computation of the blocks
+	private final WeightedScheduler targetScheduler;
+	private int iEvent;
+	private double lastTime;
+
+	// state of the cursor
+	private Block currentBlock = new Block();
+	private Block spareBlock = new Block();
+	private ForkJoinTask<Block> pendingBlock;
+	private int position;
+	private double time;
+	private int targetIndex = -1;
+	private int eventIndex = -1;
+	private boolean exhausted;
+	// the number of events up to the current one assigned to each target
+	private final int[] targetCounts;
+
+	/**
+	 * @param assignmentIndex
+	 *            the position of the assignment in the load test configuration, used as last
+	 *            criterion when events of different assignments are merged
+	 * @param loadCurveAssignment
+	 *            The assignment of a load curve to targets
+	 * @param shift
+	 *            The shift of all events for the given assignment
+	 */
+	public AssignmentEventSource(final int assignmentIndex, final LoadCurveAssignment loadCurveAssignment, final double shift) {
+		this(assignmentIndex, loadCurveAssignment, shift, null, new LoggingGenerationTrace());
+	}
+
+	/**
+	 * @param assignmentIndex
+	 *            the position of the assignment in the load test configuration, used as last
+	 *            criterion when events of different assignments are merged
+	 * @param loadCurveAssignment
+	 *            The assignment of a load curve to targets
+	 * @param shift
+	 *            The shift of all events for the given assignment
+	 * @param pool
+	 *            the pool used to compute the blocks of events in advance, or {@code null} if the
+	 *            events are to be computed in the calling thread
+	 * @param trace
+	 *            the trace receiving the diagnostics
+	 */
+	public AssignmentEventSource(final int assignmentIndex, final LoadCurveAssignment loadCurveAssignment, final double shift,
+			final ForkJoinPool pool, final GenerationTrace trace) {
+		this(assignmentIndex, loadCurveAssignment, shift, pool, trace, 0, null, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * @param assignmentIndex
+	 *            the position of the assignment in the load test configuration, used as last
+	 *            criterion when events of different assignments are merged
+	 * @param loadCurveAssignment
+	 *            The assignment of a load curve to targets
+	 * @param shift
+	 *            The shift of all events for the given assignment
+	 * @param pool
+	 *            the pool used to compute the blocks of events in advance, or {@code null} if the
+	 *            events are to be computed in the calling thread
+	 * @param trace
+	 *            the trace receiving the diagnostics
+	 * @param firstEvent
+	 *            the index of the first event to be created
+	 * @param targetCounts
+	 *            the number of events before the first event assigned to each target, or
+	 *            {@code null}, if the first event is the first one of the load curve
+	 * @param endTime
+	 *            the time in hours, after which no more events are needed; the source ends with
+	 *            the first event starting at or after this time
+	 */
+	public AssignmentEventSource(final int assignmentIndex, final LoadCurveAssignment loadCurveAssignment, final double shift,
+			final ForkJoinPool pool, final GenerationTrace trace, final int firstEvent, final int[] targetCounts,
+			final double endTime) {
+		this(assignmentIndex, loadCurveAssignment, shift, pool, trace, firstEvent, targetCounts, endTime, null, null);
+	}
+
+	/**
+	 * @param assignmentIndex
+	 *            the position of the assignment in the load test configuration, used as last
+	 *            criterion when events of different assignments are merged
+	 * @param loadCurveAssignment
+	 *            The assignment of a load curve to targets
+	 * @param shift
+	 *            The shift of all events for the given assignment
+	 * @param pool
+	 *            the pool used to compute the blocks of events in advance, or {@code null} if the
+	 *            events are to be computed in the calling thread
+	 * @param trace
+	 *            the trace receiving the diagnostics
+	 * @param firstEvent
+	 *            the index of the first event to be created
+	 * @param targetCounts
+	 *            the number of events before the first event assigned to each target, or
+	 *            {@code null}, if the first event is the first one of the load curve
+	 * @param endTime
+	 *            the time in hours, after which no more events are needed; the source ends with
+	 *            the first event starting at or after this time
+	 * @param report
+	 *            the report, to which the creation of the events is added, or {@code null}
+	 * @param monitor
+	 *            the monitor, which counts the created events, or {@code null}
+	 */
+	public AssignmentEventSource(final int assignmentIndex, final LoadCurveAssignment loadCurveAssignment, final double shift,
+			final ForkJoinPool pool, final GenerationTrace trace, final int firstEvent, final int[] targetCounts,
+			final double endTime, final GenerationReport report, final GenerationMonitor monitor) {
+		this.assignmentIndex = assignmentIndex;
+		this.operation = loadCurveAssignment.getOperation();
+		this.targets = loadCurveAssignment.getTargets();
+		this.shift = shift;
+		this.pool = pool;
+		this.trace = trace;
+		this.report = report;
+		this.monitor = monitor;
+		CompiledLoadCurve compiledLoadCurve = CompiledLoadCurve.compile(loadCurveAssignment.getLoadCurve());
+		this.loadCurve = compiledLoadCurve.cursor();
+		int nEvents = (int) compiledLoadCurve.getNEvents();
+		checkArgument(firstEvent >= 0 && firstEvent <= nEvents, "First event %s out of range [0, %s]", firstEvent,
+				nEvents);
+		this.firstEvent = firstEvent;
+		this.endEvent = endTime == Double.POSITIVE_INFINITY ? nEvents : Math.max(firstEvent,
+				Math.min(nEvents, compiledLoadCurve.firstEventAtOrAfter(endTime, shift) + 1));
+		double[] loadParts = new double[targets.size()];
+		for (int iTarget = 0; iTarget < loadParts.length; iTarget++) {
+			loadParts[iTarget] = targets.get(iTarget).getLoadPart();
+		}
+		this.targetScheduler = new WeightedScheduler(loadParts);
+		this.targetCounts = new int[targets.size()];
+		if (targetCounts != null) {
+			checkArgument(targetCounts.length == loadParts.length, "Expected %s target counts, got %s", loadParts.length,
+					targetCounts.length);
+			double[] assignedAmounts = new double[loadParts.length];
+			for (int iTarget = 0; iTarget < loadParts.length; iTarget++) {
+				this.targetCounts[iTarget] = targetCounts[iTarget];
+				assignedAmounts[iTarget] = targetCounts[iTarget];
+			}
+			targetScheduler.restore(firstEvent, assignedAmounts);
+		}
+		this.iEvent = firstEvent;
+		this.eventIndex = firstEvent - 1;
+
+		trace.assignmentStarted(assignmentIndex, loadCurveAssignment, shift);
+
+		prefetch();
+	}
+
+	/**
+	 * Advances to the next event of the assignment.
+	 *
+	 * @return {@code true}, if there is a next event, {@code false}, if all events of the
+	 *         assignment have been created
+	 */
+	public boolean next() {
+		if (position == currentBlock.size && !nextBlock()) {
+			exhausted = true;
+			return false;
+		}
+		time = currentBlock.times[position];
+		targetIndex = currentBlock.targetIndices[position];
+		targetCounts[targetIndex]++;
+		eventIndex++;
+		position++;
+		return true;
+	}
+
+	private boolean nextBlock() {
+		// the consuming thread waits for or computes the block
+		Phase previousPhase = report != null ? report.startPhase(Phase.EVENT_CREATION) : null;
+		Block block;
+		if (pendingBlock != null) {
+			block = pendingBlock.join();
+			pendingBlock = null;
+		} else {
+			block = computeBlock(spareBlock);
+		}
+		if (previousPhase != null) {
+			report.startPhase(previousPhase);
+		}
+		if (block.size == 0) {
+			return false;
+		}
+		spareBlock = currentBlock;
+		currentBlock = block;
+		position = 0;
+		prefetch();
+		return true;
+	}
+
+	/**
+	 * Starts the computation of the next block in the pool, if there is a pool and there are
+	 * events left. The spare block must not be in use.
+	 */
+	private void prefetch() {
+		if (pool != null && iEvent < endEvent) {
+			final Block block = spareBlock;
+			pendingBlock = pool.submit(new Callable<Block>() {
+				@Override
+				public Block call() {
+					if (report == null) {
+						return computeBlock(block);
+					}
+					long cpuNanos = report.currentThreadCpuNanos();
+					long allocatedBytes = report.currentThreadAllocatedBytes();
+					Block result = computeBlock(block);
+					report.addParallelEventCreation(report.currentThreadCpuNanos() - cpuNanos,
+							report.currentThreadAllocatedBytes() - allocatedBytes);
+					return result;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Computes the next events of the assignment into the given block. The blocks must be computed
+	 * one after the other.
+	 */
+	private Block computeBlock(final Block block) {
+		int size = Math.min(BLOCK_SIZE, endEvent - iEvent);
+		// calculate events from load curve
+		loadCurve.startTimes(iEvent, size, shift, block.times);
+
+		for (int iBlockEvent = 0; iBlockEvent < size; iBlockEvent++) {
+			double Tn = block.times[iBlockEvent];
+			if (iEvent > firstEvent && Tn < lastTime) {
+				trace.eventOutOfSequence(assignmentIndex, iEvent, lastTime, Tn);
+			}
+			lastTime = Tn;
+
+			// assign event to target according to load part for each target
+			block.targetIndices[iBlockEvent] = targetScheduler.next();
+			iEvent++;
+		}
+		block.size = size;
+		if (monitor != null) {
+			monitor.eventsGenerated(size);
+		}
+		return block;
+	}
+
+	/**
+	 * @return the position of the assignment in the load test configuration
+	 */
+	public int getAssignmentIndex() {
+		return assignmentIndex;
+	}
+
+	/**
+	 * @return the total number of events this source creates
+	 */
+	public int getNumEvents() {
+		return endEvent - firstEvent;
+	}
+
+	/**
+	 * @return the index of the current event within all events of the load curve
+	 */
+	public int getEventIndex() {
+		return eventIndex;
+	}
+
+	/**
+	 * @return {@code true}, if {@link #next()} has returned {@code false}
+	 */
+	public boolean isExhausted() {
+		return exhausted;
+	}
+
+	/**
+	 * @return the number of events up to and including the current one assigned to the given
+	 *         target
+	 */
+	public int getTargetCount(final int targetIndex) {
+		return targetCounts[targetIndex];
+	}
+
+	/**
+	 * @return the number of targets of the assignment
+	 */
+	public int getNumTargets() {
+		return targetCounts.length;
+	}
+
+	/**
+	 * @return the operation of the assignment
+	 */
+	public Operation getOperation() {
+		return operation;
+	}
+
+	/**
+	 * @return the start time of the current event in hours
+	 */
+	public double getTime() {
+		return time;
+	}
+
+	/**
+	 * @return the index of the target of the current event within the targets of the assignment
+	 */
+	public int getTargetIndex() {
+		return targetIndex;
+	}
+
+	/**
+	 * @return the target of the current event
+	 */
+	public Target getTarget() {
+		return targets.get(targetIndex);
+	}
+
+	private static class Block {
+		final double[] times = new double[BLOCK_SIZE];
+		final int[] targetIndices = new int[BLOCK_SIZE];
+		int size;
+	}
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.generation;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.mgmtp.perfload.loadprofiles.model.MarkerEvent;
+
+/**
+ * Reads event files written by a {@link BinaryEventFileWriter}. The reader works like a cursor:
+ * each call of {@link #next()} advances to the next record, whose values are available through
+ * the getters. The records are read from {@link MappedByteBuffer}s, which map a window of the
+ * file at a time, so files of any size can be read.
+ * <p>
+ * A reader is not thread-safe.
+ */
+public class BinaryEventFileReader implements Closeable {
+	private static final int RECORDS_PER_WINDOW = 1 << 20;
+
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+
+	private final String headerLines;
+	private final String[] operationNames;
+	private final String[] targetNames;
+	private final String[] markerNames;
+	private final MarkerEvent.Type[] markerTypes;
+	private final long numRecords;
+	private final long dataOffset;
+
+	private MappedByteBuffer window;
+	private long iRecord;
+
+	// values of the current record
+	private long time;
+	private int operationIndex;
+	private int targetIndex;
+	private int daemonId;
+	private int processId;
+
+	/**
+	 * Opens the file and reads its header.
+	 *
+	 * @param file
+	 *            the binary events file
+	 */
+	public BinaryEventFileReader(final File file) throws IOException {
+		raf = new RandomAccessFile(file, "r");
+		try {
+			channel = raf.getChannel();
+
+			ByteBuffer fixedHeader = ByteBuffer.allocate(BinaryEventFileWriter.FIXED_HEADER_SIZE);
+			while (fixedHeader.hasRemaining()) {
+				if (channel.read(fixedHeader, fixedHeader.position()) < 0) {
+					throw new IOException("Not a binary event file: " + file);
+				}
+			}
+			fixedHeader.flip();
+			if (fixedHeader.getInt() != BinaryEventFileWriter.MAGIC) {
+				throw new IOException("Not a binary event file: " + file);
+			}
+			short version = fixedHeader.getShort();
+			if (version != BinaryEventFileWriter.VERSION) {
+				throw new IOException("Unsupported version " + version + " of binary event file: " + file);
+			}
+			fixedHeader.getShort();
+			numRecords = fixedHeader.getLong();
+			dataOffset = fixedHeader.getLong();
+			if (dataOffset + numRecords * BinaryEventFileWriter.RECORD_SIZE > channel.size()) {
+				throw new IOException("Binary event file is truncated: " + file);
+			}
+
+			ByteBuffer header = channel.map(MapMode.READ_ONLY, 0L, dataOffset);
+			header.position(BinaryEventFileWriter.FIXED_HEADER_SIZE);
+			headerLines = readString(header);
+			operationNames = new String[header.getInt()];
+			for (int i = 0; i < operationNames.length; i++) {
+				operationNames[i] = readString(header);
+			}
+			targetNames = new String[header.getInt()];
+			for (int i = 0; i < targetNames.length; i++) {
+				targetNames[i] = readString(header);
+			}
+			int numMarkers = header.getInt();
+			markerNames = new String[numMarkers];
+			markerTypes = new MarkerEvent.Type[numMarkers];
+			for (int i = 0; i < numMarkers; i++) {
+				markerNames[i] = readString(header);
+				markerTypes[i] = MarkerEvent.Type.valueOf(readString(header));
+			}
+		} catch (IOException ex) {
+			raf.close();
+			throw ex;
+		} catch (RuntimeException ex) {
+			raf.close();
+			throw new IOException("Invalid header of binary event file: " + file, ex);
+		}
+	}
+
+	private static String readString(final ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, Charsets.UTF_8);
+	}
+
+	/**
+	 * Advances to the next record.
+	 *
+	 * @return {@code true}, if there is a next record, {@code false}, if all records have been read
+	 */
+	public boolean next() throws IOException {
+		if (iRecord == numRecords) {
+			return false;
+		}
+		if (window == null || !window.hasRemaining()) {
+			long size = Math.min(RECORDS_PER_WINDOW, numRecords - iRecord) * BinaryEventFileWriter.RECORD_SIZE;
+			window = channel.map(MapMode.READ_ONLY, dataOffset + iRecord * BinaryEventFileWriter.RECORD_SIZE, size);
+		}
+		time += window.getInt() & 0xFFFFFFFFL;
+		operationIndex = window.getShort();
+		targetIndex = window.getShort();
+		daemonId = window.getShort() & 0xFFFF;
+		processId = window.getShort() & 0xFFFF;
+		iRecord++;
+		return true;
+	}
+
+	/**
+	 * @return the header lines of the file
+	 */
+	public String getHeaderLines() {
+		return headerLines;
+	}
+
+	/**
+	 * @return the operation names of the dictionary
+	 */
+	public List<String> getOperationNames() {
+		return Collections.unmodifiableList(Lists.newArrayList(operationNames));
+	}
+
+	/**
+	 * @return the target names of the dictionary
+	 */
+	public List<String> getTargetNames() {
+		return Collections.unmodifiableList(Lists.newArrayList(targetNames));
+	}
+
+	/**
+	 * @return the number of records of the file
+	 */
+	public long getNumRecords() {
+		return numRecords;
+	}
+
+	/**
+	 * @return {@code true}, if the current record is a marker
+	 */
+	public boolean isMarker() {
+		return operationIndex == BinaryEventFileWriter.MARKER;
+	}
+
+	/**
+	 * @return the start time of the current event in milliseconds since the start of the test
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * @return the operation name of the current load event
+	 */
+	public String getOperationName() {
+		checkState(!isMarker(), "The current record is a marker");
+		return operationNames[operationIndex];
+	}
+
+	/**
+	 * @return the target name of the current load event
+	 */
+	public String getTargetName() {
+		checkState(!isMarker(), "The current record is a marker");
+		return targetNames[targetIndex];
+	}
+
+	/**
+	 * @return the daemon id of the current load event
+	 */
+	public int getDaemonId() {
+		return daemonId;
+	}
+
+	/**
+	 * @return the index of the process of the current load event starting with 0
+	 */
+	public int getProcessId() {
+		return processId;
+	}
+
+	/**
+	 * @return the name of the current marker
+	 */
+	public String getMarkerName() {
+		checkState(isMarker(), "The current record is not a marker");
+		return markerNames[targetIndex];
+	}
+
+	/**
+	 * @return the type of the current marker
+	 */
+	public MarkerEvent.Type getMarkerType() {
+		checkState(isMarker(), "The current record is not a marker");
+		return markerTypes[targetIndex];
+	}
+
+	/**
+	 * Writes the remaining records in the text format of
+	 * {@link EventDistributor#writeEventListForPerfLoadClientsToFile(File, String, Iterable)}
+	 * including the header lines, e. g. for perfLoad clients which only read the text format.
+	 *
+	 * @param file
+	 *            the text events file
+	 */
+	public void writeTextFile(final File file) throws IOException {
+		PrintWriter pw = null;
+		try {
+			pw = new PrintWriter(file, "UTF-8");
+			pw.println(headerLines);
+			while (next()) {
+				pw.print(time);
+				pw.print(';');
+				if (isMarker()) {
+					pw.print("[[marker]];");
+					pw.print(getMarkerName());
+					pw.print(';');
+					pw.print(getMarkerType());
+					pw.println(';');
+				} else {
+					pw.print(getOperationName());
+					pw.print(';');
+					pw.print(getTargetName());
+					pw.print(';');
+					pw.print(daemonId);
+					pw.print(';');
+					pw.println(processId + 1);
+				}
+			}
+		} finally {
+			IOUtils.closeQuietly(pw);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		window = null;
+		raf.close();
+	}
+}
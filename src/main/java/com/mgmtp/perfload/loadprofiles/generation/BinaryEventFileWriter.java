@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.generation;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+import com.mgmtp.perfload.loadprofiles.model.BaseLoadProfileEvent;
+import com.mgmtp.perfload.loadprofiles.model.LoadEvent;
+import com.mgmtp.perfload.loadprofiles.model.MarkerEvent;
+import com.mgmtp.perfload.loadprofiles.model.Operation;
+import com.mgmtp.perfload.loadprofiles.model.Target;
+
+/**
+ * Writes load test events in a compact binary format, which contains the same information as the
+ * text format written by
+ * {@link EventDistributor#writeEventListForPerfLoadClientsToFile(java.io.File, String, Iterable)}.
+ * The file consists of
+ * <ul>
+ * <li>a fixed header: the magic number {@link #MAGIC}, the format {@link #VERSION} (short), a
+ * reserved short, the number of records (long) and the offset of the first record (long),</li>
+ * <li>the header lines and the dictionaries of the operation names, the target names and the
+ * markers (name and type), each string stored as its length in bytes (int) followed by its UTF-8
+ * bytes,</li>
+ * <li>one record of {@link #RECORD_SIZE} bytes per event: the difference of the start time to the
+ * one of the previous event in milliseconds (unsigned int), the index of the operation or
+ * {@link #MARKER} (short), the index of the target or the marker (short), the daemon id (unsigned
+ * short) and the process id (unsigned short).</li>
+ * </ul>
+ * All numbers are big-endian. The records are written through a {@link FileChannel}, the number of
+ * records is filled into the header, when the writer is closed. The file can be read with a
+ * {@link BinaryEventFileReader}.
+ * <p>
+ * A writer is not thread-safe.
+ */
+public class BinaryEventFileWriter implements Closeable {
+	/** The magic number at the start of each binary event file ({@code "PLEV"}). */
+	public static final int MAGIC = 0x504C4556;
+
+	/** The version of the format. */
+	public static final short VERSION = 1;
+
+	/** The size of a record in bytes. */
+	public static final int RECORD_SIZE = 12;
+
+	/** The value of the operation index, which marks a record of a marker. */
+	public static final short MARKER = -1;
+
+	/** The offset of the number of records in the file. */
+	static final int NUM_RECORDS_OFFSET = 8;
+
+	/** The size of the fixed part of the header. */
+	static final int FIXED_HEADER_SIZE = 24;
+
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final long MAX_TIME_DIFFERENCE = 0xFFFFFFFFL;
+	private static final int MAX_INDEX = Short.MAX_VALUE;
+	private static final int MAX_ID = 0xFFFF;
+
+	private final Map<String, Integer> operationIndices = newHashMap();
+	private final Map<String, Integer> targetIndices = newHashMap();
+	private final List<MarkerEvent> markers = newArrayList();
+
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+	private long numRecords;
+	private long lastTime;
+
+	/**
+	 * Creates the file and writes the header. All operations, targets and markers of the events to
+	 * be written must be contained in the given dictionaries.
+	 *
+	 * @param file
+	 *            the events file
+	 * @param headerLines
+	 *            the header lines of the file
+	 * @param operations
+	 *            the operations of the events
+	 * @param targets
+	 *            the targets of the events
+	 * @param markers
+	 *            the markers of the events
+	 */
+	public BinaryEventFileWriter(final File file, final String headerLines, final Collection<Operation> operations,
+			final Collection<Target> targets, final Collection<MarkerEvent> markers) throws IOException {
+		List<String> operationNames = newArrayList();
+		for (Operation operation : operations) {
+			if (!operationIndices.containsKey(operation.getName())) {
+				operationIndices.put(operation.getName(), operationNames.size());
+				operationNames.add(operation.getName());
+			}
+		}
+		List<String> targetNames = newArrayList();
+		for (Target target : targets) {
+			if (!targetIndices.containsKey(target.getName())) {
+				targetIndices.put(target.getName(), targetNames.size());
+				targetNames.add(target.getName());
+			}
+		}
+		for (MarkerEvent marker : markers) {
+			if (indexOf(marker) < 0) {
+				this.markers.add(marker);
+			}
+		}
+		checkArgument(operationNames.size() <= MAX_INDEX, "Too many operations: %s", operationNames.size());
+		checkArgument(targetNames.size() <= MAX_INDEX, "Too many targets: %s", targetNames.size());
+		checkArgument(this.markers.size() <= MAX_INDEX, "Too many markers: %s", this.markers.size());
+
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(header);
+		dos.writeInt(MAGIC);
+		dos.writeShort(VERSION);
+		dos.writeShort(0);
+		// the number of records and the offset of the first record are filled in below
+		dos.writeLong(0L);
+		dos.writeLong(0L);
+		writeString(dos, headerLines);
+		dos.writeInt(operationNames.size());
+		for (String name : operationNames) {
+			writeString(dos, name);
+		}
+		dos.writeInt(targetNames.size());
+		for (String name : targetNames) {
+			writeString(dos, name);
+		}
+		dos.writeInt(this.markers.size());
+		for (MarkerEvent marker : this.markers) {
+			writeString(dos, marker.getName());
+			writeString(dos, marker.getType().name());
+		}
+		dos.flush();
+
+		ByteBuffer headerBuffer = ByteBuffer.wrap(header.toByteArray());
+		headerBuffer.putLong(FIXED_HEADER_SIZE - 8, headerBuffer.capacity());
+
+		raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(0L);
+			channel = raf.getChannel();
+			while (headerBuffer.hasRemaining()) {
+				channel.write(headerBuffer);
+			}
+		} catch (IOException ex) {
+			raf.close();
+			throw ex;
+		}
+	}
+
+	private static void writeString(final DataOutputStream dos, final String value) throws IOException {
+		byte[] bytes = value.getBytes(Charsets.UTF_8);
+		dos.writeInt(bytes.length);
+		dos.write(bytes);
+	}
+
+	private int indexOf(final MarkerEvent marker) {
+		for (int i = 0; i < markers.size(); i++) {
+			MarkerEvent other = markers.get(i);
+			if (other.getType() == marker.getType() && other.getName().equals(marker.getName())) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Writes a load event or a marker. Other events are ignored like in the text format.
+	 */
+	public void write(final BaseLoadProfileEvent event) throws IOException {
+		if (event instanceof LoadEvent) {
+			LoadEvent loadEvent = (LoadEvent) event;
+			writeLoadEvent(loadEvent.getTime(), loadEvent.getOperation(), loadEvent.getTarget(), loadEvent.getDaemonId(),
+					loadEvent.getProcessId());
+		} else if (event instanceof MarkerEvent) {
+			writeMarker((MarkerEvent) event);
+		}
+	}
+
+	/**
+	 * Writes a load event. The events must be written in the order of time.
+	 *
+	 * @param time
+	 *            the start time of the event in hours
+	 * @param processId
+	 *            the index of the process starting with 0
+	 */
+	public void writeLoadEvent(final double time, final Operation operation, final Target target, final int daemonId,
+			final int processId) throws IOException {
+		Integer operationIndex = operationIndices.get(operation.getName());
+		checkArgument(operationIndex != null, "Operation not contained in the dictionary: %s", operation);
+		Integer targetIndex = targetIndices.get(target.getName());
+		checkArgument(targetIndex != null, "Target not contained in the dictionary: %s", target);
+		checkArgument(daemonId >= 0 && daemonId <= MAX_ID, "Daemon id out of range: %s", daemonId);
+		checkArgument(processId >= 0 && processId <= MAX_ID, "Process id out of range: %s", processId);
+
+		writeRecord(time, operationIndex.shortValue(), targetIndex.shortValue(), daemonId, processId);
+	}
+
+	/**
+	 * Writes a marker. The events must be written in the order of time.
+	 */
+	public void writeMarker(final MarkerEvent marker) throws IOException {
+		int markerIndex = indexOf(marker);
+		checkArgument(markerIndex >= 0, "Marker not contained in the dictionary: %s", marker.getName());
+
+		writeRecord(marker.getTime(), MARKER, (short) markerIndex, 0, 0);
+	}
+
+	private void writeRecord(final double time, final short operationIndex, final short targetIndex, final int daemonId,
+			final int processId) throws IOException {
+		checkState(channel.isOpen(), "The writer is closed");
+
+		// convert time from hours to milliseconds
+		long t = Math.round(time * 60. * 60. * 1000.);
+		long timeDifference = t - lastTime;
+		checkArgument(timeDifference >= 0L, "Events must be written in the order of time: %s after %s", t, lastTime);
+		checkArgument(timeDifference <= MAX_TIME_DIFFERENCE, "Time difference too large: %s", timeDifference);
+
+		if (buffer.remaining() < RECORD_SIZE) {
+			flush();
+		}
+		buffer.putInt((int) timeDifference);
+		buffer.putShort(operationIndex);
+		buffer.putShort(targetIndex);
+		buffer.putShort((short) daemonId);
+		buffer.putShort((short) processId);
+		lastTime = t;
+		numRecords++;
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * @return the number of records written so far
+	 */
+	public long getNumRecords() {
+		return numRecords;
+	}
+
+	/**
+	 * Writes the remaining records, fills in the number of records and closes the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!channel.isOpen()) {
+			return;
+		}
+		try {
+			flush();
+			ByteBuffer numRecordsBuffer = ByteBuffer.allocate(8);
+			numRecordsBuffer.putLong(0, numRecords);
+			channel.write(numRecordsBuffer, NUM_RECORDS_OFFSET);
+		} finally {
+			raf.close();
+		}
+	}
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.generation;
+
+import com.mgmtp.perfload.loadprofiles.model.Operation;
+import com.mgmtp.perfload.loadprofiles.model.Target;
+
+/**
+ * Receives the distributed events one by one in the order of time without creating an object
+ * per event.
+ * @see EventDistributor#generateClientEvents(com.mgmtp.perfload.loadprofiles.model.LoadTestConfiguration,
+ *      GenerationOptions, ClientEventHandler)
+ */
+public interface ClientEventHandler {
+
+	/**
+	 * Handles the next event.
+	 *
+	 * @param time
+	 *            the start time in hours
+	 * @param operation
+	 *            the operation
+	 * @param target
+	 *            the target
+	 * @param clientId
+	 *            the client id
+	 * @param daemonId
+	 *            the daemon id
+	 * @param processId
+	 *            the zero-based process id
+	 */
+	void handleEvent(double time, Operation operation, Target target, int clientId, int daemonId, int processId);
+}
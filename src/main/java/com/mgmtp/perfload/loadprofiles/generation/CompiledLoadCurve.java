@@ -0,0 +1,463 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.generation;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mgmtp.perfload.loadprofiles.model.LoadCurve;
+
+/**
+ * Immutable, compiled form of a {@link LoadCurve}. The time values are always in hours, the rate
+ * values in events per hour. The statistics of the load curve and the coefficients of each line
+ * segment (rate change, number of events up to the segment and within the segment) are calculated
+ * once when the curve is compiled. A compiled curve never changes, so it can be shared between
+ * threads without cloning.
+ * <p>
+ * The calculations are the same as the ones in {@link LoadCurveCalculator}, i. e.
+ * {@link #rate(double)} returns the same values as {@link LoadCurveCalculator#r(LoadCurve, double)}
+ * and {@link #startTime(double)} the same values as
+ * {@link LoadCurveCalculator#deriveStartTime(LoadCurve, double)} for a load curve in hours. For
+ * sequential access, a {@link Cursor} remembers the current line segment, so that each lookup
+ * only walks to the neighbouring segments instead of searching.
+ */
+public final class CompiledLoadCurve {
+	private static final Logger log = LoggerFactory.getLogger(CompiledLoadCurve.class);
+
+	private final String name;
+	private final int nPoints;
+	private final double[] timeValues;
+	private final double[] rateValues;
+	private final double[] normedEvents;
+	private final double nEvents;
+	private final double rateMin;
+	private final double rateMax;
+
+	// coefficients of the line segments
+	private final double[] rateChanges;
+	private final double[] segmentStartEvents;
+	private final double[] segmentEvents;
+
+	// the cursors require sorted values, otherwise the binary searches are used
+	private final boolean timesSorted;
+	private final boolean normedEventsSorted;
+
+	private CompiledLoadCurve(final String name, final double[] timeValues, final double[] rateValues) {
+		this.name = name;
+		this.nPoints = timeValues.length;
+		this.timeValues = timeValues;
+		this.rateValues = rateValues;
+
+		double[] integratedEvents = LoadCurveCalculator.integrateEvents(timeValues, rateValues);
+		this.nEvents = integratedEvents[nPoints - 1];
+		this.normedEvents = LoadCurveCalculator.normEvents(integratedEvents, nEvents);
+		this.rateMin = LoadCurveCalculator.min(rateValues);
+		this.rateMax = LoadCurveCalculator.max(rateValues);
+
+		int nSegments = Math.max(0, nPoints - 1);
+		rateChanges = new double[nSegments];
+		segmentStartEvents = new double[nSegments];
+		segmentEvents = new double[nSegments];
+		for (int iSegment = 0; iSegment < nSegments; iSegment++) {
+			rateChanges[iSegment] = (rateValues[iSegment + 1] - rateValues[iSegment])
+					/ (timeValues[iSegment + 1] - timeValues[iSegment]);
+			segmentStartEvents[iSegment] = nEvents * normedEvents[iSegment];
+			segmentEvents[iSegment] = nEvents * (normedEvents[iSegment + 1] - normedEvents[iSegment]);
+		}
+
+		timesSorted = isSorted(timeValues);
+		normedEventsSorted = isSorted(normedEvents);
+	}
+
+	/**
+	 * Compiles the given load curve. The load curve is not changed. If its time or rate unit is
+	 * not hours, the values are transformed to hours like in
+	 * {@link LoadCurveCalculator#transformToHours(LoadCurve)}.
+	 *
+	 * @param loadCurve
+	 *            the load curve to compile
+	 * @return the compiled load curve
+	 */
+	public static CompiledLoadCurve compile(final LoadCurve loadCurve) {
+		checkArgument(loadCurve != null, "Given loadCurve is null.");
+		double[] timeValues = loadCurve.getTimeValues().clone();
+		double[] rateValues = loadCurve.getRateValues().clone();
+		checkArgument(timeValues.length == rateValues.length,
+				"Length of array timeValues <> length of array rateValues in load curve with name %s", loadCurve.getName());
+		checkArgument(timeValues.length > 0, "Load curve %s has no points", loadCurve.getName());
+
+		if (!LoadCurveCalculator.timeUnit_hour.equals(loadCurve.getTimeUnit())
+				|| !LoadCurveCalculator.rateUnit_perHour.equals(loadCurve.getRateUnit())) {
+			double timeScaling = LoadCurveCalculator.getTimeScalingFactor(loadCurve.getTimeUnit(),
+					LoadCurveCalculator.timeUnit_hour);
+			double rateScaling = LoadCurveCalculator.getRateScalingFactor(loadCurve.getRateUnit());
+			for (int iPoint = 0; iPoint < timeValues.length; iPoint++) {
+				timeValues[iPoint] *= timeScaling;
+				rateValues[iPoint] *= rateScaling;
+			}
+		}
+		return new CompiledLoadCurve(loadCurve.getName(), timeValues, rateValues);
+	}
+
+	private static boolean isSorted(final double[] values) {
+		for (int i = 1; i < values.length; i++) {
+			if (!(values[i - 1] <= values[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the number of points defining the load curve
+	 */
+	public int getNumPoints() {
+		return nPoints;
+	}
+
+	/**
+	 * @return the time of the given point in hours
+	 */
+	public double getTimeValue(final int index) {
+		return timeValues[index];
+	}
+
+	/**
+	 * @return the rate of the given point in events per hour
+	 */
+	public double getRateValue(final int index) {
+		return rateValues[index];
+	}
+
+	/**
+	 * @return a copy of the time values in hours
+	 */
+	public double[] getTimeValues() {
+		return timeValues.clone();
+	}
+
+	/**
+	 * @return a copy of the rate values in events per hour
+	 */
+	public double[] getRateValues() {
+		return rateValues.clone();
+	}
+
+	/**
+	 * @return the number of events integrated over the entire load curve; not necessarily integral
+	 */
+	public double getNEvents() {
+		return nEvents;
+	}
+
+	/**
+	 * @return the number of events up to the given point divided by the total number of events
+	 */
+	public double getNormedEvents(final int index) {
+		return normedEvents[index];
+	}
+
+	public double getRateMin() {
+		return rateMin;
+	}
+
+	public double getRateMax() {
+		return rateMax;
+	}
+
+	/**
+	 * Find the time interval containing the given time like
+	 * {@link LoadCurveCalculator#getTimeInterval(LoadCurve, double)}.
+	 *
+	 * @return the lower index of the time interval, {@code -1} before the start and the number of
+	 *         points after the end of the load curve
+	 */
+	public int getTimeInterval(final double t) {
+		if (t < timeValues[0]) {
+			return -1;
+		}
+		if (t > timeValues[nPoints - 1]) {
+			return nPoints;
+		}
+		int iLow = 0;
+		int iUp = nPoints - 1;
+		while (iUp - iLow > 1) {
+			int halfIndex = (iUp + iLow) >>> 1;
+			if (t >= timeValues[halfIndex]) {
+				iLow = halfIndex;
+			} else {
+				iUp = halfIndex;
+			}
+		}
+		return iLow;
+	}
+
+	/**
+	 * Find the line segment containing the normalized event index like
+	 * {@link LoadCurveCalculator#getLineSegment(LoadCurve, double)}.
+	 *
+	 * @return the lower index of the line segment, {@code -1} before the start and the number of
+	 *         points after the end of the load curve
+	 */
+	public int getLineSegment(final double normalizedEventIndex) {
+		if (normalizedEventIndex < normedEvents[0] - LoadCurveCalculator.EPSILON) {
+			return -1;
+		}
+		if (normalizedEventIndex <= normedEvents[0] - LoadCurveCalculator.EPSILON) {
+			return 0;
+		}
+		if (normalizedEventIndex > normedEvents[nPoints - 1]
+				&& normalizedEventIndex < normedEvents[nPoints - 1] + LoadCurveCalculator.EPSILON) {
+			return nPoints - 1;
+		}
+		if (normalizedEventIndex > normedEvents[nPoints - 1]) {
+			return nPoints;
+		}
+		int iLow = 0;
+		int iUp = nPoints - 1;
+		while (iUp - iLow > 1) {
+			int halfIndex = (iUp + iLow) >>> 1;
+			if (normalizedEventIndex >= normedEvents[halfIndex]) {
+				iLow = halfIndex;
+			} else {
+				iUp = halfIndex;
+			}
+		}
+		return iLow;
+	}
+
+	/**
+	 * Derive the rate at the given time. Outside the load curve the rate is 0.
+	 *
+	 * @param t
+	 *            the time in hours
+	 * @return the rate in events per hour
+	 */
+	public double rate(final double t) {
+		return rateInInterval(getTimeInterval(t), t);
+	}
+
+	private double rateInInterval(final int index, final double t) {
+		if (index < 0 || index >= nPoints) {
+			return 0.;
+		}
+		return rateChanges[index] * (t - timeValues[index]) + rateValues[index];
+	}
+
+	/**
+	 * Derive the number of events from the start of the load curve up to the given time, i. e. the
+	 * integral over the rate.
+	 *
+	 * @param t
+	 *            the time in hours
+	 * @return the number of events up to the given time, 0 before the start and the total number
+	 *         of events after the end of the load curve
+	 */
+	public double events(final double t) {
+		return eventsInInterval(getTimeInterval(t), t);
+	}
+
+	private double eventsInInterval(final int index, final double t) {
+		if (index < 0) {
+			return 0.;
+		}
+		if (index >= nPoints - 1) {
+			return nEvents;
+		}
+		double dt = t - timeValues[index];
+		return segmentStartEvents[index] + (rateValues[index] + rateChanges[index] / 2. * dt) * dt;
+	}
+
+	/**
+	 * Calculates the start time of the event with the given index like
+	 * {@link LoadCurveCalculator#deriveStartTime(LoadCurve, double)}, i. e. the inverse of
+	 * {@link #events(double)}.
+	 *
+	 * @param eventIndex
+	 *            index of the event, may be fractional
+	 * @return the start time of the event in hours
+	 */
+	public double startTime(final double eventIndex) {
+		return startTimeInSegment(getLineSegment(eventIndex / nEvents), eventIndex);
+	}
+
+	private double startTimeInSegment(final int iSegment, final double eventIndex) {
+		if (iSegment < 0) {
+			// a time, which is definitely before the start of the load curve
+			return timeValues[0] - timeValues[1];
+		}
+		if (iSegment >= nPoints) {
+			// a time, which is definitely beyond the load curve end
+			return timeValues[nPoints - 1] * 2.;
+		}
+		double Tn = LoadCurveCalculator.Tn(eventIndex - segmentStartEvents[iSegment], segmentEvents[iSegment],
+				rateValues[iSegment], rateValues[iSegment + 1], timeValues[iSegment], timeValues[iSegment + 1],
+				rateChanges[iSegment]);
+		if (Tn < 0) {
+			log.warn("Time of event with index " + eventIndex + " < 0 (=" + Tn + "), nEvents = " + nEvents +
+					", nPoints = " + nPoints + ", setting time to 0.");
+			Tn = 0.;
+		}
+		return Tn;
+	}
+
+	/**
+	 * Finds the first event, which starts at or after the given time, by inverting the cumulated
+	 * number of events {@link #events(double)}. The result is corrected, so that it is exact with
+	 * respect to {@link #startTime(double)}.
+	 *
+	 * @param t
+	 *            the time in hours
+	 * @param shift
+	 *            The fractional shift added to each event index
+	 * @return the index of the first event with a start time not before the given time, or the
+	 *         number of events, if all events start before it
+	 */
+	public int firstEventAtOrAfter(final double t, final double shift) {
+		int numEvents = (int) nEvents;
+		double estimate = Math.ceil(events(t) - shift);
+		int index = (int) Math.max(0., Math.min(numEvents, estimate));
+		while (index > 0 && startTime(index - 1 + shift) >= t) {
+			index--;
+		}
+		while (index < numEvents && startTime(index + shift) < t) {
+			index++;
+		}
+		return index;
+	}
+
+	/**
+	 * Calculates the start times of the events with the indices {@code firstIndex + shift} up to
+	 * {@code firstIndex + count - 1 + shift} like
+	 * {@link LoadCurveCalculator#deriveStartTime(LoadCurve, double)} for each event.
+	 *
+	 * @param firstIndex
+	 *            Index of the first event
+	 * @param count
+	 *            The number of events
+	 * @param shift
+	 *            The fractional shift added to each event index
+	 * @param startTimes
+	 *            The array the start times are written to, starting at position 0
+	 */
+	public void startTimes(final int firstIndex, final int count, final double shift, final double[] startTimes) {
+		cursor().startTimes(firstIndex, count, shift, startTimes);
+	}
+
+	/**
+	 * @return a new cursor positioned at the start of the load curve
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	@Override
+	public String toString() {
+		return "CompiledLoadCurve[name=" + name + ", nEvents=" + nEvents + ", timeValues=" + Arrays.toString(timeValues)
+				+ ", rateValues=" + Arrays.toString(rateValues) + "]";
+	}
+
+	/**
+	 * Sequential access to a compiled load curve. The cursor remembers the last line segment and
+	 * time interval and walks from there to the one of the next lookup. For increasing arguments,
+	 * each lookup takes constant time on average. The results are the same as the ones of the
+	 * corresponding methods of the curve. A cursor is not thread-safe, each thread must use its own
+	 * cursor.
+	 */
+	public final class Cursor {
+		private int timeInterval = -1;
+		private int lineSegment = -1;
+
+		private Cursor() {
+			// created by the curve
+		}
+
+		/**
+		 * @see CompiledLoadCurve#rate(double)
+		 */
+		public double rate(final double t) {
+			return rateInInterval(locateTime(t), t);
+		}
+
+		/**
+		 * @see CompiledLoadCurve#events(double)
+		 */
+		public double events(final double t) {
+			return eventsInInterval(locateTime(t), t);
+		}
+
+		/**
+		 * @see CompiledLoadCurve#startTime(double)
+		 */
+		public double startTime(final double eventIndex) {
+			return startTimeInSegment(locateEvent(eventIndex / nEvents), eventIndex);
+		}
+
+		/**
+		 * @see CompiledLoadCurve#startTimes(int, int, double, double[])
+		 */
+		public void startTimes(final int firstIndex, final int count, final double shift, final double[] startTimes) {
+			for (int iEvent = 0; iEvent < count; iEvent++) {
+				startTimes[iEvent] = startTime(firstIndex + iEvent + shift);
+			}
+		}
+
+		private int locateTime(final double t) {
+			// only the binary search range is walked, boundaries are checked like in the search
+			if (!timesSorted || timeInterval < 0 || t < timeValues[0] || t > timeValues[nPoints - 1]) {
+				int index = getTimeInterval(t);
+				if (index >= 0 && index < nPoints) {
+					timeInterval = index;
+				}
+				return index;
+			}
+			while (timeInterval < nPoints - 2 && t >= timeValues[timeInterval + 1]) {
+				timeInterval++;
+			}
+			while (timeInterval > 0 && t < timeValues[timeInterval]) {
+				timeInterval--;
+			}
+			return timeInterval;
+		}
+
+		private int locateEvent(final double normalizedEventIndex) {
+			if (!normedEventsSorted || lineSegment < 0
+					|| normalizedEventIndex <= normedEvents[0] - LoadCurveCalculator.EPSILON
+					|| normalizedEventIndex > normedEvents[nPoints - 1]) {
+				int index = getLineSegment(normalizedEventIndex);
+				if (index >= 0 && index <= nPoints - 2) {
+					lineSegment = index;
+				}
+				return index;
+			}
+			while (lineSegment < nPoints - 2 && normalizedEventIndex >= normedEvents[lineSegment + 1]) {
+				lineSegment++;
+			}
+			while (lineSegment > 0 && normalizedEventIndex < normedEvents[lineSegment]) {
+				lineSegment--;
+			}
+			return lineSegment;
+		}
+	}
+}
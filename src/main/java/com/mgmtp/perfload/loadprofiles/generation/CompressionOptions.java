@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.generation;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Options of the gzip compression of event files. With a parallelism of {@code 1} the output is
+ * compressed as a single gzip member while it is written. With a higher parallelism the output is
+ * split into blocks, which are compressed in parallel into independent gzip members and
+ * concatenated like {@code pigz} does. Both variants can be read by any gzip decompressor, e. g. a
+ * {@link java.util.zip.GZIPInputStream}.
+ */
+public class CompressionOptions {
+	/** The extension appended to the names of compressed files. */
+	public static final String FILE_EXTENSION = ".gz";
+
+	static final int BUFFER_SIZE = 1 << 16;
+
+	/** The compression level from 0 to 9 or {@link Deflater#DEFAULT_COMPRESSION}. */
+	private int level = Deflater.DEFAULT_COMPRESSION;
+
+	/** The number of threads compressing blocks of the output. */
+	private int parallelism = 1;
+
+	/** The size of the uncompressed blocks compressed in parallel. */
+	private int blockSize = 1 << 20;
+
+	/**
+	 * @return the compression level
+	 */
+	public int getLevel() {
+		return level;
+	}
+
+	/**
+	 * @param level
+	 *            the compression level from {@link Deflater#BEST_SPEED} to
+	 *            {@link Deflater#BEST_COMPRESSION} or {@link Deflater#DEFAULT_COMPRESSION}
+	 */
+	public void setLevel(final int level) {
+		checkArgument(level >= Deflater.DEFAULT_COMPRESSION && level <= Deflater.BEST_COMPRESSION,
+				"Invalid compression level: %s", level);
+		this.level = level;
+	}
+
+	/**
+	 * @return the number of threads compressing blocks of the output
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * @param parallelism
+	 *            the number of threads compressing blocks of the output; {@code 1} compresses the
+	 *            output as a single gzip member in the writing thread
+	 */
+	public void setParallelism(final int parallelism) {
+		checkArgument(parallelism > 0, "parallelism must be positive: %s", parallelism);
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @return the size of the uncompressed blocks compressed in parallel
+	 */
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * @param blockSize
+	 *            the size of the uncompressed blocks compressed in parallel; larger blocks
+	 *            compress slightly better
+	 */
+	public void setBlockSize(final int blockSize) {
+		checkArgument(blockSize > 0, "blockSize must be positive: %s", blockSize);
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * Wraps the given stream into a stream compressing the output according to the options.
+	 */
+	OutputStream compress(final OutputStream out) throws IOException {
+		if (parallelism > 1) {
+			return new ParallelGzipOutputStream(out, level, parallelism, blockSize);
+		}
+		return compressSerially(out);
+	}
+
+	/**
+	 * Wraps the given stream into a stream compressing the output as a single gzip member in the
+	 * writing thread regardless of the parallelism.
+	 */
+	OutputStream compressSerially(final OutputStream out) throws IOException {
+		return createGzipOutputStream(new BufferedOutputStream(out, BUFFER_SIZE), level);
+	}
+
+	static GZIPOutputStream createGzipOutputStream(final OutputStream out, final int level) throws IOException {
+		return new GZIPOutputStream(out, BUFFER_SIZE) {
+			{
+				def.setLevel(level);
+			}
+		};
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.generation;
+
+/**
+ * Indexed min-heap over the cumulated loads of members, which all have the same desired load. The
+ * member with the highest deficit {@code desiredLoad - load} is the one with the lowest load, so
+ * it can be selected without looking at all members, and the load of a member can be increased in
+ * O(log n).
+ * <p>
+ * The selection is the same as a linear scan for the first maximum of the deficits computed in
+ * floating point: since the rounded deficit does not increase with increasing load, all members
+ * whose deficit is equal to the one of the member with the lowest load form a subtree at the top
+ * of the heap. Of these the member with the lowest index is selected. The root is the member with
+ * the lowest index among those with the lowest load, so the subtree only has to be searched, if a
+ * higher load is rounded to the same deficit.
+ */
+class DeficitHeap {
+	private final double[] loads;
+	private final int[] heap;
+	private final int[] positions;
+	private final int[] stack;
+
+	/**
+	 * Creates a heap for the given number of members, all with load 0.
+	 */
+	DeficitHeap(final int size) {
+		loads = new double[size];
+		heap = new int[size];
+		positions = new int[size];
+		stack = new int[size];
+		for (int i = 0; i < size; i++) {
+			heap[i] = i;
+			positions[i] = i;
+		}
+	}
+
+	/**
+	 * @return the number of members
+	 */
+	int size() {
+		return heap.length;
+	}
+
+	/**
+	 * @return the cumulated load of the given member
+	 */
+	double getLoad(final int member) {
+		return loads[member];
+	}
+
+	/**
+	 * Selects the member with the highest deficit {@code desiredLoad - load}. If several members
+	 * have the same deficit, the one with the lowest index is selected.
+	 *
+	 * @param desiredLoad
+	 *            the desired load of all members
+	 * @return the index of the selected member
+	 */
+	int selectHighestDeficit(final double desiredLoad) {
+		int root = heap[0];
+		double deficitMax = desiredLoad - loads[root];
+		if (desiredLoad - Math.nextUp(loads[root]) != deficitMax) {
+			// no higher load has the same deficit, e. g. that of equal-power members tying
+			return root;
+		}
+		int selected = root;
+
+		// collect the members at the top of the heap with the same deficit
+		int stackSize = 0;
+		stack[stackSize++] = 0;
+		while (stackSize > 0) {
+			int position = stack[--stackSize];
+			for (int child = 2 * position + 1; child <= 2 * position + 2 && child < heap.length; child++) {
+				int member = heap[child];
+				if (desiredLoad - loads[member] == deficitMax) {
+					if (member < selected) {
+						selected = member;
+					}
+					stack[stackSize++] = child;
+				}
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * Replaces the cumulated loads of all members, e. g. in order to continue from a
+	 * {@link GenerationCheckpoint}.
+	 */
+	void setLoads(final double[] newLoads) {
+		System.arraycopy(newLoads, 0, loads, 0, loads.length);
+		for (int i = 0; i < heap.length; i++) {
+			heap[i] = i;
+			positions[i] = i;
+		}
+		for (int position = (heap.length >>> 1) - 1; position >= 0; position--) {
+			siftDown(position);
+		}
+	}
+
+	/**
+	 * Adds the given load to the cumulated load of the given member.
+	 */
+	void addLoad(final int member, final double load) {
+		loads[member] += load;
+		int position = positions[member];
+		if (load >= 0.) {
+			siftDown(position);
+		} else {
+			siftUp(position);
+		}
+	}
+
+	private void siftDown(int position) {
+		int member = heap[position];
+		int half = heap.length >>> 1;
+		while (position < half) {
+			int child = 2 * position + 1;
+			int right = child + 1;
+			if (right < heap.length && less(heap[right], heap[child])) {
+				child = right;
+			}
+			if (!less(heap[child], member)) {
+				break;
+			}
+			move(heap[child], position);
+			position = child;
+		}
+		move(member, position);
+	}
+
+	private void siftUp(int position) {
+		int member = heap[position];
+		while (position > 0) {
+			int parent = (position - 1) >>> 1;
+			if (!less(member, heap[parent])) {
+				break;
+			}
+			move(heap[parent], position);
+			position = parent;
+		}
+		move(member, position);
+	}
+
+	private void move(final int member, final int position) {
+		heap[position] = member;
+		positions[member] = position;
+	}
+
+	private boolean less(final int member1, final int member2) {
+		double load1 = loads[member1];
+		double load2 = loads[member2];
+		return load1 < load2 || load1 == load2 && member1 < member2;
+	}
+}
@@ -15,22 +15,35 @@
  */
 package com.mgmtp.perfload.loadprofiles.generation;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import com.mgmtp.perfload.loadprofiles.generation.GenerationReport.Phase;
+import com.mgmtp.perfload.loadprofiles.generation.ShardedEventFileWriter.ShardKey;
 import com.mgmtp.perfload.loadprofiles.model.BaseLoadProfileEvent;
 import com.mgmtp.perfload.loadprofiles.model.Client;
+import com.mgmtp.perfload.loadprofiles.model.EventTable;
 import com.mgmtp.perfload.loadprofiles.model.LoadCurve;
 import com.mgmtp.perfload.loadprofiles.model.LoadCurveAssignment;
 import com.mgmtp.perfload.loadprofiles.model.LoadEvent;
@@ -50,195 +63,386 @@ import com.mgmtp.perfload.loadprofiles.model.Target;
 public class EventDistributor {
 	private static final Logger log = LoggerFactory.getLogger(EventDistributor.class);
 
-	private static final String eventSeparator = ";";
+	/**
+	 * The number of threads used to create the events of the load curve assignments, if not
+	 * specified explicitly. May be set with the system property
+	 * {@code perfload.loadprofiles.parallelism}, defaults to the number of available processors.
+	 */
+	public static final int DEFAULT_PARALLELISM = Integer.getInteger("perfload.loadprofiles.parallelism", Runtime
+			.getRuntime().availableProcessors());
+
+	/**
+	 * The number of distributed events between two calls of a {@link GenerationProgressListener}.
+	 */
+	public static final int PROGRESS_INTERVAL = 1 << 16;
 
 	/**
 	 * Distributes events from different operations with different client loads to Clients with
-	 * different performance. The events from the given list of events, which must be sorted
-	 * according to time (not verified in this method) are distributed onto processes within daemons
-	 * on clients. All processes of all daemons of one client should get the same load The daemon is
-	 * only introduced, since it exists in the configuration of perfload It is not necessary to
-	 * balance the distribution of events between daemons. The load of all processes of one client
-	 * and the total load per client is balanced by this algorithm. While looping over all events,
-	 * the algorithm derives for each event which client has up to now the lowest total load,
-	 * assigns the client load of the operation of this event to the client and then continues with
-	 * the next event. The algorithm for the distribution on processes is analogous. This algorithn
-	 * takes only the time sequence of the events into account, the time difference between the
-	 * events is not considered. To correct for this, not the total load per client up to the time
-	 * of the event to be distributed has to be taken into account, but the load distributed over
-	 * time, taking into account, that after a certain time, the 'current load' of a client might be
-	 * 0. I have no idea yet how to do this.
-	 * 
-	 * @param allEvents
-	 *            ArrayList of all load events
-	 * @return Lists of Events. For each event the client, daemon and process is now defined.
+	 * different performance. The events, which must be passed sorted according to time (not
+	 * verified in this class) are distributed onto processes within daemons on clients. All
+	 * processes of all daemons of one client should get the same load The daemon is only
+	 * introduced, since it exists in the configuration of perfload It is not necessary to balance
+	 * the distribution of events between daemons. The load of all processes of one client and the
+	 * total load per client is balanced by this algorithm. While looping over all events, the
+	 * algorithm derives for each event which client has up to now the lowest total load, assigns
+	 * the client load of the operation of this event to the client and then continues with the next
+	 * event. The algorithm for the distribution on processes is analogous. This algorithn takes only
+	 * the time sequence of the events into account, the time difference between the events is not
+	 * considered. To correct for this, not the total load per client up to the time of the event to
+	 * be distributed has to be taken into account, but the load distributed over time, taking into
+	 * account, that after a certain time, the 'current load' of a client might be 0. I have no idea
+	 * yet how to do this.
+	 * <p>
+	 * The distribution keeps its state between the events, so events can be distributed one by one
+	 * while they are created.
+	 * <p>
+	 * The client is selected by a {@link WeightedScheduler} with the relative client powers as
+	 * weights. The processes of a client all have the same desired load, their loads are kept in a
+	 * {@link DeficitHeap}. Selecting the client and process of an event takes O(number of distinct
+	 * client powers + log(number of clients) + log(number of processes)) and gives the same result
+	 * as scanning all deficits for the first maximum.
 	 */
-	private static List<LoadEvent> distributeEvents(final List<LoadEvent> allEvents,
-			final LoadTestConfiguration loadTestConfiguration, final double totalWeightedNevent) {
+	private static class ClientDistribution {
+		private final int numClients;
+		private final double totalWeightedNevent;
+		private final GenerationTrace trace;
+		private final GenerationReport report;
+
+		private final int[] daemonIds;
+		private final int[] processesPerClient;
+		private final DeficitHeap[] processLoads;
+
+		private final WeightedScheduler clientScheduler;
+
+		private long numEvents;
+		private int clientIndex;
+		private int processIndex;
+
+		ClientDistribution(final LoadTestConfiguration loadTestConfiguration, final double totalWeightedNevent,
+				final GenerationTrace trace, final GenerationReport report) {
+			this.totalWeightedNevent = totalWeightedNevent;
+			this.trace = trace;
+			this.report = report;
+			List<Client> clients = loadTestConfiguration.getClients();
+			numClients = clients.size();
+			double[] relativeClientPower = getRelativeClientPower(loadTestConfiguration);
+
+			// distribute events to processes and daemons of all clients
+			daemonIds = new int[numClients];
+			processLoads = new DeficitHeap[numClients];
+			processesPerClient = new int[numClients];
 
-		List<Client> clients = loadTestConfiguration.getClients();
-		int numClients = clients.size();
-		List<Operation> operations = loadTestConfiguration.getOperations();
-		double[] relativeClientPower = getRelativeClientPower(loadTestConfiguration);
-
-		// distribute events to processes and daemons of all clients
-		ArrayList<LoadEvent> clientEventList = newArrayList();
-		double[][] cumulatedProcessLoad = new double[numClients][];
-		double[][] deficitProcessLoad = new double[numClients][];
-		int[] processesPerClient = new int[numClients];
-
-		for (int iClient = 0; iClient < numClients; iClient++) {
-			processesPerClient[iClient] = 1 * clients.get(iClient).getNumProcesses();
-			cumulatedProcessLoad[iClient] = new double[processesPerClient[iClient]];
-			deficitProcessLoad[iClient] = new double[processesPerClient[iClient]];
-		}
-		double cumulatedClientLoad[] = new double[numClients];
-		double desiredClientLoad[] = new double[numClients];
-		double deficitClientLoad[] = new double[numClients];
-
-		// log input parameter
-		log.info("totalWeightedNevent = " + totalWeightedNevent);
-		log.info("nClient = " + numClients);
-		for (Client client : clients) {
-			log.info("daemonId = " + client.getDaemonId() + " , nProcess = " + client.getNumProcesses()
-					+ ", relativeClientPower = " + client.getRelativePower());
-		}
-		for (Operation operation : operations) {
-			log.info("operation " + operation.getName() + " relativeClientLoad = " + operation.getRelativeClientLoad());
-		}
-
-		if (log.isDebugEnabled()) {
-			log.debug("weight; cumulatedWeightedNevent;");
 			for (int iClient = 0; iClient < numClients; iClient++) {
-				log.debug("targetClientLoad[" + iClient + "]; ");
+				daemonIds[iClient] = clients.get(iClient).getDaemonId();
+				processesPerClient[iClient] = 1 * clients.get(iClient).getNumProcesses();
+				processLoads[iClient] = new DeficitHeap(processesPerClient[iClient]);
 			}
-			for (int iClient = 0; iClient < numClients; iClient++) {
-				log.debug("deficitClientLoad[" + iClient + "]; ");
+
+			clientScheduler = new WeightedScheduler(relativeClientPower);
+
+			// log input parameter
+			log.info("totalWeightedNevent = " + totalWeightedNevent);
+			log.info("nClient = " + numClients);
+			for (Client client : clients) {
+				log.info("daemonId = " + client.getDaemonId() + " , nProcess = " + client.getNumProcesses()
+						+ ", relativeClientPower = " + client.getRelativePower());
+			}
+			for (Operation operation : loadTestConfiguration.getOperations()) {
+				log.info("operation " + operation.getName() + " relativeClientLoad = " + operation.getRelativeClientLoad());
 			}
-			log.debug("iClientMax; OperationType; StartTime");
 		}
 
-		double cumulatedWeightedNevent = 0.;
-		for (LoadEvent event : allEvents) {
-			double weight = event.getOperation().getRelativeClientLoad();
-			cumulatedWeightedNevent += weight;
+		/**
+		 * Continues the distribution from the state saved in the given checkpoint.
+		 */
+		void restore(final GenerationCheckpoint checkpoint) {
+			checkArgument(checkpoint.getNumClients() == numClients, "Checkpoint for %s clients, configuration has %s",
+					checkpoint.getNumClients(), numClients);
+			clientScheduler.restore(checkpoint.getTotalClientLoad(), checkpoint.getClientLoads());
 			for (int iClient = 0; iClient < numClients; iClient++) {
-				desiredClientLoad[iClient] = cumulatedWeightedNevent * relativeClientPower[iClient];
-				deficitClientLoad[iClient] = desiredClientLoad[iClient] - cumulatedClientLoad[iClient];
+				double[] loads = checkpoint.getProcessLoads(iClient);
+				checkArgument(loads.length == processesPerClient[iClient],
+						"Checkpoint for %s processes of client %s, configuration has %s", loads.length, iClient,
+						processesPerClient[iClient]);
+				processLoads[iClient].setLoads(loads);
 			}
+			numEvents = checkpoint.getNumEvents();
+		}
 
-			int iClientMax = findHighestDeficit(deficitClientLoad);
-			cumulatedClientLoad[iClientMax] += weight;
-			double desiredProcessLoad = desiredClientLoad[iClientMax] / processesPerClient[iClientMax];
-			for (int iProcess = 0; iProcess < processesPerClient[iClientMax]; iProcess++) {
-				deficitProcessLoad[iClientMax][iProcess] = desiredProcessLoad - cumulatedProcessLoad[iClientMax][iProcess];
+		/**
+		 * Saves the state of the distribution together with the given state of the event sources.
+		 */
+		GenerationCheckpoint checkpoint(final double time, final int[] nextEventIndices, final int[][] targetCounts) {
+			double[] clientLoads = new double[numClients];
+			double[][] processLoadsOfClients = new double[numClients][];
+			for (int iClient = 0; iClient < numClients; iClient++) {
+				clientLoads[iClient] = clientScheduler.getAssignedAmount(iClient);
+				processLoadsOfClients[iClient] = new double[processesPerClient[iClient]];
+				for (int iProcess = 0; iProcess < processesPerClient[iClient]; iProcess++) {
+					processLoadsOfClients[iClient][iProcess] = processLoads[iClient].getLoad(iProcess);
+				}
 			}
-			int iProcessMax = findHighestDeficit(deficitProcessLoad[iClientMax]);
-			cumulatedProcessLoad[iClientMax][iProcessMax] += weight;
+			return new GenerationCheckpoint(time, numEvents, nextEventIndices, targetCounts,
+					clientScheduler.getTotalAmount(), clientLoads, processLoadsOfClients);
+		}
 
-			event.setClientId(iClientMax);
-			event.setProcessId(iProcessMax);
-			event.setDaemonId(clients.get(iClientMax).getDaemonId());
-			clientEventList.add(event);
+		/**
+		 * Defines client and process of the next event, which has the given time and operation.
+		 */
+		void distribute(final double time, final Operation operation) {
+			double weight = operation.getRelativeClientLoad();
+			int iClientMax = clientScheduler.next(weight);
 
-			if (log.isDebugEnabled()) {
-				log.debug(weight + "; " + cumulatedWeightedNevent + "; ");
+			double desiredProcessLoad = clientScheduler.getDesiredAmount(iClientMax) / processesPerClient[iClientMax];
+			int iProcessMax = processLoads[iClientMax].selectHighestDeficit(desiredProcessLoad);
+			processLoads[iClientMax].addLoad(iProcessMax, weight);
+
+			clientIndex = iClientMax;
+			processIndex = iProcessMax;
+
+			trace.eventDistributed(numEvents++, time, operation, iClientMax, iProcessMax);
+		}
+
+		/**
+		 * @return the number of distributed events including those before a restored checkpoint
+		 */
+		long getNumEvents() {
+			return numEvents;
+		}
+
+		/**
+		 * @return the index of the client of the last distributed event
+		 */
+		int getClientIndex() {
+			return clientIndex;
+		}
+
+		/**
+		 * @return the daemon id of the last distributed event
+		 */
+		int getDaemonId() {
+			return daemonIds[clientIndex];
+		}
+
+		/**
+		 * @return the zero-based index of the process of the last distributed event
+		 */
+		int getProcessIndex() {
+			return processIndex;
+		}
+
+		/**
+		 * Passes the numeric check and the residua to the trace and the report after the last
+		 * event has been distributed.
+		 */
+		void finish() {
+			// numeric check
+			double cumulatedWeightedNevent = clientScheduler.getTotalAmount();
+			double numericRelativeDifference = (cumulatedWeightedNevent - totalWeightedNevent) / totalWeightedNevent;
+
+			// check residua for clients
+			double[] clientResidua = new double[numClients];
+			for (int iClient = 0; iClient < numClients; iClient++) {
+				clientResidua[iClient] = clientScheduler.getDeficit(iClient);
+			}
+			trace.generationFinished(numEvents, numericRelativeDifference, clientResidua);
+
+			if (report != null) {
+				double[][] processResidua = new double[numClients][];
 				for (int iClient = 0; iClient < numClients; iClient++) {
-					log.debug(desiredClientLoad[iClient] + "; ");
+					double desiredProcessLoad = clientScheduler.getDesiredAmount(iClient) / processesPerClient[iClient];
+					processResidua[iClient] = new double[processesPerClient[iClient]];
+					for (int iProcess = 0; iProcess < processesPerClient[iClient]; iProcess++) {
+						processResidua[iClient][iProcess] = desiredProcessLoad - processLoads[iClient].getLoad(iProcess);
+					}
 				}
-				for (int iClient = 0; iClient < numClients; iClient++) {
-					log.debug(deficitClientLoad[iClient] + "; ");
+				report.generationFinished(numEvents, numericRelativeDifference, clientResidua, processResidua);
+			}
+		}
+	}
+
+	/**
+	 * Creates the events of all load curve assignments merged by time and distributes them one by
+	 * one. After each call of {@link #next()} the current event is defined by the current source of
+	 * the merger and the client, daemon and process defined by the distribution. Events before the
+	 * time window are distributed, but skipped, the generation ends with the first event at or
+	 * after the end of the window. If there is a report, the phases of the consuming thread are
+	 * switched, so that the time between two calls of {@link #next()} is attributed to writing.
+	 * If there is a monitor, the number of distributed events is published after each event and
+	 * the generation stops with a {@link CancellationException}, when it has been cancelled. A
+	 * progress listener is called every {@link #PROGRESS_INTERVAL} events and at the end. The own
+	 * pool of the generation is shut down, when the generation ends or is closed before.
+	 */
+	private static class ClientEventGeneration implements Closeable {
+		private final List<AssignmentEventSource> sources;
+		private final EventMerger merger;
+		private final ClientDistribution distribution;
+		private final ForkJoinPool ownPool;
+		private final double startTime;
+		private final double endTime;
+		private final GenerationReport report;
+		private final GenerationMonitor monitor;
+		private final GenerationProgressListener progressListener;
+		private final long firstEventNumber;
+		private final long expectedEvents;
+		private boolean finished;
+
+		ClientEventGeneration(final List<AssignmentEventSource> sources, final ClientDistribution distribution,
+				final ForkJoinPool ownPool, final double startTime, final double endTime, final GenerationReport report,
+				final GenerationMonitor monitor, final GenerationProgressListener progressListener) {
+			this.sources = sources;
+			this.merger = new EventMerger(sources);
+			this.distribution = distribution;
+			this.ownPool = ownPool;
+			this.startTime = startTime;
+			this.endTime = endTime;
+			this.report = report;
+			this.monitor = monitor;
+			this.progressListener = progressListener;
+			this.firstEventNumber = distribution.getNumEvents();
+			long numEvents = 0L;
+			for (AssignmentEventSource source : sources) {
+				numEvents += source.getNumEvents();
+			}
+			this.expectedEvents = numEvents;
+			if (monitor != null) {
+				monitor.eventsExpected(expectedEvents);
+			}
+		}
+
+		boolean next() {
+			if (monitor != null && !finished && monitor.isCancelled()) {
+				stop();
+				monitor.generationCancelled();
+				throw new CancellationException("The generation has been cancelled");
+			}
+			if (report != null) {
+				report.startPhase(Phase.MERGE);
+			}
+			while (advance()) {
+				AssignmentEventSource source = merger.current();
+				if (source.getTime() >= endTime) {
+					stop();
+					return false;
+				}
+				if (report != null) {
+					report.startPhase(Phase.DISTRIBUTION);
+				}
+				distribution.distribute(source.getTime(), source.getOperation());
+				long numDistributed = distribution.getNumEvents() - firstEventNumber;
+				if (monitor != null) {
+					monitor.eventsDistributed(numDistributed);
+				}
+				if (progressListener != null && numDistributed % PROGRESS_INTERVAL == 0L) {
+					progressListener.progressChanged(numDistributed, expectedEvents);
+				}
+				if (report != null) {
+					report.startPhase(source.getTime() >= startTime ? Phase.WRITING : Phase.MERGE);
+				}
+				if (source.getTime() >= startTime) {
+					return true;
 				}
-				log.debug(iClientMax + "; " + event.getOperation().getName() + "; " + event.getTime());
 			}
+			return false;
 		}
 
-		// numeric check
-		double numericRelativeDifference = (cumulatedWeightedNevent - totalWeightedNevent) / totalWeightedNevent;
-		log.info("Numeric relative difference cumulatedWeightedNevent - totalWeightedNevent " + numericRelativeDifference);
+		/**
+		 * Advances the merger without distributing the event.
+		 */
+		private boolean advance() {
+			if (finished) {
+				return false;
+			}
+			if (!merger.next()) {
+				distribution.finish();
+				stop();
+				return false;
+			}
+			return true;
+		}
 
-		// check residua for clients
-		for (int iClient = 0; iClient < numClients; iClient++) {
-			deficitClientLoad[iClient] = desiredClientLoad[iClient] - cumulatedClientLoad[iClient];
-			log.info("Residuum Client " + iClient + ": " + deficitClientLoad[iClient]);
+		private void stop() {
+			finished = true;
+			if (monitor != null) {
+				monitor.generationFinished();
+			}
+			if (progressListener != null) {
+				progressListener.progressChanged(distribution.getNumEvents() - firstEventNumber, expectedEvents);
+			}
+			close();
 		}
 
-		return clientEventList;
-	}
+		/**
+		 * Shuts down the own pool, e. g. when the events are not consumed up to the end. No more
+		 * events are created afterwards.
+		 */
+		@Override
+		public void close() {
+			finished = true;
+			if (ownPool != null) {
+				ownPool.shutdown();
+			}
+		}
 
-	/**
-	 * Create events according to the given load curve assignment and distribute the events onto the
-	 * targets according to the given partition between targets. The distribution algorithm is
-	 * analogous to the distribution of events to clients described in the method distributeEvents()
-	 * in this class. The shift value is used to shift each event within its time interval. The time
-	 * interval is the time for which the integral over the load curve increases from the last
-	 * integer number of events to the next integer number of events. The value indicates the
-	 * relative shift within this interval. A value of 0.5 puts the event at the time, where the
-	 * integral value is equal to the last integer number plus 0.5. The shifting is used to be able
-	 * to smooth out the distribution of events on small time scales. If the load of an operation
-	 * following a load curve is created separately for parts of the load, then it is possible to
-	 * shift the start time of each event to smooth out the distribution. Creating events for half
-	 * the load of a load curve with a shift value of 0. and another list of events with a shift
-	 * value of 0.5 and combining them is equal to creating a list of events with the full load and
-	 * a shift value of 0.
-	 * 
-	 * @param loadCurveAssignment
-	 *            The assignment of a load curve to targets
-	 * @param shift
-	 *            The shift of all events for the given assignment
-	 * @return list of load events
-	 */
-	private static ArrayList<LoadEvent> createEvents(final LoadCurveAssignment loadCurveAssignment, final double shift) {
-
-		LoadCurve loadCurve = loadCurveAssignment.getLoadCurve();
-		List<Target> targets = loadCurveAssignment.getTargets();
-		Operation operation = loadCurveAssignment.getOperation();
-
-		String targetList = "";
-		for (Target target : targets) {
-			targetList += target.getName() + ", ";
-		}
-		log.info("Creating events according to loadCurve " + loadCurve.getName() +
-				"\n\tof operation " + operation.getName() +
-				"\n\tfor targets " + targetList);
-		loadCurve.dump(log);
-
-		int nEvents = (int) loadCurve.getNEvents();
-		ArrayList<LoadEvent> events = new ArrayList<LoadEvent>(nEvents);
-
-		// calculate events from load curve in given time interval
-                double lastTn = 0.;
-		for (int iEvent = 0; iEvent < nEvents; iEvent++) {
-			double eventIndex = iEvent + shift;
-			double Tn = LoadCurveCalculator.deriveStartTime(loadCurve, eventIndex);
-			LoadEvent event = new LoadEvent(Tn, operation);
-			events.add(iEvent, event);
-                        if (iEvent > 0) {
-                            if (Tn < lastTn) {
-                                log.error("Event in wrong sequence iEvent"+iEvent+", lastTn "+lastTn+", Tn "+Tn);
-                            }
-                        }
-                        lastTn = Tn;     
-		}
-
-		// assign events to targets according to load part for each targets
-		double[] desiredTargetLoad = new double[targets.size()];
-		double[] cumulatedTargetLoad = new double[targets.size()];
-		double[] deficitTargetLoad = new double[targets.size()];
-		double cumulatedNevent = 0.;
-		for (int iEvent = 0; iEvent < events.size(); iEvent++) {
-			LoadEvent event = events.get(iEvent);
-			cumulatedNevent += 1.;
-			for (int iTarget = 0; iTarget < targets.size(); iTarget++) {
-				desiredTargetLoad[iTarget] = cumulatedNevent * targets.get(iTarget).getLoadPart();
-				deficitTargetLoad[iTarget] = desiredTargetLoad[iTarget] - cumulatedTargetLoad[iTarget];
+		/**
+		 * Distributes the events up to the given times and saves the state of the generation, when
+		 * the first event at or after each time is reached.
+		 * 
+		 * @param times
+		 *            the times of the checkpoints sorted in ascending order
+		 */
+		List<GenerationCheckpoint> checkpoints(final double[] times) {
+			List<GenerationCheckpoint> checkpoints = newArrayListWithCapacity(times.length);
+			int iTime = 0;
+			while (iTime < times.length) {
+				boolean hasNext = advance();
+				double time = hasNext ? merger.current().getTime() : Double.POSITIVE_INFINITY;
+				while (iTime < times.length && time >= times[iTime]) {
+					checkpoints.add(checkpoint(times[iTime++]));
+				}
+				if (!hasNext) {
+					break;
+				}
+				if (iTime < times.length) {
+					distribution.distribute(time, merger.current().getOperation());
+				}
 			}
-			int iTargetMax = findHighestDeficit(deficitTargetLoad);
-			cumulatedTargetLoad[iTargetMax] += 1.;
-			event.setTarget(targets.get(iTargetMax));
+			stop();
+			return checkpoints;
 		}
 
-		return events;
+		/**
+		 * Saves the state before the current event is distributed. The current event of each
+		 * source, which is not exhausted, has not been distributed yet.
+		 */
+		private GenerationCheckpoint checkpoint(final double time) {
+			int numSources = sources.size();
+			int[] nextEventIndices = new int[numSources];
+			int[][] targetCounts = new int[numSources][];
+			for (int iSource = 0; iSource < numSources; iSource++) {
+				AssignmentEventSource source = sources.get(iSource);
+				int[] counts = new int[source.getNumTargets()];
+				for (int iTarget = 0; iTarget < counts.length; iTarget++) {
+					counts[iTarget] = source.getTargetCount(iTarget);
+				}
+				if (source.isExhausted()) {
+					nextEventIndices[iSource] = source.getEventIndex() + 1;
+				} else {
+					nextEventIndices[iSource] = source.getEventIndex();
+					counts[source.getTargetIndex()]--;
+				}
+				targetCounts[iSource] = counts;
+			}
+			return distribution.checkpoint(time, nextEventIndices, targetCounts);
+		}
+
+		AssignmentEventSource source() {
+			return merger.current();
+		}
+
+		ClientDistribution distribution() {
+			return distribution;
+		}
 	}
 
 	/**
@@ -246,18 +450,262 @@ public class EventDistributor {
 	 * configuration. The events are first created for each load curve assignment and then merged to
 	 * one event list sorted by time. Then the events are distributed to clients (and daemons and
 	 * processes). The algorithm for the distribution on clients and targets is described in the
-	 * methods performing the task. The resulting event list contains events, which are sorted by
+	 * classes performing the task. The resulting event list contains events, which are sorted by
 	 * time and contain defined values for the targets (server), the operation and the client (and
 	 * daemon and process), which executes this operation against the given targets. The serialized
 	 * form (.csv-file) of this list is used as an input file for the perfload clients.
 	 * 
 	 * @param loadTestConfiguration
 	 *            configuration data of the load test
+	 * @see #createClientEventIterator(LoadTestConfiguration)
+	 * @see #createClientEventTable(LoadTestConfiguration)
 	 */
 	public static List<LoadEvent> createClientEventList(final LoadTestConfiguration loadTestConfiguration) {
+		return createClientEventList(loadTestConfiguration, new GenerationOptions());
+	}
+
+	/**
+	 * Creates the events like {@link #createClientEventList(LoadTestConfiguration)} with the given
+	 * options.
+	 * 
+	 * @param loadTestConfiguration
+	 *            configuration data of the load test
+	 * @param options
+	 *            the options of the generation; apart from the time window the resulting events
+	 *            do not depend on them
+	 */
+	public static List<LoadEvent> createClientEventList(final LoadTestConfiguration loadTestConfiguration,
+			final GenerationOptions options) {
+		Iterator<LoadEvent> events = createClientEventIterator(loadTestConfiguration, options);
+		try {
+			return newArrayList(events);
+		} finally {
+			close(events);
+		}
+	}
+
+	/**
+	 * Creates the same events as {@link #createClientEventList(LoadTestConfiguration)}, but stores
+	 * them in a compact {@link EventTable} instead of creating one object per event. The
+	 * dictionaries of the table are set up with {@link EventTable#forConfiguration(LoadTestConfiguration)}.
+	 * 
+	 * @param loadTestConfiguration
+	 *            configuration data of the load test
+	 * @return the table of the distributed events sorted by time
+	 */
+	public static EventTable createClientEventTable(final LoadTestConfiguration loadTestConfiguration) {
+		return createClientEventTable(loadTestConfiguration, new GenerationOptions());
+	}
+
+	/**
+	 * Creates the events like {@link #createClientEventTable(LoadTestConfiguration)} with the given
+	 * options.
+	 * 
+	 * @param loadTestConfiguration
+	 *            configuration data of the load test
+	 * @param options
+	 *            the options of the generation; apart from the time window the resulting events
+	 *            do not depend on them
+	 * @return the table of the distributed events sorted by time
+	 */
+	public static EventTable createClientEventTable(final LoadTestConfiguration loadTestConfiguration,
+			final GenerationOptions options) {
+		EventTable table = EventTable.forConfiguration(loadTestConfiguration);
+
+		List<LoadCurveAssignment> loadCurveAssignments = loadTestConfiguration.getLoadCurveAssignments();
+		int numAssignments = loadCurveAssignments.size();
+		int[] operationIndices = new int[numAssignments];
+		int[][] targetIndices = new int[numAssignments][];
+		for (int iAssignment = 0; iAssignment < numAssignments; iAssignment++) {
+			LoadCurveAssignment loadCurveAssignment = loadCurveAssignments.get(iAssignment);
+			operationIndices[iAssignment] = table.indexOf(loadCurveAssignment.getOperation());
+			List<Target> targets = loadCurveAssignment.getTargets();
+			targetIndices[iAssignment] = new int[targets.size()];
+			for (int iTarget = 0; iTarget < targets.size(); iTarget++) {
+				targetIndices[iAssignment][iTarget] = table.indexOf(targets.get(iTarget));
+			}
+		}
+
+		ClientEventGeneration generation = startGeneration(loadTestConfiguration, options);
+		try {
+			ClientDistribution distribution = generation.distribution();
+			while (generation.next()) {
+				AssignmentEventSource source = generation.source();
+				int iAssignment = source.getAssignmentIndex();
+				table.add(source.getTime(), operationIndices[iAssignment],
+						targetIndices[iAssignment][source.getTargetIndex()], distribution.getClientIndex(),
+						distribution.getDaemonId(), distribution.getProcessIndex());
+			}
+		} finally {
+			generation.close();
+		}
+		return table;
+	}
+
+	/**
+	 * Creates the same events as {@link #createClientEventList(LoadTestConfiguration)}, but lazily.
+	 * The events of all load curve assignments are created while iterating, merged by time and
+	 * distributed to clients (and daemons and processes) one by one. Only one pending event per
+	 * load curve assignment is held in memory, so that creating, distributing and writing the
+	 * events can be done in a single pass regardless of the total number of events.
+	 * 
+	 * @param loadTestConfiguration
+	 *            configuration data of the load test
+	 * @return an iterator over the distributed events sorted by time
+	 */
+	public static Iterator<LoadEvent> createClientEventIterator(final LoadTestConfiguration loadTestConfiguration) {
+		return createClientEventIterator(loadTestConfiguration, new GenerationOptions());
+	}
+
+	/**
+	 * Creates the events like {@link #createClientEventIterator(LoadTestConfiguration)} with the
+	 * given options. While the events are consumed, the next block of events of each load curve
+	 * assignment is created in a {@link ForkJoinPool} with the configured parallelism, or in the
+	 * shared pool of the options. The iterator implements {@link Closeable}: the own pool is shut
+	 * down when the iterator is exhausted or closed, so an iterator, which is not consumed up to
+	 * the end, has to be closed. The writers of this class taking an iterator close it.
+	 * 
+	 * @param loadTestConfiguration
+	 *            configuration data of the load test
+	 * @param options
+	 *            the options of the generation; apart from the time window the resulting events
+	 *            do not depend on them
+	 * @return an iterator over the distributed events sorted by time
+	 */
+	public static Iterator<LoadEvent> createClientEventIterator(final LoadTestConfiguration loadTestConfiguration,
+			final GenerationOptions options) {
+		return new ClientEventIterator(startGeneration(loadTestConfiguration, options));
+	}
+
+	/**
+	 * Creates a {@link LoadEvent} for each event of the generation.
+	 */
+	private static class ClientEventIterator extends AbstractIterator<LoadEvent> implements Closeable {
+		private final ClientEventGeneration generation;
+
+		ClientEventIterator(final ClientEventGeneration generation) {
+			this.generation = generation;
+		}
+
+		@Override
+		protected LoadEvent computeNext() {
+			if (!generation.next()) {
+				return endOfData();
+			}
+			AssignmentEventSource source = generation.source();
+			ClientDistribution distribution = generation.distribution();
+			LoadEvent event = new LoadEvent(source.getTime(), source.getOperation());
+			event.setTarget(source.getTarget());
+			event.setClientId(distribution.getClientIndex());
+			event.setProcessId(distribution.getProcessIndex());
+			event.setDaemonId(distribution.getDaemonId());
+			return event;
+		}
+
+		@Override
+		public void close() {
+			generation.close();
+		}
+	}
+
+	/**
+	 * Closes the given iterator, if it is {@link Closeable}, e. g. in order to shut down the pool
+	 * of an iterator created by {@link #createClientEventIterator(LoadTestConfiguration)}, which
+	 * has not been consumed up to the end.
+	 */
+	static void close(final Iterator<?> events) {
+		if (events instanceof Closeable) {
+			IOUtils.closeQuietly((Closeable) events);
+		}
+	}
+
+	/**
+	 * Creates the events like {@link #createClientEventIterator(LoadTestConfiguration)}, but
+	 * passes them to the given handler instead of creating an object per event. Apart from blocks
+	 * of event times created once per load curve assignment and block, no objects are allocated
+	 * per event, so that very large numbers of events can be written or aggregated with a
+	 * constant memory footprint.
+	 * 
+	 * @param loadTestConfiguration
+	 *            configuration data of the load test
+	 * @param options
+	 *            the options of the generation; apart from the time window the resulting events
+	 *            do not depend on them
+	 * @param handler
+	 *            the handler, which is called for each distributed event in order of time
+	 * @return the number of events
+	 */
+	public static long generateClientEvents(final LoadTestConfiguration loadTestConfiguration,
+			final GenerationOptions options, final ClientEventHandler handler) {
+		ClientEventGeneration generation = startGeneration(loadTestConfiguration, options);
+		ClientDistribution distribution = generation.distribution();
+		long numEvents = 0L;
+		try {
+			while (generation.next()) {
+				AssignmentEventSource source = generation.source();
+				handler.handleEvent(source.getTime(), source.getOperation(), source.getTarget(),
+						distribution.getClientIndex(), distribution.getDaemonId(), distribution.getProcessIndex());
+				numEvents++;
+			}
+		} finally {
+			generation.close();
+		}
+		return numEvents;
+	}
+
+	/**
+	 * Creates checkpoints, from which the generation of events can be continued at the given
+	 * times, e. g. in order to create the events of several time windows independently with
+	 * {@link GenerationOptions#setTimeWindow(double, double)} and
+	 * {@link GenerationOptions#setCheckpoint(GenerationCheckpoint)}. The events up to the last
+	 * time are created and distributed, but not stored. The time window of the options is
+	 * ignored, a checkpoint of the options is used to continue from.
+	 * 
+	 * @param loadTestConfiguration
+	 *            configuration data of the load test
+	 * @param options
+	 *            the options of the generation
+	 * @param times
+	 *            the times of the checkpoints in hours in any order
+	 * @return the checkpoints sorted by time
+	 */
+	public static List<GenerationCheckpoint> createCheckpoints(final LoadTestConfiguration loadTestConfiguration,
+			final GenerationOptions options, final double[] times) {
+		double[] sortedTimes = times.clone();
+		Arrays.sort(sortedTimes);
+		GenerationOptions passOptions = new GenerationOptions();
+		passOptions.setParallelism(options.getParallelism());
+		passOptions.setTrace(options.getTrace());
+		passOptions.setCheckpoint(options.getCheckpoint());
+		double startTime = options.getCheckpoint() != null ? options.getCheckpoint().getTime() : 0.;
+		if (sortedTimes.length > 0) {
+			checkArgument(sortedTimes[0] >= startTime, "Checkpoint time %s before start time %s", sortedTimes[0],
+					startTime);
+			passOptions.setTimeWindow(startTime, sortedTimes[sortedTimes.length - 1]);
+		}
+		ClientEventGeneration generation = startGeneration(loadTestConfiguration, passOptions);
+		try {
+			return generation.checkpoints(sortedTimes);
+		} finally {
+			generation.close();
+		}
+	}
 
+	private static ClientEventGeneration startGeneration(final LoadTestConfiguration loadTestConfiguration,
+			final GenerationOptions options) {
+		int parallelism = options.getParallelism();
+		GenerationTrace trace = options.getTrace() != null ? options.getTrace() : new LoggingGenerationTrace();
+		GenerationReport report = options.getReport();
+		GenerationMonitor monitor = options.getMonitor();
 		verifyArguments(loadTestConfiguration);
 
+		if (monitor != null) {
+			monitor.generationStarted();
+		}
+		if (report != null) {
+			report.startPhase(Phase.UNIT_CONVERSION);
+		}
+
 		// convert load curve units to hours if necessary
 		List<LoadCurveAssignment> loadCurveAssignments = loadTestConfiguration.getLoadCurveAssignments();
 		for (LoadCurveAssignment loadCurveAssignment : loadCurveAssignments) {
@@ -279,16 +727,35 @@ public class EventDistributor {
 			shiftValues[iAssignment] = (iAssignment + 0.5) / numAssignments;
 		}
 
-		// derive for all assignments an event list
-		List<LoadEvent> allAssignmentsEventList = new ArrayList<LoadEvent>();
+		GenerationCheckpoint checkpoint = options.getCheckpoint();
+		if (checkpoint != null) {
+			checkArgument(checkpoint.getTime() <= options.getStartTime(), "Checkpoint at %s after start of time window %s",
+					checkpoint.getTime(), options.getStartTime());
+			checkArgument(checkpoint.getNumAssignments() == numAssignments,
+					"Checkpoint for %s load curve assignments, configuration has %s", checkpoint.getNumAssignments(),
+					numAssignments);
+		}
 
+		// derive for all assignments an event source, the sources compute their events in the pool
+		if (report != null) {
+			report.startPhase(Phase.EVENT_CREATION);
+		}
+		// a shared pool is left running for the other generations
+		ForkJoinPool ownPool = options.getPool() == null && parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+		ForkJoinPool pool = options.getPool() != null ? options.getPool() : ownPool;
+		List<AssignmentEventSource> sources = newArrayListWithCapacity(numAssignments);
 		for (int iAssignment = 0; iAssignment < numAssignments; iAssignment++) {
 			LoadCurveAssignment loadCurveAssignment = loadCurveAssignments.get(iAssignment);
-			allAssignmentsEventList.addAll(createEvents(loadCurveAssignment, shiftValues[iAssignment]));
+			if (checkpoint == null) {
+				sources.add(new AssignmentEventSource(iAssignment, loadCurveAssignment, shiftValues[iAssignment], pool,
+						trace, 0, null, options.getEndTime(), report, monitor));
+			} else {
+				sources.add(new AssignmentEventSource(iAssignment, loadCurveAssignment, shiftValues[iAssignment], pool,
+						trace, checkpoint.getNextEventIndex(iAssignment), checkpoint.getTargetCounts(iAssignment),
+						options.getEndTime(), report, monitor));
+			}
 		}
 
-		Collections.sort(allAssignmentsEventList, new LoadEventComparator());
-
 		// for numeric check
 		double totalWeightedNevent = 0.;
 		for (LoadCurveAssignment loadCurveAssignment : loadCurveAssignments) {
@@ -296,14 +763,13 @@ public class EventDistributor {
 			totalWeightedNevent += loadCurve.getNEvents() * loadCurveAssignment.getOperation().getRelativeClientLoad();
 		}
 
-		//		double relativeOperationClientLoads[] = new double[numAssignments];
-		//		for (int iAssignment = 0; iAssignment < numAssignments; iAssignment++) {
-		//			LoadCurveAssignment loadCurveAssignment = loadCurveAssignments.get(iAssignment);
-		//			relativeOperationClientLoads[iAssignment] = loadCurveAssignment.getOperation().getRelativeClientLoad();
-		//		}
-		List<LoadEvent> clientEventList = distributeEvents(allAssignmentsEventList, loadTestConfiguration, totalWeightedNevent);
-
-		return clientEventList;
+		ClientDistribution distribution = new ClientDistribution(loadTestConfiguration, totalWeightedNevent, trace,
+				report);
+		if (checkpoint != null) {
+			distribution.restore(checkpoint);
+		}
+		return new ClientEventGeneration(sources, distribution, ownPool, options.getStartTime(), options.getEndTime(),
+				report, monitor, options.getProgressListener());
 	}
 
 	/**
@@ -312,7 +778,7 @@ public class EventDistributor {
 	 * operation (i.e. UStVA) - name of the host on which this operation is triggered - port of the
 	 * host over which the operation is triggered - number of daemon executing this test
 	 * (=identifier of operation) - number of the process of the daemon (here always 1) The format
-	 * of the file is one load test event per line, arguments separated by the given eventSeparator.
+	 * of the file is one load test event per line, arguments separated by semicolons.
 	 * 
 	 * @param file
 	 *            The events file
@@ -320,53 +786,540 @@ public class EventDistributor {
 	 *            List of load test events
 	 */
 	public static void writeEventListForPerfLoadClientsToFile(final File file, final String headerLines,
-			final List<? extends BaseLoadProfileEvent> eventList)
+			final Iterable<? extends BaseLoadProfileEvent> eventList)
+			throws IOException {
+		writeEventListForPerfLoadClientsToFile(file, headerLines, eventList.iterator());
+	}
+
+	/**
+	 * Writes the load test events for perfLoad clients as they are delivered by the given
+	 * iterator. The events are written in one pass without being collected, so the iterator may
+	 * create them lazily (see {@link #createClientEventIterator(LoadTestConfiguration)}). The file
+	 * format is the one described in
+	 * {@link #writeEventListForPerfLoadClientsToFile(File, String, Iterable)}. The iterator is
+	 * closed afterwards, if it is {@link Closeable}, even if the events cannot be written.
+	 * 
+	 * @param file
+	 *            The events file
+	 * @param events
+	 *            Iterator over the load test events sorted by time
+	 */
+	public static void writeEventListForPerfLoadClientsToFile(final File file, final String headerLines,
+			final Iterator<? extends BaseLoadProfileEvent> events)
+			throws IOException {
+		writeEventListForPerfLoadClientsToFile(file, headerLines, events, null);
+	}
+
+	/**
+	 * Writes the load test events as they are delivered by the given iterator like
+	 * {@link #writeEventListForPerfLoadClientsToFile(File, String, Iterator)} and compresses the
+	 * file while it is written.
+	 * 
+	 * @param file
+	 *            The events file
+	 * @param events
+	 *            Iterator over the load test events sorted by time
+	 * @param compression
+	 *            the options of the compression or {@code null}, if the file is not to be
+	 *            compressed
+	 */
+	public static void writeEventListForPerfLoadClientsToFile(final File file, final String headerLines,
+			final Iterator<? extends BaseLoadProfileEvent> events, final CompressionOptions compression)
 			throws IOException {
-		PrintWriter pw = null;
 		try {
-			pw = new PrintWriter(file, "UTF-8");
-			pw.println(headerLines);
-
-			for (BaseLoadProfileEvent event : eventList) {
-				if (event instanceof LoadEvent) {
-					LoadEvent loadEvent = (LoadEvent) event;
-					// convert time from hours to milliseconds
-					long t = Math.round(loadEvent.getTime() * 60. * 60. * 1000.);
-					String operation = loadEvent.getOperation().getName();
-					String target = loadEvent.getTarget().getName();
-					int daemonId = loadEvent.getDaemonId();
-					int processId = loadEvent.getProcessId() + 1;
-					pw.println(t + eventSeparator +
-							operation + eventSeparator +
-							target + eventSeparator +
-							daemonId + eventSeparator +
-							processId);
-				} else if (event instanceof MarkerEvent) {
-					MarkerEvent marker = (MarkerEvent) event;
-					long t = Math.round(marker.getTime() * 60. * 60. * 1000.);
-					pw.println(t + eventSeparator +
-							"[[marker]]" + eventSeparator +
-							marker.getName() + eventSeparator +
-							marker.getType() + eventSeparator);
+			TextEventFileWriter writer = new TextEventFileWriter(file, headerLines, compression);
+			try {
+				while (events.hasNext()) {
+					writer.write(events.next());
 				}
+			} finally {
+				writer.close();
 			}
 		} finally {
-			IOUtils.closeQuietly(pw);
+			close(events);
 		}
 	}
 
-	// search for the maximum (currently the first found maximum is taken, a different
-	// distribution algorithm might be useful
-	private static int findHighestDeficit(final double deficitLoad[]) {
-		double deficitMax = deficitLoad[0];
-		int iMax = 0;
-		for (int i = 1; i < deficitLoad.length; i++) {
-			if (deficitLoad[i] > deficitMax) {
-				deficitMax = deficitLoad[i];
-				iMax = i;
+	/**
+	 * Writes the events of the given table together with additional events, e. g. one-time events
+	 * and markers, in the format described in
+	 * {@link #writeEventListForPerfLoadClientsToFile(File, String, Iterable)}. The events are
+	 * written in the order described in {@link #mergeWithAdditionalEvents(Iterator, Collection)}
+	 * without creating {@link LoadEvent} objects for the rows of the table.
+	 * 
+	 * @param file
+	 *            The events file
+	 * @param clientEvents
+	 *            the distributed client events sorted by time
+	 * @param additionalEvents
+	 *            the additional events in any order
+	 */
+	public static void writeEventTableForPerfLoadClientsToFile(final File file, final String headerLines,
+			final EventTable clientEvents, final Collection<? extends BaseLoadProfileEvent> additionalEvents)
+			throws IOException {
+		writeEventTableForPerfLoadClientsToFile(file, headerLines, clientEvents, additionalEvents, null);
+	}
+
+	/**
+	 * Writes the events of the given table together with additional events like
+	 * {@link #writeEventTableForPerfLoadClientsToFile(File, String, EventTable, Collection)} and
+	 * compresses the file while it is written.
+	 * 
+	 * @param file
+	 *            The events file
+	 * @param clientEvents
+	 *            the distributed client events sorted by time
+	 * @param additionalEvents
+	 *            the additional events in any order
+	 * @param compression
+	 *            the options of the compression or {@code null}, if the file is not to be
+	 *            compressed
+	 */
+	public static void writeEventTableForPerfLoadClientsToFile(final File file, final String headerLines,
+			final EventTable clientEvents, final Collection<? extends BaseLoadProfileEvent> additionalEvents,
+			final CompressionOptions compression) throws IOException {
+		final TextEventFileWriter writer = new TextEventFileWriter(file, headerLines, compression);
+		try {
+			mergeEventTable(clientEvents, additionalEvents, new EventSink() {
+				@Override
+				public void loadEvent(final double time, final Operation operation, final Target target, final int clientId,
+						final int daemonId, final int processId) throws IOException {
+					writer.writeLoadEvent(time, operation, target, daemonId, processId);
+				}
+
+				@Override
+				public void marker(final MarkerEvent marker) throws IOException {
+					writer.writeMarker(marker);
+				}
+			});
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Writes the events of the given table together with additional events like
+	 * {@link #writeEventTableForPerfLoadClientsToFile(File, String, EventTable, Collection)}, but
+	 * in the binary format of the {@link BinaryEventFileWriter}. The dictionaries of the file are
+	 * taken from the table and the additional events.
+	 * 
+	 * @param file
+	 *            The binary events file
+	 * @param clientEvents
+	 *            the distributed client events sorted by time
+	 * @param additionalEvents
+	 *            the additional events in any order
+	 */
+	public static void writeEventTableForPerfLoadClientsToBinaryFile(final File file, final String headerLines,
+			final EventTable clientEvents, final Collection<? extends BaseLoadProfileEvent> additionalEvents)
+			throws IOException {
+		final BinaryEventFileWriter writer = createBinaryEventFileWriter(file, headerLines, clientEvents.getOperations(),
+				clientEvents.getTargets(), additionalEvents);
+		try {
+			mergeEventTable(clientEvents, additionalEvents, new EventSink() {
+				@Override
+				public void loadEvent(final double time, final Operation operation, final Target target, final int clientId,
+						final int daemonId, final int processId) throws IOException {
+					writer.writeLoadEvent(time, operation, target, daemonId, processId);
+				}
+
+				@Override
+				public void marker(final MarkerEvent marker) throws IOException {
+					writer.writeMarker(marker);
+				}
+			});
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Writes the load test events as they are delivered by the given iterator like
+	 * {@link #writeEventListForPerfLoadClientsToFile(File, String, Iterator)}, but in the binary
+	 * format of the {@link BinaryEventFileWriter}. The dictionaries of the file are taken from the
+	 * load test configuration and the additional events, so the iterator must not contain other
+	 * operations, targets or markers.
+	 * 
+	 * @param file
+	 *            The binary events file
+	 * @param events
+	 *            Iterator over the load test events sorted by time, e. g. the client events merged
+	 *            with the additional events by {@link #mergeWithAdditionalEvents(Iterator, Collection)}
+	 * @param loadTestConfiguration
+	 *            the configuration the client events are created for
+	 * @param additionalEvents
+	 *            the additional events contained in the iterator
+	 */
+	public static void writeEventListForPerfLoadClientsToBinaryFile(final File file, final String headerLines,
+			final Iterator<? extends BaseLoadProfileEvent> events, final LoadTestConfiguration loadTestConfiguration,
+			final Collection<? extends BaseLoadProfileEvent> additionalEvents) throws IOException {
+		try {
+			EventTable dictionaries = EventTable.forConfiguration(loadTestConfiguration);
+			BinaryEventFileWriter writer = createBinaryEventFileWriter(file, headerLines, dictionaries.getOperations(),
+					dictionaries.getTargets(), additionalEvents);
+			try {
+				while (events.hasNext()) {
+					writer.write(events.next());
+				}
+			} finally {
+				writer.close();
 			}
+		} finally {
+			close(events);
+		}
+	}
+
+	/**
+	 * Writes the events of the given table together with additional events in the order of
+	 * {@link #writeEventTableForPerfLoadClientsToFile(File, String, EventTable, Collection)}, but
+	 * into one file per client or daemon using a {@link ShardedEventFileWriter} with
+	 * {@link #DEFAULT_PARALLELISM} writer threads.
+	 * 
+	 * @param directory
+	 *            the directory of the shard files
+	 * @param baseName
+	 *            the base name of the shard files and the manifest
+	 * @param clientEvents
+	 *            the distributed client events sorted by time
+	 * @param additionalEvents
+	 *            the additional events in any order
+	 * @param loadTestConfiguration
+	 *            the configuration defining the clients
+	 * @param shardKey
+	 *            the key of the shards
+	 * @return the manifest file listing the shards
+	 */
+	public static File writeEventTableForPerfLoadClientsToShards(final File directory, final String baseName,
+			final String headerLines, final EventTable clientEvents,
+			final Collection<? extends BaseLoadProfileEvent> additionalEvents,
+			final LoadTestConfiguration loadTestConfiguration, final ShardKey shardKey) throws IOException {
+		return writeEventTableForPerfLoadClientsToShards(directory, baseName, headerLines, clientEvents, additionalEvents,
+				loadTestConfiguration, shardKey, null);
+	}
+
+	/**
+	 * Writes the events of the given table together with additional events into one file per
+	 * client or daemon like
+	 * {@link #writeEventTableForPerfLoadClientsToShards(File, String, String, EventTable, Collection, LoadTestConfiguration, ShardKey)}
+	 * and compresses each shard file while it is written.
+	 * 
+	 * @param compression
+	 *            the options of the compression or {@code null}, if the files are not to be
+	 *            compressed
+	 * @return the manifest file listing the shards
+	 */
+	public static File writeEventTableForPerfLoadClientsToShards(final File directory, final String baseName,
+			final String headerLines, final EventTable clientEvents,
+			final Collection<? extends BaseLoadProfileEvent> additionalEvents,
+			final LoadTestConfiguration loadTestConfiguration, final ShardKey shardKey,
+			final CompressionOptions compression) throws IOException {
+		final ShardedEventFileWriter writer = new ShardedEventFileWriter(directory, baseName, headerLines,
+				loadTestConfiguration, shardKey, DEFAULT_PARALLELISM, compression);
+		try {
+			mergeEventTable(clientEvents, additionalEvents, new EventSink() {
+				@Override
+				public void loadEvent(final double time, final Operation operation, final Target target, final int clientId,
+						final int daemonId, final int processId) throws IOException {
+					writer.writeLoadEvent(time, operation, target, clientId, daemonId, processId);
+				}
+
+				@Override
+				public void marker(final MarkerEvent marker) throws IOException {
+					writer.writeMarker(marker);
+				}
+			});
+		} finally {
+			writer.close();
+		}
+		return writer.getManifestFile();
+	}
+
+	/**
+	 * Writes the load test events as they are delivered by the given iterator into one file per
+	 * client or daemon like
+	 * {@link #writeEventTableForPerfLoadClientsToShards(File, String, String, EventTable, Collection, LoadTestConfiguration, ShardKey)}.
+	 * 
+	 * @param directory
+	 *            the directory of the shard files
+	 * @param baseName
+	 *            the base name of the shard files and the manifest
+	 * @param events
+	 *            Iterator over the load test events sorted by time
+	 * @param loadTestConfiguration
+	 *            the configuration defining the clients
+	 * @param shardKey
+	 *            the key of the shards
+	 * @return the manifest file listing the shards
+	 */
+	public static File writeEventListForPerfLoadClientsToShards(final File directory, final String baseName,
+			final String headerLines, final Iterator<? extends BaseLoadProfileEvent> events,
+			final LoadTestConfiguration loadTestConfiguration, final ShardKey shardKey) throws IOException {
+		return writeEventListForPerfLoadClientsToShards(directory, baseName, headerLines, events, loadTestConfiguration,
+				shardKey, null);
+	}
+
+	/**
+	 * Writes the load test events as they are delivered by the given iterator into one file per
+	 * client or daemon like
+	 * {@link #writeEventListForPerfLoadClientsToShards(File, String, String, Iterator, LoadTestConfiguration, ShardKey)}
+	 * and compresses each shard file while it is written.
+	 * 
+	 * @param compression
+	 *            the options of the compression or {@code null}, if the files are not to be
+	 *            compressed
+	 * @return the manifest file listing the shards
+	 */
+	public static File writeEventListForPerfLoadClientsToShards(final File directory, final String baseName,
+			final String headerLines, final Iterator<? extends BaseLoadProfileEvent> events,
+			final LoadTestConfiguration loadTestConfiguration, final ShardKey shardKey,
+			final CompressionOptions compression) throws IOException {
+		try {
+			ShardedEventFileWriter writer = new ShardedEventFileWriter(directory, baseName, headerLines,
+					loadTestConfiguration, shardKey, DEFAULT_PARALLELISM, compression);
+			try {
+				while (events.hasNext()) {
+					writer.write(events.next());
+				}
+			} finally {
+				writer.close();
+			}
+			return writer.getManifestFile();
+		} finally {
+			close(events);
+		}
+	}
+
+	private static BinaryEventFileWriter createBinaryEventFileWriter(final File file, final String headerLines,
+			final Collection<Operation> operations, final Collection<Target> targets,
+			final Collection<? extends BaseLoadProfileEvent> additionalEvents) throws IOException {
+		List<Operation> allOperations = newArrayList(operations);
+		List<Target> allTargets = newArrayList(targets);
+		List<MarkerEvent> markers = newArrayList();
+		for (BaseLoadProfileEvent event : additionalEvents) {
+			if (event instanceof LoadEvent) {
+				allOperations.add(((LoadEvent) event).getOperation());
+				allTargets.add(((LoadEvent) event).getTarget());
+			} else if (event instanceof MarkerEvent) {
+				markers.add((MarkerEvent) event);
+			}
+		}
+		return new BinaryEventFileWriter(file, headerLines, allOperations, allTargets, markers);
+	}
+
+	/**
+	 * Receives the events merged by {@link EventDistributor#mergeEventTable(EventTable, Collection, EventSink)}.
+	 */
+	private interface EventSink {
+		void loadEvent(double time, Operation operation, Target target, int clientId, int daemonId, int processId)
+				throws IOException;
+
+		void marker(MarkerEvent marker) throws IOException;
+	}
+
+	/**
+	 * Passes the events of the given table together with additional events to the sink in the
+	 * order described in {@link #mergeWithAdditionalEvents(Iterator, Collection)} without creating
+	 * {@link LoadEvent} objects for the rows of the table.
+	 */
+	private static void mergeEventTable(final EventTable clientEvents,
+			final Collection<? extends BaseLoadProfileEvent> additionalEvents, final EventSink sink) throws IOException {
+		List<LoadEvent> additionalLoadEvents = newArrayList();
+		List<MarkerEvent> markers = newArrayList();
+		splitAndSortAdditionalEvents(additionalEvents, additionalLoadEvents, markers);
+		EventTable additionalTable = EventTable.of(additionalLoadEvents);
+
+		EventTable[] tables = { clientEvents, additionalTable };
+		int[] rows = new int[tables.length];
+
+		// table and row of the events with equal time
+		int[] groupTables = new int[16];
+		int[] groupRows = new int[16];
+
+		int iMarker = 0;
+		while (true) {
+			double time = Double.POSITIVE_INFINITY;
+			for (int iTable = 0; iTable < tables.length; iTable++) {
+				if (rows[iTable] < tables[iTable].size()) {
+					time = Math.min(time, tables[iTable].getTime(rows[iTable]));
+				}
+			}
+			if (iMarker < markers.size()) {
+				time = Math.min(time, markers.get(iMarker).getTime());
+			}
+			if (time == Double.POSITIVE_INFINITY) {
+				break;
+			}
+
+			int groupSize = 0;
+			for (int iTable = 0; iTable < tables.length; iTable++) {
+				EventTable table = tables[iTable];
+				while (rows[iTable] < table.size() && table.getTime(rows[iTable]) == time) {
+					if (groupSize == groupTables.length) {
+						groupTables = Arrays.copyOf(groupTables, groupSize * 2);
+						groupRows = Arrays.copyOf(groupRows, groupSize * 2);
+					}
+					groupTables[groupSize] = iTable;
+					groupRows[groupSize] = rows[iTable]++;
+					groupSize++;
+				}
+			}
+
+			// stable insertion sort, groups usually consist of a single event
+			for (int i = 1; i < groupSize; i++) {
+				int iTable = groupTables[i];
+				int row = groupRows[i];
+				int j = i - 1;
+				while (j >= 0 && compareRows(tables[groupTables[j]], groupRows[j], tables[iTable], row) > 0) {
+					groupTables[j + 1] = groupTables[j];
+					groupRows[j + 1] = groupRows[j];
+					j--;
+				}
+				groupTables[j + 1] = iTable;
+				groupRows[j + 1] = row;
+			}
+
+			for (int i = 0; i < groupSize; i++) {
+				EventTable table = tables[groupTables[i]];
+				int row = groupRows[i];
+				sink.loadEvent(time, table.getOperation(row), table.getTarget(row), table.getClientId(row),
+						table.getDaemonId(row), table.getProcessId(row));
+			}
+			while (iMarker < markers.size() && markers.get(iMarker).getTime() == time) {
+				sink.marker(markers.get(iMarker++));
+			}
+		}
+	}
+
+	/**
+	 * Compares two events with equal time the same way as the {@link LoadEventComparator}.
+	 */
+	private static int compareRows(final EventTable table1, final int row1, final EventTable table2, final int row2) {
+		int result = table1.getClientId(row1) - table2.getClientId(row2);
+		if (result == 0) {
+			result = table1.getDaemonId(row1) - table2.getDaemonId(row2);
+			if (result == 0) {
+				result = table1.getProcessId(row1) - table2.getProcessId(row2);
+				if (result == 0) {
+					result = table1.getOperation(row1).getName().compareTo(table2.getOperation(row2).getName());
+					if (result == 0) {
+						result = table1.getTarget(row1).getName().compareTo(table2.getTarget(row2).getName());
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Splits the given events into load events and markers, each sorted by time only in order to
+	 * keep the given order of events with equal time.
+	 */
+	private static void splitAndSortAdditionalEvents(final Collection<? extends BaseLoadProfileEvent> additionalEvents,
+			final List<LoadEvent> additionalLoadEvents, final List<MarkerEvent> markers) {
+		for (BaseLoadProfileEvent event : additionalEvents) {
+			if (event instanceof LoadEvent) {
+				additionalLoadEvents.add((LoadEvent) event);
+			} else if (event instanceof MarkerEvent) {
+				markers.add((MarkerEvent) event);
+			}
+		}
+		Comparator<BaseLoadProfileEvent> timeComparator = new Comparator<BaseLoadProfileEvent>() {
+			@Override
+			public int compare(final BaseLoadProfileEvent ev1, final BaseLoadProfileEvent ev2) {
+				return Double.compare(ev1.getTime(), ev2.getTime());
+			}
+		};
+		Collections.sort(additionalLoadEvents, timeComparator);
+		Collections.sort(markers, timeComparator);
+	}
+
+	/**
+	 * Merges the distributed client events with additional events, e. g. one-time events and
+	 * markers, which are not created from load curves. The result has the order, which sorting all
+	 * events with the {@link LoadEventComparator} would yield: the events are sorted by time, load
+	 * events with equal time are sorted by the comparator and markers are put after the load events
+	 * with the same time. Only the events of one point in time are buffered, so the client events
+	 * may be created lazily. The resulting iterator is {@link Closeable} and closes the iterator of
+	 * the client events, if it is closeable.
+	 * 
+	 * @param clientEvents
+	 *            the distributed client events sorted by time
+	 * @param additionalEvents
+	 *            the additional events in any order
+	 * @return an iterator over all events sorted by time
+	 */
+	public static Iterator<BaseLoadProfileEvent> mergeWithAdditionalEvents(final Iterator<LoadEvent> clientEvents,
+			final Collection<? extends BaseLoadProfileEvent> additionalEvents) {
+		final LoadEventComparator comparator = new LoadEventComparator();
+
+		final List<LoadEvent> additionalLoadEvents = newArrayList();
+		final List<MarkerEvent> markers = newArrayList();
+		splitAndSortAdditionalEvents(additionalEvents, additionalLoadEvents, markers);
+
+		final PeekingIterator<LoadEvent> clientIt = Iterators.peekingIterator(clientEvents);
+		final PeekingIterator<LoadEvent> additionalIt = Iterators.peekingIterator(additionalLoadEvents.iterator());
+		final PeekingIterator<MarkerEvent> markerIt = Iterators.peekingIterator(markers.iterator());
+
+		return new ClosingIterator<BaseLoadProfileEvent>(clientEvents) {
+			private final List<LoadEvent> loadEventsAtTime = newArrayList();
+			private final List<BaseLoadProfileEvent> pending = newArrayList();
+			private Iterator<BaseLoadProfileEvent> pendingIt = pending.iterator();
+
+			@Override
+			protected BaseLoadProfileEvent computeNext() {
+				if (!pendingIt.hasNext()) {
+					if (!clientIt.hasNext() && !additionalIt.hasNext() && !markerIt.hasNext()) {
+						return endOfData();
+					}
+
+					double time = Double.POSITIVE_INFINITY;
+					if (clientIt.hasNext()) {
+						time = Math.min(time, clientIt.peek().getTime());
+					}
+					if (additionalIt.hasNext()) {
+						time = Math.min(time, additionalIt.peek().getTime());
+					}
+					if (markerIt.hasNext()) {
+						time = Math.min(time, markerIt.peek().getTime());
+					}
+
+					// collect all events with this time in the order a stable sort would keep them
+					loadEventsAtTime.clear();
+					while (clientIt.hasNext() && clientIt.peek().getTime() == time) {
+						loadEventsAtTime.add(clientIt.next());
+					}
+					while (additionalIt.hasNext() && additionalIt.peek().getTime() == time) {
+						loadEventsAtTime.add(additionalIt.next());
+					}
+					if (loadEventsAtTime.size() > 1) {
+						Collections.sort(loadEventsAtTime, comparator);
+					}
+					pending.clear();
+					pending.addAll(loadEventsAtTime);
+					while (markerIt.hasNext() && markerIt.peek().getTime() == time) {
+						pending.add(markerIt.next());
+					}
+					pendingIt = pending.iterator();
+				}
+				return pendingIt.next();
+			}
+		};
+	}
+
+	/**
+	 * An iterator created from another iterator, which closes the other one, when it is closed.
+	 */
+	private abstract static class ClosingIterator<T> extends AbstractIterator<T> implements Closeable {
+		private final Iterator<?> source;
+
+		ClosingIterator(final Iterator<?> source) {
+			this.source = source;
+		}
+
+		@Override
+		public void close() {
+			EventDistributor.close(source);
 		}
-		return iMax;
 	}
 
 	/**
@@ -387,9 +1340,11 @@ public class EventDistributor {
 						+ " is null");
 			}
 			int nPoint = timeValues.length;
-                        log.info("Verifying assignement "+assignment.getLoadCurveName()+":"+assignment.getOperationName()+" with "+nPoint+" points");
+			if (log.isDebugEnabled()) {
+				log.debug("Verifying assignment {}:{} with {} points", assignment.getLoadCurveName(),
+						assignment.getOperationName(), nPoint);
+			}
 			for (int iPoint = 1; iPoint < nPoint; iPoint++) {
-                            log.info("Time Value["+iPoint+"] = "+timeValues[iPoint]);
 				if (timeValues[iPoint] < timeValues[iPoint - 1]) {
 					throw new java.lang.IllegalArgumentException("In loadCurve of assignment " + assignment +
 							"], timeValues[" + Integer.toString(iPoint - 1) + "] >= timeValues[" + iPoint +
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.generation;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Merges the events of several {@link AssignmentEventSource}s into one stream sorted by time
+ * using a k-way merge over a priority queue. Since the events of each source are already sorted
+ * by time, only the current event of each source has to be kept, i. e. the working memory is
+ * proportional to the number of sources and not to the number of events.
+ * <p>
+ * The resulting order is the same as the one obtained by concatenating the event lists of all
+ * sources and sorting them with the {@link com.mgmtp.perfload.loadprofiles.model.LoadEventComparator}
+ * : events with equal time are ordered by operation name, then by target name, then by the
+ * position of their assignment.
+ */
+public class EventMerger {
+
+	private static final Comparator<AssignmentEventSource> HEAD_COMPARATOR = new Comparator<AssignmentEventSource>() {
+		@Override
+		public int compare(final AssignmentEventSource s1, final AssignmentEventSource s2) {
+			int result = Double.compare(s1.getTime(), s2.getTime());
+			if (result == 0) {
+				result = s1.getOperation().getName().compareTo(s2.getOperation().getName());
+				if (result == 0) {
+					result = s1.getTarget().getName().compareTo(s2.getTarget().getName());
+					if (result == 0) {
+						result = s1.getAssignmentIndex() - s2.getAssignmentIndex();
+					}
+				}
+			}
+			return result;
+		}
+	};
+
+	private final PriorityQueue<AssignmentEventSource> queue;
+	private AssignmentEventSource current;
+
+	/**
+	 * @param sources
+	 *            the sources to be merged; the sources must not have been advanced yet
+	 */
+	public EventMerger(final List<AssignmentEventSource> sources) {
+		queue = new PriorityQueue<AssignmentEventSource>(Math.max(1, sources.size()), HEAD_COMPARATOR);
+		for (AssignmentEventSource source : sources) {
+			if (source.next()) {
+				queue.add(source);
+			}
+		}
+	}
+
+	/**
+	 * Advances to the next event in time.
+	 *
+	 * @return {@code true}, if there is a next event, {@code false}, if all sources are exhausted
+	 */
+	public boolean next() {
+		if (current != null && current.next()) {
+			queue.add(current);
+		}
+		current = queue.poll();
+		return current != null;
+	}
+
+	/**
+	 * @return the source whose current event is the current event of the merged stream
+	 */
+	public AssignmentEventSource current() {
+		return current;
+	}
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.generation;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The state of the event generation at a point in time: all events starting before this time have
+ * been distributed, none of the others. The state consists of the index of the next event of
+ * each load curve assignment, the number of events assigned to each target of the assignment and
+ * the cumulated loads of the clients and their processes, from which the greedy distribution
+ * continues. Continuing the generation from a checkpoint yields exactly the same events as a
+ * single run from the start.
+ * <p>
+ * Checkpoints are created with
+ * {@link EventDistributor#createCheckpoints(com.mgmtp.perfload.loadprofiles.model.LoadTestConfiguration, GenerationOptions, double[])}
+ * and used with {@link GenerationOptions#setCheckpoint(GenerationCheckpoint)}. A checkpoint may be
+ * passed to another process with {@link #writeTo(DataOutput)} and {@link #readFrom(DataInput)},
+ * which keep all values exactly.
+ */
+public final class GenerationCheckpoint {
+	private final double time;
+	private final long numEvents;
+	private final int[] nextEventIndices;
+	private final int[][] targetCounts;
+	private final double totalClientLoad;
+	private final double[] clientLoads;
+	private final double[][] processLoads;
+
+	/**
+	 * @param time
+	 *            the time of the checkpoint in hours
+	 * @param numEvents
+	 *            the number of events distributed before the time
+	 * @param nextEventIndices
+	 *            the index of the next event of each load curve assignment
+	 * @param targetCounts
+	 *            the number of events of each load curve assignment assigned to each of its
+	 *            targets
+	 * @param totalClientLoad
+	 *            the sum of the relative client loads of the distributed events
+	 * @param clientLoads
+	 *            the cumulated load of each client
+	 * @param processLoads
+	 *            the cumulated load of each process of each client
+	 */
+	public GenerationCheckpoint(final double time, final long numEvents, final int[] nextEventIndices,
+			final int[][] targetCounts, final double totalClientLoad, final double[] clientLoads,
+			final double[][] processLoads) {
+		this.time = time;
+		this.numEvents = numEvents;
+		this.nextEventIndices = nextEventIndices.clone();
+		this.targetCounts = deepClone(targetCounts);
+		this.totalClientLoad = totalClientLoad;
+		this.clientLoads = clientLoads.clone();
+		this.processLoads = deepClone(processLoads);
+	}
+
+	/**
+	 * Writes the checkpoint in a compact binary form, which can be read with
+	 * {@link #readFrom(DataInput)}.
+	 */
+	public void writeTo(final DataOutput out) throws IOException {
+		out.writeDouble(time);
+		out.writeLong(numEvents);
+		out.writeInt(nextEventIndices.length);
+		for (int iAssignment = 0; iAssignment < nextEventIndices.length; iAssignment++) {
+			out.writeInt(nextEventIndices[iAssignment]);
+			out.writeInt(targetCounts[iAssignment].length);
+			for (int count : targetCounts[iAssignment]) {
+				out.writeInt(count);
+			}
+		}
+		out.writeDouble(totalClientLoad);
+		out.writeInt(clientLoads.length);
+		for (int iClient = 0; iClient < clientLoads.length; iClient++) {
+			out.writeDouble(clientLoads[iClient]);
+			out.writeInt(processLoads[iClient].length);
+			for (double load : processLoads[iClient]) {
+				out.writeDouble(load);
+			}
+		}
+	}
+
+	/**
+	 * Reads a checkpoint written with {@link #writeTo(DataOutput)}.
+	 */
+	public static GenerationCheckpoint readFrom(final DataInput in) throws IOException {
+		double time = in.readDouble();
+		long numEvents = in.readLong();
+		int numAssignments = in.readInt();
+		int[] nextEventIndices = new int[numAssignments];
+		int[][] targetCounts = new int[numAssignments][];
+		for (int iAssignment = 0; iAssignment < numAssignments; iAssignment++) {
+			nextEventIndices[iAssignment] = in.readInt();
+			targetCounts[iAssignment] = new int[in.readInt()];
+			for (int iTarget = 0; iTarget < targetCounts[iAssignment].length; iTarget++) {
+				targetCounts[iAssignment][iTarget] = in.readInt();
+			}
+		}
+		double totalClientLoad = in.readDouble();
+		int numClients = in.readInt();
+		double[] clientLoads = new double[numClients];
+		double[][] processLoads = new double[numClients][];
+		for (int iClient = 0; iClient < numClients; iClient++) {
+			clientLoads[iClient] = in.readDouble();
+			processLoads[iClient] = new double[in.readInt()];
+			for (int iProcess = 0; iProcess < processLoads[iClient].length; iProcess++) {
+				processLoads[iClient][iProcess] = in.readDouble();
+			}
+		}
+		return new GenerationCheckpoint(time, numEvents, nextEventIndices, targetCounts, totalClientLoad, clientLoads,
+				processLoads);
+	}
+
+	private static int[][] deepClone(final int[][] values) {
+		int[][] result = new int[values.length][];
+		for (int i = 0; i < values.length; i++) {
+			result[i] = values[i].clone();
+		}
+		return result;
+	}
+
+	private static double[][] deepClone(final double[][] values) {
+		double[][] result = new double[values.length][];
+		for (int i = 0; i < values.length; i++) {
+			result[i] = values[i].clone();
+		}
+		return result;
+	}
+
+	/**
+	 * @return the time of the checkpoint in hours
+	 */
+	public double getTime() {
+		return time;
+	}
+
+	/**
+	 * @return the number of events distributed before the time of the checkpoint
+	 */
+	public long getNumEvents() {
+		return numEvents;
+	}
+
+	/**
+	 * @return the number of load curve assignments
+	 */
+	public int getNumAssignments() {
+		return nextEventIndices.length;
+	}
+
+	/**
+	 * @return the index of the next event of the given load curve assignment
+	 */
+	public int getNextEventIndex(final int assignmentIndex) {
+		return nextEventIndices[assignmentIndex];
+	}
+
+	/**
+	 * @return the number of events of the given load curve assignment assigned to each of its
+	 *         targets
+	 */
+	public int[] getTargetCounts(final int assignmentIndex) {
+		return targetCounts[assignmentIndex].clone();
+	}
+
+	/**
+	 * @return the sum of the relative client loads of the distributed events
+	 */
+	public double getTotalClientLoad() {
+		return totalClientLoad;
+	}
+
+	/**
+	 * @return the number of clients
+	 */
+	public int getNumClients() {
+		return clientLoads.length;
+	}
+
+	/**
+	 * @return the cumulated load of each client
+	 */
+	public double[] getClientLoads() {
+		return clientLoads.clone();
+	}
+
+	/**
+	 * @return the cumulated load of each process of the given client
+	 */
+	public double[] getProcessLoads(final int clientIndex) {
+		return processLoads[clientIndex].clone();
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + Arrays.hashCode(nextEventIndices);
+		result = prime * result + Arrays.deepHashCode(targetCounts);
+		result = prime * result + Arrays.hashCode(clientLoads);
+		result = prime * result + Arrays.deepHashCode(processLoads);
+		result = prime * result + (int) (numEvents ^ numEvents >>> 32);
+		return result;
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null || getClass() != obj.getClass()) {
+			return false;
+		}
+		GenerationCheckpoint other = (GenerationCheckpoint) obj;
+		return Double.doubleToLongBits(time) == Double.doubleToLongBits(other.time) && numEvents == other.numEvents
+				&& Arrays.equals(nextEventIndices, other.nextEventIndices)
+				&& Arrays.deepEquals(targetCounts, other.targetCounts)
+				&& Double.doubleToLongBits(totalClientLoad) == Double.doubleToLongBits(other.totalClientLoad)
+				&& Arrays.equals(clientLoads, other.clientLoads) && Arrays.deepEquals(processLoads, other.processLoads);
+	}
+
+	@Override
+	public String toString() {
+		return "GenerationCheckpoint[time=" + time + ", numEvents=" + numEvents + ", nextEventIndices="
+				+ Arrays.toString(nextEventIndices) + "]";
+	}
+}
@@ -0,0 +1,409 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.generation;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mgmtp.perfload.loadprofiles.model.BaseLoadProfileEvent;
+import com.mgmtp.perfload.loadprofiles.model.Client;
+import com.mgmtp.perfload.loadprofiles.model.LoadCurve;
+import com.mgmtp.perfload.loadprofiles.model.LoadCurveAssignment;
+import com.mgmtp.perfload.loadprofiles.model.LoadEvent;
+import com.mgmtp.perfload.loadprofiles.model.LoadTestConfiguration;
+import com.mgmtp.perfload.loadprofiles.model.MarkerEvent;
+import com.mgmtp.perfload.loadprofiles.model.Operation;
+import com.mgmtp.perfload.loadprofiles.model.Target;
+
+/**
+ * The generation of the events of one time block, which may run in another process. A job
+ * contains everything needed to create its part of the events file: the load test configuration,
+ * the additional events of the block, the time window and the {@link GenerationCheckpoint} at the
+ * start of the block. The events are written in the text format of
+ * {@link EventDistributor#writeEventListForPerfLoadClientsToFile(File, String, Iterator)}, but
+ * without header lines, so that the files of consecutive blocks can simply be concatenated.
+ * <p>
+ * Jobs are written to files with {@link #writeTo(DataOutput)} and run by {@link #main(String[])}
+ * with the job files as arguments.
+ */
+public class GenerationJob {
+	private static final Logger log = LoggerFactory.getLogger(GenerationJob.class);
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final LoadTestConfiguration loadTestConfiguration;
+	private final List<BaseLoadProfileEvent> additionalEvents;
+	private final GenerationCheckpoint checkpoint;
+	private final double startTime;
+	private final double endTime;
+	private final int parallelism;
+	private final File outputFile;
+
+	/**
+	 * @param loadTestConfiguration
+	 *            configuration data of the load test
+	 * @param additionalEvents
+	 *            the additional events within the block
+	 * @param checkpoint
+	 *            the checkpoint at or before the start of the block, {@code null} for the first
+	 *            block
+	 * @param startTime
+	 *            the start of the block in hours
+	 * @param endTime
+	 *            the end of the block in hours, exclusive
+	 * @param parallelism
+	 *            the number of threads used to create the events of the load curve assignments
+	 * @param outputFile
+	 *            the file the events of the block are written to
+	 */
+	public GenerationJob(final LoadTestConfiguration loadTestConfiguration,
+			final Collection<? extends BaseLoadProfileEvent> additionalEvents, final GenerationCheckpoint checkpoint,
+			final double startTime, final double endTime, final int parallelism, final File outputFile) {
+		this.loadTestConfiguration = loadTestConfiguration;
+		this.additionalEvents = newArrayList(additionalEvents);
+		this.checkpoint = checkpoint;
+		this.startTime = startTime;
+		this.endTime = endTime;
+		this.parallelism = parallelism;
+		this.outputFile = outputFile;
+	}
+
+	/**
+	 * @return the file the events of the block are written to
+	 */
+	public File getOutputFile() {
+		return outputFile;
+	}
+
+	/**
+	 * Creates the events of the block merged with the additional events and writes them to the
+	 * output file.
+	 *
+	 * @return the number of events written
+	 */
+	public long run() throws IOException {
+		GenerationOptions options = new GenerationOptions();
+		options.setParallelism(parallelism);
+		options.setTimeWindow(startTime, endTime);
+		options.setCheckpoint(checkpoint);
+		Iterator<BaseLoadProfileEvent> events = EventDistributor.mergeWithAdditionalEvents(
+				EventDistributor.createClientEventIterator(loadTestConfiguration, options), additionalEvents);
+
+		long numEvents = 0L;
+		try {
+			TextEventFileWriter writer = new TextEventFileWriter(outputFile, null, BUFFER_SIZE, null, false);
+			try {
+				while (events.hasNext()) {
+					writer.write(events.next());
+					numEvents++;
+				}
+			} finally {
+				writer.close();
+			}
+		} finally {
+			EventDistributor.close(events);
+		}
+		return numEvents;
+	}
+
+	/**
+	 * Writes the job in a compact binary form, which can be read with {@link #readFrom(DataInput)}.
+	 */
+	public void writeTo(final DataOutput out) throws IOException {
+		writeConfiguration(out, loadTestConfiguration);
+		out.writeInt(additionalEvents.size());
+		for (BaseLoadProfileEvent event : additionalEvents) {
+			if (event instanceof LoadEvent) {
+				LoadEvent loadEvent = (LoadEvent) event;
+				out.writeBoolean(true);
+				out.writeDouble(loadEvent.getTime());
+				writeOperation(out, loadEvent.getOperation());
+				writeTarget(out, loadEvent.getTarget());
+				out.writeInt(loadEvent.getClientId());
+				out.writeInt(loadEvent.getDaemonId());
+				out.writeInt(loadEvent.getProcessId());
+			} else {
+				MarkerEvent marker = (MarkerEvent) event;
+				out.writeBoolean(false);
+				out.writeDouble(marker.getTime());
+				writeString(out, marker.getName());
+				writeString(out, marker.getType() != null ? marker.getType().name() : null);
+			}
+		}
+		out.writeBoolean(checkpoint != null);
+		if (checkpoint != null) {
+			checkpoint.writeTo(out);
+		}
+		out.writeDouble(startTime);
+		out.writeDouble(endTime);
+		out.writeInt(parallelism);
+		out.writeUTF(outputFile.getPath());
+	}
+
+	/**
+	 * Reads a job written with {@link #writeTo(DataOutput)}.
+	 */
+	public static GenerationJob readFrom(final DataInput in) throws IOException {
+		LoadTestConfiguration loadTestConfiguration = readConfiguration(in);
+		int numAdditionalEvents = in.readInt();
+		List<BaseLoadProfileEvent> additionalEvents = newArrayList();
+		for (int iEvent = 0; iEvent < numAdditionalEvents; iEvent++) {
+			if (in.readBoolean()) {
+				double time = in.readDouble();
+				LoadEvent loadEvent = new LoadEvent(time, readOperation(in));
+				loadEvent.setTarget(readTarget(in));
+				loadEvent.setClientId(in.readInt());
+				loadEvent.setDaemonId(in.readInt());
+				loadEvent.setProcessId(in.readInt());
+				additionalEvents.add(loadEvent);
+			} else {
+				double time = in.readDouble();
+				String name = readString(in);
+				String type = readString(in);
+				additionalEvents.add(new MarkerEvent(name, time, type != null ? MarkerEvent.Type.valueOf(type) : null));
+			}
+		}
+		GenerationCheckpoint checkpoint = in.readBoolean() ? GenerationCheckpoint.readFrom(in) : null;
+		double startTime = in.readDouble();
+		double endTime = in.readDouble();
+		int parallelism = in.readInt();
+		File outputFile = new File(in.readUTF());
+		return new GenerationJob(loadTestConfiguration, additionalEvents, checkpoint, startTime, endTime, parallelism,
+				outputFile);
+	}
+
+	/**
+	 * Writes the job to the given file.
+	 */
+	public void writeTo(final File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+		try {
+			writeTo(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads a job from the given file.
+	 */
+	public static GenerationJob readFrom(final File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+		try {
+			return readFrom(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void writeConfiguration(final DataOutput out, final LoadTestConfiguration loadTestConfiguration)
+			throws IOException {
+		writeString(out, loadTestConfiguration.getName());
+		writeString(out, loadTestConfiguration.getDescription());
+		List<Client> clients = loadTestConfiguration.getClients();
+		out.writeInt(clients.size());
+		for (Client client : clients) {
+			writeString(out, client.getName());
+			out.writeInt(client.getDaemonId());
+			out.writeInt(client.getNumProcesses());
+			out.writeDouble(client.getRelativePower());
+		}
+		List<Operation> operations = loadTestConfiguration.getOperations();
+		out.writeInt(operations.size());
+		for (Operation operation : operations) {
+			writeOperation(out, operation);
+		}
+		List<LoadCurveAssignment> loadCurveAssignments = loadTestConfiguration.getLoadCurveAssignments();
+		out.writeInt(loadCurveAssignments.size());
+		for (LoadCurveAssignment assignment : loadCurveAssignments) {
+			writeString(out, assignment.getLoadCurveName());
+			out.writeDouble(assignment.getLoadCurveScaling());
+			writeString(out, assignment.getOperationName());
+			// operations of the configuration are referenced by index in order to share them
+			int operationIndex = operations.indexOf(assignment.getOperation());
+			out.writeInt(operationIndex);
+			if (operationIndex < 0) {
+				writeOperation(out, assignment.getOperation());
+			}
+			out.writeInt(assignment.getTargets().size());
+			for (Target target : assignment.getTargets()) {
+				writeTarget(out, target);
+			}
+			writeLoadCurve(out, assignment.getLoadCurve());
+		}
+	}
+
+	private static LoadTestConfiguration readConfiguration(final DataInput in) throws IOException {
+		LoadTestConfiguration loadTestConfiguration = new LoadTestConfiguration();
+		loadTestConfiguration.setName(readString(in));
+		loadTestConfiguration.setDescription(readString(in));
+		int numClients = in.readInt();
+		for (int iClient = 0; iClient < numClients; iClient++) {
+			Client client = new Client();
+			client.setName(readString(in));
+			client.setDaemonId(in.readInt());
+			client.setNumProcesses(in.readInt());
+			client.setRelativePower(in.readDouble());
+			loadTestConfiguration.getClients().add(client);
+		}
+		int numOperations = in.readInt();
+		for (int iOperation = 0; iOperation < numOperations; iOperation++) {
+			loadTestConfiguration.getOperations().add(readOperation(in));
+		}
+		// targets with equal names are shared like in the original configuration
+		Map<String, Target> targets = newHashMap();
+		int numAssignments = in.readInt();
+		for (int iAssignment = 0; iAssignment < numAssignments; iAssignment++) {
+			LoadCurveAssignment assignment = new LoadCurveAssignment();
+			assignment.setLoadCurveName(readString(in));
+			assignment.setLoadCurveScaling(in.readDouble());
+			assignment.setOperationName(readString(in));
+			int operationIndex = in.readInt();
+			assignment.setOperation(operationIndex >= 0 ? loadTestConfiguration.getOperations().get(operationIndex)
+					: readOperation(in));
+			int numTargets = in.readInt();
+			for (int iTarget = 0; iTarget < numTargets; iTarget++) {
+				Target target = readTarget(in);
+				Target sharedTarget = targets.get(target.getName());
+				if (sharedTarget == null || sharedTarget.getLoadPart() != target.getLoadPart()) {
+					targets.put(target.getName(), target);
+					sharedTarget = target;
+				}
+				assignment.getTargets().add(sharedTarget);
+			}
+			assignment.setLoadCurve(readLoadCurve(in));
+			loadTestConfiguration.getLoadCurveAssignments().add(assignment);
+		}
+		return loadTestConfiguration;
+	}
+
+	private static void writeLoadCurve(final DataOutput out, final LoadCurve loadCurve) throws IOException {
+		writeString(out, loadCurve.getName());
+		writeString(out, loadCurve.getTimeUnit());
+		writeString(out, loadCurve.getRateUnit());
+		out.writeDouble(loadCurve.getNEvents());
+		out.writeDouble(loadCurve.getRateMin());
+		out.writeDouble(loadCurve.getRateMax());
+		writeDoubles(out, loadCurve.getTimeValues());
+		writeDoubles(out, loadCurve.getRateValues());
+		writeDoubles(out, loadCurve.getNormedEvents());
+	}
+
+	private static LoadCurve readLoadCurve(final DataInput in) throws IOException {
+		LoadCurve loadCurve = new LoadCurve();
+		loadCurve.setName(readString(in));
+		loadCurve.setTimeUnit(readString(in));
+		loadCurve.setRateUnit(readString(in));
+		loadCurve.setNEvents(in.readDouble());
+		loadCurve.setRateMin(in.readDouble());
+		loadCurve.setRateMax(in.readDouble());
+		loadCurve.setTimeValues(readDoubles(in));
+		loadCurve.setRateValues(readDoubles(in));
+		loadCurve.setNormedEvents(readDoubles(in));
+		return loadCurve;
+	}
+
+	private static void writeOperation(final DataOutput out, final Operation operation) throws IOException {
+		writeString(out, operation.getName());
+		out.writeDouble(operation.getRelativeClientLoad());
+	}
+
+	private static Operation readOperation(final DataInput in) throws IOException {
+		Operation operation = new Operation();
+		operation.setName(readString(in));
+		operation.setRelativeClientLoad(in.readDouble());
+		return operation;
+	}
+
+	private static void writeTarget(final DataOutput out, final Target target) throws IOException {
+		writeString(out, target.getName());
+		out.writeDouble(target.getLoadPart());
+	}
+
+	private static Target readTarget(final DataInput in) throws IOException {
+		Target target = new Target();
+		target.setName(readString(in));
+		target.setLoadPart(in.readDouble());
+		return target;
+	}
+
+	private static void writeDoubles(final DataOutput out, final double[] values) throws IOException {
+		out.writeInt(values != null ? values.length : -1);
+		if (values != null) {
+			for (double value : values) {
+				out.writeDouble(value);
+			}
+		}
+	}
+
+	private static double[] readDoubles(final DataInput in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		double[] values = new double[length];
+		for (int i = 0; i < length; i++) {
+			values[i] = in.readDouble();
+		}
+		return values;
+	}
+
+	private static void writeString(final DataOutput out, final String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readString(final DataInput in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	/**
+	 * Runs the jobs read from the files given as arguments one after the other. The process exits
+	 * with status {@code 1}, if a job fails.
+	 */
+	public static void main(final String[] args) {
+		try {
+			for (String fileName : args) {
+				GenerationJob job = readFrom(new File(fileName));
+				long numEvents = job.run();
+				log.info("Wrote {} events to {}", numEvents, job.getOutputFile());
+			}
+		} catch (Exception ex) {
+			log.error("Generation job failed", ex);
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.generation;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Live counters and gauges of a long running event generation, which may be polled by the UI, a
+ * headless runner or any JMX console once the monitor is {@link #register(String) registered} as
+ * MBean. The generation can be cancelled through the same interface.
+ * <p>
+ * A monitor is passed to the generation with
+ * {@link GenerationOptions#setMonitor(GenerationMonitor)}. The generation only updates counters,
+ * the gauges are derived when they are polled. The bytes written are the sizes of the
+ * {@link #addOutputFile(File) output files}, so they do not include data buffered by the writers.
+ * The caller, which writes the events, calls {@link #finish()} or {@link #fail()} when it is
+ * done.
+ */
+public class GenerationMonitor implements GenerationMonitorMBean {
+
+	/** The domain of the object names of registered monitors. */
+	public static final String DOMAIN = "com.mgmtp.perfload.loadprofiles";
+
+	/**
+	 * The coarse phases of an export.
+	 */
+	public static enum Phase {
+		/** The generation has not started. */
+		NOT_STARTED,
+		/** The load curves are converted and compiled. */
+		PREPARING,
+		/** The events are created, distributed and possibly written. */
+		GENERATING,
+		/** All events are distributed, the caller is writing the results. */
+		WRITING,
+		/** The export is complete. */
+		FINISHED,
+		/** The generation has been cancelled. */
+		CANCELLED,
+		/** The export has failed. */
+		FAILED
+	}
+
+	private volatile Phase phase = Phase.NOT_STARTED;
+	private volatile boolean cancelled;
+	private volatile long startNanos;
+	private volatile long endNanos;
+	private volatile long expectedEvents;
+
+	private final AtomicLong eventsGenerated = new AtomicLong();
+	private final AtomicLong eventsDistributed = new AtomicLong();
+	private final List<File> outputFiles = new CopyOnWriteArrayList<File>();
+
+	private ObjectName objectName;
+
+	/**
+	 * Registers the monitor with the platform MBean server under the object name
+	 * {@code com.mgmtp.perfload.loadprofiles:type=GenerationMonitor,name=<name>}.
+	 *
+	 * @param name
+	 *            the name of the generation, e. g. the name of the events file
+	 * @return the object name of the monitor
+	 */
+	public synchronized ObjectName register(final String name) {
+		checkState(objectName == null, "The monitor is already registered as %s", objectName);
+		try {
+			ObjectName newName = new ObjectName(DOMAIN + ":type=GenerationMonitor,name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, newName);
+			objectName = newName;
+			return objectName;
+		} catch (JMException ex) {
+			throw new IllegalStateException("Could not register generation monitor " + name, ex);
+		}
+	}
+
+	/**
+	 * Unregisters the monitor from the platform MBean server, if it is registered.
+	 */
+	public synchronized void unregister() {
+		if (objectName != null) {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			try {
+				if (server.isRegistered(objectName)) {
+					server.unregisterMBean(objectName);
+				}
+			} catch (JMException ex) {
+				throw new IllegalStateException("Could not unregister generation monitor " + objectName, ex);
+			} finally {
+				objectName = null;
+			}
+		}
+	}
+
+	/**
+	 * Adds a file or directory, whose size is included in the bytes written.
+	 */
+	public void addOutputFile(final File file) {
+		outputFiles.add(file);
+	}
+
+	/**
+	 * Called when the generation starts preparing the event sources.
+	 */
+	void generationStarted() {
+		checkState(phase == Phase.NOT_STARTED, "A monitor can only be used for one generation");
+		startNanos = System.nanoTime();
+		phase = Phase.PREPARING;
+	}
+
+	/**
+	 * Called when the event sources are prepared.
+	 *
+	 * @param numExpectedEvents
+	 *            the number of events to be distributed
+	 */
+	void eventsExpected(final long numExpectedEvents) {
+		expectedEvents = numExpectedEvents;
+		phase = Phase.GENERATING;
+	}
+
+	/**
+	 * Adds a block of events computed from a load curve. May be called from any thread.
+	 */
+	void eventsGenerated(final int numEvents) {
+		eventsGenerated.addAndGet(numEvents);
+	}
+
+	/**
+	 * Publishes the number of distributed events. Called by the consuming thread for each event,
+	 * so the value is published without a memory barrier.
+	 */
+	void eventsDistributed(final long numEvents) {
+		eventsDistributed.lazySet(numEvents);
+	}
+
+	/**
+	 * Called when the last event has been distributed.
+	 */
+	void generationFinished() {
+		if (phase == Phase.GENERATING) {
+			phase = Phase.WRITING;
+		}
+	}
+
+	/**
+	 * Called when the generation has stopped because of {@link #cancel()}.
+	 */
+	void generationCancelled() {
+		endNanos = System.nanoTime();
+		phase = Phase.CANCELLED;
+	}
+
+	/**
+	 * Marks the export as complete after the results have been written.
+	 */
+	public void finish() {
+		if (phase != Phase.CANCELLED && phase != Phase.FAILED) {
+			endNanos = System.nanoTime();
+			phase = Phase.FINISHED;
+		}
+	}
+
+	/**
+	 * Marks the export as failed, unless it has been cancelled or finished.
+	 */
+	public void fail() {
+		if (phase != Phase.CANCELLED && phase != Phase.FINISHED) {
+			endNanos = System.nanoTime();
+			phase = Phase.FAILED;
+		}
+	}
+
+	@Override
+	public String getPhase() {
+		return phase.name();
+	}
+
+	@Override
+	public long getEventsGenerated() {
+		return eventsGenerated.get();
+	}
+
+	@Override
+	public long getEventsDistributed() {
+		return eventsDistributed.get();
+	}
+
+	@Override
+	public long getExpectedEvents() {
+		return expectedEvents;
+	}
+
+	@Override
+	public long getBytesWritten() {
+		long bytes = 0L;
+		for (File file : outputFiles) {
+			bytes += sizeOf(file);
+		}
+		return bytes;
+	}
+
+	private static long sizeOf(final File file) {
+		File[] children = file.listFiles();
+		if (children == null) {
+			return file.length();
+		}
+		long bytes = 0L;
+		for (File child : children) {
+			bytes += sizeOf(child);
+		}
+		return bytes;
+	}
+
+	@Override
+	public double getProgress() {
+		long expected = expectedEvents;
+		if (phase == Phase.FINISHED || phase == Phase.WRITING) {
+			return 1.;
+		}
+		return expected > 0L ? Math.min(1., (double) getEventsDistributed() / expected) : 0.;
+	}
+
+	@Override
+	public double getElapsedSeconds() {
+		long start = startNanos;
+		if (start == 0L) {
+			return 0.;
+		}
+		long end = endNanos;
+		return ((end != 0L ? end : System.nanoTime()) - start) / 1e9;
+	}
+
+	@Override
+	public double getEstimatedSecondsRemaining() {
+		if (phase != Phase.GENERATING) {
+			return phase == Phase.WRITING || phase == Phase.FINISHED ? 0. : -1.;
+		}
+		long distributed = getEventsDistributed();
+		if (distributed == 0L) {
+			return -1.;
+		}
+		return getElapsedSeconds() * Math.max(0L, expectedEvents - distributed) / distributed;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public void cancel() {
+		cancelled = true;
+	}
+}
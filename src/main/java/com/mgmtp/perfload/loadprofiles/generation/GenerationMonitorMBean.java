@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.generation;
+
+/**
+ * Management interface of a {@link GenerationMonitor}. All attributes may be polled at any time
+ * from any thread while the generation is running.
+ */
+public interface GenerationMonitorMBean {
+
+	/**
+	 * @return the name of the current phase, e. g. {@code GENERATING}
+	 */
+	String getPhase();
+
+	/**
+	 * @return the number of events computed from the load curves so far, including events
+	 *         computed in advance
+	 */
+	long getEventsGenerated();
+
+	/**
+	 * @return the number of events distributed to clients and processes so far
+	 */
+	long getEventsDistributed();
+
+	/**
+	 * @return the number of events to be distributed in total, {@code 0} before the generation
+	 *         has started
+	 */
+	long getExpectedEvents();
+
+	/**
+	 * @return the number of bytes written to the output files so far
+	 */
+	long getBytesWritten();
+
+	/**
+	 * @return the distributed part of the expected events between {@code 0} and {@code 1}
+	 */
+	double getProgress();
+
+	/**
+	 * @return the seconds since the generation has started
+	 */
+	double getElapsedSeconds();
+
+	/**
+	 * @return the estimated seconds until all events are distributed, {@code -1} if unknown
+	 */
+	double getEstimatedSecondsRemaining();
+
+	/**
+	 * @return {@code true}, if the generation has been cancelled
+	 */
+	boolean isCancelled();
+
+	/**
+	 * Cancels the generation. The generation stops before the next event and throws a
+	 * {@link java.util.concurrent.CancellationException} to the consumer of the events.
+	 */
+	void cancel();
+}
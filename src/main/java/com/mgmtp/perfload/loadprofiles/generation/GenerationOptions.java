@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.generation;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Options of the event generation in {@link EventDistributor}. Apart from the time window, which
+ * selects a part of the events, none of the options changes the generated events.
+ */
+public class GenerationOptions {
+
+	/** The number of threads used to create the events of the load curve assignments. */
+	private int parallelism = EventDistributor.DEFAULT_PARALLELISM;
+
+	/** The pool shared by several generations, {@code null} for a new pool per generation. */
+	private ForkJoinPool pool;
+
+	/** The trace receiving the diagnostics, {@code null} for a new {@link LoggingGenerationTrace}. */
+	private GenerationTrace trace;
+
+	/** The start of the time window in hours. */
+	private double startTime;
+
+	/** The end of the time window in hours, exclusive. */
+	private double endTime = Double.POSITIVE_INFINITY;
+
+	/** The checkpoint the generation continues from, {@code null} to start at the beginning. */
+	private GenerationCheckpoint checkpoint;
+
+	/** The report recording the phases of the generation, {@code null} if none is recorded. */
+	private GenerationReport report;
+
+	/** The monitor exposing the progress of the generation, {@code null} if there is none. */
+	private GenerationMonitor monitor;
+
+	/** The listener receiving the progress of the generation, {@code null} if there is none. */
+	private GenerationProgressListener progressListener;
+
+	/**
+	 * @return the number of threads used to create the events of the load curve assignments
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * @param parallelism
+	 *            the number of threads used to create the events of the load curve assignments;
+	 *            {@code 1} creates all events in the calling thread
+	 */
+	public void setParallelism(final int parallelism) {
+		checkArgument(parallelism > 0, "parallelism must be positive: %s", parallelism);
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @return the pool shared by several generations, {@code null} if each generation creates its
+	 *         own pool
+	 */
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Lets the generation create the events of the load curve assignments in the given pool
+	 * instead of a new pool with the configured {@link #setParallelism(int) parallelism}. A shared
+	 * pool is not shut down by the generation, so that concurrent generations, e. g. of a batch of
+	 * configurations, are limited to the threads of one pool.
+	 *
+	 * @param pool
+	 *            the pool shared by several generations; {@code null} for a new pool per
+	 *            generation
+	 */
+	public void setPool(final ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * @return the trace receiving the diagnostics of the generation, {@code null} if a new
+	 *         {@link LoggingGenerationTrace} is used for each generation
+	 */
+	public GenerationTrace getTrace() {
+		return trace;
+	}
+
+	/**
+	 * @param trace
+	 *            the trace receiving the diagnostics of the generation, e. g.
+	 *            {@link GenerationTrace#NONE}
+	 */
+	public void setTrace(final GenerationTrace trace) {
+		this.trace = trace;
+	}
+
+	/**
+	 * @return the start of the time window in hours
+	 */
+	public double getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * @return the end of the time window in hours, exclusive
+	 */
+	public double getEndTime() {
+		return endTime;
+	}
+
+	/**
+	 * Restricts the generation to the events starting within the given time window. The events
+	 * are exactly those of a complete generation, which start at or after {@code startTime} and
+	 * before {@code endTime}. Events after the window are not computed at all. Events before the
+	 * window still have to be distributed, since the distribution of each event depends on all
+	 * previous ones, unless the generation continues from a {@link #setCheckpoint(GenerationCheckpoint)
+	 * checkpoint} near the start of the window.
+	 *
+	 * @param startTime
+	 *            the start of the time window in hours
+	 * @param endTime
+	 *            the end of the time window in hours, exclusive; may be
+	 *            {@link Double#POSITIVE_INFINITY}
+	 */
+	public void setTimeWindow(final double startTime, final double endTime) {
+		checkArgument(startTime >= 0. && startTime <= endTime, "Invalid time window: [%s, %s)", startTime, endTime);
+		this.startTime = startTime;
+		this.endTime = endTime;
+	}
+
+	/**
+	 * @return the checkpoint the generation continues from, {@code null} if it starts at the
+	 *         beginning
+	 */
+	public GenerationCheckpoint getCheckpoint() {
+		return checkpoint;
+	}
+
+	/**
+	 * @param checkpoint
+	 *            the checkpoint the generation continues from, which must have been created for
+	 *            the same load test configuration at or before the start of the time window;
+	 *            {@code null} to start at the beginning
+	 */
+	public void setCheckpoint(final GenerationCheckpoint checkpoint) {
+		this.checkpoint = checkpoint;
+	}
+
+	/**
+	 * @return the report recording the phases of the generation, {@code null} if none is recorded
+	 */
+	public GenerationReport getReport() {
+		return report;
+	}
+
+	/**
+	 * @param report
+	 *            a new report recording the phases of the generation, which the caller has to
+	 *            {@link GenerationReport#finish() finish} after the events are written;
+	 *            {@code null} to record none
+	 */
+	public void setReport(final GenerationReport report) {
+		this.report = report;
+	}
+
+	/**
+	 * @return the monitor exposing the progress of the generation, {@code null} if there is none
+	 */
+	public GenerationMonitor getMonitor() {
+		return monitor;
+	}
+
+	/**
+	 * @param monitor
+	 *            a new monitor exposing the progress of the generation, through which the
+	 *            generation may also be cancelled; {@code null} for none
+	 */
+	public void setMonitor(final GenerationMonitor monitor) {
+		this.monitor = monitor;
+	}
+
+	/**
+	 * @return the listener receiving the progress of the generation, {@code null} if there is none
+	 */
+	public GenerationProgressListener getProgressListener() {
+		return progressListener;
+	}
+
+	/**
+	 * @param progressListener
+	 *            the listener receiving the progress of the generation; {@code null} for none
+	 */
+	public void setProgressListener(final GenerationProgressListener progressListener) {
+		this.progressListener = progressListener;
+	}
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.generation;
+
+/**
+ * Receives the progress of an event generation. The listener is called from the thread consuming
+ * the events every {@value EventDistributor#PROGRESS_INTERVAL} distributed events and once after
+ * the last event, so it may update a UI, but should not block.
+ */
+public interface GenerationProgressListener {
+
+	/**
+	 * @param eventsDistributed
+	 *            the number of events distributed so far
+	 * @param expectedEvents
+	 *            the number of events to be distributed in total
+	 */
+	void progressChanged(long eventsDistributed, long expectedEvents);
+}
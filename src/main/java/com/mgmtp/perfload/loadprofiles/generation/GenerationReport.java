@@ -0,0 +1,450 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.generation;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FilenameUtils;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Records where the time of an event generation goes. The generation is divided into
+ * {@link Phase phases}; for each phase the wall time, the CPU time and the allocated bytes are
+ * summed up. In addition the report contains the number of events, the events per second, the
+ * peak heap and the residua of the distribution to clients and processes.
+ * <p>
+ * A report is passed to the generation with {@link GenerationOptions#setReport(GenerationReport)}.
+ * The generation switches the phases of the thread consuming the events. Since the events are
+ * created, merged, distributed and written one by one, the phases alternate for each event. The
+ * wall time is taken at each switch, while the CPU time and the allocated bytes of the thread
+ * are only read every {@value #SAMPLE_INTERVAL} switches and apportioned to the phases in
+ * proportion to their wall time since the last sample, so they are estimates. Blocks of events
+ * created in the threads of a pool are measured exactly and added to {@link Phase#EVENT_CREATION},
+ * whose wall time is the time the consuming thread spends creating events or waiting for them.
+ * <p>
+ * The caller, which writes the events, calls {@link #finish()} after the events are written, and
+ * may attribute its own work to a phase with {@link #startPhase(Phase)}. A report is used for a
+ * single generation and is not thread-safe apart from the measurements of the pool threads.
+ */
+public class GenerationReport {
+
+	/**
+	 * The phases of the event generation.
+	 */
+	public static enum Phase {
+		/** Converting the load curves to hours. */
+		UNIT_CONVERSION,
+		/** Computing the events of the load curve assignments and their targets. */
+		EVENT_CREATION,
+		/** Merging the events of all assignments by time. */
+		MERGE,
+		/** Distributing the events to clients and processes. */
+		DISTRIBUTION,
+		/** Storing, formatting and writing the events. */
+		WRITING
+	}
+
+	private static final int SAMPLE_INTERVAL = 4096;
+	private static final Phase[] PHASES = Phase.values();
+
+	private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	private final boolean cpuTimeMeasured;
+	private final boolean allocationMeasured;
+
+	private final long[] wallNanos = new long[PHASES.length];
+	private final long[] cpuNanos = new long[PHASES.length];
+	private final long[] allocatedBytes = new long[PHASES.length];
+	private final AtomicLong parallelCpuNanos = new AtomicLong();
+	private final AtomicLong parallelAllocatedBytes = new AtomicLong();
+
+	// the current phase of the consuming thread
+	private long threadId;
+	private Phase currentPhase;
+	private long phaseStartNanos;
+	private long startNanos;
+	private long endNanos;
+
+	// the wall time of each phase, the CPU time and the allocated bytes since the last sample
+	private final long[] sampleWallNanos = new long[PHASES.length];
+	private long sampleCpuNanos;
+	private long sampleAllocatedBytes;
+	private int numSwitches;
+
+	private long numEvents;
+	private double numericRelativeDifference = Double.NaN;
+	private double[] clientResidua = new double[0];
+	private double[][] processResidua = new double[0][];
+	private long peakHeapBytes;
+
+	public GenerationReport() {
+		cpuTimeMeasured = threadBean.isCurrentThreadCpuTimeSupported() && threadBean.isThreadCpuTimeEnabled();
+		allocationMeasured = threadBean instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported()
+				&& ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemoryEnabled();
+	}
+
+	/**
+	 * @return the file, to which the report of the given events file is written by convention,
+	 *         e. g. {@code events.report.json} for {@code events.perfload}
+	 */
+	public static File getReportFile(final File eventsFile) {
+		return new File(eventsFile.getParentFile(), FilenameUtils.getBaseName(eventsFile.getName()) + ".report.json");
+	}
+
+	/**
+	 * Ends the current phase of the calling thread and starts the given one. The first call starts
+	 * the report and resets the peak usage of the heap.
+	 *
+	 * @return the phase, which has been ended, {@code null} for the first call
+	 */
+	public Phase startPhase(final Phase phase) {
+		checkState(endNanos == 0L, "The report is finished");
+		long now = System.nanoTime();
+		Phase previousPhase = currentPhase;
+		if (previousPhase == null) {
+			start(now);
+		} else {
+			sampleWallNanos[previousPhase.ordinal()] += now - phaseStartNanos;
+			if (++numSwitches == SAMPLE_INTERVAL) {
+				sample();
+			}
+		}
+		currentPhase = phase;
+		phaseStartNanos = now;
+		return previousPhase;
+	}
+
+	/**
+	 * @return the current phase, {@code null} if the report has not been started
+	 */
+	public Phase getCurrentPhase() {
+		return currentPhase;
+	}
+
+	private void start(final long now) {
+		threadId = Thread.currentThread().getId();
+		startNanos = now;
+		sampleCpuNanos = currentThreadCpuNanos();
+		sampleAllocatedBytes = currentThreadAllocatedBytes();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	/**
+	 * Adds the wall time of the phases since the last sample and apportions the CPU time and the
+	 * allocated bytes since the last sample to them.
+	 */
+	private void sample() {
+		checkState(Thread.currentThread().getId() == threadId, "Phases must be switched by a single thread");
+		long cpu = currentThreadCpuNanos();
+		long allocated = currentThreadAllocatedBytes();
+		long cpuDelta = cpu - sampleCpuNanos;
+		long allocatedDelta = allocated - sampleAllocatedBytes;
+
+		long totalWallNanos = 0L;
+		for (long nanos : sampleWallNanos) {
+			totalWallNanos += nanos;
+		}
+		for (int iPhase = 0; iPhase < PHASES.length; iPhase++) {
+			long nanos = sampleWallNanos[iPhase];
+			if (nanos > 0L) {
+				double part = (double) nanos / totalWallNanos;
+				wallNanos[iPhase] += nanos;
+				cpuNanos[iPhase] += Math.round(cpuDelta * part);
+				allocatedBytes[iPhase] += Math.round(allocatedDelta * part);
+				sampleWallNanos[iPhase] = 0L;
+			}
+		}
+		sampleCpuNanos = cpu;
+		sampleAllocatedBytes = allocated;
+		numSwitches = 0;
+	}
+
+	/**
+	 * @return the CPU time of the calling thread in nanoseconds, {@code 0} if it cannot be measured
+	 */
+	long currentThreadCpuNanos() {
+		return cpuTimeMeasured ? threadBean.getCurrentThreadCpuTime() : 0L;
+	}
+
+	/**
+	 * @return the bytes allocated by the calling thread so far, {@code 0} if they cannot be measured
+	 */
+	long currentThreadAllocatedBytes() {
+		return allocationMeasured ? ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread
+				.currentThread().getId()) : 0L;
+	}
+
+	/**
+	 * Adds the CPU time and the allocated bytes of a block of events created in a pool thread. May
+	 * be called from any thread.
+	 */
+	void addParallelEventCreation(final long cpuTimeNanos, final long allocated) {
+		parallelCpuNanos.addAndGet(cpuTimeNanos);
+		parallelAllocatedBytes.addAndGet(allocated);
+	}
+
+	/**
+	 * Stores the results of the distribution after the last event has been distributed.
+	 *
+	 * @param clientResiduaOfDistribution
+	 *            the remaining deficit of each client
+	 * @param processResiduaOfDistribution
+	 *            the remaining deficit of each process of each client
+	 */
+	void generationFinished(final long numDistributedEvents, final double relativeDifference,
+			final double[] clientResiduaOfDistribution, final double[][] processResiduaOfDistribution) {
+		this.numEvents = numDistributedEvents;
+		this.numericRelativeDifference = relativeDifference;
+		this.clientResidua = clientResiduaOfDistribution;
+		this.processResidua = processResiduaOfDistribution;
+	}
+
+	/**
+	 * Ends the current phase and the report and records the peak heap. Must be called by the
+	 * thread, which has switched the phases, after the events have been written.
+	 */
+	public void finish() {
+		checkState(currentPhase != null, "The report has not been started");
+		checkState(endNanos == 0L, "The report is already finished");
+		long now = System.nanoTime();
+		sampleWallNanos[currentPhase.ordinal()] += now - phaseStartNanos;
+		sample();
+		endNanos = now;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peakHeapBytes += pool.getPeakUsage().getUsed();
+			}
+		}
+	}
+
+	/**
+	 * @return {@code true}, if {@link #finish()} has been called
+	 */
+	public boolean isFinished() {
+		return endNanos != 0L;
+	}
+
+	/**
+	 * @return the wall time of the given phase in nanoseconds
+	 */
+	public long getWallNanos(final Phase phase) {
+		return wallNanos[phase.ordinal()];
+	}
+
+	/**
+	 * @return the CPU time of the given phase in nanoseconds, including the time of the pool
+	 *         threads for {@link Phase#EVENT_CREATION}
+	 */
+	public long getCpuNanos(final Phase phase) {
+		long nanos = cpuNanos[phase.ordinal()];
+		return phase == Phase.EVENT_CREATION ? nanos + parallelCpuNanos.get() : nanos;
+	}
+
+	/**
+	 * @return the bytes allocated in the given phase, including the pool threads for
+	 *         {@link Phase#EVENT_CREATION}
+	 */
+	public long getAllocatedBytes(final Phase phase) {
+		long bytes = allocatedBytes[phase.ordinal()];
+		return phase == Phase.EVENT_CREATION ? bytes + parallelAllocatedBytes.get() : bytes;
+	}
+
+	/**
+	 * @return {@code true}, if the CPU time of threads is measured by the JVM
+	 */
+	public boolean isCpuTimeMeasured() {
+		return cpuTimeMeasured;
+	}
+
+	/**
+	 * @return {@code true}, if the bytes allocated by threads are measured by the JVM
+	 */
+	public boolean isAllocationMeasured() {
+		return allocationMeasured;
+	}
+
+	/**
+	 * @return the wall time from the start of the first phase to {@link #finish()} in nanoseconds
+	 */
+	public long getTotalWallNanos() {
+		checkState(isFinished(), "The report is not finished");
+		return endNanos - startNanos;
+	}
+
+	/**
+	 * @return the number of distributed events
+	 */
+	public long getNumEvents() {
+		return numEvents;
+	}
+
+	/**
+	 * @return the number of distributed events per second of the total wall time
+	 */
+	public double getEventsPerSecond() {
+		return numEvents * 1e9 / Math.max(1L, getTotalWallNanos());
+	}
+
+	/**
+	 * @return the relative difference between the distributed and the expected weighted number of
+	 *         events, {@code NaN} if the generation has not reached the last event
+	 */
+	public double getNumericRelativeDifference() {
+		return numericRelativeDifference;
+	}
+
+	/**
+	 * @return the remaining deficit of each client, empty if the generation has not reached the
+	 *         last event
+	 */
+	public double[] getClientResidua() {
+		return clientResidua.clone();
+	}
+
+	/**
+	 * @return the remaining deficit of each process of the given client
+	 */
+	public double[] getProcessResidua(final int clientIndex) {
+		return processResidua[clientIndex].clone();
+	}
+
+	/**
+	 * @return the sum of the peak usages of all heap memory pools during the generation in bytes
+	 */
+	public long getPeakHeapBytes() {
+		return peakHeapBytes;
+	}
+
+	/**
+	 * Writes the report as JSON object to the given file.
+	 */
+	public void writeJson(final File file) throws IOException {
+		Writer writer = Files.newWriter(file, Charsets.UTF_8);
+		try {
+			writeJson(writer);
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Writes the report as JSON object to the given writer. Durations are given in milliseconds.
+	 */
+	public void writeJson(final Writer writer) throws IOException {
+		checkState(isFinished(), "The report is not finished");
+		StringBuilder sb = new StringBuilder(256 + 24 * clientResidua.length);
+		sb.append("{\n");
+		sb.append("  \"numEvents\": ").append(numEvents).append(",\n");
+		sb.append("  \"wallTimeMillis\": ").append(formatMillis(getTotalWallNanos())).append(",\n");
+		sb.append("  \"eventsPerSecond\": ").append(formatNumber(getEventsPerSecond())).append(",\n");
+		sb.append("  \"peakHeapBytes\": ").append(peakHeapBytes).append(",\n");
+		sb.append("  \"cpuTimeMeasured\": ").append(cpuTimeMeasured).append(",\n");
+		sb.append("  \"allocationMeasured\": ").append(allocationMeasured).append(",\n");
+		sb.append("  \"numericRelativeDifference\": ").append(formatNumber(numericRelativeDifference)).append(",\n");
+		sb.append("  \"phases\": [");
+		for (int iPhase = 0; iPhase < PHASES.length; iPhase++) {
+			Phase phase = PHASES[iPhase];
+			sb.append(iPhase == 0 ? "\n" : ",\n");
+			sb.append("    { \"phase\": \"").append(phase.name()).append('"');
+			sb.append(", \"wallTimeMillis\": ").append(formatMillis(getWallNanos(phase)));
+			sb.append(", \"cpuTimeMillis\": ").append(formatMillis(getCpuNanos(phase)));
+			sb.append(", \"allocatedBytes\": ").append(getAllocatedBytes(phase)).append(" }");
+		}
+		sb.append("\n  ],\n");
+		sb.append("  \"clientResidua\": ");
+		appendArray(sb, clientResidua);
+		sb.append(",\n  \"processResidua\": [");
+		for (int iClient = 0; iClient < processResidua.length; iClient++) {
+			sb.append(iClient == 0 ? "\n    " : ",\n    ");
+			appendArray(sb, processResidua[iClient]);
+		}
+		sb.append(processResidua.length == 0 ? "]\n" : "\n  ]\n");
+		sb.append("}\n");
+		writer.write(sb.toString());
+	}
+
+	private static void appendArray(final StringBuilder sb, final double[] values) {
+		sb.append('[');
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(formatNumber(values[i]));
+		}
+		sb.append(']');
+	}
+
+	private static String formatMillis(final long nanos) {
+		return String.format(Locale.ENGLISH, "%.3f", nanos / 1e6);
+	}
+
+	/**
+	 * @return the number as JSON number, {@code null} for NaN and infinite values
+	 */
+	private static String formatNumber(final double value) {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			return "null";
+		}
+		return String.format(Locale.ENGLISH, "%.6g", value);
+	}
+
+	/**
+	 * @return a summary of the report with one line per phase
+	 */
+	@Override
+	public String toString() {
+		checkState(isFinished(), "The report is not finished");
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format(Locale.ENGLISH, "%d events in %.3f s, %.0f events/s, peak heap %d MB%n", numEvents,
+				getTotalWallNanos() / 1e9, getEventsPerSecond(), peakHeapBytes >> 20));
+		sb.append(String.format(Locale.ENGLISH, "%-16s %12s %12s %14s%n", "Phase", "Wall [ms]", "CPU [ms]",
+				"Allocated [MB]"));
+		for (Phase phase : PHASES) {
+			sb.append(String.format(Locale.ENGLISH, "%-16s %12.1f %12.1f %14.1f%n", phase, getWallNanos(phase) / 1e6,
+					getCpuNanos(phase) / 1e6, getAllocatedBytes(phase) / 1048576.));
+		}
+		double maxClientResiduum = 0.;
+		for (double residuum : clientResidua) {
+			maxClientResiduum = Math.max(maxClientResiduum, Math.abs(residuum));
+		}
+		double maxProcessResiduum = 0.;
+		for (double[] residua : processResidua) {
+			for (double residuum : residua) {
+				maxProcessResiduum = Math.max(maxProcessResiduum, Math.abs(residuum));
+			}
+		}
+		sb.append(String.format(Locale.ENGLISH,
+				"Numeric relative difference %.3g, max client residuum %.3f, max process residuum %.3f",
+				numericRelativeDifference, maxClientResiduum, maxProcessResiduum));
+		return sb.toString();
+	}
+}
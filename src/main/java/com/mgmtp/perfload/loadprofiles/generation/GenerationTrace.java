@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.generation;
+
+import com.mgmtp.perfload.loadprofiles.model.LoadCurveAssignment;
+import com.mgmtp.perfload.loadprofiles.model.Operation;
+
+/**
+ * Receives the diagnostics of the event generation. The generation itself neither logs nor
+ * formats messages per event; it only passes primitive values to the trace, which decides whether
+ * to sample, summarize or ignore them. Implementations must not allocate per event, if the
+ * generation is to stay allocation-free.
+ * <p>
+ * {@link #eventOutOfSequence(int, int, double, double)} may be called from the threads computing
+ * the events of the assignments, all other methods are called from the thread consuming the
+ * events.
+ */
+public interface GenerationTrace {
+
+	/**
+	 * Trace ignoring all diagnostics.
+	 */
+	GenerationTrace NONE = new GenerationTrace() {
+		@Override
+		public void assignmentStarted(final int assignmentIndex, final LoadCurveAssignment assignment, final double shift) {
+			// ignore
+		}
+
+		@Override
+		public void eventOutOfSequence(final int assignmentIndex, final int eventIndex, final double lastTime,
+				final double time) {
+			// ignore
+		}
+
+		@Override
+		public void eventDistributed(final long eventNumber, final double time, final Operation operation,
+				final int clientIndex, final int processIndex) {
+			// ignore
+		}
+
+		@Override
+		public void generationFinished(final long numEvents, final double numericRelativeDifference,
+				final double[] clientResidua) {
+			// ignore
+		}
+	};
+
+	/**
+	 * Called once per load curve assignment before its events are created.
+	 */
+	void assignmentStarted(int assignmentIndex, LoadCurveAssignment assignment, double shift);
+
+	/**
+	 * Called if the start time of an event is before the start time of the previous event of the
+	 * same assignment.
+	 */
+	void eventOutOfSequence(int assignmentIndex, int eventIndex, double lastTime, double time);
+
+	/**
+	 * Called for each event after it has been distributed to a client and process.
+	 *
+	 * @param eventNumber
+	 *            the zero-based number of the event in the merged sequence of all events
+	 */
+	void eventDistributed(long eventNumber, double time, Operation operation, int clientIndex, int processIndex);
+
+	/**
+	 * Called after the last event has been distributed.
+	 *
+	 * @param numEvents
+	 *            the number of distributed events
+	 * @param numericRelativeDifference
+	 *            the relative difference between the distributed and the expected weighted number
+	 *            of events
+	 * @param clientResidua
+	 *            the remaining deficit of each client
+	 */
+	void generationFinished(long numEvents, double numericRelativeDifference, double[] clientResidua);
+}
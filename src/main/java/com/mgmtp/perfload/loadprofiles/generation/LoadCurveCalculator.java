@@ -102,11 +102,90 @@ public class LoadCurveCalculator {
 					", nPoints = " + nPoints + ", setting time to 0.");
 			Tn = 0.;
 		}
-		log.debug("Tn= " + Tn + ", iSegment=" + iSegment + ", n= " + n + ", N=" + N + ", r0=" + r0 + ", rN=" + rN + ", T0=" + T0
-				+ ", TN=" + TN);
+		if (log.isDebugEnabled()) {
+			log.debug("Tn= " + Tn + ", iSegment=" + iSegment + ", n= " + n + ", N=" + N + ", r0=" + r0 + ", rN=" + rN + ", T0="
+					+ T0 + ", TN=" + TN);
+		}
 		return Tn;
 	}
 
+	/**
+	 * Calculates the start times of consecutive events like {@link #deriveStartTime(LoadCurve, double)}
+	 * for the event indices {@code firstIndex + shift} up to {@code firstIndex + count - 1 + shift}.
+	 * Since the event indices increase, the line segments are not searched for each event, but
+	 * walked through with a forward cursor, and the coefficients of each line segment are
+	 * calculated only once. The resulting times are exactly the same as the ones of
+	 * {@link #deriveStartTime(LoadCurve, double)}. The generation uses the
+	 * {@link CompiledLoadCurve}, this method is kept as its reference in the tests.
+	 * 
+	 * @param loadCurve
+	 *            Contains the time and rate values of the load curve definition
+	 * @param firstIndex
+	 *            Index of the first event
+	 * @param count
+	 *            The number of events
+	 * @param shift
+	 *            The fractional shift added to each event index
+	 * @param startTimes
+	 *            The array the start times are written to, starting at position 0
+	 */
+	static void deriveStartTimes(final LoadCurve loadCurve, final int firstIndex, final int count,
+			final double shift, final double[] startTimes) {
+		double[] timeValues = loadCurve.getTimeValues();
+		double[] rateValues = loadCurve.getRateValues();
+		double[] normedEvents = loadCurve.getNormedEvents();
+		int nPoints = timeValues.length;
+		double nEvents = loadCurve.getNEvents();
+
+		// the cursor requires the normed events to be sorted like the binary search does
+		boolean sorted = true;
+		for (int iPoint = 1; iPoint < nPoints && sorted; iPoint++) {
+			sorted = normedEvents[iPoint - 1] <= normedEvents[iPoint];
+		}
+		double lowerBound = normedEvents[0] - EPSILON;
+		double upperBound = normedEvents[nPoints - 1];
+
+		int iSegment = -1;
+		double r0 = 0., rN = 0., T0 = 0., TN = 0., n0 = 0., N = 0., rDash = 0.;
+		for (int iEvent = 0; iEvent < count; iEvent++) {
+			double eventIndex = firstIndex + iEvent + shift;
+			double normalizedIndex = eventIndex / nEvents;
+			if (!sorted || normalizedIndex <= lowerBound || normalizedIndex > upperBound) {
+				// outside of the line segments, this only concerns single events at the boundaries
+				startTimes[iEvent] = deriveStartTime(loadCurve, eventIndex);
+				continue;
+			}
+
+			int segment;
+			if (iSegment < 0) {
+				segment = getLineSegment(loadCurve, normalizedIndex);
+			} else {
+				segment = iSegment;
+				while (segment < nPoints - 2 && normedEvents[segment + 1] <= normalizedIndex) {
+					segment++;
+				}
+			}
+			if (segment != iSegment) {
+				iSegment = segment;
+				r0 = rateValues[iSegment];
+				rN = rateValues[iSegment + 1];
+				T0 = timeValues[iSegment];
+				TN = timeValues[iSegment + 1];
+				n0 = nEvents * normedEvents[iSegment];
+				N = nEvents * (normedEvents[iSegment + 1] - normedEvents[iSegment]);
+				rDash = (rN - r0) / (TN - T0);
+			}
+
+			double Tn = Tn(eventIndex - n0, N, r0, rN, T0, TN, rDash);
+			if (Tn < 0) {
+				log.warn("Time of event with index " + eventIndex + " < 0 (=" + Tn + "), nEvents = " + nEvents +
+						", nPoints = " + nPoints + ", setting time to 0.");
+				Tn = 0.;
+			}
+			startTimes[iEvent] = Tn;
+		}
+	}
+
 	/**
 	 * Find the line segment containing the normalized event number. The lower index of the points
 	 * defining the line segment is returned.
@@ -293,6 +372,26 @@ public class LoadCurveCalculator {
 		return timeScalingFactor;
 	}
 
+	/**
+	 * Derive the scaling factor the rate values of the given rate unit are multiplied with when the
+	 * load curve is transformed to hours.
+	 * 
+	 * @param rateUnit
+	 *            rate unit of the original rate values
+	 */
+	static double getRateScalingFactor(final String rateUnit) {
+		if (rateUnit_perHour.equals(rateUnit)) {
+			return 1.;
+		} else if (rateUnit_perMinute.equals(rateUnit)) {
+			return 1. / 60.;
+		} else if (rateUnit_perSecond.equals(rateUnit)) {
+			return 1. / 3600.;
+		} else if (rateUnit_perMillisecond.equals(rateUnit)) {
+			return 1. / 3600000.;
+		}
+		throw new IllegalArgumentException("Rate Unit of load curve is unkown: " + rateUnit);
+	}
+
 	/**
 	 * Transform the load curve to the time unit [h] and rate unit [1/h]. The calculation of event
 	 * start times is based on time units of [h] and rate units of [1/h]. After the transformation
@@ -319,19 +418,7 @@ public class LoadCurveCalculator {
 		}
 
 		double timeScaling = getTimeScalingFactor(loadCurve.getTimeUnit(), timeUnit_hour);
-
-		double rateScaling = 0.;
-		if (rateUnit_perHour.equals(loadCurve.getRateUnit())) {
-			rateScaling = 1.;
-		} else if (rateUnit_perMinute.equals(loadCurve.getRateUnit())) {
-			rateScaling = 1. / 60.;
-		} else if (rateUnit_perSecond.equals(loadCurve.getRateUnit())) {
-			rateScaling = 1. / 3600.;
-		} else if (rateUnit_perMillisecond.equals(loadCurve.getRateUnit())) {
-			rateScaling = 1. / 3600000.;
-		} else {
-			throw new IllegalArgumentException("Rate Unit of load curve is unkown: " + loadCurve.getTimeUnit());
-		}
+		double rateScaling = getRateScalingFactor(loadCurve.getRateUnit());
 
 		log.info("Scaling factors for loadCurve " + loadCurve.getName() + " from time unit " +
 				loadCurve.getTimeUnit() + " is " + timeScaling +
@@ -386,42 +473,66 @@ public class LoadCurveCalculator {
 	 *         normalized values.
 	 */
 	public static LoadCurve fillStatisticsAndNormValuesOfLoadCurve(final LoadCurve loadCurve) {
-		int nPoints = loadCurve.getTimeValues().length;
-		double integralNEvents = 0.;
 		double[] rateValues = loadCurve.getRateValues();
 		double[] timeValues = loadCurve.getTimeValues();
-		double rateMax = rateValues[0];
-		double rateMin = rateValues[0];
-		double[] integratedEvents = new double[nPoints];
-		// derive maximum and minimum rate and integral value
-		for (int iPoint = 0; iPoint < nPoints; iPoint++) {
-			if (rateValues[iPoint] > rateMax) {
-				rateMax = rateValues[iPoint];
-			}
-			if (rateValues[iPoint] < rateMin) {
-				rateMin = rateValues[iPoint];
-			}
+		double[] integratedEvents = integrateEvents(timeValues, rateValues);
+		double integralNEvents = integratedEvents[integratedEvents.length - 1];
 
-			if (iPoint > 0) {
-				integralNEvents += (rateValues[iPoint] + rateValues[iPoint - 1]) / 2. *
-						(timeValues[iPoint] - timeValues[iPoint - 1]);
-			} else {
-				integralNEvents = 0.;
-			}
+		loadCurve.setNEvents(integralNEvents);
+		loadCurve.setRateMax(max(rateValues));
+		loadCurve.setRateMin(min(rateValues));
+		loadCurve.setNormedEvents(normEvents(integratedEvents, integralNEvents));
+
+		return loadCurve;
+	}
+
+	/**
+	 * Integrate the rate over time up to each point of the load curve.
+	 * 
+	 * @return the number of events from the first point up to each point
+	 */
+	static double[] integrateEvents(final double[] timeValues, final double[] rateValues) {
+		int nPoints = timeValues.length;
+		double integralNEvents = 0.;
+		double[] integratedEvents = new double[nPoints];
+		for (int iPoint = 1; iPoint < nPoints; iPoint++) {
+			integralNEvents += (rateValues[iPoint] + rateValues[iPoint - 1]) / 2. *
+					(timeValues[iPoint] - timeValues[iPoint - 1]);
 			integratedEvents[iPoint] = integralNEvents;
 		}
-		loadCurve.setNEvents(integralNEvents);
-		loadCurve.setRateMax(rateMax);
-		loadCurve.setRateMin(rateMin);
+		return integratedEvents;
+	}
 
-		// normalize Events
+	/**
+	 * Normalize the integrated events by the total number of events.
+	 */
+	static double[] normEvents(final double[] integratedEvents, final double integralNEvents) {
+		int nPoints = integratedEvents.length;
 		double[] normedEvents = new double[nPoints];
 		for (int iPoint = 0; iPoint < nPoints; iPoint++) {
 			normedEvents[iPoint] = integratedEvents[iPoint] / integralNEvents;
 		}
-		loadCurve.setNormedEvents(normedEvents);
+		return normedEvents;
+	}
 
-		return loadCurve;
+	static double max(final double[] values) {
+		double max = values[0];
+		for (double value : values) {
+			if (value > max) {
+				max = value;
+			}
+		}
+		return max;
+	}
+
+	static double min(final double[] values) {
+		double min = values[0];
+		for (double value : values) {
+			if (value < min) {
+				min = value;
+			}
+		}
+		return min;
 	}
 
 	/**
@@ -472,8 +583,16 @@ public class LoadCurveCalculator {
 	 */
 	private static final double Tn(final double n, final double N, final double r0, final double rN, final double T0,
 			final double TN) {
+		return Tn(n, N, r0, rN, T0, TN, (rN - r0) / (TN - T0));
+	}
+
+	/**
+	 * Calculate the event time like {@link #Tn(double, double, double, double, double, double)}
+	 * with the rate change of the interval already calculated.
+	 */
+	static final double Tn(final double n, final double N, final double r0, final double rN, final double T0,
+			final double TN, final double rDash) {
 		double Tn;
-		double rDash = (rN - r0) / (TN - T0);
 		if (Math.abs(rDash) > EPSILON_RATE_CHANGE) {
 			if (r0 < EPSILON_RATE) {
 				double argumentOfRoot = r0 / rDash * (r0 / rDash) + 2. * n / rDash;
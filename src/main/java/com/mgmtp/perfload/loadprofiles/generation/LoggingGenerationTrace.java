@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.generation;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mgmtp.perfload.loadprofiles.model.LoadCurve;
+import com.mgmtp.perfload.loadprofiles.model.LoadCurveAssignment;
+import com.mgmtp.perfload.loadprofiles.model.Operation;
+import com.mgmtp.perfload.loadprofiles.model.Target;
+
+/**
+ * Trace writing the diagnostics of the event generation to the log. Single events are only
+ * logged for every n-th event at debug level. Of the events out of sequence, only the first ones
+ * are logged, the total number is logged when the generation has finished.
+ */
+public class LoggingGenerationTrace implements GenerationTrace {
+	private static final Logger log = LoggerFactory.getLogger(LoggingGenerationTrace.class);
+
+	private static final int MAX_LOGGED_OUT_OF_SEQUENCE = 10;
+
+	private final long sampleInterval;
+	private final AtomicInteger outOfSequenceCount = new AtomicInteger();
+
+	/**
+	 * Creates a trace, which does not log single events.
+	 */
+	public LoggingGenerationTrace() {
+		this(0L);
+	}
+
+	/**
+	 * @param sampleInterval
+	 *            every n-th event is logged at debug level; 0 if no single events are to be
+	 *            logged
+	 */
+	public LoggingGenerationTrace(final long sampleInterval) {
+		this.sampleInterval = sampleInterval;
+	}
+
+	@Override
+	public void assignmentStarted(final int assignmentIndex, final LoadCurveAssignment assignment, final double shift) {
+		if (log.isInfoEnabled()) {
+			StringBuilder targetList = new StringBuilder();
+			for (Target target : assignment.getTargets()) {
+				targetList.append(target.getName()).append(", ");
+			}
+			LoadCurve loadCurve = assignment.getLoadCurve();
+			log.info("Creating events according to loadCurve " + loadCurve.getName() +
+					"\n\tof operation " + assignment.getOperation().getName() +
+					"\n\tfor targets " + targetList + "\n\twith shift " + shift);
+			if (log.isDebugEnabled()) {
+				loadCurve.dump(log);
+			}
+		}
+	}
+
+	@Override
+	public void eventOutOfSequence(final int assignmentIndex, final int eventIndex, final double lastTime,
+			final double time) {
+		if (outOfSequenceCount.incrementAndGet() <= MAX_LOGGED_OUT_OF_SEQUENCE) {
+			log.error("Event in wrong sequence iEvent" + eventIndex + " of assignment " + assignmentIndex + ", lastTn "
+					+ lastTime + ", Tn " + time);
+		}
+	}
+
+	@Override
+	public void eventDistributed(final long eventNumber, final double time, final Operation operation,
+			final int clientIndex, final int processIndex) {
+		if (sampleInterval > 0L && eventNumber % sampleInterval == 0L && log.isDebugEnabled()) {
+			log.debug("Event " + eventNumber + ": time " + time + ", operation " + operation.getName() + ", client "
+					+ clientIndex + ", process " + processIndex);
+		}
+	}
+
+	@Override
+	public void generationFinished(final long numEvents, final double numericRelativeDifference,
+			final double[] clientResidua) {
+		log.info("Distributed " + numEvents + " events");
+		log.info("Numeric relative difference cumulatedWeightedNevent - totalWeightedNevent " + numericRelativeDifference);
+		for (int iClient = 0; iClient < clientResidua.length; iClient++) {
+			log.info("Residuum Client " + iClient + ": " + clientResidua[iClient]);
+		}
+		int outOfSequence = outOfSequenceCount.get();
+		if (outOfSequence > 0) {
+			log.error(outOfSequence + " events in wrong sequence");
+		}
+	}
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.generation;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.Lists.newArrayList;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mgmtp.perfload.loadprofiles.model.BaseLoadProfileEvent;
+import com.mgmtp.perfload.loadprofiles.model.LoadCurve;
+import com.mgmtp.perfload.loadprofiles.model.LoadCurveAssignment;
+import com.mgmtp.perfload.loadprofiles.model.LoadTestConfiguration;
+
+/**
+ * Writes an events file by generating consecutive time blocks in separate processes. A
+ * coordinator pass distributes the events up to the start of the last block without writing them
+ * and saves a {@link GenerationCheckpoint} at the start of each block. Each block is then created
+ * by a {@link GenerationJob} from its checkpoint, so that the blocks are independent and can be
+ * generated, formatted and written in parallel. The block files are concatenated to the events
+ * file, which is byte for byte the same as the one written by
+ * {@link EventDistributor#writeEventListForPerfLoadClientsToFile(File, String, java.util.Iterator)}
+ * for all events merged with the additional events.
+ * <p>
+ * The jobs are passed as files to a {@link JobRunner}. {@link #LOCAL_PROCESSES} runs each job in a
+ * JVM on the local machine, other runners may distribute them to a cluster, if the work directory
+ * is shared.
+ */
+public class MultiProcessEventGeneration {
+	private static final Logger log = LoggerFactory.getLogger(MultiProcessEventGeneration.class);
+
+	/**
+	 * Runs generation jobs.
+	 */
+	public interface JobRunner {
+		/**
+		 * Runs the jobs stored in the given files, each by calling {@link GenerationJob#main(String[])}
+		 * , and returns when all of them are finished.
+		 *
+		 * @throws IOException
+		 *             if a job fails
+		 */
+		void runJobs(List<File> jobFiles) throws IOException;
+	}
+
+	/**
+	 * Runs each job in a new JVM on the local machine with the class path of the current JVM. All
+	 * jobs run at the same time.
+	 */
+	public static final JobRunner LOCAL_PROCESSES = new JobRunner() {
+		@Override
+		public void runJobs(final List<File> jobFiles) throws IOException {
+			String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+			List<Process> processes = newArrayList();
+			List<File> logFiles = newArrayList();
+			try {
+				for (File jobFile : jobFiles) {
+					File logFile = new File(jobFile.getPath() + ".log");
+					ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+							GenerationJob.class.getName(), jobFile.getPath());
+					builder.redirectErrorStream(true);
+					builder.redirectOutput(logFile);
+					processes.add(builder.start());
+					logFiles.add(logFile);
+				}
+				for (int iJob = 0; iJob < processes.size(); iJob++) {
+					int exitValue = processes.get(iJob).waitFor();
+					if (exitValue != 0) {
+						throw new IOException("Generation job " + jobFiles.get(iJob) + " failed with exit value "
+								+ exitValue + ", see " + logFiles.get(iJob));
+					}
+				}
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for generation jobs");
+			} finally {
+				for (Process process : processes) {
+					process.destroy();
+				}
+			}
+			for (File logFile : logFiles) {
+				logFile.delete();
+			}
+		}
+	};
+
+	/**
+	 * Writes the events of the given configuration merged with the additional events to a file,
+	 * generating the given number of time blocks with about the same number of events in separate
+	 * processes.
+	 *
+	 * @param file
+	 *            The events file
+	 * @param headerLines
+	 *            the header lines of the file
+	 * @param loadTestConfiguration
+	 *            configuration data of the load test
+	 * @param additionalEvents
+	 *            the additional events in any order
+	 * @param numBlocks
+	 *            the number of time blocks and jobs
+	 * @param workDirectory
+	 *            the directory for the job files and the block files, which are deleted when the
+	 *            events file is complete
+	 * @param runner
+	 *            the runner of the jobs, e. g. {@link #LOCAL_PROCESSES}
+	 */
+	public static void writeEventFile(final File file, final String headerLines,
+			final LoadTestConfiguration loadTestConfiguration,
+			final Collection<? extends BaseLoadProfileEvent> additionalEvents, final int numBlocks,
+			final File workDirectory, final JobRunner runner) throws IOException {
+		checkArgument(numBlocks > 0, "numBlocks must be positive: %s", numBlocks);
+
+		// the block boundaries in hours, the checkpoints are created at the inner ones
+		double[] boundaries = getBlockBoundaries(loadTestConfiguration, numBlocks);
+
+		GenerationOptions options = new GenerationOptions();
+		options.setTrace(GenerationTrace.NONE);
+		double[] checkpointTimes = new double[numBlocks - 1];
+		System.arraycopy(boundaries, 1, checkpointTimes, 0, checkpointTimes.length);
+		List<GenerationCheckpoint> checkpoints = EventDistributor.createCheckpoints(loadTestConfiguration, options,
+				checkpointTimes);
+
+		int parallelism = Math.max(1, EventDistributor.DEFAULT_PARALLELISM / numBlocks);
+		workDirectory.mkdirs();
+		List<File> jobFiles = newArrayList();
+		List<File> blockFiles = newArrayList();
+		try {
+			for (int iBlock = 0; iBlock < numBlocks; iBlock++) {
+				double startTime = boundaries[iBlock];
+				double endTime = boundaries[iBlock + 1];
+				List<BaseLoadProfileEvent> blockEvents = newArrayList();
+				for (BaseLoadProfileEvent event : additionalEvents) {
+					if (event.getTime() >= startTime && event.getTime() < endTime) {
+						blockEvents.add(event);
+					}
+				}
+				File blockFile = new File(workDirectory, file.getName() + ".block" + iBlock);
+				File jobFile = new File(workDirectory, file.getName() + ".block" + iBlock + ".job");
+				blockFiles.add(blockFile);
+				jobFiles.add(jobFile);
+				new GenerationJob(loadTestConfiguration, blockEvents, iBlock > 0 ? checkpoints.get(iBlock - 1) : null,
+						Math.max(0., startTime), endTime, parallelism, blockFile).writeTo(jobFile);
+			}
+
+			log.info("Running {} generation jobs, block boundaries {}", numBlocks, Arrays.toString(boundaries));
+			runner.runJobs(jobFiles);
+
+			new TextEventFileWriter(file, headerLines).close();
+			FileOutputStream out = new FileOutputStream(file, true);
+			try {
+				FileChannel outChannel = out.getChannel();
+				for (File blockFile : blockFiles) {
+					FileInputStream in = new FileInputStream(blockFile);
+					try {
+						FileChannel inChannel = in.getChannel();
+						long size = inChannel.size();
+						long position = 0L;
+						while (position < size) {
+							position += inChannel.transferTo(position, size - position, outChannel);
+						}
+					} finally {
+						in.close();
+					}
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			for (File jobFile : jobFiles) {
+				jobFile.delete();
+			}
+			for (File blockFile : blockFiles) {
+				blockFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Divides the load test into blocks with the same expected number of events by inverting the
+	 * cumulated number of events of all load curves with a bisection.
+	 *
+	 * @return the boundaries of the blocks in hours, starting with negative and ending with
+	 *         positive infinity
+	 */
+	private static double[] getBlockBoundaries(final LoadTestConfiguration loadTestConfiguration, final int numBlocks) {
+		List<CompiledLoadCurve> loadCurves = newArrayList();
+		double duration = 0.;
+		double totalEvents = 0.;
+		for (LoadCurveAssignment assignment : loadTestConfiguration.getLoadCurveAssignments()) {
+			LoadCurve loadCurve = assignment.getLoadCurve();
+			if (!LoadCurveCalculator.timeUnit_hour.equals(loadCurve.getTimeUnit())) {
+				LoadCurveCalculator.transformToHours(loadCurve);
+			}
+			CompiledLoadCurve compiledLoadCurve = CompiledLoadCurve.compile(loadCurve);
+			loadCurves.add(compiledLoadCurve);
+			duration = Math.max(duration, compiledLoadCurve.getTimeValue(compiledLoadCurve.getNumPoints() - 1));
+			totalEvents += compiledLoadCurve.getNEvents();
+		}
+
+		double[] boundaries = new double[numBlocks + 1];
+		boundaries[0] = Double.NEGATIVE_INFINITY;
+		for (int iBlock = 1; iBlock < numBlocks; iBlock++) {
+			double events = totalEvents * iBlock / numBlocks;
+			double lower = boundaries[iBlock - 1] > 0. ? boundaries[iBlock - 1] : 0.;
+			double upper = duration;
+			for (int iteration = 0; iteration < 64 && lower < upper; iteration++) {
+				double t = (lower + upper) / 2.;
+				double eventsBefore = 0.;
+				for (CompiledLoadCurve loadCurve : loadCurves) {
+					eventsBefore += loadCurve.events(t);
+				}
+				if (eventsBefore < events) {
+					lower = t;
+				} else {
+					upper = t;
+				}
+			}
+			boundaries[iBlock] = upper;
+		}
+		boundaries[numBlocks] = Double.POSITIVE_INFINITY;
+		return boundaries;
+	}
+}
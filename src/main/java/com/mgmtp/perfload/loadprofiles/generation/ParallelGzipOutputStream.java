@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.generation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses the output in blocks of a fixed size, which are compressed in parallel into
+ * independent gzip members. The members are written in the order of the blocks, so the output is a
+ * valid gzip file consisting of concatenated members. The number of blocks being compressed is
+ * limited to twice the number of threads.
+ */
+class ParallelGzipOutputStream extends OutputStream {
+	private final OutputStream out;
+	private final int level;
+	private final int blockSize;
+	private final int maxPendingBlocks;
+	private final ExecutorService executor;
+	private final Queue<Future<byte[]>> pendingBlocks = new ArrayDeque<Future<byte[]>>();
+
+	private byte[] block;
+	private int blockLength;
+	private boolean membersWritten;
+	private boolean closed;
+
+	ParallelGzipOutputStream(final OutputStream out, final int level, final int parallelism, final int blockSize) {
+		this.out = out;
+		this.level = level;
+		this.blockSize = blockSize;
+		this.maxPendingBlocks = 2 * parallelism;
+		this.executor = Executors.newFixedThreadPool(parallelism);
+		this.block = new byte[blockSize];
+	}
+
+	@Override
+	public void write(final int b) throws IOException {
+		if (blockLength == blockSize) {
+			submitBlock();
+		}
+		block[blockLength++] = (byte) b;
+	}
+
+	@Override
+	public void write(final byte[] bytes, int offset, int length) throws IOException {
+		while (length > 0) {
+			if (blockLength == blockSize) {
+				submitBlock();
+			}
+			int n = Math.min(length, blockSize - blockLength);
+			System.arraycopy(bytes, offset, block, blockLength, n);
+			blockLength += n;
+			offset += n;
+			length -= n;
+		}
+	}
+
+	private void submitBlock() throws IOException {
+		final byte[] data = block;
+		final int length = blockLength;
+		pendingBlocks.add(executor.submit(new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws IOException {
+				return compress(data, length);
+			}
+		}));
+		block = new byte[blockSize];
+		blockLength = 0;
+
+		while (pendingBlocks.size() >= maxPendingBlocks) {
+			writeFirstPendingBlock();
+		}
+	}
+
+	private byte[] compress(final byte[] data, final int length) throws IOException {
+		ByteArrayOutputStream member = new ByteArrayOutputStream(length / 4 + 64);
+		GZIPOutputStream gzip = CompressionOptions.createGzipOutputStream(member, level);
+		gzip.write(data, 0, length);
+		gzip.close();
+		return member.toByteArray();
+	}
+
+	private void writeFirstPendingBlock() throws IOException {
+		try {
+			out.write(pendingBlocks.poll().get());
+			membersWritten = true;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while compressing");
+		} catch (ExecutionException ex) {
+			throw new IOException("Compressing a block failed", ex.getCause());
+		}
+	}
+
+	/**
+	 * Compresses and writes the remaining blocks and closes the underlying stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			// an empty output still has to be a valid gzip file
+			if (blockLength > 0 || !membersWritten && pendingBlocks.isEmpty()) {
+				submitBlock();
+			}
+			while (!pendingBlocks.isEmpty()) {
+				writeFirstPendingBlock();
+			}
+		} finally {
+			executor.shutdownNow();
+			out.close();
+		}
+	}
+}
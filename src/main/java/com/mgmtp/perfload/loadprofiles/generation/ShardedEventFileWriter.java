@@ -0,0 +1,453 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.generation;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Lists.newArrayList;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.io.IOUtils;
+
+import com.mgmtp.perfload.loadprofiles.model.BaseLoadProfileEvent;
+import com.mgmtp.perfload.loadprofiles.model.Client;
+import com.mgmtp.perfload.loadprofiles.model.LoadEvent;
+import com.mgmtp.perfload.loadprofiles.model.LoadTestConfiguration;
+import com.mgmtp.perfload.loadprofiles.model.MarkerEvent;
+import com.mgmtp.perfload.loadprofiles.model.Operation;
+import com.mgmtp.perfload.loadprofiles.model.Target;
+
+/**
+ * Writes load test events into one file per client or per daemon, so that each perfLoad client
+ * only has to read its own events. Each shard file has the text format described in
+ * {@link EventDistributor#writeEventListForPerfLoadClientsToFile(File, String, Iterable)} and
+ * contains the load events of its client or daemon and all markers in the order in which they are
+ * written. If {@link CompressionOptions} are given, each shard file is compressed as a single gzip
+ * member in its writer thread and gets the extension {@link CompressionOptions#FILE_EXTENSION}.
+ * <p>
+ * The events are collected in batches per shard. Full batches are written by a pool of writer
+ * threads, the batches of a shard one after the other. The number of batches is limited, so
+ * writing blocks, if the writer threads fall behind.
+ * <p>
+ * When the writer is closed, a manifest file {@code <baseName>.manifest} is written, which lists
+ * for each shard its id, the file name, the number of load events and the times of the first and
+ * the last load event in milliseconds (empty, if the shard has no load events).
+ * <p>
+ * A writer must be used by a single thread.
+ */
+public class ShardedEventFileWriter implements Closeable {
+
+	/**
+	 * The key of the events, by which they are split into shards.
+	 */
+	public static enum ShardKey {
+		/** One shard per client of the load test configuration, the id is the index of the client. */
+		CLIENT,
+		/** One shard per daemon id of the clients of the load test configuration. */
+		DAEMON
+	}
+
+	private static final int BATCH_SIZE = 1024;
+	private static final int SHARD_BUFFER_SIZE = 1 << 16;
+
+	private final File directory;
+	private final String baseName;
+	private final ShardKey shardKey;
+
+	private final Shard[] shards;
+	// index of the shard by client index or daemon id
+	private final Shard[] shardsById;
+	private final int[] daemonIdsByClient;
+
+	private final ExecutorService executor;
+	private final BlockingQueue<Batch> freeBatches;
+	private final int maxBatches;
+	private int numBatches;
+	private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+	private boolean closed;
+
+	/**
+	 * Creates the shard files and writes their header lines.
+	 *
+	 * @param directory
+	 *            the directory of the shard files
+	 * @param baseName
+	 *            the base name of the files; the shard files are named
+	 *            {@code <baseName>_client<id>.perfload} or {@code <baseName>_daemon<id>.perfload}
+	 * @param headerLines
+	 *            the header lines of each shard file
+	 * @param loadTestConfiguration
+	 *            the configuration defining the clients
+	 * @param shardKey
+	 *            the key of the shards
+	 * @param parallelism
+	 *            the number of writer threads
+	 */
+	public ShardedEventFileWriter(final File directory, final String baseName, final String headerLines,
+			final LoadTestConfiguration loadTestConfiguration, final ShardKey shardKey, final int parallelism)
+			throws IOException {
+		this(directory, baseName, headerLines, loadTestConfiguration, shardKey, parallelism, null);
+	}
+
+	/**
+	 * Creates the shard files and writes their header lines.
+	 *
+	 * @param directory
+	 *            the directory of the shard files
+	 * @param baseName
+	 *            the base name of the files; the shard files are named
+	 *            {@code <baseName>_client<id>.perfload} or {@code <baseName>_daemon<id>.perfload}
+	 * @param headerLines
+	 *            the header lines of each shard file
+	 * @param loadTestConfiguration
+	 *            the configuration defining the clients
+	 * @param shardKey
+	 *            the key of the shards
+	 * @param parallelism
+	 *            the number of writer threads
+	 * @param compression
+	 *            the options of the compression of the shard files or {@code null}, if the files
+	 *            are not to be compressed; the parallelism of the options is ignored
+	 */
+	public ShardedEventFileWriter(final File directory, final String baseName, final String headerLines,
+			final LoadTestConfiguration loadTestConfiguration, final ShardKey shardKey, final int parallelism,
+			final CompressionOptions compression) throws IOException {
+		checkArgument(parallelism > 0, "parallelism must be positive: %s", parallelism);
+		this.directory = directory;
+		this.baseName = baseName;
+		this.shardKey = shardKey;
+
+		List<Client> clients = loadTestConfiguration.getClients();
+		daemonIdsByClient = new int[clients.size()];
+		int maxId = clients.size() - 1;
+		for (int iClient = 0; iClient < clients.size(); iClient++) {
+			daemonIdsByClient[iClient] = clients.get(iClient).getDaemonId();
+			checkArgument(daemonIdsByClient[iClient] >= 0, "Negative daemon id: %s", daemonIdsByClient[iClient]);
+			if (shardKey == ShardKey.DAEMON) {
+				maxId = Math.max(maxId, daemonIdsByClient[iClient]);
+			}
+		}
+
+		shardsById = new Shard[maxId + 1];
+		List<Shard> shardList = newArrayList();
+		try {
+			for (int iClient = 0; iClient < clients.size(); iClient++) {
+				int id = shardKey == ShardKey.CLIENT ? iClient : daemonIdsByClient[iClient];
+				if (shardsById[id] == null) {
+					String fileName = baseName + "_" + shardKey.name().toLowerCase() + id + ".perfload"
+							+ (compression != null ? CompressionOptions.FILE_EXTENSION : "");
+					shardsById[id] = new Shard(id, fileName, new TextEventFileWriter(new File(directory, fileName),
+							String.valueOf(headerLines), SHARD_BUFFER_SIZE, compression, false));
+					shardList.add(shardsById[id]);
+				}
+			}
+		} catch (IOException ex) {
+			for (Shard shard : shardList) {
+				IOUtils.closeQuietly(shard.writer);
+			}
+			throw ex;
+		}
+		shards = shardList.toArray(new Shard[shardList.size()]);
+
+		// one batch per shard is filled, the others are waiting to be written
+		maxBatches = shards.length + 4 * parallelism;
+		freeBatches = new ArrayBlockingQueue<Batch>(maxBatches);
+		executor = Executors.newFixedThreadPool(parallelism);
+	}
+
+	/**
+	 * @return the ids of the shards in the order of the manifest
+	 */
+	public int[] getShardIds() {
+		int[] ids = new int[shards.length];
+		for (int i = 0; i < shards.length; i++) {
+			ids[i] = shards[i].id;
+		}
+		return ids;
+	}
+
+	/**
+	 * @return the manifest file, which is written when the writer is closed
+	 */
+	public File getManifestFile() {
+		return new File(directory, baseName + ".manifest");
+	}
+
+	/**
+	 * Writes a load event to the shard of its client or daemon or a marker to all shards. Other
+	 * events are ignored.
+	 */
+	public void write(final BaseLoadProfileEvent event) throws IOException {
+		if (event instanceof LoadEvent) {
+			LoadEvent loadEvent = (LoadEvent) event;
+			writeLoadEvent(loadEvent.getTime(), loadEvent.getOperation(), loadEvent.getTarget(), loadEvent.getClientId(),
+					loadEvent.getDaemonId(), loadEvent.getProcessId());
+		} else if (event instanceof MarkerEvent) {
+			writeMarker((MarkerEvent) event);
+		}
+	}
+
+	/**
+	 * Writes a load event to the shard of its client or daemon.
+	 *
+	 * @param time
+	 *            the start time of the event in hours
+	 * @param clientId
+	 *            the index of the client in the load test configuration
+	 * @param processId
+	 *            the index of the process starting with 0
+	 */
+	public void writeLoadEvent(final double time, final Operation operation, final Target target, final int clientId,
+			final int daemonId, final int processId) throws IOException {
+		int id = shardKey == ShardKey.CLIENT ? clientId : daemonId;
+		Shard shard = id >= 0 && id < shardsById.length ? shardsById[id] : null;
+		checkArgument(shard != null, "No shard for client %s with daemon id %s", clientId, daemonId);
+
+		Batch batch = shard.currentBatch();
+		batch.add(time, operation, target, daemonId, processId, null);
+		shard.count(Math.round(time * 60. * 60. * 1000.));
+		if (batch.isFull()) {
+			shard.submitCurrentBatch();
+		}
+	}
+
+	/**
+	 * Writes a marker to all shards.
+	 */
+	public void writeMarker(final MarkerEvent marker) throws IOException {
+		for (Shard shard : shards) {
+			Batch batch = shard.currentBatch();
+			batch.add(marker.getTime(), null, null, 0, 0, marker);
+			if (batch.isFull()) {
+				shard.submitCurrentBatch();
+			}
+		}
+	}
+
+	private Batch acquireBatch() throws IOException {
+		checkState(!closed, "The writer is closed");
+		checkFailure();
+		Batch batch = freeBatches.poll();
+		if (batch == null) {
+			if (numBatches < maxBatches) {
+				numBatches++;
+				batch = new Batch();
+			} else {
+				try {
+					batch = freeBatches.take();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting for the writer threads");
+				}
+				checkFailure();
+			}
+		}
+		return batch;
+	}
+
+	private void checkFailure() throws IOException {
+		Throwable th = failure.get();
+		if (th != null) {
+			throw new IOException("Writing a shard failed", th);
+		}
+	}
+
+	/**
+	 * Writes the remaining events, closes the shard files and writes the manifest.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		try {
+			for (Shard shard : shards) {
+				if (failure.get() == null && shard.batch != null && shard.batch.size > 0) {
+					shard.submitCurrentBatch();
+				} else if (shard.batch != null) {
+					freeBatches.add(shard.batch);
+					shard.batch = null;
+				}
+			}
+			// all batches are returned after they have been written
+			for (int i = 0; i < numBatches; i++) {
+				freeBatches.take();
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the writer threads");
+		} finally {
+			closed = true;
+			executor.shutdown();
+			for (Shard shard : shards) {
+				try {
+					shard.writer.close();
+				} catch (IOException ex) {
+					failure.compareAndSet(null, ex);
+				}
+			}
+		}
+		checkFailure();
+		writeManifest();
+	}
+
+	private void writeManifest() throws IOException {
+		PrintWriter pw = null;
+		try {
+			pw = new PrintWriter(getManifestFile(), "UTF-8");
+			pw.println("# shards by " + shardKey.name().toLowerCase());
+			pw.println("# id;file;events;firstTime;lastTime");
+			for (Shard shard : shards) {
+				pw.println(shard.id + ";" + shard.fileName + ";" + shard.numEvents + ";"
+						+ (shard.numEvents > 0 ? shard.firstTime + ";" + shard.lastTime : ";"));
+			}
+			if (pw.checkError()) {
+				throw new IOException("Writing the manifest failed: " + getManifestFile());
+			}
+		} finally {
+			IOUtils.closeQuietly(pw);
+		}
+	}
+
+	/**
+	 * The events of a shard, which are written in a writer thread. The batches of a shard are
+	 * queued and written by at most one thread at a time.
+	 */
+	private class Shard implements Runnable {
+		final int id;
+		final String fileName;
+		final TextEventFileWriter writer;
+		final Queue<Batch> queue = new ConcurrentLinkedQueue<Batch>();
+		final AtomicBoolean scheduled = new AtomicBoolean();
+
+		// accessed by the thread writing the events only
+		Batch batch;
+		long numEvents;
+		long firstTime;
+		long lastTime;
+
+		Shard(final int id, final String fileName, final TextEventFileWriter writer) {
+			this.id = id;
+			this.fileName = fileName;
+			this.writer = writer;
+		}
+
+		Batch currentBatch() throws IOException {
+			if (batch == null) {
+				batch = acquireBatch();
+			}
+			return batch;
+		}
+
+		void count(final long time) {
+			if (numEvents == 0) {
+				firstTime = time;
+			}
+			lastTime = time;
+			numEvents++;
+		}
+
+		void submitCurrentBatch() {
+			queue.add(batch);
+			batch = null;
+			schedule();
+		}
+
+		private void schedule() {
+			if (scheduled.compareAndSet(false, true)) {
+				executor.execute(this);
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				Batch queuedBatch;
+				while ((queuedBatch = queue.poll()) != null) {
+					try {
+						if (failure.get() == null) {
+							queuedBatch.writeTo(writer);
+						}
+					} catch (Throwable th) {
+						failure.compareAndSet(null, th);
+					} finally {
+						queuedBatch.size = 0;
+						freeBatches.add(queuedBatch);
+					}
+				}
+			} finally {
+				scheduled.set(false);
+				if (!queue.isEmpty()) {
+					schedule();
+				}
+			}
+		}
+	}
+
+	/**
+	 * A batch of events of a shard. A marker is stored with {@code null} as operation and target.
+	 */
+	private static class Batch {
+		final double[] times = new double[BATCH_SIZE];
+		final Operation[] operations = new Operation[BATCH_SIZE];
+		final Target[] targets = new Target[BATCH_SIZE];
+		final int[] daemonIds = new int[BATCH_SIZE];
+		final int[] processIds = new int[BATCH_SIZE];
+		final MarkerEvent[] markers = new MarkerEvent[BATCH_SIZE];
+		int size;
+
+		void add(final double time, final Operation operation, final Target target, final int daemonId,
+				final int processId, final MarkerEvent marker) {
+			times[size] = time;
+			operations[size] = operation;
+			targets[size] = target;
+			daemonIds[size] = daemonId;
+			processIds[size] = processId;
+			markers[size] = marker;
+			size++;
+		}
+
+		boolean isFull() {
+			return size == BATCH_SIZE;
+		}
+
+		void writeTo(final TextEventFileWriter writer) throws IOException {
+			for (int i = 0; i < size; i++) {
+				if (markers[i] != null) {
+					writer.writeMarker(markers[i]);
+				} else {
+					writer.writeLoadEvent(times[i], operations[i], targets[i], daemonIds[i], processIds[i]);
+				}
+			}
+			Arrays.fill(markers, 0, size, null);
+		}
+	}
+}
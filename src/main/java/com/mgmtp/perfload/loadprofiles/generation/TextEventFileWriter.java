@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.generation;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+import com.mgmtp.perfload.loadprofiles.model.BaseLoadProfileEvent;
+import com.mgmtp.perfload.loadprofiles.model.LoadEvent;
+import com.mgmtp.perfload.loadprofiles.model.MarkerEvent;
+import com.mgmtp.perfload.loadprofiles.model.Operation;
+import com.mgmtp.perfload.loadprofiles.model.Target;
+
+/**
+ * Writes load test events in the text format described in
+ * {@link EventDistributor#writeEventListForPerfLoadClientsToFile(File, String, Iterable)}. The
+ * lines are encoded directly into a reusable byte buffer, which is written to a
+ * {@link FileChannel} when it is full. The UTF-8 bytes of the names of operations and targets are
+ * encoded once per instance, numbers are converted to ASCII digits without creating strings. The
+ * output is the same as the one of a {@link java.io.PrintWriter} using UTF-8 and the platform
+ * line separator. Optionally the output is compressed according to the given
+ * {@link CompressionOptions}.
+ * <p>
+ * A writer is not thread-safe.
+ */
+public class TextEventFileWriter implements Closeable {
+	private static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+	private static final byte SEPARATOR = ';';
+	private static final byte[] MARKER = "[[marker]]".getBytes(Charsets.UTF_8);
+	private static final byte[] LINE_SEPARATOR = System.getProperty("line.separator").getBytes(Charsets.UTF_8);
+
+	private final Map<Operation, byte[]> operationNames = new IdentityHashMap<Operation, byte[]>();
+	private final Map<Target, byte[]> targetNames = new IdentityHashMap<Target, byte[]>();
+
+	private final FileOutputStream fos;
+	// the channel of the file, if the output is not compressed, otherwise the compressing stream
+	private final FileChannel channel;
+	private final OutputStream out;
+	private final byte[] buffer;
+	private final ByteBuffer byteBuffer;
+	private final byte[] digits = new byte[20];
+	private int position;
+	private boolean closed;
+
+	/**
+	 * Creates the file and writes the header lines.
+	 *
+	 * @param file
+	 *            the events file
+	 * @param headerLines
+	 *            the header lines of the file
+	 */
+	public TextEventFileWriter(final File file, final String headerLines) throws IOException {
+		this(file, headerLines, null);
+	}
+
+	/**
+	 * Creates the file and writes the header lines.
+	 *
+	 * @param file
+	 *            the events file
+	 * @param headerLines
+	 *            the header lines of the file
+	 * @param compression
+	 *            the options of the compression of the file or {@code null}, if the file is not to
+	 *            be compressed
+	 */
+	public TextEventFileWriter(final File file, final String headerLines, final CompressionOptions compression)
+			throws IOException {
+		this(file, String.valueOf(headerLines), DEFAULT_BUFFER_SIZE, compression, true);
+	}
+
+	/**
+	 * Creates the file and writes the header lines using a buffer of the given size, e. g. a
+	 * smaller one if many files are written at the same time.
+	 *
+	 * @param file
+	 *            the events file
+	 * @param headerLines
+	 *            the header lines or {@code null}, if the file is a part of an events file
+	 *            without header
+	 * @param bufferSize
+	 *            the size of the buffer in bytes, at least 64 bytes are used
+	 * @param compression
+	 *            the options of the compression of the file or {@code null}, if the file is not to
+	 *            be compressed
+	 * @param parallelCompression
+	 *            {@code false}, if the output is to be compressed in the writing thread regardless
+	 *            of the parallelism of the compression options
+	 */
+	TextEventFileWriter(final File file, final String headerLines, final int bufferSize,
+			final CompressionOptions compression, final boolean parallelCompression) throws IOException {
+		buffer = new byte[Math.max(bufferSize, 64)];
+		byteBuffer = ByteBuffer.wrap(buffer);
+		fos = new FileOutputStream(file);
+		if (compression == null) {
+			channel = fos.getChannel();
+			out = null;
+		} else {
+			channel = null;
+			try {
+				out = parallelCompression ? compression.compress(fos) : compression.compressSerially(fos);
+			} catch (IOException ex) {
+				fos.close();
+				throw ex;
+			}
+		}
+		if (headerLines != null) {
+			writeBytes(headerLines.getBytes(Charsets.UTF_8));
+			writeBytes(LINE_SEPARATOR);
+		}
+	}
+
+	/**
+	 * Writes a load event or a marker. Other events are ignored.
+	 */
+	public void write(final BaseLoadProfileEvent event) throws IOException {
+		if (event instanceof LoadEvent) {
+			LoadEvent loadEvent = (LoadEvent) event;
+			writeLoadEvent(loadEvent.getTime(), loadEvent.getOperation(), loadEvent.getTarget(), loadEvent.getDaemonId(),
+					loadEvent.getProcessId());
+		} else if (event instanceof MarkerEvent) {
+			writeMarker((MarkerEvent) event);
+		}
+	}
+
+	/**
+	 * Writes the line of a load event.
+	 *
+	 * @param time
+	 *            the start time of the event in hours
+	 * @param processId
+	 *            the index of the process starting with 0
+	 */
+	public void writeLoadEvent(final double time, final Operation operation, final Target target, final int daemonId,
+			final int processId) throws IOException {
+		byte[] operationName = operationNames.get(operation);
+		if (operationName == null) {
+			operationName = operation.getName().getBytes(Charsets.UTF_8);
+			operationNames.put(operation, operationName);
+		}
+		byte[] targetName = targetNames.get(target);
+		if (targetName == null) {
+			targetName = target.getName().getBytes(Charsets.UTF_8);
+			targetNames.put(target, targetName);
+		}
+
+		// convert time from hours to milliseconds
+		writeLong(Math.round(time * 60. * 60. * 1000.));
+		writeByte(SEPARATOR);
+		writeBytes(operationName);
+		writeByte(SEPARATOR);
+		writeBytes(targetName);
+		writeByte(SEPARATOR);
+		writeLong(daemonId);
+		writeByte(SEPARATOR);
+		writeLong(processId + 1);
+		writeBytes(LINE_SEPARATOR);
+	}
+
+	/**
+	 * Writes the line of a marker.
+	 */
+	public void writeMarker(final MarkerEvent marker) throws IOException {
+		writeLong(Math.round(marker.getTime() * 60. * 60. * 1000.));
+		writeByte(SEPARATOR);
+		writeBytes(MARKER);
+		writeByte(SEPARATOR);
+		writeBytes(String.valueOf(marker.getName()).getBytes(Charsets.UTF_8));
+		writeByte(SEPARATOR);
+		writeBytes(String.valueOf(marker.getType()).getBytes(Charsets.UTF_8));
+		writeByte(SEPARATOR);
+		writeBytes(LINE_SEPARATOR);
+	}
+
+	private void writeByte(final byte b) throws IOException {
+		if (position == buffer.length) {
+			flush();
+		}
+		buffer[position++] = b;
+	}
+
+	private void writeBytes(final byte[] bytes) throws IOException {
+		if (bytes.length > buffer.length - position) {
+			flush();
+			if (bytes.length > buffer.length) {
+				writeFully(ByteBuffer.wrap(bytes));
+				return;
+			}
+		}
+		System.arraycopy(bytes, 0, buffer, position, bytes.length);
+		position += bytes.length;
+	}
+
+	private void writeLong(final long value) throws IOException {
+		if (value == Long.MIN_VALUE) {
+			writeBytes(Long.toString(value).getBytes(Charsets.UTF_8));
+			return;
+		}
+		if (digits.length + 1 > buffer.length - position) {
+			flush();
+		}
+		if (value < 0L) {
+			buffer[position++] = '-';
+		}
+		long remainder = Math.abs(value);
+		int numDigits = 0;
+		do {
+			digits[numDigits++] = (byte) ('0' + remainder % 10L);
+			remainder /= 10L;
+		} while (remainder > 0L);
+		while (numDigits > 0) {
+			buffer[position++] = digits[--numDigits];
+		}
+	}
+
+	private void flush() throws IOException {
+		checkState(!closed, "The writer is closed");
+		if (out != null) {
+			out.write(buffer, 0, position);
+		} else {
+			byteBuffer.clear();
+			byteBuffer.limit(position);
+			writeFully(byteBuffer);
+		}
+		position = 0;
+	}
+
+	private void writeFully(final ByteBuffer bytes) throws IOException {
+		if (out != null) {
+			out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+			return;
+		}
+		while (bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+	}
+
+	/**
+	 * Writes the remaining lines and closes the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		try {
+			flush();
+			if (out != null) {
+				out.close();
+			}
+		} finally {
+			closed = true;
+			fos.close();
+		}
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.generation;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newLinkedHashMap;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.primitives.Ints;
+
+/**
+ * Spreads amounts onto slots according to their weights, e. g. events onto targets according to
+ * their load part or onto clients according to their relative power. Each call of
+ * {@link #next(double)} adds the given amount to the total amount and assigns it to the slot with
+ * the highest deficit, i. e. the highest difference between its desired amount (total amount times
+ * weight) and the amount assigned to it so far. If several slots have the same deficit, the first
+ * one is taken. This results in a smooth weighted round-robin sequence.
+ * <p>
+ * All slots with the same weight have the same desired amount, so the one with the highest deficit
+ * among them is the one with the lowest assigned amount. The slots are therefore grouped by weight
+ * and the slots of each group are kept in a {@link DeficitHeap}. Selecting a slot takes
+ * O(number of distinct weights + log(number of slots)). The selected slots are exactly the same as
+ * the ones of scanning all deficits for the first maximum.
+ * <p>
+ * A scheduler is not thread-safe.
+ */
+public class WeightedScheduler {
+	private final double[] weights;
+	private double totalAmount;
+
+	private final double[] groupWeights;
+	private final int[][] groupSlots;
+	private final DeficitHeap[] groupHeaps;
+	private final int[] groupOfSlot;
+	private final int[] memberOfSlot;
+
+	/**
+	 * @param weights
+	 *            the weights of the slots; the weights need not be normalized
+	 */
+	public WeightedScheduler(final double[] weights) {
+		this.weights = weights.clone();
+
+		// group the slots by weight, the slots of a group are in ascending order
+		Map<Long, List<Integer>> slotsByWeight = newLinkedHashMap();
+		for (int iSlot = 0; iSlot < weights.length; iSlot++) {
+			Long key = Double.doubleToLongBits(weights[iSlot]);
+			List<Integer> groupMembers = slotsByWeight.get(key);
+			if (groupMembers == null) {
+				groupMembers = newArrayList();
+				slotsByWeight.put(key, groupMembers);
+			}
+			groupMembers.add(iSlot);
+		}
+
+		int numGroups = slotsByWeight.size();
+		groupWeights = new double[numGroups];
+		groupSlots = new int[numGroups][];
+		groupHeaps = new DeficitHeap[numGroups];
+		groupOfSlot = new int[weights.length];
+		memberOfSlot = new int[weights.length];
+		int iGroup = 0;
+		for (List<Integer> groupMembers : slotsByWeight.values()) {
+			groupWeights[iGroup] = weights[groupMembers.get(0)];
+			groupSlots[iGroup] = Ints.toArray(groupMembers);
+			groupHeaps[iGroup] = new DeficitHeap(groupMembers.size());
+			for (int iMember = 0; iMember < groupMembers.size(); iMember++) {
+				groupOfSlot[groupMembers.get(iMember)] = iGroup;
+				memberOfSlot[groupMembers.get(iMember)] = iMember;
+			}
+			iGroup++;
+		}
+	}
+
+	/**
+	 * Assigns an amount of 1.
+	 *
+	 * @return the index of the slot the amount is assigned to
+	 */
+	public int next() {
+		return next(1.);
+	}
+
+	/**
+	 * Adds the given amount to the total amount and assigns it to the slot with the highest
+	 * deficit.
+	 *
+	 * @param amount
+	 *            the amount to be assigned
+	 * @return the index of the slot the amount is assigned to
+	 */
+	public int next(final double amount) {
+		checkState(weights.length > 0, "There are no slots to assign the amount to");
+		totalAmount += amount;
+
+		// the slot with the highest deficit of each group is a candidate
+		int selectedSlot = -1;
+		double deficitMax = 0.;
+		for (int iGroup = 0; iGroup < groupWeights.length; iGroup++) {
+			double desiredAmount = totalAmount * groupWeights[iGroup];
+			int iMember = groupHeaps[iGroup].selectHighestDeficit(desiredAmount);
+			int iSlot = groupSlots[iGroup][iMember];
+			double deficit = desiredAmount - groupHeaps[iGroup].getLoad(iMember);
+			if (selectedSlot < 0 || deficit > deficitMax || deficit == deficitMax && iSlot < selectedSlot) {
+				deficitMax = deficit;
+				selectedSlot = iSlot;
+			}
+		}
+		groupHeaps[groupOfSlot[selectedSlot]].addLoad(memberOfSlot[selectedSlot], amount);
+		return selectedSlot;
+	}
+
+	/**
+	 * Sets the total amount and the amounts assigned to the slots, e. g. in order to continue from
+	 * a {@link GenerationCheckpoint}. The following slots are the same as if the amounts had been
+	 * assigned one by one.
+	 *
+	 * @param newTotalAmount
+	 *            the sum of all amounts assigned so far
+	 * @param assignedAmounts
+	 *            the amounts assigned to the slots so far
+	 */
+	public void restore(final double newTotalAmount, final double[] assignedAmounts) {
+		checkArgument(assignedAmounts.length == weights.length, "Expected %s assigned amounts, got %s", weights.length,
+				assignedAmounts.length);
+		totalAmount = newTotalAmount;
+		for (int iGroup = 0; iGroup < groupHeaps.length; iGroup++) {
+			double[] groupLoads = new double[groupSlots[iGroup].length];
+			for (int iMember = 0; iMember < groupLoads.length; iMember++) {
+				groupLoads[iMember] = assignedAmounts[groupSlots[iGroup][iMember]];
+			}
+			groupHeaps[iGroup].setLoads(groupLoads);
+		}
+	}
+
+	/**
+	 * @return the number of slots
+	 */
+	public int size() {
+		return weights.length;
+	}
+
+	/**
+	 * @return the sum of all amounts assigned so far
+	 */
+	public double getTotalAmount() {
+		return totalAmount;
+	}
+
+	/**
+	 * @return the desired amount of the given slot, i. e. the total amount times its weight
+	 */
+	public double getDesiredAmount(final int slot) {
+		return totalAmount * weights[slot];
+	}
+
+	/**
+	 * @return the amount assigned to the given slot so far
+	 */
+	public double getAssignedAmount(final int slot) {
+		return groupHeaps[groupOfSlot[slot]].getLoad(memberOfSlot[slot]);
+	}
+
+	/**
+	 * @return the difference between the desired and the assigned amount of the given slot
+	 */
+	public double getDeficit(final int slot) {
+		return getDesiredAmount(slot) - getAssignedAmount(slot);
+	}
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.model;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact, column oriented store for load events. Instead of one {@link LoadEvent} object per
+ * event, the values of all events are kept in primitive arrays: the time in hours, the indices
+ * of operation and target within the dictionaries of the table and the ids of client, daemon and
+ * process. The arrays are allocated in segments of fixed size, so the table can grow without
+ * copying the events already stored.
+ * <p>
+ * The time is stored as double in hours like in {@link LoadEvent}, so that the values written to
+ * event files are exactly the same.
+ */
+public class EventTable {
+
+	private static final int SEGMENT_SHIFT = 16;
+	private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+	private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+	private final List<Operation> operations = newArrayList();
+	private final List<Target> targets = newArrayList();
+	private final Map<Operation, Integer> operationIndices = newHashMap();
+	private final Map<Target, Integer> targetIndices = newHashMap();
+
+	private double[][] times = new double[0][];
+	private short[][] operationIdx = new short[0][];
+	private short[][] targetIdx = new short[0][];
+	private int[][] clientIds = new int[0][];
+	private int[][] daemonIds = new int[0][];
+	private int[][] processIds = new int[0][];
+
+	private int size;
+
+	/**
+	 * Creates an empty table with empty dictionaries.
+	 */
+	public EventTable() {
+		// nothing to do
+	}
+
+	/**
+	 * Creates an empty table with the given dictionaries. The indices of operations and targets
+	 * are their positions in the given lists.
+	 */
+	public EventTable(final List<Operation> operations, final List<Target> targets) {
+		for (Operation operation : operations) {
+			indexOf(operation);
+		}
+		for (Target target : targets) {
+			indexOf(target);
+		}
+	}
+
+	/**
+	 * Creates an empty table for the events of the given load test configuration. The operation
+	 * indices are the positions in {@link LoadTestConfiguration#getOperations()}, the targets are
+	 * numbered in the order of their first occurrence in the load curve assignments.
+	 */
+	public static EventTable forConfiguration(final LoadTestConfiguration loadTestConfiguration) {
+		EventTable table = new EventTable();
+		for (Operation operation : loadTestConfiguration.getOperations()) {
+			table.indexOf(operation);
+		}
+		for (LoadCurveAssignment assignment : loadTestConfiguration.getLoadCurveAssignments()) {
+			table.indexOf(assignment.getOperation());
+			for (Target target : assignment.getTargets()) {
+				table.indexOf(target);
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * Creates a table containing the given events in the given order.
+	 */
+	public static EventTable of(final Iterable<LoadEvent> events) {
+		EventTable table = new EventTable();
+		for (LoadEvent event : events) {
+			table.add(event);
+		}
+		return table;
+	}
+
+	/**
+	 * Returns the index of the given operation in the dictionary of this table. The operation is
+	 * added to the dictionary if necessary.
+	 */
+	public int indexOf(final Operation operation) {
+		Integer index = operationIndices.get(operation);
+		if (index == null) {
+			checkState(operations.size() <= Short.MAX_VALUE, "Too many operations: %s", operations.size());
+			index = operations.size();
+			operations.add(operation);
+			operationIndices.put(operation, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the index of the given target in the dictionary of this table. The target is added
+	 * to the dictionary if necessary.
+	 */
+	public int indexOf(final Target target) {
+		Integer index = targetIndices.get(target);
+		if (index == null) {
+			checkState(targets.size() <= Short.MAX_VALUE, "Too many targets: %s", targets.size());
+			index = targets.size();
+			targets.add(target);
+			targetIndices.put(target, index);
+		}
+		return index;
+	}
+
+	/**
+	 * @return the operation dictionary of this table
+	 */
+	public List<Operation> getOperations() {
+		return Collections.unmodifiableList(operations);
+	}
+
+	/**
+	 * @return the target dictionary of this table
+	 */
+	public List<Target> getTargets() {
+		return Collections.unmodifiableList(targets);
+	}
+
+	/**
+	 * Appends an event.
+	 *
+	 * @param time
+	 *            the start time in hours
+	 * @param operationIndex
+	 *            the index of the operation in the dictionary of this table
+	 * @param targetIndex
+	 *            the index of the target in the dictionary of this table
+	 * @param clientId
+	 *            the client id
+	 * @param daemonId
+	 *            the daemon id
+	 * @param processId
+	 *            the zero-based process id
+	 */
+	public void add(final double time, final int operationIndex, final int targetIndex, final int clientId,
+			final int daemonId, final int processId) {
+		checkElementIndex(operationIndex, operations.size(), "operationIndex");
+		checkElementIndex(targetIndex, targets.size(), "targetIndex");
+
+		int segment = size >>> SEGMENT_SHIFT;
+		if (segment == times.length) {
+			addSegment();
+		}
+		int offset = size & SEGMENT_MASK;
+		times[segment][offset] = time;
+		operationIdx[segment][offset] = (short) operationIndex;
+		targetIdx[segment][offset] = (short) targetIndex;
+		clientIds[segment][offset] = clientId;
+		daemonIds[segment][offset] = daemonId;
+		processIds[segment][offset] = processId;
+		size++;
+	}
+
+	/**
+	 * Appends the values of the given event.
+	 */
+	public void add(final LoadEvent event) {
+		add(event.getTime(), indexOf(event.getOperation()), indexOf(event.getTarget()), event.getClientId(),
+				event.getDaemonId(), event.getProcessId());
+	}
+
+	/**
+	 * Appends the given row of another table. Operation and target are looked up in the
+	 * dictionary of this table.
+	 */
+	public void add(final EventTable other, final int row) {
+		add(other.getTime(row), indexOf(other.getOperation(row)), indexOf(other.getTarget(row)), other.getClientId(row),
+				other.getDaemonId(row), other.getProcessId(row));
+	}
+
+	private void addSegment() {
+		int segments = times.length + 1;
+		times = Arrays.copyOf(times, segments);
+		operationIdx = Arrays.copyOf(operationIdx, segments);
+		targetIdx = Arrays.copyOf(targetIdx, segments);
+		clientIds = Arrays.copyOf(clientIds, segments);
+		daemonIds = Arrays.copyOf(daemonIds, segments);
+		processIds = Arrays.copyOf(processIds, segments);
+
+		int segment = segments - 1;
+		times[segment] = new double[SEGMENT_SIZE];
+		operationIdx[segment] = new short[SEGMENT_SIZE];
+		targetIdx[segment] = new short[SEGMENT_SIZE];
+		clientIds[segment] = new int[SEGMENT_SIZE];
+		daemonIds[segment] = new int[SEGMENT_SIZE];
+		processIds[segment] = new int[SEGMENT_SIZE];
+	}
+
+	/**
+	 * Removes all events. The dictionaries and the allocated segments are kept.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * @return the number of events in this table
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return {@code true}, if this table contains no events
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return the start time of the event in the given row in hours
+	 */
+	public double getTime(final int row) {
+		checkElementIndex(row, size);
+		return times[row >>> SEGMENT_SHIFT][row & SEGMENT_MASK];
+	}
+
+	public int getOperationIndex(final int row) {
+		checkElementIndex(row, size);
+		return operationIdx[row >>> SEGMENT_SHIFT][row & SEGMENT_MASK];
+	}
+
+	public Operation getOperation(final int row) {
+		return operations.get(getOperationIndex(row));
+	}
+
+	public int getTargetIndex(final int row) {
+		checkElementIndex(row, size);
+		return targetIdx[row >>> SEGMENT_SHIFT][row & SEGMENT_MASK];
+	}
+
+	public Target getTarget(final int row) {
+		return targets.get(getTargetIndex(row));
+	}
+
+	public int getClientId(final int row) {
+		checkElementIndex(row, size);
+		return clientIds[row >>> SEGMENT_SHIFT][row & SEGMENT_MASK];
+	}
+
+	public int getDaemonId(final int row) {
+		checkElementIndex(row, size);
+		return daemonIds[row >>> SEGMENT_SHIFT][row & SEGMENT_MASK];
+	}
+
+	/**
+	 * @return the zero-based process id of the event in the given row
+	 */
+	public int getProcessId(final int row) {
+		checkElementIndex(row, size);
+		return processIds[row >>> SEGMENT_SHIFT][row & SEGMENT_MASK];
+	}
+}
@@ -17,8 +17,7 @@ package com.mgmtp.perfload.loadprofiles.ui;
 
 import static com.google.common.collect.Collections2.filter;
 import static com.google.common.collect.Collections2.transform;
-import static com.google.common.collect.Lists.newArrayListWithCapacity;
-import static com.google.common.collect.Lists.newArrayListWithExpectedSize;
+import static com.google.common.collect.Maps.newHashMap;
 import static com.google.common.collect.Sets.newHashSet;
 import static com.google.common.io.Resources.getResource;
 import static java.lang.Math.max;
@@ -34,7 +33,9 @@ import java.awt.Dimension;
 import java.awt.EventQueue;
 import java.awt.Font;
 import java.awt.Frame;
+import java.awt.Paint;
 import java.awt.Rectangle;
+import java.awt.Shape;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.ComponentAdapter;
@@ -48,13 +49,16 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Date;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.imageio.ImageIO;
 import javax.inject.Inject;
@@ -80,6 +84,8 @@ import javax.swing.JToolBar;
 import javax.swing.JTree;
 import javax.swing.KeyStroke;
 import javax.swing.SwingConstants;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import javax.swing.UIManager;
 import javax.swing.WindowConstants;
 import javax.swing.border.CompoundBorder;
@@ -99,19 +105,19 @@ import javax.xml.bind.JAXBException;
 import net.miginfocom.swing.MigLayout;
 
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.lang3.text.StrBuilder;
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartPanel;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.annotations.XYPolygonAnnotation;
 import org.jfree.chart.axis.NumberAxis;
+import org.jfree.chart.axis.ValueAxis;
+import org.jfree.chart.event.AxisChangeEvent;
+import org.jfree.chart.event.AxisChangeListener;
+import org.jfree.chart.plot.DrawingSupplier;
 import org.jfree.chart.plot.IntervalMarker;
 import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
-import org.jfree.data.UnknownKeyException;
-import org.jfree.data.xy.XYSeries;
-import org.jfree.data.xy.XYSeriesCollection;
 import org.jfree.ui.Layer;
 import org.jfree.ui.RectangleAnchor;
 import org.jfree.ui.RectangleInsets;
@@ -124,21 +130,20 @@ import ca.odell.glazedlists.gui.TableFormat;
 import ca.odell.glazedlists.swing.EventComboBoxModel;
 import ca.odell.glazedlists.swing.EventTableModel;
 
+import com.google.common.base.Throwables;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
-import com.mgmtp.perfload.loadprofiles.generation.EventDistributor;
-import com.mgmtp.perfload.loadprofiles.generation.LoadCurveCalculator;
+import com.mgmtp.perfload.loadprofiles.generation.GenerationMonitor;
+import com.mgmtp.perfload.loadprofiles.generation.GenerationOptions;
+import com.mgmtp.perfload.loadprofiles.generation.GenerationProgressListener;
+import com.mgmtp.perfload.loadprofiles.generation.GenerationReport;
 import com.mgmtp.perfload.loadprofiles.model.BaseLoadProfileEvent;
 import com.mgmtp.perfload.loadprofiles.model.Client;
 import com.mgmtp.perfload.loadprofiles.model.CurveAssignment;
-import com.mgmtp.perfload.loadprofiles.model.LoadCurve;
-import com.mgmtp.perfload.loadprofiles.model.LoadCurveAssignment;
-import com.mgmtp.perfload.loadprofiles.model.LoadEvent;
-import com.mgmtp.perfload.loadprofiles.model.LoadEventComparator;
 import com.mgmtp.perfload.loadprofiles.model.LoadTestConfiguration;
-import com.mgmtp.perfload.loadprofiles.model.MarkerEvent;
 import com.mgmtp.perfload.loadprofiles.model.Operation;
 import com.mgmtp.perfload.loadprofiles.model.Target;
 import com.mgmtp.perfload.loadprofiles.ui.action.FileExitAction;
@@ -162,9 +167,11 @@ import com.mgmtp.perfload.loadprofiles.ui.component.OneTimePanel;
 import com.mgmtp.perfload.loadprofiles.ui.component.SaveAccessoryPanel;
 import com.mgmtp.perfload.loadprofiles.ui.component.StairsPanel;
 import com.mgmtp.perfload.loadprofiles.ui.ctrl.ConfigController;
+import com.mgmtp.perfload.loadprofiles.ui.ctrl.EventFileExport;
 import com.mgmtp.perfload.loadprofiles.ui.ctrl.LoadProfilesController;
 import com.mgmtp.perfload.loadprofiles.ui.dialog.AboutDialog;
 import com.mgmtp.perfload.loadprofiles.ui.dialog.ModalResult;
+import com.mgmtp.perfload.loadprofiles.ui.dialog.ProgressDialog;
 import com.mgmtp.perfload.loadprofiles.ui.dialog.SettingsDialog;
 import com.mgmtp.perfload.loadprofiles.ui.model.EventsTreeModel;
 import com.mgmtp.perfload.loadprofiles.ui.model.LoadProfileConfig;
@@ -173,16 +180,13 @@ import com.mgmtp.perfload.loadprofiles.ui.model.Marker;
 import com.mgmtp.perfload.loadprofiles.ui.model.OneTime;
 import com.mgmtp.perfload.loadprofiles.ui.model.SelectionDecorator;
 import com.mgmtp.perfload.loadprofiles.ui.model.Stairs;
-import com.mgmtp.perfload.loadprofiles.ui.util.EventToLoadEventFunction;
+import com.mgmtp.perfload.loadprofiles.ui.util.DecimatedXYDataset;
 import com.mgmtp.perfload.loadprofiles.ui.util.ExceptionHandler;
-import com.mgmtp.perfload.loadprofiles.ui.util.GraphPointsCalculator;
-import com.mgmtp.perfload.loadprofiles.ui.util.IsLoadEventPredicate;
+import com.mgmtp.perfload.loadprofiles.ui.util.GraphPointsCache;
 import com.mgmtp.perfload.loadprofiles.ui.util.IsMarkerPredicate;
 import com.mgmtp.perfload.loadprofiles.ui.util.IsOneTimePredicate;
-import com.mgmtp.perfload.loadprofiles.ui.util.IsStairsPredicate;
 import com.mgmtp.perfload.loadprofiles.ui.util.LoadProfileEntityToMarkerFunction;
 import com.mgmtp.perfload.loadprofiles.ui.util.LoadProfileEntityToOneTimeFunction;
-import com.mgmtp.perfload.loadprofiles.ui.util.LoadProfileEntityToStairsFunction;
 import com.mgmtp.perfload.loadprofiles.ui.util.LoadProfileException;
 import com.mgmtp.perfload.loadprofiles.ui.util.ModelUtils;
 import com.mgmtp.perfload.loadprofiles.ui.util.Point;
@@ -190,7 +194,6 @@ import com.mgmtp.perfload.loadprofiles.ui.util.SelectionDecoratorCheckedPredicat
 import com.mgmtp.perfload.loadprofiles.ui.util.SelectionDecoratorToClientFunction;
 import com.mgmtp.perfload.loadprofiles.ui.util.SelectionDecoratorToTargetFunction;
 import com.mgmtp.perfload.loadprofiles.ui.util.SwingUtils;
-import com.mgmtp.perfload.loadprofiles.util.PlotFileCreator;
 
 /**
  * Main application frame.
@@ -221,6 +224,15 @@ public class AppFrame extends JFrame {
 	private ChartPanel chartPanel;
 
 	private JFreeChart chart;
+	private DecimatedXYDataset dataset;
+	/** The paints and shapes of the operations, which must not change with the index of their series. */
+	private final Map<String, Paint> seriesPaints = newHashMap();
+	private final Map<String, Shape> seriesShapes = newHashMap();
+	private GraphPointsCache graphPointsCache;
+	private Timer graphTimer;
+	private GraphWorker graphWorker;
+	private final ExecutorService graphExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+			.setNameFormat("graph-update").setDaemon(true).build());
 	private LoadProfileEntityPanel<? extends LoadProfileEntity> activeLoadProfileEntityPanel;
 	private TreePath activeLeafPath;
 
@@ -335,6 +347,14 @@ public class AppFrame extends JFrame {
 		initComponents();
 		initModels();
 		cardLayout.show(pnlCard, "none");
+
+		graphTimer = new Timer(configController.getGraphDebounceMillis(), new ActionListener() {
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				startGraphWorker();
+			}
+		});
+		graphTimer.setRepeats(false);
 		{
 			chartPanel = new ChartPanel((JFreeChart) null);
 			contentPane.add(chartPanel, "cell 0 2 2 1,grow");
@@ -674,6 +694,7 @@ public class AppFrame extends JFrame {
 		oneTimePanel.setCboOperationModel(new EventComboBoxModel<Operation>(operations));
 
 		loadProfilesController.setTreeItems(treeItems);
+		graphPointsCache = new GraphPointsCache(treeItems);
 		loadProfilesController.setOperations(operations);
 		loadProfilesController.setTargets(targets);
 		loadProfilesController.setClients(clients);
@@ -681,49 +702,207 @@ public class AppFrame extends JFrame {
 		oneTimePanel.setTblTargetModel(new EventTableModel<SelectionDecorator>(oneTimeDecoratedTargets, tableFormat));
 	}
 
+	/**
+	 * Schedules an update of the chart with the load profile entities. Quick edits are coalesced:
+	 * the update starts when no further update has been requested for the debounce delay. The
+	 * stairways are copied on the event dispatch thread, their points are calculated in the
+	 * background and the series are patched on the event dispatch thread again. An update, which
+	 * is still being calculated, is cancelled by the next one.
+	 */
 	private void updateGraph() {
-		XYSeriesCollection dataset = new XYSeriesCollection();
-		Collection<Stairs> loadProfileEnities = transform(filter(loadProfilesController.getTreeItems(), new IsStairsPredicate()),
-				new LoadProfileEntityToStairsFunction());
-		GraphPointsCalculator calc = new GraphPointsCalculator();
-		Map<String, List<Point>> pointsMap = calc.calculatePoints(loadProfileEnities);
-
-		for (Entry<String, List<Point>> entry : pointsMap.entrySet()) {
-			final XYSeries series = new XYSeries(entry.getKey());
-			for (Point point : entry.getValue()) {
-				series.add(point.getX(), point.getY());
+		if (chart == null) {
+			createChart();
+		}
+		chart.setTitle(txtName.getText());
+		graphTimer.restart();
+	}
+
+	/**
+	 * Updates the chart immediately on the event dispatch thread, e. g. before it is saved as
+	 * image.
+	 */
+	private void updateGraphNow() {
+		graphTimer.stop();
+		cancelGraphWorker();
+		graphPointsCache.update();
+		patchGraph();
+	}
+
+	private void startGraphWorker() {
+		cancelGraphWorker();
+		GraphPointsCache.Update update = graphPointsCache.prepareUpdate();
+		if (update.isEmpty()) {
+			// only one-time events or markers have changed
+			update.calculate();
+			graphPointsCache.apply(update);
+			patchGraph();
+		} else {
+			graphWorker = new GraphWorker(update);
+			graphExecutor.execute(graphWorker);
+		}
+	}
+
+	private void cancelGraphWorker() {
+		if (graphWorker != null) {
+			GraphWorker worker = graphWorker;
+			graphWorker = null;
+			if (worker.cancel(true)) {
+				graphPointsCache.discard(worker.update);
+			} else {
+				// the calculation is complete, but the worker is not done on this thread yet
+				finishGraphWorker(worker);
 			}
-			dataset.addSeries(series);
 		}
+	}
+
+	private void finishGraphWorker(final GraphWorker worker) {
+		try {
+			worker.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			graphPointsCache.discard(worker.update);
+			return;
+		} catch (ExecutionException ex) {
+			graphPointsCache.discard(worker.update);
+			throw Throwables.propagate(ex.getCause());
+		}
+		graphPointsCache.apply(worker.update);
+		patchGraph();
+	}
 
-		String name = txtName.getText();
-		chart = ChartFactory.createXYLineChart(name, "t (min)", "Executions (1/h)", dataset, PlotOrientation.VERTICAL, true,
-				true, false);
+	/**
+	 * Replaces the series of the operations, whose stairways have changed, with the points from
+	 * the {@link GraphPointsCache}. The annotations of the one-time events and the markers are
+	 * added again, if they or the series have changed.
+	 */
+	private void patchGraph() {
+		Map<String, List<Point>> pointsMap = graphPointsCache.getPointsMap();
+		for (String operationName : graphPointsCache.getChangedOperations()) {
+			List<Point> points = pointsMap.get(operationName);
+			if (points != null) {
+				dataset.setSeries(operationName, points);
+			} else if (dataset.indexOf(operationName) >= 0) {
+				dataset.setSeries(operationName, Collections.<Point>emptyList());
+			}
+		}
+
+		if (graphPointsCache.isAnnotationsChanged() || !graphPointsCache.getChangedOperations().isEmpty()) {
+			updateAnnotations();
+		}
+		updateViewport();
+	}
 
+	/**
+	 * Decimates the series for the visible domain range and the width of the chart. Shapes are
+	 * only drawn for the points, if all points are shown.
+	 */
+	private void updateViewport() {
 		XYPlot plot = chart.getXYPlot();
+		ValueAxis domainAxis = plot.getDomainAxis();
+		int width = (int) chartPanel.getScreenDataArea().getWidth();
+		if (width <= 0) {
+			// the chart has not been drawn yet
+			width = chartPanel.getWidth();
+		}
+		dataset.setViewport(domainAxis.isAutoRange() ? null : domainAxis.getRange(), width);
+
+		XYLineAndShapeRenderer renderer = (XYLineAndShapeRenderer) plot.getRenderer();
+		boolean shapesVisible = !dataset.isDecimated();
+		if (renderer.getBaseShapesVisible() != shapesVisible) {
+			renderer.setBaseShapesVisible(shapesVisible);
+		}
+	}
+
+	/**
+	 * Calculates the points of changed operations in the background. The cache is only accessed
+	 * on the event dispatch thread, before the worker is started and when it is done.
+	 */
+	private final class GraphWorker extends SwingWorker<Void, Void> {
+		private final GraphPointsCache.Update update;
+
+		GraphWorker(final GraphPointsCache.Update update) {
+			this.update = update;
+		}
 
-		XYLineAndShapeRenderer renderer = new XYLineAndShapeRenderer();
-		plot.setRenderer(renderer);
+		@Override
+		protected Void doInBackground() {
+			update.calculate();
+			return null;
+		}
+
+		@Override
+		protected void done() {
+			// superseded workers have already been cancelled or finished
+			if (graphWorker == this) {
+				graphWorker = null;
+				finishGraphWorker(this);
+			}
+		}
+	}
+
+	private void createChart() {
+		dataset = new DecimatedXYDataset();
+		chart = ChartFactory.createXYLineChart(txtName.getText(), "t (min)", "Executions (1/h)", dataset,
+				PlotOrientation.VERTICAL, true, true, false);
+
+		XYPlot plot = chart.getXYPlot();
+		plot.setRenderer(new XYLineAndShapeRenderer());
 
 		NumberAxis rangeAxis = (NumberAxis) plot.getRangeAxis();
 		rangeAxis.setStandardTickUnits(NumberAxis.createIntegerTickUnits());
 		NumberAxis domainAxis = (NumberAxis) plot.getDomainAxis();
 		domainAxis.setStandardTickUnits(NumberAxis.createIntegerTickUnits());
 
-		double maxX = 0;
+		// zooming and resizing change the decimation of the series
+		domainAxis.addChangeListener(new AxisChangeListener() {
+			@Override
+			public void axisChanged(final AxisChangeEvent event) {
+				updateViewport();
+			}
+		});
+		chartPanel.addComponentListener(new ComponentAdapter() {
+			@Override
+			public void componentResized(final ComponentEvent e) {
+				updateViewport();
+			}
+		});
+
+		chartPanel.setChart(chart);
+	}
 
+	private void updateAnnotations() {
+		XYPlot plot = chart.getXYPlot();
+		plot.clearAnnotations();
+		plot.clearDomainMarkers();
+
+		XYLineAndShapeRenderer renderer = (XYLineAndShapeRenderer) plot.getRenderer();
+		NumberAxis rangeAxis = (NumberAxis) plot.getRangeAxis();
+		NumberAxis domainAxis = (NumberAxis) plot.getDomainAxis();
+		domainAxis.setAutoRange(true);
+
+		// series without points are only kept for the colors of one-time events
+		Set<String> oneTimeOperationNames = newHashSet();
 		for (OneTime oneTime : getOneTimes()) {
-			String key = oneTime.operation.getName();
-			XYSeries series;
-			try {
+			oneTimeOperationNames.add(oneTime.operation.getName());
+		}
+		for (int i = dataset.getSeriesCount() - 1; i >= 0; i--) {
+			if (dataset.getFullItemCount(i) == 0 && !oneTimeOperationNames.contains(dataset.getSeriesKey(i))) {
+				dataset.removeSeries(i);
+			}
+		}
+
+		for (String key : oneTimeOperationNames) {
+			if (dataset.indexOf(key) < 0) {
 				// We need the series in order to retrieve paint and stroke
-				series = dataset.getSeries(key);
-			} catch (UnknownKeyException ex) {
-				series = new XYSeries(key);
-				dataset.addSeries(series);
+				dataset.setSeries(key, Collections.<Point>emptyList());
 			}
+		}
+		updateSeriesStyles();
+
+		double maxX = 0;
 
-			int index = dataset.getSeriesIndex(key);
+		for (OneTime oneTime : getOneTimes()) {
+			int index = dataset.indexOf(oneTime.operation.getName());
 			BasicStroke stroke = (BasicStroke) renderer.lookupSeriesStroke(index);
 			stroke = new BasicStroke(stroke.getLineWidth() + 1f, stroke.getEndCap(), stroke.getLineJoin(),
 					stroke.getMiterLimit(), stroke.getDashArray(), stroke.getDashPhase());
@@ -761,7 +940,28 @@ public class AppFrame extends JFrame {
 		if (domainAxis.getUpperBound() < maxX) {
 			domainAxis.setUpperBound(maxX * 1.05);
 		}
-		chartPanel.setChart(chart);
+	}
+
+	/**
+	 * Sets the paint and shape of each series by the operation, because the renderer looks them
+	 * up by the index of the series, which changes when a series is inserted or removed. An
+	 * operation keeps the paint and shape it has got from the drawing supplier first.
+	 */
+	private void updateSeriesStyles() {
+		XYPlot plot = chart.getXYPlot();
+		XYLineAndShapeRenderer renderer = (XYLineAndShapeRenderer) plot.getRenderer();
+		DrawingSupplier supplier = plot.getDrawingSupplier();
+		for (int i = 0; i < dataset.getSeriesCount(); i++) {
+			String key = (String) dataset.getSeriesKey(i);
+			Paint paint = seriesPaints.get(key);
+			if (paint == null) {
+				paint = supplier.getNextPaint();
+				seriesPaints.put(key, paint);
+				seriesShapes.put(key, supplier.getNextShape());
+			}
+			renderer.setSeriesPaint(i, paint, false);
+			renderer.setSeriesShape(i, seriesShapes.get(key), false);
+		}
 	}
 
 	/**
@@ -904,6 +1104,7 @@ public class AppFrame extends JFrame {
 				setTitle(APP_TITLE + " - [" + loadProfileConfigFile + "]");
 				dirty = false;
 
+				updateGraphNow();
 				BufferedImage image = chart.createBufferedImage(chartPanel.getWidth(), chartPanel.getHeight());
 				ImageIO.write(image, "png", pngFile);
 			} catch (JAXBException ex) {
@@ -1029,97 +1230,132 @@ public class AppFrame extends JFrame {
 				LoadTestConfiguration ltc = loadProfilesController.createLoadTestConfiguration(lpc, getSelectedTargets(),
 						getSelectedClients());
 
-				List<LoadCurveAssignment> loadCurveAssignments = ltc.getLoadCurveAssignments();
-				Set<Operation> operations = newHashSet();
-				int caCount = loadCurveAssignments.size();
-
-				double maxTime = 0; // max time for histogram creation
-
-				List<LoadCurve> loadCurves = newArrayListWithCapacity(caCount);
-				for (LoadCurveAssignment loadCurveAssignment : loadCurveAssignments) {
-					LoadCurve loadCurve = loadCurveAssignment.getLoadCurve();
-					loadCurves.add(loadCurve);
-					operations.add(loadCurveAssignment.getOperation());
-					double[] timeValues = loadCurve.getTimeValues();
-					maxTime = max(maxTime, timeValues[timeValues.length - 1]);
-				}
-
-				EventDistributor.addScaledLoadCurvesToAssignments(ltc, loadCurves);
-
-				List<LoadEvent> clientEventList = EventDistributor.createClientEventList(ltc);
-				List<BaseLoadProfileEvent> events = newArrayListWithExpectedSize(clientEventList.size());
+				SaveAccessoryPanel sap = (SaveAccessoryPanel) fc.getAccessory();
 
 				// One time and marker events are added separately
+				List<BaseLoadProfileEvent> additionalEvents = loadProfilesController.createAdditionalEvents();
+
+				EventFileExport export = new EventFileExport(file, EventFileExport.createHeaderLines(
+						loadProfileConfigFile.getName(), txtName.getText()), ltc, additionalEvents);
+				export.setEventDistributionPlots(sap.isEventDistriChecked());
+				export.setOperationHistograms(sap.isOperationHistogramChecked());
+				export.setClientLoadHistograms(sap.isClientLoadHistrogramChecked());
+
+				// The events are generated and written in the background, the modal progress
+				// dialog keeps the UI responsive and allows to cancel the export.
+				final ExportWorker worker = new ExportWorker(export);
+				final ProgressDialog dialog = new ProgressDialog(this, "Exporting " + file.getName(), new Runnable() {
+					@Override
+					public void run() {
+						worker.requestCancel();
+					}
+				});
+				worker.setDialog(dialog);
+				worker.execute();
+				dialog.setVisible(true);
 
-				for (OneTime oneTime : getOneTimes()) {
-					double startTimeInHours = oneTime.t0 / 60d;
-
-					// We must add one event per target
-					for (Target target : oneTime.targets) {
-						LoadEvent event = new LoadEvent(startTimeInHours, oneTime.getOperation());
-						event.setProcessId(0); // 1 added later to make it zero-based
-						event.setDaemonId(1);
-						event.setTarget(target);
-						clientEventList.add(event);
+				GenerationReport report;
+				try {
+					report = worker.get();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while exporting " + file);
+				} catch (ExecutionException ex) {
+					Throwable cause = ex.getCause();
+					if (cause instanceof CancellationException) {
+						// the export has deleted the files written so far
+						JOptionPane.showMessageDialog(this, "The export has been cancelled.", "Export",
+								JOptionPane.INFORMATION_MESSAGE);
+						return;
 					}
+					Throwables.propagateIfPossible(cause, IOException.class);
+					throw Throwables.propagate(cause);
 				}
+				showGenerationReport(report, GenerationReport.getReportFile(file));
+			}
+		}
+	}
 
-				events.addAll(clientEventList);
-
-				for (Marker marker : getMarkers()) {
-					double time = marker.left / 60d;
-					MarkerEvent event = new MarkerEvent(marker.name, time, MarkerEvent.Type.left);
-					events.add(event);
-
-					time = marker.right / 60d;
-					event = new MarkerEvent(marker.name, time, MarkerEvent.Type.right);
-					events.add(event);
-				}
+	/**
+	 * Generates and writes the events of an export in a background thread. The progress of the
+	 * generation is passed to the progress dialog, which is closed when the export is done. The
+	 * export is cancelled through the {@link GenerationMonitor}, which is checked before each event
+	 * and between the plot files.
+	 */
+	private final class ExportWorker extends SwingWorker<GenerationReport, String> {
+		private final EventFileExport export;
 
-				Collections.sort(events, new LoadEventComparator());
+		private final GenerationMonitor monitor = new GenerationMonitor();
+		private ProgressDialog dialog;
 
-				StrBuilder sb = new StrBuilder();
-				sb.appendln("# Created: " + new Date());
-				sb.appendln("# Load Profile Config File: " + loadProfileConfigFile.getName());
-				sb.append("# Load Profile Name: " + txtName.getText());
+		ExportWorker(final EventFileExport export) {
+			this.export = export;
+		}
 
-				EventDistributor.writeEventListForPerfLoadClientsToFile(file, sb.toString(), events);
+		/**
+		 * Requests the cancellation of the export, which stops before the next event or file.
+		 */
+		void requestCancel() {
+			monitor.cancel();
+		}
 
-				// Create additional histogram file if selected
-				dir = file.getParentFile();
-				final String baseName = FilenameUtils.getBaseName(file.getName());
-				int numClients = ltc.getClients().size();
-				SaveAccessoryPanel sap = (SaveAccessoryPanel) fc.getAccessory();
-				Collection<LoadEvent> loadEvents = transform(filter(clientEventList, new IsLoadEventPredicate()),
-						new EventToLoadEventFunction());
-
-				if (sap.isEventDistriChecked()) {
-					for (int i = 0; i < numClients; ++i) {
-						for (LoadCurve loadCurve : loadCurves) {
-							File f = new File(dir, baseName + "-event-distri-client-" + i + "-" + loadCurve.getName() + ".csv");
-							PlotFileCreator.createPlot(f, loadEvents, loadCurve, i, LoadCurveCalculator.timeUnit_minute);
-						}
+		void setDialog(final ProgressDialog progressDialog) {
+			this.dialog = progressDialog;
+			addPropertyChangeListener(new PropertyChangeListener() {
+				@Override
+				public void propertyChange(final PropertyChangeEvent evt) {
+					if ("progress".equals(evt.getPropertyName())) {
+						dialog.setProgress((Integer) evt.getNewValue(), 100L);
 					}
 				}
+			});
+		}
 
-				if (sap.isOperationHistogramChecked()) {
-					for (Operation operation : operations) {
-						String opName = operation.getName();
-						File f = new File(dir, baseName + "-histogram-operation-" + opName + ".csv");
-						PlotFileCreator.createOperationHistogram(f, loadEvents, opName, (int) maxTime * 2, 0., maxTime,
-								LoadCurveCalculator.timeUnit_minute);
+		@Override
+		protected GenerationReport doInBackground() throws IOException {
+			GenerationOptions options = new GenerationOptions();
+			options.setProgressListener(new GenerationProgressListener() {
+				@Override
+				public void progressChanged(final long eventsDistributed, final long expectedEvents) {
+					setProgress(expectedEvents > 0L ? (int) Math.min(100L, eventsDistributed * 100L / expectedEvents)
+							: 0);
+					if (eventsDistributed == expectedEvents) {
+						publish("Writing files...");
 					}
 				}
+			});
 
-				if (sap.isClientLoadHistrogramChecked()) {
-					for (int i = 0; i < numClients; i++) {
-						File f = new File(dir, baseName + "-histogram-client-load-" + i + ".csv");
-						PlotFileCreator.createClientHistogram(f, loadEvents, i, (int) maxTime * 2, 0., maxTime,
-								LoadCurveCalculator.timeUnit_minute);
-					}
-				}
+			// The monitor exposes the progress as MBean while the events are written.
+			options.setMonitor(monitor);
+			monitor.register(export.getFile().getName());
+			try {
+				publish("Generating events...");
+				return export.run(options);
+			} finally {
+				monitor.unregister();
 			}
 		}
+
+		@Override
+		protected void process(final List<String> chunks) {
+			dialog.setStatus(chunks.get(chunks.size() - 1));
+		}
+
+		@Override
+		protected void done() {
+			dialog.dispose();
+		}
+	}
+
+	/**
+	 * Shows the summary of a generation report in a message dialog.
+	 */
+	private void showGenerationReport(final GenerationReport report, final File reportFile) {
+		JTextArea taReport = new JTextArea(report.toString() + "\n\nReport written to " + reportFile.getName());
+		taReport.setEditable(false);
+		taReport.setFont(new Font(Font.MONOSPACED, Font.PLAIN, taReport.getFont().getSize()));
+		JOptionPane.showMessageDialog(this, new JScrollPane(taReport), "Generation Report",
+				JOptionPane.INFORMATION_MESSAGE);
 	}
 
 	/**
@@ -1147,6 +1383,7 @@ public class AppFrame extends JFrame {
 							loadProfilesController.getTargets(), true);
 					loadProfilesController.updateTreeItems();
 					expandTree();
+					updateGraph();
 
 					tblClients.repaint();
 					tblTargets.repaint();
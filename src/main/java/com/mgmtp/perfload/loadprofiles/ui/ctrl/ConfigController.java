@@ -63,6 +63,8 @@ import com.mgmtp.perfload.loadprofiles.ui.util.LoadProfileException;
 public class ConfigController {
 	private final Logger log = LoggerFactory.getLogger(getClass());
 
+	private static final int DEFAULT_GRAPH_DEBOUNCE_MILLIS = 200;
+
 	private String activeSettingsFile;
 	private Set<String> availableSettingsFiles;
 	private Settings activeSettings;
@@ -255,6 +257,22 @@ public class ConfigController {
 		}
 	}
 
+	/**
+	 * @return the delay in milliseconds, by which the load profile graph is updated after the last
+	 *         of several quick edits ({@code graph.debounceMillis}, default: 200)
+	 */
+	public int getGraphDebounceMillis() {
+		String debounceMillis = getAppProperties().getProperty("graph.debounceMillis");
+		if (debounceMillis != null) {
+			try {
+				return Math.max(0, Integer.parseInt(debounceMillis.trim()));
+			} catch (NumberFormatException ex) {
+				log.warn("Could not read graph debounce delay from properties. Using default.");
+			}
+		}
+		return DEFAULT_GRAPH_DEBOUNCE_MILLIS;
+	}
+
 	public String getLookAndFeelClassName() {
 		String lnfClassName = getAppProperties().getProperty("lnf.className");
 		if (isBlank(lnfClassName)) {
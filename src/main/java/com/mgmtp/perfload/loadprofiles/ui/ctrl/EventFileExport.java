@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.ui.ctrl;
+
+import static com.google.common.collect.Collections2.filter;
+import static com.google.common.collect.Collections2.transform;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
+import static com.google.common.collect.Sets.newHashSet;
+import static java.lang.Math.max;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.text.StrBuilder;
+
+import com.mgmtp.perfload.loadprofiles.generation.EventDistributor;
+import com.mgmtp.perfload.loadprofiles.generation.GenerationMonitor;
+import com.mgmtp.perfload.loadprofiles.generation.GenerationOptions;
+import com.mgmtp.perfload.loadprofiles.generation.GenerationReport;
+import com.mgmtp.perfload.loadprofiles.generation.LoadCurveCalculator;
+import com.mgmtp.perfload.loadprofiles.model.BaseLoadProfileEvent;
+import com.mgmtp.perfload.loadprofiles.model.EventTable;
+import com.mgmtp.perfload.loadprofiles.model.LoadCurve;
+import com.mgmtp.perfload.loadprofiles.model.LoadCurveAssignment;
+import com.mgmtp.perfload.loadprofiles.model.LoadEvent;
+import com.mgmtp.perfload.loadprofiles.model.LoadTestConfiguration;
+import com.mgmtp.perfload.loadprofiles.model.Operation;
+import com.mgmtp.perfload.loadprofiles.ui.util.EventToLoadEventFunction;
+import com.mgmtp.perfload.loadprofiles.ui.util.IsLoadEventPredicate;
+import com.mgmtp.perfload.loadprofiles.util.PlotFileCreator;
+
+/**
+ * Generates the events of a load test configuration and writes the events file for perfLoad
+ * together with the selected plot and histogram files and the {@link GenerationReport} as JSON.
+ * The export does not depend on Swing, so that it is shared by the editor and the headless batch
+ * generator.
+ */
+public class EventFileExport {
+
+	private final File file;
+	private final String headerLines;
+	private final LoadTestConfiguration ltc;
+	private final List<BaseLoadProfileEvent> additionalEvents;
+
+	private boolean eventDistributionPlots;
+	private boolean operationHistograms;
+	private boolean clientLoadHistograms;
+
+	/**
+	 * @param file
+	 *            the events file, the plot files are created in the same directory
+	 * @param headerLines
+	 *            the comment lines at the top of the events file
+	 * @param ltc
+	 *            the load test configuration, whose assignments are scaled by the export
+	 * @param additionalEvents
+	 *            the one-time and marker events
+	 */
+	public EventFileExport(final File file, final String headerLines, final LoadTestConfiguration ltc,
+			final List<BaseLoadProfileEvent> additionalEvents) {
+		this.file = file;
+		this.headerLines = headerLines;
+		this.ltc = ltc;
+		this.additionalEvents = additionalEvents;
+	}
+
+	/**
+	 * Creates the comment lines at the top of an events file.
+	 *
+	 * @param configFileName
+	 *            the name of the load profile config file
+	 * @param loadProfileName
+	 *            the name of the load profile
+	 */
+	public static String createHeaderLines(final String configFileName, final String loadProfileName) {
+		StrBuilder sb = new StrBuilder();
+		sb.appendln("# Created: " + new Date());
+		sb.appendln("# Load Profile Config File: " + configFileName);
+		sb.append("# Load Profile Name: " + loadProfileName);
+		return sb.toString();
+	}
+
+	/**
+	 * @return the events file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @param eventDistributionPlots
+	 *            {@code true} to create an event distribution plot per client and load curve
+	 */
+	public void setEventDistributionPlots(final boolean eventDistributionPlots) {
+		this.eventDistributionPlots = eventDistributionPlots;
+	}
+
+	/**
+	 * @param operationHistograms
+	 *            {@code true} to create a histogram per operation
+	 */
+	public void setOperationHistograms(final boolean operationHistograms) {
+		this.operationHistograms = operationHistograms;
+	}
+
+	/**
+	 * @param clientLoadHistograms
+	 *            {@code true} to create a load histogram per client
+	 */
+	public void setClientLoadHistograms(final boolean clientLoadHistograms) {
+		this.clientLoadHistograms = clientLoadHistograms;
+	}
+
+	/**
+	 * Generates and writes the events and the selected plot files. If the options have a
+	 * {@link GenerationMonitor}, the export is cancelled with a {@link CancellationException}
+	 * before the next event or plot file, and the monitor is finished or failed at the end. The
+	 * files written by an export, which is cancelled or fails, are deleted including the report.
+	 *
+	 * @param options
+	 *            the options of the generation; a report is recorded, if the options have none
+	 * @return the finished report, which is also written next to the events file
+	 */
+	public GenerationReport run(final GenerationOptions options) throws IOException {
+		List<LoadCurveAssignment> loadCurveAssignments = ltc.getLoadCurveAssignments();
+		Set<Operation> operations = newHashSet();
+		int caCount = loadCurveAssignments.size();
+
+		double maxTime = 0; // max time for histogram creation
+
+		List<LoadCurve> loadCurves = newArrayListWithCapacity(caCount);
+		for (LoadCurveAssignment loadCurveAssignment : loadCurveAssignments) {
+			LoadCurve loadCurve = loadCurveAssignment.getLoadCurve();
+			loadCurves.add(loadCurve);
+			operations.add(loadCurveAssignment.getOperation());
+			double[] timeValues = loadCurve.getTimeValues();
+			maxTime = max(maxTime, timeValues[timeValues.length - 1]);
+		}
+
+		EventDistributor.addScaledLoadCurvesToAssignments(ltc, loadCurves);
+
+		// The report records where the time of the generation goes.
+		GenerationReport report = options.getReport();
+		if (report == null) {
+			report = new GenerationReport();
+			options.setReport(report);
+		}
+		GenerationMonitor monitor = options.getMonitor();
+		if (monitor != null) {
+			monitor.addOutputFile(file);
+		}
+
+		// the files to be deleted, if the export is cancelled or fails
+		List<File> writtenFiles = newArrayList();
+		boolean completed = false;
+		try {
+			// The events are only collected in memory if they are needed for plots.
+			// Otherwise they are created, distributed and written in one pass.
+			if (eventDistributionPlots || operationHistograms || clientLoadHistograms) {
+				// If plots are requested, the events are kept in a compact event table.
+				EventTable clientEventTable = EventDistributor.createClientEventTable(ltc, options);
+				report.startPhase(GenerationReport.Phase.WRITING);
+				writtenFiles.add(file);
+				EventDistributor.writeEventTableForPerfLoadClientsToFile(file, headerLines, clientEventTable,
+						additionalEvents);
+
+				// the plots include the one-time events
+				for (LoadEvent event : transform(filter(additionalEvents, new IsLoadEventPredicate()),
+						new EventToLoadEventFunction())) {
+					clientEventTable.add(event);
+				}
+				createPlotFiles(clientEventTable, loadCurves, operations, ltc.getClients().size(), maxTime, monitor,
+						writtenFiles);
+			} else {
+				Iterator<LoadEvent> clientEvents = EventDistributor.createClientEventIterator(ltc, options);
+				report.startPhase(GenerationReport.Phase.WRITING);
+				// the events are generated while the file is written
+				writtenFiles.add(file);
+				EventDistributor.writeEventListForPerfLoadClientsToFile(file, headerLines,
+						EventDistributor.mergeWithAdditionalEvents(clientEvents, additionalEvents));
+			}
+
+			report.finish();
+			File reportFile = GenerationReport.getReportFile(file);
+			writtenFiles.add(reportFile);
+			report.writeJson(reportFile);
+			if (monitor != null) {
+				monitor.finish();
+			}
+			completed = true;
+		} finally {
+			if (!completed) {
+				for (File writtenFile : writtenFiles) {
+					FileUtils.deleteQuietly(writtenFile);
+				}
+				if (monitor != null) {
+					monitor.fail();
+				}
+			}
+		}
+		return report;
+	}
+
+	/**
+	 * Creates the selected plot and histogram files next to the events file. Stops with a
+	 * {@link CancellationException} before the next file, if the export has been cancelled.
+	 *
+	 * @param writtenFiles
+	 *            the files written by the export, to which the plot files are added
+	 */
+	private void createPlotFiles(final EventTable loadEvents, final List<LoadCurve> loadCurves,
+			final Set<Operation> operations, final int numClients, final double maxTime, final GenerationMonitor monitor,
+			final List<File> writtenFiles) throws IOException {
+		File dir = file.getParentFile();
+		final String baseName = FilenameUtils.getBaseName(file.getName());
+
+		if (eventDistributionPlots) {
+			for (int i = 0; i < numClients; ++i) {
+				for (LoadCurve loadCurve : loadCurves) {
+					File f = new File(dir, baseName + "-event-distri-client-" + i + "-" + loadCurve.getName() + ".csv");
+					checkCancelled(monitor);
+					writtenFiles.add(f);
+					PlotFileCreator.createPlot(f, loadEvents, loadCurve, i, LoadCurveCalculator.timeUnit_minute);
+				}
+			}
+		}
+
+		if (operationHistograms) {
+			for (Operation operation : operations) {
+				String opName = operation.getName();
+				File f = new File(dir, baseName + "-histogram-operation-" + opName + ".csv");
+				checkCancelled(monitor);
+				writtenFiles.add(f);
+				PlotFileCreator.createOperationHistogram(f, loadEvents, opName, (int) maxTime * 2, 0., maxTime,
+						LoadCurveCalculator.timeUnit_minute);
+			}
+		}
+
+		if (clientLoadHistograms) {
+			for (int i = 0; i < numClients; i++) {
+				File f = new File(dir, baseName + "-histogram-client-load-" + i + ".csv");
+				checkCancelled(monitor);
+				writtenFiles.add(f);
+				PlotFileCreator.createClientHistogram(f, loadEvents, i, (int) maxTime * 2, 0., maxTime,
+						LoadCurveCalculator.timeUnit_minute);
+			}
+		}
+	}
+
+	private static void checkCancelled(final GenerationMonitor monitor) {
+		if (monitor != null && monitor.isCancelled()) {
+			throw new CancellationException("The export has been cancelled");
+		}
+	}
+}
@@ -18,6 +18,7 @@ package com.mgmtp.perfload.loadprofiles.ui.ctrl;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.Collections2.filter;
 import static com.google.common.collect.Collections2.transform;
+import static com.google.common.collect.Lists.newArrayList;
 
 import java.io.File;
 import java.util.Collection;
@@ -37,10 +38,13 @@ import javax.xml.bind.ValidationEventHandler;
 import ca.odell.glazedlists.EventList;
 
 import com.mgmtp.perfload.loadprofiles.generation.LoadCurveCalculator;
+import com.mgmtp.perfload.loadprofiles.model.BaseLoadProfileEvent;
 import com.mgmtp.perfload.loadprofiles.model.Client;
 import com.mgmtp.perfload.loadprofiles.model.LoadCurve;
 import com.mgmtp.perfload.loadprofiles.model.LoadCurveAssignment;
+import com.mgmtp.perfload.loadprofiles.model.LoadEvent;
 import com.mgmtp.perfload.loadprofiles.model.LoadTestConfiguration;
+import com.mgmtp.perfload.loadprofiles.model.MarkerEvent;
 import com.mgmtp.perfload.loadprofiles.model.Operation;
 import com.mgmtp.perfload.loadprofiles.model.Target;
 import com.mgmtp.perfload.loadprofiles.model.jaxb.ClientAdapter;
@@ -48,11 +52,14 @@ import com.mgmtp.perfload.loadprofiles.model.jaxb.OperationAdapter;
 import com.mgmtp.perfload.loadprofiles.model.jaxb.TargetAdapter;
 import com.mgmtp.perfload.loadprofiles.ui.model.LoadProfileConfig;
 import com.mgmtp.perfload.loadprofiles.ui.model.LoadProfileEntity;
+import com.mgmtp.perfload.loadprofiles.ui.model.Marker;
 import com.mgmtp.perfload.loadprofiles.ui.model.OneTime;
 import com.mgmtp.perfload.loadprofiles.ui.model.Settings;
 import com.mgmtp.perfload.loadprofiles.ui.util.GraphPointsCalculator;
+import com.mgmtp.perfload.loadprofiles.ui.util.IsMarkerPredicate;
 import com.mgmtp.perfload.loadprofiles.ui.util.IsOneTimePredicate;
 import com.mgmtp.perfload.loadprofiles.ui.util.IsStairsPredicate;
+import com.mgmtp.perfload.loadprofiles.ui.util.LoadProfileEntityToMarkerFunction;
 import com.mgmtp.perfload.loadprofiles.ui.util.LoadProfileEntityToOneTimeFunction;
 import com.mgmtp.perfload.loadprofiles.ui.util.LoadProfileEntityToStairsFunction;
 import com.mgmtp.perfload.loadprofiles.ui.util.Point;
@@ -234,6 +241,43 @@ public class LoadProfilesController {
 		return ltc;
 	}
 
+	/**
+	 * Creates the events of the one-time and marker tree items, which are not distributed like the
+	 * events of the load curves but added to the events file separately. A one-time event is
+	 * created for each of its targets.
+	 *
+	 * @return the one-time and marker events with times in hours
+	 */
+	public List<BaseLoadProfileEvent> createAdditionalEvents() {
+		List<BaseLoadProfileEvent> additionalEvents = newArrayList();
+
+		for (OneTime oneTime : transform(filter(treeItems, new IsOneTimePredicate()),
+				new LoadProfileEntityToOneTimeFunction())) {
+			double startTimeInHours = oneTime.t0 / 60d;
+
+			// We must add one event per target
+			for (Target target : oneTime.targets) {
+				LoadEvent event = new LoadEvent(startTimeInHours, oneTime.getOperation());
+				event.setProcessId(0); // 1 added later to make it zero-based
+				event.setDaemonId(1);
+				event.setTarget(target);
+				additionalEvents.add(event);
+			}
+		}
+
+		for (Marker marker : transform(filter(treeItems, new IsMarkerPredicate()),
+				new LoadProfileEntityToMarkerFunction())) {
+			double time = marker.left / 60d;
+			MarkerEvent event = new MarkerEvent(marker.name, time, MarkerEvent.Type.left);
+			additionalEvents.add(event);
+
+			time = marker.right / 60d;
+			event = new MarkerEvent(marker.name, time, MarkerEvent.Type.right);
+			additionalEvents.add(event);
+		}
+		return additionalEvents;
+	}
+
 	/**
 	 * @param lpc
 	 *            the config to be validated
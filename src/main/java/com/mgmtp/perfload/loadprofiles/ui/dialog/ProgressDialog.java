@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.ui.dialog;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.KeyEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+
+import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.JDialog;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JProgressBar;
+import javax.swing.JRootPane;
+import javax.swing.KeyStroke;
+import javax.swing.WindowConstants;
+
+import net.miginfocom.swing.MigLayout;
+
+/**
+ * Modal dialog showing the progress of a long running task, which runs in a background thread.
+ * The dialog only requests the cancellation of the task; the task is expected to stop
+ * cooperatively and to close the dialog with {@link #dispose()} when it is done.
+ */
+public class ProgressDialog extends JDialog {
+
+	private final JLabel lblStatus;
+	private final JProgressBar progressBar;
+	private final JButton btnCancel;
+	private final Runnable cancelAction;
+
+	/**
+	 * Create the dialog.
+	 *
+	 * @param cancelAction
+	 *            requests the cancellation of the task, called on the event dispatch thread
+	 */
+	public ProgressDialog(final JFrame parent, final String title, final Runnable cancelAction) {
+		super(parent, title, true);
+		this.cancelAction = cancelAction;
+		setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
+		addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosing(final WindowEvent e) {
+				cancel();
+			}
+		});
+		setResizable(false);
+		getContentPane().setLayout(new MigLayout("", "[400px,grow]", "[][][]"));
+		{
+			lblStatus = new JLabel("Starting...");
+			lblStatus.setName("lblStatus");
+			getContentPane().add(lblStatus, "cell 0 0,growx");
+		}
+		{
+			progressBar = new JProgressBar(0, 1000);
+			progressBar.setName("progressBar");
+			progressBar.setStringPainted(true);
+			progressBar.setIndeterminate(true);
+			getContentPane().add(progressBar, "cell 0 1,growx");
+		}
+		{
+			btnCancel = new JButton("Cancel");
+			btnCancel.addActionListener(new BtnCancelActionListener());
+			btnCancel.setName("btnCancel");
+			btnCancel.setActionCommand("Cancel");
+			getContentPane().add(btnCancel, "cell 0 2,alignx center");
+		}
+		pack();
+		setLocationRelativeTo(parent);
+	}
+
+	@Override
+	protected JRootPane createRootPane() {
+		KeyStroke stroke = KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0);
+		JRootPane rp = super.createRootPane();
+		rp.registerKeyboardAction(new ActionListener() {
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				cancel();
+			}
+		}, stroke, JComponent.WHEN_IN_FOCUSED_WINDOW);
+		return rp;
+	}
+
+	/**
+	 * Shows the given status text above the progress bar.
+	 */
+	public void setStatus(final String status) {
+		// keep showing that the task is being cancelled
+		if (btnCancel.isEnabled()) {
+			lblStatus.setText(status);
+		}
+	}
+
+	/**
+	 * Shows the progress of the task.
+	 *
+	 * @param done
+	 *            the amount of work done
+	 * @param total
+	 *            the total amount of work, not positive if unknown
+	 */
+	public void setProgress(final long done, final long total) {
+		if (total <= 0L) {
+			progressBar.setIndeterminate(true);
+		} else {
+			progressBar.setIndeterminate(false);
+			progressBar.setValue((int) Math.min(1000L, done * 1000L / total));
+		}
+	}
+
+	private void cancel() {
+		if (btnCancel.isEnabled()) {
+			btnCancel.setEnabled(false);
+			lblStatus.setText("Cancelling...");
+			cancelAction.run();
+		}
+	}
+
+	private class BtnCancelActionListener implements ActionListener {
+		@Override
+		public void actionPerformed(final ActionEvent e) {
+			cancel();
+		}
+	}
+}
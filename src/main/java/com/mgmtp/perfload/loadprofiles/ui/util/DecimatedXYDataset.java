@@ -0,0 +1,371 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.ui.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.Lists.newArrayList;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.jfree.data.DomainInfo;
+import org.jfree.data.DomainOrder;
+import org.jfree.data.Range;
+import org.jfree.data.RangeInfo;
+import org.jfree.data.xy.AbstractXYDataset;
+import org.jfree.data.xy.XYDomainInfo;
+import org.jfree.data.xy.XYRangeInfo;
+
+/**
+ * An {@link org.jfree.data.xy.XYDataset} of polylines in primitive arrays, which only passes the
+ * points to the renderer that can be told apart on the screen. The visible domain range is split
+ * into one column per pixel, and of the points in a column only the first, the last and those
+ * with the minimum and maximum y-value are kept (min/max decimation). Thus vertical steps and
+ * peaks are drawn exactly as with all points. Beyond the visible range only the nearest point on
+ * either side is kept for the lines to the edges.
+ * <p>
+ * A polyline is decimated only if it has more than {@link #POINTS_PER_PIXEL} points per pixel in
+ * the visible range, so that all points are shown again when zooming in. The bounds of the
+ * dataset are those of all points, so that the axes do not change with the decimation.
+ */
+public class DecimatedXYDataset extends AbstractXYDataset implements DomainInfo, XYDomainInfo, RangeInfo,
+		XYRangeInfo {
+
+	/** The number of points a decimated column consists of at most. */
+	public static final int POINTS_PER_PIXEL = 4;
+
+	private final List<Series> seriesList = newArrayList();
+
+	private Range visibleRange;
+	private int pixelWidth;
+
+	/**
+	 * Sets the visible part of the chart and decimates the polylines accordingly.
+	 *
+	 * @param range
+	 *            the visible domain range, {@code null} for the bounds of all points
+	 * @param width
+	 *            the width of the data area in pixels, not positive for no decimation
+	 */
+	public void setViewport(final Range range, final int width) {
+		if ((range == null ? visibleRange != null : !range.equals(visibleRange)) || width != pixelWidth) {
+			visibleRange = range;
+			pixelWidth = width;
+			boolean changed = false;
+			for (Series series : seriesList) {
+				changed |= decimate(series);
+			}
+			if (changed) {
+				fireDatasetChanged();
+			}
+		}
+	}
+
+	/**
+	 * Sets the points of a series, which is inserted in the order of the keys, if there is no
+	 * series with the given key.
+	 *
+	 * @param key
+	 *            the key of the series
+	 * @param points
+	 *            the points of the polyline in ascending order of their x-values
+	 */
+	public void setSeries(final Comparable<?> key, final List<Point> points) {
+		int size = points.size();
+		double[] x = new double[size];
+		double[] y = new double[size];
+		for (int i = 0; i < size; i++) {
+			Point point = points.get(i);
+			x[i] = point.getX();
+			y[i] = point.getY();
+			checkArgument(i == 0 || x[i] >= x[i - 1], "The points are not ordered by x: %s", points);
+		}
+
+		int index = indexOf(key);
+		Series series = new Series(key, x, y);
+		if (index < 0) {
+			seriesList.add(insertionIndex(key), series);
+		} else {
+			seriesList.set(index, series);
+		}
+		decimate(series);
+		fireDatasetChanged();
+	}
+
+	/**
+	 * @return the index of the first series with a greater key than the given one
+	 */
+	@SuppressWarnings("unchecked")
+	private int insertionIndex(final Comparable<?> key) {
+		int index = 0;
+		while (index < seriesList.size() && ((Comparable<Object>) seriesList.get(index).key).compareTo(key) < 0) {
+			index++;
+		}
+		return index;
+	}
+
+	/**
+	 * Removes the series with the given index.
+	 */
+	public void removeSeries(final int index) {
+		seriesList.remove(index);
+		fireDatasetChanged();
+	}
+
+	/**
+	 * @return the number of points of the series before the decimation
+	 */
+	public int getFullItemCount(final int series) {
+		return seriesList.get(series).x.length;
+	}
+
+	/**
+	 * @return {@code true}, if points of any series are currently left out
+	 */
+	public boolean isDecimated() {
+		for (Series series : seriesList) {
+			if (series.visibleX.length < series.x.length) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Decimates the points of a series for the current viewport.
+	 *
+	 * @return {@code true}, if the visible points have changed
+	 */
+	private boolean decimate(final Series series) {
+		double[] x = series.x;
+		double[] y = series.y;
+		int size = x.length;
+		int maxPoints = POINTS_PER_PIXEL * pixelWidth;
+		if (pixelWidth <= 0 || size <= maxPoints) {
+			return series.setVisible(x, y);
+		}
+
+		double lower = visibleRange != null ? visibleRange.getLowerBound() : x[0];
+		double upper = visibleRange != null ? visibleRange.getUpperBound() : x[size - 1];
+		int start = firstIndexNotBelow(x, lower);
+		int end = firstIndexNotBelow(x, Math.nextUp(upper));
+		// the nearest points beyond the visible range
+		int from = Math.max(0, start - 1);
+		int to = Math.min(size, end + 1);
+		if (end - start <= maxPoints || upper <= lower) {
+			return series.setVisible(Arrays.copyOfRange(x, from, to), Arrays.copyOfRange(y, from, to));
+		}
+
+		double[] visibleX = new double[maxPoints + 2];
+		double[] visibleY = new double[maxPoints + 2];
+		int count = 0;
+		if (from < start) {
+			visibleX[count] = x[from];
+			visibleY[count++] = y[from];
+		}
+
+		double columnWidth = (upper - lower) / pixelWidth;
+		int[] indices = new int[POINTS_PER_PIXEL];
+		for (int first = start, last; first < end; first = last + 1) {
+			int column = column(x[first], lower, columnWidth);
+			int min = first;
+			int max = first;
+			last = first;
+			while (last + 1 < end && column(x[last + 1], lower, columnWidth) == column) {
+				last++;
+				if (y[last] < y[min]) {
+					min = last;
+				} else if (y[last] > y[max]) {
+					max = last;
+				}
+			}
+
+			// the points of the column in their original order
+			indices[0] = first;
+			indices[1] = Math.min(min, max);
+			indices[2] = Math.max(min, max);
+			indices[3] = last;
+			for (int i = 0; i < POINTS_PER_PIXEL; i++) {
+				if (i == 0 || indices[i] != indices[i - 1]) {
+					visibleX[count] = x[indices[i]];
+					visibleY[count++] = y[indices[i]];
+				}
+			}
+		}
+
+		if (end < to) {
+			visibleX[count] = x[end];
+			visibleY[count++] = y[end];
+		}
+		return series.setVisible(Arrays.copyOf(visibleX, count), Arrays.copyOf(visibleY, count));
+	}
+
+	private int column(final double x, final double lower, final double columnWidth) {
+		return Math.min(pixelWidth - 1, (int) ((x - lower) / columnWidth));
+	}
+
+	/**
+	 * @return the index of the first value, which is not less than the given value
+	 */
+	private static int firstIndexNotBelow(final double[] values, final double value) {
+		int low = 0;
+		int high = values.length;
+		while (low < high) {
+			int middle = low + high >>> 1;
+			if (values[middle] < value) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	@Override
+	public int getSeriesCount() {
+		return seriesList.size();
+	}
+
+	@Override
+	public Comparable<?> getSeriesKey(final int series) {
+		return seriesList.get(series).key;
+	}
+
+	@Override
+	public DomainOrder getDomainOrder() {
+		return DomainOrder.ASCENDING;
+	}
+
+	@Override
+	public int getItemCount(final int series) {
+		return seriesList.get(series).visibleX.length;
+	}
+
+	@Override
+	public double getXValue(final int series, final int item) {
+		return seriesList.get(series).visibleX[item];
+	}
+
+	@Override
+	public double getYValue(final int series, final int item) {
+		return seriesList.get(series).visibleY[item];
+	}
+
+	@Override
+	public Number getX(final int series, final int item) {
+		return getXValue(series, item);
+	}
+
+	@Override
+	public Number getY(final int series, final int item) {
+		return getYValue(series, item);
+	}
+
+	@Override
+	public double getDomainLowerBound(final boolean includeInterval) {
+		Range bounds = getDomainBounds(includeInterval);
+		return bounds != null ? bounds.getLowerBound() : Double.NaN;
+	}
+
+	@Override
+	public double getDomainUpperBound(final boolean includeInterval) {
+		Range bounds = getDomainBounds(includeInterval);
+		return bounds != null ? bounds.getUpperBound() : Double.NaN;
+	}
+
+	@Override
+	public Range getDomainBounds(final boolean includeInterval) {
+		return getDomainBounds(null, includeInterval);
+	}
+
+	@Override
+	public Range getDomainBounds(@SuppressWarnings("rawtypes") final List visibleSeriesKeys,
+			final boolean includeInterval) {
+		Range bounds = null;
+		for (Series series : seriesList) {
+			if (series.x.length > 0 && (visibleSeriesKeys == null || visibleSeriesKeys.contains(series.key))) {
+				bounds = Range.combine(bounds, new Range(series.x[0], series.x[series.x.length - 1]));
+			}
+		}
+		return bounds;
+	}
+
+	@Override
+	public double getRangeLowerBound(final boolean includeInterval) {
+		Range bounds = getRangeBounds(includeInterval);
+		return bounds != null ? bounds.getLowerBound() : Double.NaN;
+	}
+
+	@Override
+	public double getRangeUpperBound(final boolean includeInterval) {
+		Range bounds = getRangeBounds(includeInterval);
+		return bounds != null ? bounds.getUpperBound() : Double.NaN;
+	}
+
+	@Override
+	public Range getRangeBounds(final boolean includeInterval) {
+		return getRangeBounds(null, null, includeInterval);
+	}
+
+	/**
+	 * @param xRange
+	 *            the domain range of the points, {@code null} for all points
+	 */
+	@Override
+	public Range getRangeBounds(@SuppressWarnings("rawtypes") final List visibleSeriesKeys, final Range xRange,
+			final boolean includeInterval) {
+		Range bounds = null;
+		for (Series series : seriesList) {
+			if (visibleSeriesKeys == null || visibleSeriesKeys.contains(series.key)) {
+				int start = xRange != null ? firstIndexNotBelow(series.x, xRange.getLowerBound()) : 0;
+				int end = xRange != null ? firstIndexNotBelow(series.x, Math.nextUp(xRange.getUpperBound())) : series.x.length;
+				for (int i = start; i < end; i++) {
+					bounds = Range.expandToInclude(bounds, series.y[i]);
+				}
+			}
+		}
+		return bounds;
+	}
+
+	/**
+	 * All points of a polyline and the points passed to the renderer.
+	 */
+	private static final class Series {
+		private final Comparable<?> key;
+		private final double[] x;
+		private final double[] y;
+		private double[] visibleX;
+		private double[] visibleY;
+
+		Series(final Comparable<?> key, final double[] x, final double[] y) {
+			this.key = key;
+			this.x = x;
+			this.y = y;
+		}
+
+		/**
+		 * @return {@code true}, if the visible points have changed
+		 */
+		boolean setVisible(final double[] newVisibleX, final double[] newVisibleY) {
+			if (Arrays.equals(newVisibleX, visibleX) && Arrays.equals(newVisibleY, visibleY)) {
+				return false;
+			}
+			visibleX = newVisibleX;
+			visibleY = newVisibleY;
+			return true;
+		}
+	}
+}
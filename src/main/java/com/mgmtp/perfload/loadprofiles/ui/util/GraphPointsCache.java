@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.ui.util;
+
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
+import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Maps.newTreeMap;
+import static com.google.common.collect.Sets.newTreeSet;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.concurrent.CancellationException;
+
+import ca.odell.glazedlists.EventList;
+import ca.odell.glazedlists.event.ListEvent;
+import ca.odell.glazedlists.event.ListEventListener;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+import com.mgmtp.perfload.loadprofiles.model.Operation;
+import com.mgmtp.perfload.loadprofiles.ui.model.LoadProfileEntity;
+import com.mgmtp.perfload.loadprofiles.ui.model.Stairs;
+
+/**
+ * Caches the graph points of the load curves of the operations in the GlazedLists style of the
+ * {@link com.mgmtp.perfload.loadprofiles.ui.model.EventsTreeModel}. The cache listens to the
+ * {@link ListEvent}s of the load profile entities and only recalculates the points of the
+ * operations, whose stairways have been inserted, updated or deleted since the last
+ * {@link #update()}. Stairways, which have only been moved in the list, e. g. by sorting it, do
+ * not change the points.
+ * <p>
+ * Stairs are edited in place and set into the list again, so the cache keeps a copy of each
+ * stairway in a list parallel to the entities in order to find the operation a stairway belonged
+ * to before. The cache is not thread-safe, it must be used on the thread changing the list. Only
+ * the calculation of an {@link Update} may run on another thread, so that the list can be edited
+ * while the points are calculated.
+ */
+public class GraphPointsCache implements ListEventListener<LoadProfileEntity> {
+
+	private final EventList<LoadProfileEntity> loadProfileEntities;
+
+	/** Copies of the stairways, the other entities themselves, in the order of the list. */
+	private final List<LoadProfileEntity> snapshots = newArrayList();
+	private final SortedMap<String, List<Point>> pointsMap = newTreeMap();
+	/** The stairways the points of the operations have been calculated from. */
+	private final Map<String, Multiset<Stairs>> calculatedStairways = newHashMap();
+
+	private final Set<String> pendingOperations = newTreeSet();
+	private boolean pendingAnnotations;
+
+	private SortedSet<String> changedOperations = newTreeSet();
+	private boolean annotationsChanged;
+
+	/**
+	 * Creates a cache for the given entities, which calculates the points of all operations on
+	 * the first {@link #update()}.
+	 */
+	public GraphPointsCache(final EventList<LoadProfileEntity> loadProfileEntities) {
+		this.loadProfileEntities = loadProfileEntities;
+		for (LoadProfileEntity lpe : loadProfileEntities) {
+			LoadProfileEntity snapshot = snapshot(lpe);
+			snapshots.add(snapshot);
+			invalidate(snapshot);
+		}
+		loadProfileEntities.addListEventListener(this);
+	}
+
+	/**
+	 * Stops listening to the entities.
+	 */
+	public void dispose() {
+		loadProfileEntities.removeListEventListener(this);
+	}
+
+	@Override
+	public void listChanged(final ListEvent<LoadProfileEntity> listChanges) {
+		if (listChanges.isReordering()) {
+			int[] reorderMap = listChanges.getReorderMap();
+			List<LoadProfileEntity> reordered = newArrayListWithCapacity(reorderMap.length);
+			for (int index : reorderMap) {
+				reordered.add(snapshots.get(index));
+			}
+			snapshots.clear();
+			snapshots.addAll(reordered);
+			return;
+		}
+
+		EventList<LoadProfileEntity> source = listChanges.getSourceList();
+		while (listChanges.next()) {
+			int index = listChanges.getIndex();
+			switch (listChanges.getType()) {
+				case ListEvent.INSERT: {
+					LoadProfileEntity snapshot = snapshot(source.get(index));
+					snapshots.add(index, snapshot);
+					invalidate(snapshot);
+					break;
+				}
+				case ListEvent.UPDATE: {
+					LoadProfileEntity snapshot = snapshot(source.get(index));
+					LoadProfileEntity oldSnapshot = snapshots.set(index, snapshot);
+					// a stairway set again unchanged does not invalidate its operation
+					if (!(snapshot instanceof Stairs) || !snapshot.equals(oldSnapshot)) {
+						invalidate(oldSnapshot);
+						invalidate(snapshot);
+					}
+					break;
+				}
+				case ListEvent.DELETE:
+					invalidate(snapshots.remove(index));
+					break;
+				default:
+					throw new IllegalStateException("Unknown list event type: " + listChanges.getType());
+			}
+		}
+	}
+
+	private static LoadProfileEntity snapshot(final LoadProfileEntity lpe) {
+		if (lpe instanceof Stairs) {
+			Stairs stairs = (Stairs) lpe;
+			// the operation is copied, too, because it may be renamed in the settings
+			Operation operation = new Operation();
+			operation.setName(stairs.operation.getName());
+			operation.setRelativeClientLoad(stairs.operation.getRelativeClientLoad());
+			return new Stairs(operation, stairs.t0, stairs.a, stairs.b, stairs.c, stairs.h, stairs.numSteps);
+		}
+		return lpe;
+	}
+
+	private void invalidate(final LoadProfileEntity snapshot) {
+		if (snapshot instanceof Stairs) {
+			pendingOperations.add(((Stairs) snapshot).operation.getName());
+		} else {
+			pendingAnnotations = true;
+		}
+	}
+
+	/**
+	 * Recalculates the points of the operations, whose stairways have changed since the last
+	 * update. The changes are available from {@link #getChangedOperations()} and
+	 * {@link #isAnnotationsChanged()} until the next update.
+	 */
+	public void update() {
+		Update update = prepareUpdate();
+		update.calculate();
+		apply(update);
+	}
+
+	/**
+	 * Takes copies of the stairways of the operations, which have changed since the last update,
+	 * for a recalculation of their points. The changes are pending again, if the update is
+	 * {@link #discard(Update) discarded}.
+	 *
+	 * @return the update, which must either be applied or discarded before the next update is
+	 *         prepared
+	 */
+	public Update prepareUpdate() {
+		Map<String, Multiset<Stairs>> changedStairways = newTreeMap();
+		for (String operationName : pendingOperations) {
+			Multiset<Stairs> stairways = HashMultiset.create();
+			for (LoadProfileEntity snapshot : snapshots) {
+				if (snapshot instanceof Stairs && ((Stairs) snapshot).operation.getName().equals(operationName)) {
+					stairways.add((Stairs) snapshot);
+				}
+			}
+			Multiset<Stairs> oldStairways = calculatedStairways.get(operationName);
+			if (!stairways.equals(oldStairways) && !(stairways.isEmpty() && oldStairways == null)) {
+				changedStairways.put(operationName, stairways);
+			}
+		}
+		Update update = new Update(changedStairways, pendingAnnotations);
+
+		pendingOperations.clear();
+		pendingAnnotations = false;
+		return update;
+	}
+
+	/**
+	 * Takes over the calculated points of an update.
+	 */
+	public void apply(final Update update) {
+		checkState(update.calculated, "The update has not been calculated");
+		changedOperations = newTreeSet(update.stairways.keySet());
+		annotationsChanged = update.annotationsChanged;
+
+		for (Entry<String, Multiset<Stairs>> entry : update.stairways.entrySet()) {
+			String operationName = entry.getKey();
+			if (entry.getValue().isEmpty()) {
+				pointsMap.remove(operationName);
+				calculatedStairways.remove(operationName);
+			} else {
+				pointsMap.put(operationName, update.points.get(operationName));
+				calculatedStairways.put(operationName, entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Discards an update, which has been superseded or cancelled. Its changes are pending again.
+	 */
+	public void discard(final Update update) {
+		pendingOperations.addAll(update.stairways.keySet());
+		pendingAnnotations |= update.annotationsChanged;
+	}
+
+	/**
+	 * @return the points of the operations with stairways as of the last {@link #update()}, in
+	 *         alphabetical order of the operations
+	 */
+	public Map<String, List<Point>> getPointsMap() {
+		return Collections.unmodifiableMap(pointsMap);
+	}
+
+	/**
+	 * @return the operations, whose points have been recalculated by the last {@link #update()};
+	 *         an operation without stairways has no points any more
+	 */
+	public Set<String> getChangedOperations() {
+		return Collections.unmodifiableSet(changedOperations);
+	}
+
+	/**
+	 * @return {@code true}, if one-time events or markers have been inserted, updated or deleted
+	 *         before the last {@link #update()}
+	 */
+	public boolean isAnnotationsChanged() {
+		return annotationsChanged;
+	}
+
+	/**
+	 * A recalculation of the points of the changed operations from copies of their stairways. It
+	 * is prepared and applied on the thread of the cache, but may be calculated on another
+	 * thread, if the calculation happens-before the update is applied, e. g. in a
+	 * {@link java.util.concurrent.Future}.
+	 */
+	public static final class Update {
+		private final Map<String, Multiset<Stairs>> stairways;
+		private final boolean annotationsChanged;
+		private final Map<String, List<Point>> points = newHashMap();
+		private boolean calculated;
+
+		Update(final Map<String, Multiset<Stairs>> stairways, final boolean annotationsChanged) {
+			this.stairways = stairways;
+			this.annotationsChanged = annotationsChanged;
+		}
+
+		/**
+		 * @return {@code true}, if no points have to be calculated
+		 */
+		public boolean isEmpty() {
+			return stairways.isEmpty();
+		}
+
+		/**
+		 * Calculates the points of the changed operations. Stops with a
+		 * {@link CancellationException} between two operations, if the thread is interrupted.
+		 */
+		public void calculate() {
+			GraphPointsCalculator calculator = new GraphPointsCalculator();
+			for (Entry<String, Multiset<Stairs>> entry : stairways.entrySet()) {
+				if (Thread.currentThread().isInterrupted()) {
+					throw new CancellationException("The calculation of the graph points has been cancelled");
+				}
+				if (!entry.getValue().isEmpty()) {
+					points.put(entry.getKey(), calculator.calculatePoints(entry.getValue()).get(entry.getKey()));
+				}
+			}
+			calculated = true;
+		}
+	}
+}
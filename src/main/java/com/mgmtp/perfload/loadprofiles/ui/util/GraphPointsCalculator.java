@@ -15,19 +15,18 @@
  */
 package com.mgmtp.perfload.loadprofiles.ui.util;
 
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
+
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
-import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.mgmtp.perfload.loadprofiles.model.CurveAssignment;
-import com.mgmtp.perfload.loadprofiles.ui.model.LoadProfileEntity;
+import com.google.common.collect.Sets;
 import com.mgmtp.perfload.loadprofiles.ui.model.Stairs;
-import java.util.LinkedList;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 /**
  * Calculates points for the load curve graph.
@@ -36,249 +35,114 @@ import org.slf4j.LoggerFactory;
  * major rework due to using different algorithms by mvarendo
  */
 public class GraphPointsCalculator {
-	private static final Logger LOG = LoggerFactory.getLogger(GraphPointsCalculator.class);
 
 	/**
 	 * Calculates graph points for the given list of curve assignments (one graph per curve name).
+	 * The stairways of an operation are summed up in a single sweep over the breakpoints of all
+	 * stairways, which are sorted once by operation and x-value. Between two breakpoints the sum
+	 * is linear, so it is derived from the value and slope right of the previous breakpoint, to
+	 * which the vertical steps and slope changes of the stairways at the next breakpoint are
+	 * added. A vertical step of a stairway results in two points of the sum with the same
+	 * x-value, unless it is cancelled by the steps of other stairways.
 	 * 
 	 * @param stairways
 	 *            The list of curve assignments
 	 * @return A map of lists of points. The curve names are the keys.
 	 */
 	public Map<String, List<Point>> calculatePoints(final Collection<Stairs> stairways) {
-		List<String> operationNames = deriveListOfOperationNames(stairways);
+		// the operations in alphabetical order
+		Set<String> operationNames = Sets.newTreeSet();
+		for (Stairs stairway : stairways) {
+			operationNames.add(stairway.operation.getName());
+		}
+		Map<String, Integer> operationIndices = Maps.newHashMap();
+		for (String operationName : operationNames) {
+			operationIndices.put(operationName, operationIndices.size());
+		}
+
+		List<Breakpoint> breakpoints = newArrayListWithCapacity(stairways.size() * 4);
+		for (Stairs stairway : stairways) {
+			addBreakpoints(breakpoints, operationIndices.get(stairway.operation.getName()), calculatePoints(stairway));
+		}
+		Collections.sort(breakpoints);
 
 		Map<String, List<Point>> pointsMap = Maps.newLinkedHashMap();
+		int iBreakpoint = 0;
+		for (String operationName : operationNames) {
+			int operation = operationIndices.get(operationName);
+			List<Point> points = newArrayList();
 
-                // for each operation combine all defined stairs to one load curve and calculate points of this load curve
-		for (final String operationName : operationNames) {
-			List<Curve> curves = Lists.newArrayList();
+			// the value and the slope right of the previous breakpoint
+			ExactSum value = new ExactSum();
+			ExactSum slope = new ExactSum();
+			double previousX = 0.;
+			while (iBreakpoint < breakpoints.size() && breakpoints.get(iBreakpoint).operation == operation) {
+				double x = breakpoints.get(iBreakpoint).x;
+				value.addProduct(slope, x - previousX);
 
-			for (Stairs stairway : stairways) {
-				if (stairway.operation.getName().equals(operationName)) {
-					Curve curve = new Curve(calculatePoints(stairway));
-					curves.add(curve);
+				// the breakpoints of all stairways at x
+				int first = iBreakpoint;
+				do {
+					Breakpoint breakpoint = breakpoints.get(iBreakpoint++);
+					value.add(breakpoint.correction);
+					slope.add(-breakpoint.slopeLeft);
+					slope.add(breakpoint.slopeRight);
+				} while (iBreakpoint < breakpoints.size() && breakpoints.get(iBreakpoint).operation == operation
+						&& breakpoints.get(iBreakpoint).x == x);
+				addPoint(points, Point.of(x, value.get()));
+
+				for (int i = first; i < iBreakpoint; i++) {
+					value.add(breakpoints.get(i).step);
 				}
+				addPoint(points, Point.of(x, value.get()));
+				previousX = x;
 			}
-			pointsMap.put(operationName, sumUpCurves(curves));
+			pointsMap.put(operationName, points);
 		}
 
 		return pointsMap;
 	}
 
 	/**
-	 * Sums up the specified curves returning a list of points representing one curve.
-	 * 
-	 * @param curves
-	 *            A list of separate curves
-	 * @return The summed list of points
+	 * Adds a breakpoint for each x-value of the points of a stairway. Since a stairway starts and
+	 * ends at y = 0, it is continuous apart from vertical steps, which are defined by consecutive
+	 * points with the same x-value.
 	 */
-	private List<Point> sumUpCurves(final List<Curve> curves) {
+	private static void addBreakpoints(final List<Breakpoint> breakpoints, final int operation, final List<Point> points) {
+		int size = points.size();
+		for (int i = 0, end; i < size; i = end) {
+			double x = points.get(i).getX();
+			end = i + 1;
+			while (end < size && points.get(end).getX() == x) {
+				end++;
+			}
+			double slopeLeft = i > 0 ? slope(points.get(i - 1), points.get(i)) : 0.;
+			double slopeRight = end < size ? slope(points.get(end - 1), points.get(end)) : 0.;
+			// the sweep extrapolates the stairway with the rounded slope, which is corrected to the
+			// exact value of the point
+			ExactSum correction = new ExactSum();
+			if (i > 0) {
+				Point previous = points.get(i - 1);
+				correction.add(points.get(i).getY());
+				correction.add(-previous.getY());
+				correction.addProduct(-slopeLeft, x - previous.getX());
+			}
+			double step = points.get(end - 1).getY() - points.get(i).getY();
+			breakpoints.add(new Breakpoint(operation, x, correction.get(), step, slopeLeft, slopeRight));
+		}
+	}
+
+	private static double slope(final Point p1, final Point p2) {
+		return (p2.getY() - p1.getY()) / (p2.getX() - p1.getX());
+	}
 
-                Curve sumCurve = curves.get(0);
-                for (int iCurve=1; iCurve < curves.size(); iCurve++) {
-                    Curve curveToAdd = curves.get(iCurve);
-                    sumCurve = addCurves(sumCurve, curveToAdd);
-                }
-                
-                return sumCurve.points;
-        }
-        
 	/**
-	 * Checks, whether there is a vertical step starting at this point.
-         * A vertical step is defined by 2 consecutive points with the same x-value.
-	 * 
-	 * @param curve the curve for which we check, whther ther is a vertical step starting at the given index
-         * @param iPoint the index for the point at which we check, wether there is a vertical step starting
-         * 
-	 * @return true, if a vertical step is starting at the given point, false otherwise
+	 * Adds a point, unless it is identical to the last point.
 	 */
-        private boolean isAVerticalStepStartingAtThisPoint(Curve curve, int iPoint) {
-            // at the last point of the curve can't be the start point of a vertical step
-            if (curve.getPoints().size() <= iPoint+1) {
-                return false;
-            }
-            Point thisPoint = curve.getPoints().get(iPoint);
-            Point nextPoint = curve.getPoints().get(iPoint+1);
-            // if x-values are equal, then there must be a vertical step starting here.
-            // both values can't be equal, since we do not add identical points to a curve
-            return thisPoint.getX() == nextPoint.getX();
-        }
-        
-        /**
-         * Find the curve, which has the next point in x-direction
-         * The method assumes, that there is a next point. If both indices are at the last point or beyond an exception is thrown.
-         * 
-         * @param curve1 the first curve to find the next point 
-         * @param currentIndex1 the index to start the search for the first curve
-         * @param curve2 the second curve to find the next point
-         * @param currentIndex2 the index to start the search for the second curve
-         * @return CURVE_1 if first has next point, CURVE_2 if curve 2 has next point and CURVE_BOTH,
-         *         if both next points share the same x-value
-         */
-        private static final int CURVE_1 = -1;
-        private static final int CURVE_BOTH = 0;
-        private static final int CURVE_2 = 1;
-        private int getCurveOfNextPoint(Curve curve1, int currentIndex1, Curve curve2, int currentIndex2) {
-            // take care of being at last point or beyond for both curves
-            if ( curve1.noMorePoints(currentIndex1) ) {
-                if (curve2.noMorePoints(currentIndex2) ) {
-                    throw new IllegalArgumentException("<getStairwayOfNextPoint> currentIndices are at last point or beyond: "+
-                            "curve1 currentIndex1 "+currentIndex1+" size "+curve1.getPoints().size()+
-                            "curve2 currentIndex2 "+currentIndex2+" size "+curve2.getPoints().size());
-                } else {
-                    // curve1 is at last point, curev2 not
-                    return CURVE_2;
-                }
-            } else {
-                if (curve2.noMorePoints(currentIndex2)) {
-                    // curve2 is at last point, curve1 not
-                    return CURVE_1;
-                }
-            }
-            // normal case, both have more points
-            Point nextPointCurve1 = curve1.getPoints().get(currentIndex1+1);
-            Point nextPointCurve2 = curve2.getPoints().get(currentIndex2+1);
-            if (nextPointCurve1.getX() == nextPointCurve2.getX()) {
-                return CURVE_BOTH;
-            } else if (nextPointCurve1.getX() < nextPointCurve2.getX()) {
-                return CURVE_1;
-            } else {
-                return CURVE_2;
-            }
-        }
-        
-        /**
-         * Adds two curves. The basic algorithm is simple, the corner cases nasty.
-         * The basic algorithm:
-         *    Start with the curve with the lower c-value of the first point.
-         *    Take this as the start point of the result curve.
-         *    Find the next point in increasing x-direction regardless, which curve.
-         *    Derive the y-value from an interpolation of the other curve at the x-value of this point.
-         *    If the x-value is outside the other curve, take 0 as interpolated y-value.
-         *    Define a new point with this x-value and the sum of the y-value and the interpolated y-value.
-         *    Repeat this until the last point
-         * Corner cases:
-         *    - the next point of both curves has the same x-value
-         *    - the next point of a curve is the start of a vertical step
-         *    - really nasty: combinations of the corner cases above
-         * @param baseCurve  the curve to which the other curve is added
-         * @param curveToAdd  the curve, which is added to the base curve
-         * @return the resulting curve of the addition
-         */
-        private Curve addCurves(Curve baseCurve, Curve curveToAdd) {
-                
-            // algorithm in detail
-            // for all points of both curves:
-            //     get stairway of next point (next in direction of x-axis starting at minimum of all x-values)
-            //     decisions for next point calculation: 
-            //      -both curves have common x-value for next point: advance both indices, y of nextPoint is sum
-            //      -next point on base curve: advance base curve index, take next point from base curve
-            //      -next point on curve to add: advance curve to add index, take next point from curve to add
-            //     
-            //     decisions for addition of points:
-            //      - next point was from both curves with common x-value:
-            //          add derived next point
-            //          has base curve and curve to add a vertical step at this x-value: 
-            //              advance to following points for both curves, add point with y-values summed up
-            //          has only base curve vertical step at this x-value:
-            //              advance to next point on base curve, add y-value of curve to add, add point
-            //          has only curve to add vertical step at this x-value:
-            //              advance to next point on curve to add, add y-value of base curve, add point
-            //      - next point was from base curve:
-            //          derive y-value of curve to add at x-value of next point
-            //          add derived y-value to next point, add point
-            //          has base curve vertical step at this x-value:
-            //              advance to next base curve point, add derived y-value to this point, add point
-            //          has curve to add vertical step at this x-value:
-            //              advance to next curve to add point, add derived y-value to this point, add point
-            //      - next point was from curve to add:
-            //           same as above just base curve and curve to add switched
-                
-            int currentIndexBaseCurve = -1;
-            int currentIndexCurveToAdd = -1;
-            List<Point> pointsAddedCurve = new LinkedList<>();
-            
-            while (baseCurve.hasNextPoint(currentIndexBaseCurve) || curveToAdd.hasNextPoint(currentIndexCurveToAdd)) {
-                
-                int curveNextPoint = getCurveOfNextPoint(baseCurve, currentIndexBaseCurve, curveToAdd, currentIndexCurveToAdd);
-                Point nextPoint;
-                if (curveNextPoint == CURVE_BOTH) {
-                    currentIndexBaseCurve++;
-                    currentIndexCurveToAdd++;
-                    Point baseCurvePoint = baseCurve.getPoints().get(currentIndexBaseCurve);
-                    Point curveToAddPoint = curveToAdd.getPoints().get(currentIndexCurveToAdd);
-                    nextPoint = new Point(baseCurvePoint.getX(), baseCurvePoint.getY() + curveToAddPoint.getY());
-                } else if (curveNextPoint == CURVE_1) {
-                    currentIndexBaseCurve++;
-                    nextPoint = baseCurve.getPoints().get(currentIndexBaseCurve);
-                } else {
-                    currentIndexCurveToAdd++;
-                    nextPoint = curveToAdd.getPoints().get(currentIndexCurveToAdd);
-                }
-                boolean baseCurveHasVerticalStep = isAVerticalStepStartingAtThisPoint(baseCurve, currentIndexBaseCurve);
-                boolean curveToAddHasVerticalStep = isAVerticalStepStartingAtThisPoint(baseCurve, currentIndexBaseCurve);
-                LOG.debug("currentIndexBaseCurve "+currentIndexBaseCurve+",  currentIndexCurveToAdd "+currentIndexCurveToAdd+
-                        ", curveNextPoint "+curveNextPoint+", nextPoint "+nextPoint+
-                        ", baseCurveHasVerticalStep "+baseCurveHasVerticalStep+", curveToAddHasVerticalStep "+curveToAddHasVerticalStep);
-                if (curveNextPoint == CURVE_BOTH) {
-                    // add next point
-                    Point newPoint = nextPoint;
-                    pointsAddedCurve.add(newPoint);
-                    LOG.debug("Added point "+newPoint);
-                    if (baseCurveHasVerticalStep && curveToAddHasVerticalStep) {
-                        // add following point as sum of both following curve points
-                        currentIndexBaseCurve++;
-                        currentIndexCurveToAdd++;
-                        Point baseCurvePoint = baseCurve.getPoints().get(currentIndexBaseCurve);
-                        Point curveToAddPoint = curveToAdd.getPoints().get(currentIndexCurveToAdd);
-                        newPoint = new Point(baseCurvePoint.getX(), baseCurvePoint.getY() + curveToAddPoint.getY());
-                        pointsAddedCurve.add(newPoint);
-                        LOG.debug("Added point "+newPoint);
-                    } else if (baseCurveHasVerticalStep) {
-                        // add next point and following point of baseCurve as sum of both y-values
-                        currentIndexBaseCurve++;
-                        Point baseCurvePoint = baseCurve.getPoints().get(currentIndexBaseCurve);
-                        Point curveToAddPoint = curveToAdd.getPoints().get(currentIndexCurveToAdd);
-                        newPoint = new Point(baseCurvePoint.getX(), baseCurvePoint.getY() + curveToAddPoint.getY());
-                        pointsAddedCurve.add(newPoint);
-                        LOG.debug("Added point "+newPoint);
-                    } else if (curveToAddHasVerticalStep) {
-                        // add next point and following point of baseCurve as sum of both y-values
-                        currentIndexCurveToAdd++;
-                        Point baseCurvePoint = baseCurve.getPoints().get(currentIndexBaseCurve);
-                        Point curveToAddPoint = curveToAdd.getPoints().get(currentIndexCurveToAdd);
-                        newPoint = new Point(curveToAddPoint.getX(), baseCurvePoint.getY() + curveToAddPoint.getY());
-                        pointsAddedCurve.add(newPoint);
-                        LOG.debug("Added point "+newPoint);
-                    }
-                } else if (curveNextPoint == CURVE_1) {
-                    double yValueCurveToAdd = curveToAdd.calculateYForX(nextPoint.getX());
-                    Point newPoint = new Point(nextPoint.getX(), nextPoint.getY() + yValueCurveToAdd);
-                    pointsAddedCurve.add(newPoint);
-                    LOG.debug("Added point "+newPoint);
-                    if (baseCurveHasVerticalStep) {
-                        currentIndexBaseCurve++;
-                        nextPoint = baseCurve.getPoints().get(currentIndexBaseCurve);
-                        newPoint = new Point(nextPoint.getX(), nextPoint.getY() + yValueCurveToAdd);
-                        pointsAddedCurve.add(newPoint);
-                        LOG.debug("Added point "+newPoint);
-                    }
-                } else {
-                    double yValueBaseCurve = baseCurve.calculateYForX(nextPoint.getX());
-                    Point newPoint = new Point(nextPoint.getX(), nextPoint.getY() + yValueBaseCurve);
-                    pointsAddedCurve.add(newPoint);
-                    LOG.debug("Added point "+newPoint);
-                    if (curveToAddHasVerticalStep) {
-                        currentIndexCurveToAdd++;
-                        nextPoint = curveToAdd.getPoints().get(currentIndexCurveToAdd);
-                        newPoint = new Point(nextPoint.getX(), nextPoint.getY() + yValueBaseCurve);
-                        pointsAddedCurve.add(newPoint);
-                        LOG.debug("Added point "+newPoint);
-                    }
-                }
-            }
-            return new Curve(pointsAddedCurve);
+	private static void addPoint(final List<Point> points, final Point point) {
+		if (points.isEmpty() || !point.equals(points.get(points.size() - 1))) {
+			points.add(point);
+		}
 	}
 
 	/**
@@ -289,140 +153,134 @@ public class GraphPointsCalculator {
 	 * @return List of points describing the shape of the given stairway
 	 */
 	public List<Point> calculatePoints(final Stairs stairway) {
-		LinkedList<Point> points = new LinkedList();
-
 		int numSteps = stairway.numSteps;
 		int steplength = stairway.a + stairway.b;
+		List<Point> points = newArrayListWithCapacity(2 * numSteps + 2);
 
-                // add startpoint
-                Point firstPointOfStairway = Point.of(stairway.t0, 0);
+		// add startpoint
+		Point firstPointOfStairway = Point.of(stairway.t0, 0);
 		points.add(firstPointOfStairway);
 
-                // add points of each step tread of stairway, if they are not already contained. This happens if parameter values of a stairway are 0.
+		// add points of each step tread of stairway, if they are not already contained. This happens if parameter values of a stairway are 0.
 		for (int i = 0; i < numSteps; ++i) {
-                    Point startOfTread = Point.of(stairway.t0 + stairway.a + i * steplength, (i + 1) * stairway.h);
-                    if ( ! startOfTread.equals(points.getLast())) {
-			points.add(startOfTread);
-                    }
-                    Point endOfTread = Point.of(stairway.t0 + stairway.a + stairway.b + i * steplength, (i + 1) * stairway.h);
-                    if ( ! endOfTread.equals(points.getLast())) {
-			points.add(endOfTread);
-                    }
+			Point startOfTread = Point.of(stairway.t0 + stairway.a + i * steplength, (i + 1) * stairway.h);
+			addPoint(points, startOfTread);
+			Point endOfTread = Point.of(stairway.t0 + stairway.a + stairway.b + i * steplength, (i + 1) * stairway.h);
+			addPoint(points, endOfTread);
 		}
 
-                // add last point of stairway
-                Point lastPointOfStairway = Point.of(stairway.t0 + numSteps * steplength + stairway.c, 0);
-                if ( ! lastPointOfStairway.equals(points.getLast())) {
-                    points.add(lastPointOfStairway);
-                }
+		// add last point of stairway
+		Point lastPointOfStairway = Point.of(stairway.t0 + numSteps * steplength + stairway.c, 0);
+		addPoint(points, lastPointOfStairway);
 
-                return points;
+		return points;
 	}
 
-	private List<String> deriveListOfOperationNames(final Collection<Stairs> loadProfileEnities) {
-		List<String> operationNames = Lists.newArrayList();
+	/**
+	 * The changes of the sum of the stairways of an operation at an x-value of a stairway.
+	 */
+	private static final class Breakpoint implements Comparable<Breakpoint> {
+		private final int operation;
+		private final double x;
+		private final double correction;
+		private final double step;
+		private final double slopeLeft;
+		private final double slopeRight;
 
-		for (LoadProfileEntity lpe : loadProfileEnities) {
-			if (lpe instanceof CurveAssignment) {
-				CurveAssignment ca = (CurveAssignment) lpe;
-				if (!operationNames.contains(ca.operation.getName())) {
-					operationNames.add(ca.operation.getName());
-				}
-			}
+		/**
+		 * @param operation
+		 *            the index of the operation in alphabetical order
+		 * @param x
+		 *            the x-value
+		 * @param correction
+		 *            the exact value left of x minus the value extrapolated with the slope
+		 * @param step
+		 *            the height of the vertical step at x
+		 * @param slopeLeft
+		 *            the slope left of x
+		 * @param slopeRight
+		 *            the slope right of x
+		 */
+		Breakpoint(final int operation, final double x, final double correction, final double step,
+				final double slopeLeft, final double slopeRight) {
+			this.operation = operation;
+			this.x = x;
+			this.correction = correction;
+			this.step = step;
+			this.slopeLeft = slopeLeft;
+			this.slopeRight = slopeRight;
 		}
-		Collections.sort(operationNames);
 
-		return operationNames;
+		@Override
+		public int compareTo(final Breakpoint other) {
+			int result = operation < other.operation ? -1 : operation == other.operation ? 0 : 1;
+			if (result == 0) {
+				result = Double.compare(x, other.x);
+			}
+			return result;
+		}
 	}
 
-	private static class Curve {
-		private final LinkedList<Point> points;
+	/**
+	 * A sum in double-double precision, i. e. the rounding error of the sum is kept in a second
+	 * double. The sweep accumulates the value and slope of the sum of the stairways over all
+	 * breakpoints, so that a sum of doubles would no longer be exact at the points of the
+	 * stairways and would not return to 0 at their ends.
+	 */
+	private static final class ExactSum {
+		/** Splits a double into two halves, whose products are exact. */
+		private static final double SPLITTER = (1 << 27) + 1;
 
-		/**
-		 * Creates a curve from the specified points
-		 * 
-		 * @param points
-		 *            the points that make up the curve
-		 */
-		Curve(final List<Point> points) {
-			this.points = new LinkedList(points);
+		private double high;
+		private double low;
+
+		void add(final double value) {
+			double sum = high + value;
+			double virtual = sum - high;
+			double error = high - (sum - virtual) + (value - virtual);
+			high = sum;
+			low += error;
+			normalize();
 		}
-                
-                /**
-                 * Is there a point beyond the point defined by the given index
-                 * 
-                 * @param iPoint index of the point at which this check starts
-                 * @return true, if there is at least one point beyond the given point
-                 */
-                public boolean hasNextPoint(int iPoint) {
-                    return points.size() > iPoint+1;
-                }
-                
-                /**
-                 * Are there no more points beyond the point defined by the given index
-                 * @param iPoint index of the point at which this check starts
-                 * @return true, if there are no more points beyond the given point
-                 */
-                public boolean noMorePoints(int iPoint) {
-                    return points.size() <= iPoint+1;
-                }
 
 		/**
-		 * Calculates the y-value on this curve for the given x. y-values outside the curve definition are 0.
+		 * Adds the product of the given sum and factor.
 		 */
-		double calculateYForX(final double x) {
-                    if (points.size() < 2) {
-                        throw new IllegalArgumentException("Curve must have at least two points, curve has "+points.size()+" points.");
-                    }
-
-                    if (x < points.getFirst().getX()) {
-                        return 0.;
-                    }
-                    if (x > points.getLast().getX()) {
-                        return 0.;
-                    }
-                    Point p1 = points.getFirst();
-                    for (int i = 1; i < points.size(); i++) {
-                        Point p2 = points.get(i);
-                        if (p2.getX() == p1.getX()) {
-                            // no interpolation possible
-                            p1 = p2;
-                            continue;
-                        }
-                        if (x >= p1.getX() && x <= p2.getX()) {
-                            return calculateYOnLine(p1, p2, x);
-                        }
-                        p1 = p2;
-                    }
-                    throw new java.lang.IllegalStateException("We should never arrive here");
+		void addProduct(final ExactSum sum, final double factor) {
+			addProduct(sum.high, factor);
+			add(sum.low * factor);
 		}
 
 		/**
-		 * Calculates the y-value for x on a line through points p1 and p2.
+		 * Adds the product of the given factors.
 		 */
-		double calculateYOnLine(final Point p1, final Point p2, final double x) {
-                    if (x == p1.getX()) {
-                        return p1.getY();
-                    }
-                    if (x == p2.getX()) {
-                        return p2.getY();
-                    }
-			// slope of a line:
-			// m = (y2 - y1) / (x2 - x1)
-			double m = (p2.getY() - p1.getY()) / (p2.getX() - p1.getX());
-
-			// y-intercept of the line
-			// c = y - mx
-			double c = p1.getY() - m * p1.getX();
+		void addProduct(final double factor1, final double factor2) {
+			double product = factor1 * factor2;
+			add(product);
+			add(productError(factor1, factor2, product));
+		}
 
-			// value for y on the line between p1 and p2
-			double y = m * x + c;
+		double get() {
+			return high + low;
+		}
 
-			return y;
+		private void normalize() {
+			double sum = high + low;
+			low -= sum - high;
+			high = sum;
 		}
 
-		public List<Point> getPoints() {
-                    return points;
+		/**
+		 * @return the rounding error of the product of two doubles (Dekker's algorithm)
+		 */
+		private static double productError(final double factor1, final double factor2, final double product) {
+			double c1 = SPLITTER * factor1;
+			double high1 = c1 - (c1 - factor1);
+			double low1 = factor1 - high1;
+			double c2 = SPLITTER * factor2;
+			double high2 = c2 - (c2 - factor2);
+			double low2 = factor2 - high2;
+			return high1 * high2 - product + high1 * low2 + low1 * high2 + low1 * low2;
 		}
 	}
 }
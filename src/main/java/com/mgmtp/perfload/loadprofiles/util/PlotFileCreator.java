@@ -29,10 +29,13 @@ import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mgmtp.perfload.loadprofiles.generation.CompiledLoadCurve;
 import com.mgmtp.perfload.loadprofiles.generation.LoadCurveCalculator;
+import com.mgmtp.perfload.loadprofiles.model.EventTable;
 import com.mgmtp.perfload.loadprofiles.model.LoadCurve;
 import com.mgmtp.perfload.loadprofiles.model.LoadCurveAssignment;
 import com.mgmtp.perfload.loadprofiles.model.LoadEvent;
+import com.mgmtp.perfload.loadprofiles.model.Operation;
 
 /**
  * @author mvarendo
@@ -64,6 +67,18 @@ public class PlotFileCreator {
 	public static void createOperationHistogram(final File file, final Collection<LoadEvent> eventList,
 			final String operationName, final int nBin, final double xLow, final double xUp, final String timeUnitPlot)
 			throws IOException {
+		createOperationHistogram(file, EventTable.of(eventList), operationName, nBin, xLow, xUp, timeUnitPlot);
+	}
+
+	/**
+	 * Create a time-rate-histogram of events of the given operation from the events in the given
+	 * table.
+	 * 
+	 * @see #createOperationHistogram(File, Collection, String, int, double, double, String)
+	 */
+	public static void createOperationHistogram(final File file, final EventTable eventTable,
+			final String operationName, final int nBin, final double xLow, final double xUp, final String timeUnitPlot)
+			throws IOException {
 		double timeScalingFactor = LoadCurveCalculator.getTimeScalingFactor(LoadCurveCalculator.timeUnit_hour, timeUnitPlot);
 
 		double[] xhistoLow = new double[nBin];
@@ -75,9 +90,13 @@ public class PlotFileCreator {
 			xhistoLow[iBin] = iBin / delta + xLow;
 			xhistoUp[iBin] = (iBin + 1) / delta + xLow;
 		}
-		for (LoadEvent event : eventList) {
-			if (event.getOperation().getName().equals(operationName)) {
-				double time = timeScalingFactor * event.getTime();
+		boolean[] operationMatches = new boolean[eventTable.getOperations().size()];
+		for (int iOperation = 0; iOperation < operationMatches.length; iOperation++) {
+			operationMatches[iOperation] = eventTable.getOperations().get(iOperation).getName().equals(operationName);
+		}
+		for (int iEvent = 0, nEvent = eventTable.size(); iEvent < nEvent; iEvent++) {
+			if (operationMatches[eventTable.getOperationIndex(iEvent)]) {
+				double time = timeScalingFactor * eventTable.getTime(iEvent);
 				int xBin = (int) Math.floor((time - xLow) * delta);
 				if (xBin >= 0 && xBin < nBin) {
 					yhisto[xBin]++;
@@ -126,6 +145,17 @@ public class PlotFileCreator {
 	 */
 	public static void createClientHistogram(final File file, final Collection<LoadEvent> eventList, final int clientId,
 			final int nBin, final double xLow, final double xUp, final String timeUnitPlot) throws IOException {
+		createClientHistogram(file, EventTable.of(eventList), clientId, nBin, xLow, xUp, timeUnitPlot);
+	}
+
+	/**
+	 * Create a time-rate-histogram of events of the given client from the events in the given
+	 * table.
+	 * 
+	 * @see #createClientHistogram(File, Collection, int, int, double, double, String)
+	 */
+	public static void createClientHistogram(final File file, final EventTable eventTable, final int clientId,
+			final int nBin, final double xLow, final double xUp, final String timeUnitPlot) throws IOException {
 		double timeScalingFactor = LoadCurveCalculator.getTimeScalingFactor(LoadCurveCalculator.timeUnit_hour, timeUnitPlot);
 
 		double[] xhistoLow = new double[nBin];
@@ -137,12 +167,12 @@ public class PlotFileCreator {
 			xhistoLow[iBin] = iBin / delta + xLow;
 			xhistoUp[iBin] = (iBin + 1) / delta + xLow;
 		}
-		for (LoadEvent event : eventList) {
-			if (event.getClientId() == clientId) {
-				double time = timeScalingFactor * event.getTime();
+		for (int iEvent = 0, nEvent = eventTable.size(); iEvent < nEvent; iEvent++) {
+			if (eventTable.getClientId(iEvent) == clientId) {
+				double time = timeScalingFactor * eventTable.getTime(iEvent);
 				int xBin = (int) Math.floor((time - xLow) * delta);
 				if (xBin >= 0 && xBin < nBin) {
-					yhisto[xBin] += event.getOperation().getRelativeClientLoad();
+					yhisto[xBin] += eventTable.getOperation(iEvent).getRelativeClientLoad();
 				} else {
 					log.warn("Value " + time + " outside range [" + xLow + ", " + xUp + ")");
 				}
@@ -201,6 +231,18 @@ public class PlotFileCreator {
 	public static void createPlot(final File file, final Collection<LoadEvent> eventList,
 			final List<LoadCurveAssignment> loadCurveAssignments, final int nClients, 
 			final String timeUnitPlot) throws IOException {
+		createPlot(file, EventTable.of(eventList), loadCurveAssignments, nClients, timeUnitPlot);
+	}
+
+	/**
+	 * Create a plot of the start times of the load events in the given table for all given load
+	 * curve assignements.
+	 * 
+	 * @see #createPlot(File, Collection, List, int, String)
+	 */
+	public static void createPlot(final File file, final EventTable eventTable,
+			final List<LoadCurveAssignment> loadCurveAssignments, final int nClients,
+			final String timeUnitPlot) throws IOException {
 		double timeScalingFactor = LoadCurveCalculator.getTimeScalingFactor(LoadCurveCalculator.timeUnit_hour, timeUnitPlot);
 
 		int nAssignements = loadCurveAssignments.size();
@@ -209,12 +251,21 @@ public class PlotFileCreator {
 		for (int iAssignement = 0; iAssignement < nAssignements; iAssignement++) {
 			operationNames[iAssignement] = loadCurveAssignments.get(iAssignement).getOperationName();
 		}
-		for (int iClient = 0; iClient < nClients; iClient++) {
-			for (LoadEvent event : eventList) {
-				if (event.getClientId() == iClient) {
-					int operationId = getOperationId(event.getOperation().getName(), operationNames);
-					operationsOfType[operationId][iClient]++;
+		// map the operations of the table to the assignments once instead of for each event
+		List<Operation> tableOperations = eventTable.getOperations();
+		int[] operationIds = new int[tableOperations.size()];
+		for (int iOperation = 0; iOperation < operationIds.length; iOperation++) {
+			operationIds[iOperation] = -1;
+		}
+		int nEvent = eventTable.size();
+		for (int iEvent = 0; iEvent < nEvent; iEvent++) {
+			int iClient = eventTable.getClientId(iEvent);
+			if (iClient >= 0 && iClient < nClients) {
+				int iOperation = eventTable.getOperationIndex(iEvent);
+				if (operationIds[iOperation] < 0) {
+					operationIds[iOperation] = getOperationId(tableOperations.get(iOperation).getName(), operationNames);
 				}
+				operationsOfType[operationIds[iOperation]][iClient]++;
 			}
 		}
 		PrintWriter pw = null;
@@ -229,12 +280,14 @@ public class PlotFileCreator {
 							+ operationNames[iAssignement]);
 					log.info("Writing " + operationsOfType[iAssignement][iClient] + " operations of type "
 							+ loadCurveAssignments.get(iAssignement).getOperationName() + " for client " + iClient);
-					for (LoadEvent event : eventList) {
-						if (event.getClientId() == iClient) {
-							if (event.getOperation().getName().equals(operationNames[iAssignement])) {
-								double x = timeScalingFactor * event.getTime();
-								double y = LoadCurveCalculator.r(loadCurveAssignments.get(iAssignement).getLoadCurve(),
-										event.getTime());
+					CompiledLoadCurve.Cursor loadCurve = CompiledLoadCurve.compile(
+							loadCurveAssignments.get(iAssignement).getLoadCurve()).cursor();
+					for (int iEvent = 0; iEvent < nEvent; iEvent++) {
+						if (eventTable.getClientId(iEvent) == iClient) {
+							if (operationIds[eventTable.getOperationIndex(iEvent)] == iAssignement) {
+								double time = eventTable.getTime(iEvent);
+								double x = timeScalingFactor * time;
+								double y = loadCurve.rate(time);
 								pw.println(format.format(x) + "; " + format.format(y));
 							}
 						}
@@ -262,15 +315,27 @@ public class PlotFileCreator {
 	 */
 	public static void createPlot(final File file, final Collection<LoadEvent> eventList,
 			final LoadCurve loadCurve, final String timeUnitPlot) throws IOException {
-		double[] x = new double[eventList.size()];
-		double[] y = new double[eventList.size()];
+		createPlot(file, EventTable.of(eventList), loadCurve, timeUnitPlot);
+	}
+
+	/**
+	 * Plot the events in the given table created from a load curve.
+	 * 
+	 * @see #createPlot(File, Collection, LoadCurve, String)
+	 */
+	public static void createPlot(final File file, final EventTable eventTable,
+			final LoadCurve loadCurve, final String timeUnitPlot) throws IOException {
+		int nEvent = eventTable.size();
+		double[] x = new double[nEvent];
+		double[] y = new double[nEvent];
 
 		double timeScalingFactor = LoadCurveCalculator.getTimeScalingFactor(LoadCurveCalculator.timeUnit_hour, timeUnitPlot);
 
-		int iEvent = 0;
-		for (LoadEvent event : eventList) {
-			x[iEvent] = timeScalingFactor * event.getTime();
-			y[iEvent++] = LoadCurveCalculator.r(loadCurve, event.getTime());
+		CompiledLoadCurve.Cursor cursor = CompiledLoadCurve.compile(loadCurve).cursor();
+		for (int iEvent = 0; iEvent < nEvent; iEvent++) {
+			double time = eventTable.getTime(iEvent);
+			x[iEvent] = timeScalingFactor * time;
+			y[iEvent] = cursor.rate(time);
 		}
 		createPlot(file, x, y, "start time " + timeUnitPlot, loadCurve.getName());
 	}
@@ -293,16 +358,30 @@ public class PlotFileCreator {
 	 */
 	public static void createPlot(final File file, final Collection<LoadEvent> eventList, final LoadCurve loadCurve,
 			final int clientId, final String timeUnitPlot) throws IOException {
-		double[] x = new double[eventList.size()];
-		double[] y = new double[eventList.size()];
+		createPlot(file, EventTable.of(eventList), loadCurve, clientId, timeUnitPlot);
+	}
+
+	/**
+	 * Plot the events in the given table created from a load curve, filtered by the given client
+	 * id.
+	 * 
+	 * @see #createPlot(File, Collection, LoadCurve, int, String)
+	 */
+	public static void createPlot(final File file, final EventTable eventTable, final LoadCurve loadCurve,
+			final int clientId, final String timeUnitPlot) throws IOException {
+		int nEvent = eventTable.size();
+		double[] x = new double[nEvent];
+		double[] y = new double[nEvent];
 
 		double timeScalingFactor = LoadCurveCalculator.getTimeScalingFactor(LoadCurveCalculator.timeUnit_hour, timeUnitPlot);
 
-		int iEvent = 0;
-		for (LoadEvent event : eventList) {
-			if (event.getClientId() == clientId) {
-				x[iEvent] = timeScalingFactor * event.getTime();
-				y[iEvent++] = LoadCurveCalculator.r(loadCurve, event.getTime());
+		CompiledLoadCurve.Cursor cursor = CompiledLoadCurve.compile(loadCurve).cursor();
+		int iPoint = 0;
+		for (int iEvent = 0; iEvent < nEvent; iEvent++) {
+			if (eventTable.getClientId(iEvent) == clientId) {
+				double time = eventTable.getTime(iEvent);
+				x[iPoint] = timeScalingFactor * time;
+				y[iPoint++] = cursor.rate(time);
 			}
 		}
 		createPlot(file, x, y, "start time " + timeUnitPlot, loadCurve.getName() + " client " + clientId);
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.cli;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static java.util.Arrays.asList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Marshaller;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import ca.odell.glazedlists.GlazedLists;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.mgmtp.perfload.loadprofiles.generation.GenerationReport;
+import com.mgmtp.perfload.loadprofiles.model.Client;
+import com.mgmtp.perfload.loadprofiles.model.Operation;
+import com.mgmtp.perfload.loadprofiles.model.Target;
+import com.mgmtp.perfload.loadprofiles.ui.ctrl.LoadProfilesController;
+import com.mgmtp.perfload.loadprofiles.ui.model.LoadProfileConfig;
+import com.mgmtp.perfload.loadprofiles.ui.model.Marker;
+import com.mgmtp.perfload.loadprofiles.ui.model.OneTime;
+import com.mgmtp.perfload.loadprofiles.ui.model.Settings;
+import com.mgmtp.perfload.loadprofiles.ui.model.Stairs;
+
+public class BatchGeneratorTest {
+
+	private static final int NUM_CONFIGS = 4;
+
+	private File dir;
+	private File settingsFile;
+	private final List<File> configFiles = newArrayList();
+
+	@BeforeClass
+	public void createConfigs() throws Exception {
+		dir = Files.createTempDir();
+
+		Operation op1 = new Operation();
+		op1.setName("op1");
+		op1.setRelativeClientLoad(1.);
+		Operation op2 = new Operation();
+		op2.setName("op2");
+		op2.setRelativeClientLoad(2.);
+
+		Target target1 = new Target();
+		target1.setName("target1");
+		target1.setLoadPart(.5);
+		Target target2 = new Target();
+		target2.setName("target2");
+		target2.setLoadPart(.5);
+
+		Client client1 = new Client();
+		client1.setName("client1");
+		client1.setDaemonId(1);
+		client1.setNumProcesses(2);
+		client1.setRelativePower(.5);
+		Client client2 = new Client();
+		client2.setName("client2");
+		client2.setDaemonId(2);
+		client2.setNumProcesses(3);
+		client2.setRelativePower(.5);
+
+		Settings settings = Settings.of(asList(op1, op2), asList(target1, target2), asList(client1, client2));
+		settingsFile = new File(dir, "settings.xml");
+		Marshaller m = JAXBContext.newInstance(Settings.class).createMarshaller();
+		m.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
+		m.marshal(settings, settingsFile);
+
+		LoadProfilesController controller = new LoadProfilesController();
+		controller.setOperations(GlazedLists.eventList(settings.getOperations()));
+		controller.setTargets(GlazedLists.eventList(settings.getTargets()));
+		controller.setClients(GlazedLists.eventList(settings.getClients()));
+
+		for (int i = 0; i < NUM_CONFIGS; i++) {
+			LoadProfileConfig lpc = new LoadProfileConfig();
+			lpc.setName("config" + i);
+			lpc.getClients().addAll(asList(client1, client2));
+			lpc.getTargets().addAll(asList(target1, target2));
+			lpc.getLoadProfileEntities().add(new Stairs(op1, 0, 5, 10, 5, 100 * (i + 1), 2));
+			lpc.getLoadProfileEntities().add(new Stairs(op2, 10, 5, 20, 5, 50, 3));
+			lpc.getLoadProfileEntities().add(new OneTime(op2, 15, asList(target2)));
+			lpc.getLoadProfileEntities().add(new Marker("marker", 10, 20));
+
+			File configFile = new File(dir, "config" + i + ".xml");
+			controller.saveProfileConfig(configFile, lpc);
+			configFiles.add(configFile);
+		}
+	}
+
+	@AfterClass
+	public void deleteConfigs() throws IOException {
+		FileUtils.deleteDirectory(dir);
+	}
+
+	@Test
+	public void testConcurrentExportsEqualSequentialExports() throws Exception {
+		File sequentialDir = new File(dir, "sequential");
+		BatchGenerator sequential = new BatchGenerator(settingsFile, sequentialDir, 1, 1);
+		assertEquals(sequential.run(configFiles), 0);
+
+		File concurrentDir = new File(dir, "concurrent");
+		BatchGenerator concurrent = new BatchGenerator(settingsFile, concurrentDir, NUM_CONFIGS, 2);
+		concurrent.setOperationHistograms(true);
+		assertEquals(concurrent.run(configFiles), 0);
+
+		for (File configFile : configFiles) {
+			File sequentialFile = sequential.getEventsFile(configFile);
+			File concurrentFile = concurrent.getEventsFile(configFile);
+			List<String> events = readEvents(sequentialFile);
+			assertFalse(events.isEmpty(), "no events in " + sequentialFile);
+			assertTrue(events.contains("600000;[[marker]];marker;left;"), "no marker in " + sequentialFile);
+			assertEquals(readEvents(concurrentFile), events, "events of " + configFile.getName());
+
+			assertTrue(GenerationReport.getReportFile(concurrentFile).isFile());
+			String baseName = configFile.getName().replace(".xml", "");
+			assertTrue(new File(concurrentDir, baseName + "-histogram-operation-op1.csv").isFile());
+		}
+	}
+
+	@Test
+	public void testFailedExportDoesNotStopOthers() throws Exception {
+		File invalidConfig = new File(dir, "invalid.xml");
+		Files.write("<loadProfileConfig><clients><client>unknown</client></clients></loadProfileConfig>",
+				invalidConfig, Charsets.UTF_8);
+		BatchGenerator generator = new BatchGenerator(settingsFile, new File(dir, "failed"), 2, 2);
+		assertEquals(generator.run(asList(invalidConfig, configFiles.get(0))), 1);
+		assertTrue(generator.getEventsFile(configFiles.get(0)).isFile());
+	}
+
+	/**
+	 * @return the lines of an events file without the header lines, which contain the date
+	 */
+	private static List<String> readEvents(final File file) throws Exception {
+		List<String> lines = Files.readLines(file, Charsets.UTF_8);
+		List<String> events = newArrayList();
+		for (String line : lines) {
+			if (!line.startsWith("# Created") && !line.startsWith("# Load Profile")) {
+				events.add(line);
+			}
+		}
+		return events;
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.generation;
+
+import static org.testng.Assert.assertEquals;
+
+import org.testng.annotations.Test;
+
+import com.mgmtp.perfload.loadprofiles.model.LoadCurve;
+
+/**
+ * Compares the calculations of the compiled load curve with the ones of the
+ * {@link LoadCurveCalculator}.
+ */
+public class CompiledLoadCurveTest {
+
+	private LoadCurve generateLoadCurve() {
+		double[] timeValues = { 0., 30., 90., 120., 180., 210. };
+		double[] rateValues = { 0., 100. / 60., 100. / 60., 200. / 60., 200. / 60., 0. };
+		LoadCurve loadCurve = new LoadCurve();
+		loadCurve.setTimeValues(timeValues);
+		loadCurve.setRateValues(rateValues);
+		loadCurve.setTimeUnit(LoadCurveCalculator.timeUnit_minute);
+		loadCurve.setRateUnit(LoadCurveCalculator.rateUnit_perHour);
+		loadCurve.setName("Registration");
+		return loadCurve;
+	}
+
+	@Test
+	public void testCompileDoesNotChangeLoadCurve() {
+		LoadCurve loadCurve = generateLoadCurve();
+		CompiledLoadCurve compiledLoadCurve = CompiledLoadCurve.compile(loadCurve);
+
+		assertEquals(loadCurve.getTimeUnit(), LoadCurveCalculator.timeUnit_minute);
+		assertEquals(loadCurve.getTimeValues(5), 210.);
+		assertEquals(compiledLoadCurve.getTimeValue(5), 3.5);
+	}
+
+	@Test
+	public void testSameResultsAsLoadCurveCalculator() {
+		LoadCurve loadCurve = generateLoadCurve();
+		CompiledLoadCurve compiledLoadCurve = CompiledLoadCurve.compile(loadCurve);
+		LoadCurveCalculator.transformToHours(loadCurve);
+
+		assertEquals(compiledLoadCurve.getNEvents(), loadCurve.getNEvents());
+		assertEquals(compiledLoadCurve.getRateMax(), loadCurve.getRateMax());
+
+		CompiledLoadCurve.Cursor cursor = compiledLoadCurve.cursor();
+		for (double t = -0.5; t < 4.; t += 0.01) {
+			double expected = LoadCurveCalculator.r(loadCurve, t);
+			assertEquals(compiledLoadCurve.rate(t), expected, "rate at " + t);
+			assertEquals(cursor.rate(t), expected, "rate of cursor at " + t);
+		}
+
+		int nEvents = (int) loadCurve.getNEvents() + 2;
+		double[] startTimes = new double[nEvents];
+		compiledLoadCurve.startTimes(0, nEvents, 0.5, startTimes);
+		for (int iEvent = 0; iEvent < nEvents; iEvent++) {
+			double expected = LoadCurveCalculator.deriveStartTime(loadCurve, iEvent + 0.5);
+			assertEquals(compiledLoadCurve.startTime(iEvent + 0.5), expected, "start time of event " + iEvent);
+			assertEquals(startTimes[iEvent], expected, "start time of event " + iEvent);
+		}
+	}
+
+	@Test
+	public void testEventsIsInverseOfStartTime() {
+		CompiledLoadCurve compiledLoadCurve = CompiledLoadCurve.compile(generateLoadCurve());
+		CompiledLoadCurve.Cursor cursor = compiledLoadCurve.cursor();
+
+		assertEquals(compiledLoadCurve.events(-1.), 0.);
+		assertEquals(compiledLoadCurve.events(4.), compiledLoadCurve.getNEvents());
+		for (int iEvent = 1; iEvent < compiledLoadCurve.getNEvents(); iEvent++) {
+			double startTime = cursor.startTime(iEvent);
+			assertEquals(cursor.events(startTime), iEvent, 1e-6);
+		}
+	}
+}
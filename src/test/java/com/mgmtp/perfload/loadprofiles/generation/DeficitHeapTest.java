@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.generation;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+/**
+ * Compares the selection of the {@link DeficitHeap} with a linear scan for the first maximum.
+ */
+public class DeficitHeapTest {
+
+	@Test
+	public void testSelectionEqualsLinearScan() {
+		Random random = new Random(42L);
+		double[] weights = { 1., 1., 0.5, 2., 0.1, 0.3 };
+
+		for (int size : new int[] { 1, 2, 7, 64, 200 }) {
+			DeficitHeap heap = new DeficitHeap(size);
+			double[] loads = new double[size];
+			double cumulatedLoad = 0.;
+			for (int iEvent = 0; iEvent < 20000; iEvent++) {
+				double weight = weights[random.nextInt(weights.length)];
+				cumulatedLoad += weight;
+				double desiredLoad = cumulatedLoad / size;
+
+				int selected = heap.selectHighestDeficit(desiredLoad);
+				assertEquals(selected, linearScan(loads, desiredLoad), "size " + size + ", event " + iEvent);
+				loads[selected] += weight;
+				heap.addLoad(selected, weight);
+			}
+		}
+	}
+
+	@Test
+	public void testEqualPowerMembersTie() {
+		// the members are selected round-robin, each selection ties with all members of the round
+		int size = 1000;
+		DeficitHeap heap = new DeficitHeap(size);
+		double[] loads = new double[size];
+		for (int iEvent = 0; iEvent < 5 * size; iEvent++) {
+			double desiredLoad = (iEvent + 1.) / size;
+			int selected = heap.selectHighestDeficit(desiredLoad);
+			assertEquals(selected, iEvent % size, "event " + iEvent);
+			loads[selected] += 1.;
+			heap.addLoad(selected, 1.);
+		}
+	}
+
+	@Test
+	public void testDifferentLoadsRoundedToTheSameDeficit() {
+		// the deficits of loads differing by less than an ulp of the desired load are equal
+		int size = 64;
+		double desiredLoad = 1e16;
+		DeficitHeap heap = new DeficitHeap(size);
+		double[] loads = new double[size];
+		for (int iEvent = 0; iEvent < 20 * size; iEvent++) {
+			int selected = heap.selectHighestDeficit(desiredLoad);
+			assertEquals(selected, linearScan(loads, desiredLoad), "event " + iEvent);
+			double load = 0.25 * (1 + iEvent % 3);
+			loads[selected] += load;
+			heap.addLoad(selected, load);
+		}
+	}
+
+	/**
+	 * @return the index of the first member with the highest deficit
+	 */
+	private static int linearScan(final double[] loads, final double desiredLoad) {
+		int selected = 0;
+		double deficitMax = desiredLoad - loads[0];
+		for (int i = 1; i < loads.length; i++) {
+			if (desiredLoad - loads[i] > deficitMax) {
+				deficitMax = desiredLoad - loads[i];
+				selected = i;
+			}
+		}
+		return selected;
+	}
+}
@@ -23,21 +23,50 @@ package com.mgmtp.perfload.loadprofiles.generation;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Lists.newArrayListWithCapacity;
-
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.testng.SkipException;
 import org.testng.annotations.Test;
 
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+import com.mgmtp.perfload.loadprofiles.generation.ShardedEventFileWriter.ShardKey;
+
+import com.mgmtp.perfload.loadprofiles.model.BaseLoadProfileEvent;
 import com.mgmtp.perfload.loadprofiles.model.Client;
+import com.mgmtp.perfload.loadprofiles.model.EventTable;
 import com.mgmtp.perfload.loadprofiles.model.LoadCurve;
 import com.mgmtp.perfload.loadprofiles.model.LoadCurveAssignment;
 import com.mgmtp.perfload.loadprofiles.model.LoadEvent;
+import com.mgmtp.perfload.loadprofiles.model.LoadEventComparator;
 import com.mgmtp.perfload.loadprofiles.model.LoadTestConfiguration;
+import com.mgmtp.perfload.loadprofiles.model.MarkerEvent;
 import com.mgmtp.perfload.loadprofiles.model.Operation;
 import com.mgmtp.perfload.loadprofiles.model.Target;
 import com.mgmtp.perfload.loadprofiles.util.PlotFileCreator;
@@ -194,18 +223,504 @@ public class EventDistributorTest {
 				clientEventList);
 	}
 
+	/**
+	 * Verifies that merging the lazily created events of all assignments yields the same sequence
+	 * as concatenating the event lists of all assignments and sorting them.
+	 */
+	@Test
+	public void testMergedEventsAreSortedLikeConcatenatedEvents() {
+		String name0 = "Registration";
+		String name1 = "Get a product";
+		LoadTestConfiguration loadTestConfiguration = createLoadTestConfiguration(name0, name1);
+		EventDistributor.addScaledLoadCurvesToAssignments(loadTestConfiguration, generateLoadCurves(name0, name1));
+
+		List<LoadCurveAssignment> assignments = loadTestConfiguration.getLoadCurveAssignments();
+		int numAssignments = assignments.size();
+
+		List<LoadEvent> expectedEvents = newArrayList();
+		List<AssignmentEventSource> sources = newArrayList();
+		for (int iAssignment = 0; iAssignment < numAssignments; iAssignment++) {
+			double shift = (iAssignment + 0.5) / numAssignments;
+			AssignmentEventSource source = new AssignmentEventSource(iAssignment, assignments.get(iAssignment), shift);
+			while (source.next()) {
+				LoadEvent event = new LoadEvent(source.getTime(), source.getOperation());
+				event.setTarget(source.getTarget());
+				expectedEvents.add(event);
+			}
+			sources.add(new AssignmentEventSource(iAssignment, assignments.get(iAssignment), shift));
+		}
+		Collections.sort(expectedEvents, new LoadEventComparator());
+
+		EventMerger merger = new EventMerger(sources);
+		int iEvent = 0;
+		while (merger.next()) {
+			AssignmentEventSource source = merger.current();
+			LoadEvent expected = expectedEvents.get(iEvent++);
+			assertEquals(source.getTime(), expected.getTime());
+			assertEquals(source.getOperation(), expected.getOperation());
+			assertEquals(source.getTarget(), expected.getTarget());
+		}
+		assertEquals(iEvent, expectedEvents.size());
+		assertTrue(iEvent > 0);
+
+		List<LoadEvent> clientEventList = EventDistributor.createClientEventList(loadTestConfiguration);
+		assertEquals(clientEventList.size(), expectedEvents.size());
+	}
+
+	@Test
+	public void testEventTableEqualsEventList() throws IOException {
+		String name0 = "Registration";
+		String name1 = "Get a product";
+		LoadTestConfiguration loadTestConfiguration = createLoadTestConfiguration(name0, name1);
+		EventDistributor.addScaledLoadCurvesToAssignments(loadTestConfiguration, generateLoadCurves(name0, name1));
+
+		List<LoadEvent> clientEventList = EventDistributor.createClientEventList(loadTestConfiguration);
+		EventTable clientEventTable = EventDistributor.createClientEventTable(loadTestConfiguration);
+
+		assertEquals(clientEventTable.size(), clientEventList.size());
+		for (int iEvent = 0; iEvent < clientEventList.size(); iEvent++) {
+			LoadEvent event = clientEventList.get(iEvent);
+			assertEquals(clientEventTable.getTime(iEvent), event.getTime());
+			assertEquals(clientEventTable.getOperation(iEvent), event.getOperation());
+			assertEquals(clientEventTable.getTarget(iEvent), event.getTarget());
+			assertEquals(clientEventTable.getClientId(iEvent), event.getClientId());
+			assertEquals(clientEventTable.getDaemonId(iEvent), event.getDaemonId());
+			assertEquals(clientEventTable.getProcessId(iEvent), event.getProcessId());
+		}
+
+		File listFile = createEventListFile("fromList");
+		EventDistributor.writeEventListForPerfLoadClientsToFile(listFile, "# header", clientEventList);
+		File tableFile = createEventListFile("fromTable");
+		EventDistributor.writeEventTableForPerfLoadClientsToFile(tableFile, "# header", clientEventTable,
+				Collections.<LoadEvent>emptyList());
+		assertEquals(Files.toString(tableFile, Charsets.UTF_8), Files.toString(listFile, Charsets.UTF_8));
+	}
+
+	@Test
+	public void testEventsDoNotDependOnParallelism() {
+		String name0 = "Registration";
+		String name1 = "Get a product";
+		LoadTestConfiguration loadTestConfiguration = createLoadTestConfiguration(name0, name1);
+		EventDistributor.addScaledLoadCurvesToAssignments(loadTestConfiguration, generateLoadCurves(name0, name1));
+
+		GenerationOptions options = new GenerationOptions();
+		options.setParallelism(1);
+		EventTable expectedEvents = EventDistributor.createClientEventTable(loadTestConfiguration, options);
+		for (int parallelism : new int[] { 2, 4 }) {
+			options.setParallelism(parallelism);
+			EventTable events = EventDistributor.createClientEventTable(loadTestConfiguration, options);
+			assertEquals(events.size(), expectedEvents.size());
+			for (int iEvent = 0; iEvent < events.size(); iEvent++) {
+				assertEquals(events.getTime(iEvent), expectedEvents.getTime(iEvent));
+				assertEquals(events.getOperationIndex(iEvent), expectedEvents.getOperationIndex(iEvent));
+				assertEquals(events.getTargetIndex(iEvent), expectedEvents.getTargetIndex(iEvent));
+				assertEquals(events.getClientId(iEvent), expectedEvents.getClientId(iEvent));
+				assertEquals(events.getProcessId(iEvent), expectedEvents.getProcessId(iEvent));
+			}
+		}
+	}
+
+	@Test
+	public void testTimeWindowEqualsSliceOfAllEvents() {
+		String name0 = "Registration";
+		String name1 = "Get a product";
+		LoadTestConfiguration loadTestConfiguration = createLoadTestConfiguration(name0, name1);
+		EventDistributor.addScaledLoadCurvesToAssignments(loadTestConfiguration, generateLoadCurves(name0, name1));
+
+		GenerationOptions options = new GenerationOptions();
+		options.setParallelism(2);
+		EventTable allEvents = EventDistributor.createClientEventTable(loadTestConfiguration, options);
+		double duration = allEvents.getTime(allEvents.size() - 1);
+
+		List<GenerationCheckpoint> checkpoints = EventDistributor.createCheckpoints(loadTestConfiguration, options,
+				new double[] { 0.5 * duration, 0.25 * duration, 2. * duration });
+		assertEquals(checkpoints.size(), 3);
+		assertEquals(checkpoints.get(2).getNumEvents(), allEvents.size());
+
+		double[][] windows = { { 0.3 * duration, 0.6 * duration }, { 0.5 * duration, Double.POSITIVE_INFINITY },
+				{ 0., 0.25 * duration } };
+		for (double[] window : windows) {
+			int firstRow = 0;
+			while (firstRow < allEvents.size() && allEvents.getTime(firstRow) < window[0]) {
+				firstRow++;
+			}
+			int endRow = firstRow;
+			while (endRow < allEvents.size() && allEvents.getTime(endRow) < window[1]) {
+				endRow++;
+			}
+			assertTrue(endRow > firstRow);
+
+			options.setTimeWindow(window[0], window[1]);
+			GenerationCheckpoint[] startCheckpoints = { null, checkpoints.get(0), checkpoints.get(1) };
+			for (GenerationCheckpoint checkpoint : startCheckpoints) {
+				if (checkpoint != null && checkpoint.getTime() > window[0]) {
+					continue;
+				}
+				options.setCheckpoint(checkpoint);
+				EventTable events = EventDistributor.createClientEventTable(loadTestConfiguration, options);
+				assertEquals(events.size(), endRow - firstRow);
+				for (int iEvent = 0; iEvent < events.size(); iEvent++) {
+					int row = firstRow + iEvent;
+					assertEquals(events.getTime(iEvent), allEvents.getTime(row));
+					assertEquals(events.getOperationIndex(iEvent), allEvents.getOperationIndex(row));
+					assertEquals(events.getTargetIndex(iEvent), allEvents.getTargetIndex(row));
+					assertEquals(events.getClientId(iEvent), allEvents.getClientId(row));
+					assertEquals(events.getProcessId(iEvent), allEvents.getProcessId(row));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testMultiProcessEventFileEqualsEventFile() throws IOException {
+		String name0 = "Registration";
+		String name1 = "Get a product";
+		LoadTestConfiguration loadTestConfiguration = createLoadTestConfiguration(name0, name1);
+		EventDistributor.addScaledLoadCurvesToAssignments(loadTestConfiguration, generateLoadCurves(name0, name1));
+		List<BaseLoadProfileEvent> additionalEvents = newArrayList();
+		additionalEvents.add(new MarkerEvent("Peak", 0.02, MarkerEvent.Type.left));
+		additionalEvents.add(new MarkerEvent("Peak", 0.5, MarkerEvent.Type.right));
+
+		GenerationCheckpoint checkpoint = EventDistributor.createCheckpoints(loadTestConfiguration,
+				new GenerationOptions(), new double[] { 0.1 }).get(0);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		checkpoint.writeTo(new DataOutputStream(bytes));
+		assertEquals(GenerationCheckpoint.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))),
+				checkpoint);
+
+		File expectedFile = createEventListFile("singleProcess");
+		EventDistributor.writeEventListForPerfLoadClientsToFile(expectedFile, "# header", EventDistributor
+				.mergeWithAdditionalEvents(EventDistributor.createClientEventIterator(loadTestConfiguration),
+						additionalEvents));
+		File file = createEventListFile("multiProcess");
+		MultiProcessEventGeneration.writeEventFile(file, "# header", loadTestConfiguration, additionalEvents, 3,
+				new File("target/data/eventlists/jobs"), MultiProcessEventGeneration.LOCAL_PROCESSES);
+		assertEquals(Files.toByteArray(file), Files.toByteArray(expectedFile));
+	}
+
+	@Test
+	public void testGenerationReport() throws IOException {
+		String name0 = "Registration";
+		String name1 = "Get a product";
+		LoadTestConfiguration loadTestConfiguration = createLoadTestConfiguration(name0, name1);
+		EventDistributor.addScaledLoadCurvesToAssignments(loadTestConfiguration, generateLoadCurves(name0, name1));
+
+		GenerationReport report = new GenerationReport();
+		GenerationOptions options = new GenerationOptions();
+		options.setParallelism(2);
+		options.setReport(report);
+		List<LoadEvent> events = EventDistributor.createClientEventList(loadTestConfiguration, options);
+		report.finish();
+
+		assertEquals(report.getNumEvents(), events.size());
+		assertEquals(report.getClientResidua().length, loadTestConfiguration.getClients().size());
+		for (int iClient = 0; iClient < loadTestConfiguration.getClients().size(); iClient++) {
+			assertEquals(report.getProcessResidua(iClient).length, loadTestConfiguration.getClients().get(iClient)
+					.getNumProcesses());
+		}
+
+		// the phases cover the whole generation
+		long wallNanos = 0L;
+		for (GenerationReport.Phase phase : GenerationReport.Phase.values()) {
+			assertTrue(report.getWallNanos(phase) >= 0L, "wall time of " + phase);
+			wallNanos += report.getWallNanos(phase);
+		}
+		assertEquals(wallNanos, report.getTotalWallNanos());
+		assertTrue(report.getWallNanos(GenerationReport.Phase.DISTRIBUTION) > 0L);
+		assertTrue(report.getEventsPerSecond() > 0.);
+
+		File reportFile = GenerationReport.getReportFile(createEventListFile("report"));
+		report.writeJson(reportFile);
+		String json = Files.toString(reportFile, Charsets.UTF_8);
+		assertTrue(json.contains("\"numEvents\": " + events.size() + ","), json);
+		assertTrue(json.contains("\"phase\": \"EVENT_CREATION\""), json);
+		log.info("Generation report:\n{}", report);
+	}
+
+	@Test
+	public void testGenerationMonitor() throws JMException {
+		String name0 = "Registration";
+		String name1 = "Get a product";
+		LoadTestConfiguration loadTestConfiguration = createLoadTestConfiguration(name0, name1);
+		EventDistributor.addScaledLoadCurvesToAssignments(loadTestConfiguration, generateLoadCurves(name0, name1));
+
+		GenerationMonitor monitor = new GenerationMonitor();
+		GenerationOptions options = new GenerationOptions();
+		options.setMonitor(monitor);
+		final long[] progress = new long[2];
+		options.setProgressListener(new GenerationProgressListener() {
+			@Override
+			public void progressChanged(final long eventsDistributed, final long expectedEvents) {
+				assertTrue(eventsDistributed >= progress[0]);
+				progress[0] = eventsDistributed;
+				progress[1] = expectedEvents;
+			}
+		});
+		ObjectName objectName = monitor.register("testGenerationMonitor");
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			assertEquals(server.getAttribute(objectName, "Phase"), "NOT_STARTED");
+			List<LoadEvent> events = EventDistributor.createClientEventList(loadTestConfiguration, options);
+			monitor.finish();
+			assertEquals(server.getAttribute(objectName, "Phase"), "FINISHED");
+			assertEquals(server.getAttribute(objectName, "EventsDistributed"), (long) events.size());
+			assertEquals(monitor.getExpectedEvents(), events.size());
+			assertEquals(monitor.getEventsGenerated(), events.size());
+			assertEquals(monitor.getProgress(), 1.);
+			assertEquals(progress[0], events.size());
+			assertEquals(progress[1], events.size());
+		} finally {
+			monitor.unregister();
+		}
+
+		// cancel through the MBean interface after some events
+		final GenerationMonitorMBean cancellingMonitor = new GenerationMonitor();
+		options.setMonitor((GenerationMonitor) cancellingMonitor);
+		options.setProgressListener(null);
+		Iterator<LoadEvent> it = EventDistributor.createClientEventIterator(loadTestConfiguration, options);
+		int numEvents = 0;
+		try {
+			while (it.hasNext()) {
+				it.next();
+				if (++numEvents == 100) {
+					cancellingMonitor.cancel();
+				}
+			}
+			fail("The generation was not cancelled");
+		} catch (CancellationException ex) {
+			assertEquals(numEvents, 100);
+			assertEquals(cancellingMonitor.getPhase(), "CANCELLED");
+			assertEquals(cancellingMonitor.getEventsDistributed(), 100L);
+		}
+	}
+
+	@Test
+	public void testBinaryEventFileEqualsTextFile() throws IOException {
+		String name0 = "Registration";
+		String name1 = "Get a product";
+		LoadTestConfiguration loadTestConfiguration = createLoadTestConfiguration(name0, name1);
+		EventDistributor.addScaledLoadCurvesToAssignments(loadTestConfiguration, generateLoadCurves(name0, name1));
+
+		// a one-time event with an operation and a target unknown to the configuration and markers
+		Operation oneTimeOperation = new Operation();
+		oneTimeOperation.setName("One time");
+		Target oneTimeTarget = new Target();
+		oneTimeTarget.setName("One time target");
+		LoadEvent oneTimeEvent = new LoadEvent(0.01, oneTimeOperation);
+		oneTimeEvent.setTarget(oneTimeTarget);
+		oneTimeEvent.setDaemonId(1);
+		oneTimeEvent.setProcessId(0);
+		List<BaseLoadProfileEvent> additionalEvents = newArrayList(oneTimeEvent,
+				new MarkerEvent("Peak", 0.02, MarkerEvent.Type.left),
+				new MarkerEvent("Peak", 0.03, MarkerEvent.Type.right));
+
+		EventTable clientEvents = EventDistributor.createClientEventTable(loadTestConfiguration);
+		File textFile = createEventListFile("text");
+		EventDistributor.writeEventTableForPerfLoadClientsToFile(textFile, "# header", clientEvents, additionalEvents);
+		File binaryFile = createEventListFile("binary");
+		EventDistributor.writeEventTableForPerfLoadClientsToBinaryFile(binaryFile, "# header", clientEvents,
+				additionalEvents);
+		File streamedBinaryFile = createEventListFile("streamedBinary");
+		EventDistributor.writeEventListForPerfLoadClientsToBinaryFile(streamedBinaryFile, "# header",
+				EventDistributor.mergeWithAdditionalEvents(EventDistributor.createClientEventIterator(loadTestConfiguration),
+						additionalEvents), loadTestConfiguration, additionalEvents);
+		assertTrue(binaryFile.length() < textFile.length() / 2, "binary file not compact: " + binaryFile.length());
+
+		for (File file : new File[] { binaryFile, streamedBinaryFile }) {
+			BinaryEventFileReader reader = new BinaryEventFileReader(file);
+			try {
+				assertEquals(reader.getNumRecords(), clientEvents.size() + additionalEvents.size());
+				File convertedFile = createEventListFile("converted");
+				reader.writeTextFile(convertedFile);
+				assertEquals(Files.toString(convertedFile, Charsets.UTF_8), Files.toString(textFile, Charsets.UTF_8));
+			} finally {
+				reader.close();
+			}
+		}
+	}
+
+	@Test
+	public void testShardedEventFilesEqualFilteredEventFile() throws IOException {
+		String name0 = "Registration";
+		String name1 = "Get a product";
+		LoadTestConfiguration loadTestConfiguration = createLoadTestConfiguration(name0, name1);
+		EventDistributor.addScaledLoadCurvesToAssignments(loadTestConfiguration, generateLoadCurves(name0, name1));
+		List<BaseLoadProfileEvent> additionalEvents = newArrayList();
+		additionalEvents.add(new MarkerEvent("Peak", 0.02, MarkerEvent.Type.left));
+		additionalEvents.add(new MarkerEvent("Peak", 0.03, MarkerEvent.Type.right));
+
+		EventTable clientEvents = EventDistributor.createClientEventTable(loadTestConfiguration);
+		File textFile = createEventListFile("unsharded");
+		EventDistributor.writeEventTableForPerfLoadClientsToFile(textFile, "# header", clientEvents, additionalEvents);
+		List<String> lines = Files.readLines(textFile, Charsets.UTF_8);
+
+		File directory = new File("target/data/eventlists/shards");
+		directory.mkdirs();
+		File clientManifest = EventDistributor.writeEventTableForPerfLoadClientsToShards(directory, "table", "# header",
+				clientEvents, additionalEvents, loadTestConfiguration, ShardKey.CLIENT);
+		File daemonManifest = EventDistributor.writeEventListForPerfLoadClientsToShards(directory, "stream", "# header",
+				EventDistributor.mergeWithAdditionalEvents(EventDistributor.createClientEventIterator(loadTestConfiguration),
+						additionalEvents), loadTestConfiguration, ShardKey.DAEMON);
+
+		// the daemon ids of the clients are different, so both kinds of shards contain the same events
+		for (File manifest : new File[] { clientManifest, daemonManifest }) {
+			int numEvents = 0;
+			for (String manifestLine : Files.readLines(manifest, Charsets.UTF_8)) {
+				if (manifestLine.startsWith("#")) {
+					continue;
+				}
+				String[] fields = manifestLine.split(";");
+				int id = Integer.parseInt(fields[0]);
+				int daemonId = manifest == clientManifest ? loadTestConfiguration.getClients().get(id).getDaemonId() : id;
+
+				List<String> expectedLines = newArrayList(lines.get(0));
+				for (String line : lines.subList(1, lines.size())) {
+					String[] lineFields = line.split(";");
+					if (lineFields[1].equals("[[marker]]") || Integer.parseInt(lineFields[3]) == daemonId) {
+						expectedLines.add(line);
+					}
+				}
+				assertEquals(Files.readLines(new File(directory, fields[1]), Charsets.UTF_8), expectedLines);
+				assertEquals(Long.parseLong(fields[2]), expectedLines.size() - 1 - additionalEvents.size());
+				numEvents += Integer.parseInt(fields[2]);
+			}
+			assertEquals(numEvents, clientEvents.size());
+		}
+	}
+
+	@Test
+	public void testGenerationDoesNotAllocatePerEvent() {
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		if (!(threadBean instanceof com.sun.management.ThreadMXBean)
+				|| !((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported()) {
+			throw new SkipException("Measuring the memory allocated by a thread is not supported");
+		}
+
+		String name0 = "Registration";
+		String name1 = "Get a product";
+		LoadTestConfiguration loadTestConfiguration = createLoadTestConfiguration(name0, name1);
+		List<LoadCurve> loadCurves = generateLoadCurves(name0, name1);
+		for (LoadCurve loadCurve : loadCurves) {
+			double[] rateValues = loadCurve.getRateValues();
+			for (int i = 0; i < rateValues.length; i++) {
+				rateValues[i] *= 20.;
+			}
+			LoadCurveCalculator.fillStatisticsAndNormValuesOfLoadCurve(loadCurve);
+		}
+		EventDistributor.addScaledLoadCurvesToAssignments(loadTestConfiguration, loadCurves);
+
+		GenerationOptions options = new GenerationOptions();
+		options.setParallelism(1);
+		options.setTrace(GenerationTrace.NONE);
+
+		// warm up, so that the measurement is not disturbed by class loading
+		EventDistributor.generateClientEvents(loadTestConfiguration, options,
+				new AllocationRecorder((com.sun.management.ThreadMXBean) threadBean));
+
+		AllocationRecorder recorder = new AllocationRecorder((com.sun.management.ThreadMXBean) threadBean);
+		long numEvents = EventDistributor.generateClientEvents(loadTestConfiguration, options, recorder);
+		long[] blockBytes = recorder.getAllocatedBytesPerBlock();
+		assertTrue(blockBytes.length >= 3, "too few events: " + numEvents);
+
+		// the median block is neither disturbed by the compilation of the hot path nor by objects
+		// allocated once per block; a single small object per event would exceed the bound
+		Arrays.sort(blockBytes);
+		long medianBytes = blockBytes[blockBytes.length / 2];
+		log.info("Allocated bytes per block of " + AllocationRecorder.BLOCK_SIZE + " events: " + medianBytes);
+		assertTrue(medianBytes < AllocationRecorder.BLOCK_SIZE * 4L, "allocated bytes per block: " + medianBytes);
+	}
+
+	/**
+	 * Compares the events of all generation paths with the golden file, which has been written by
+	 * the original algorithm sorting all events before distributing them to the clients.
+	 */
+	@Test
+	public void testAbandonedIteratorIsClosed() throws IOException {
+		String name0 = "Registration";
+		String name1 = "Get a product";
+		LoadTestConfiguration loadTestConfiguration = createLoadTestConfiguration(name0, name1);
+		EventDistributor.addScaledLoadCurvesToAssignments(loadTestConfiguration, generateLoadCurves(name0, name1));
+		GenerationOptions options = new GenerationOptions();
+		options.setParallelism(2);
+
+		// closing the iterator shuts down its pool and ends the generation
+		Iterator<LoadEvent> events = EventDistributor.createClientEventIterator(loadTestConfiguration, options);
+		assertTrue(events instanceof Closeable);
+		events.next();
+		((Closeable) events).close();
+		assertFalse(events.hasNext());
+
+		// the writer closes the iterator, when the file cannot be written
+		File notADirectory = createEventListFile("notADirectory");
+		Files.write("", notADirectory, Charsets.UTF_8);
+		Iterator<BaseLoadProfileEvent> mergedEvents = EventDistributor.mergeWithAdditionalEvents(
+				EventDistributor.createClientEventIterator(loadTestConfiguration, options),
+				Collections.<BaseLoadProfileEvent>emptyList());
+		try {
+			EventDistributor.writeEventListForPerfLoadClientsToFile(new File(notADirectory, "events.perfload"), null,
+					mergedEvents);
+			fail("The file has been written");
+		} catch (IOException ex) {
+			// expected
+		}
+		assertFalse(mergedEvents.hasNext());
+	}
+
+	@Test
+	public void testEventsEqualGoldenFile() throws IOException {
+		String headerLines = "# EventDistributorTest golden";
+		byte[] expected = Resources.toByteArray(Resources.getResource(EventDistributorTest.class,
+				"EventDistributorTest_golden.perfload"));
+
+		File listFile = createEventListFile("goldenList");
+		EventDistributor.writeEventListForPerfLoadClientsToFile(listFile, headerLines,
+				EventDistributor.createClientEventList(createGoldenConfiguration()));
+		assertEquals(Files.toByteArray(listFile), expected, "list");
+
+		File streamedFile = createEventListFile("goldenStreamed");
+		EventDistributor.writeEventListForPerfLoadClientsToFile(streamedFile, headerLines,
+				EventDistributor.createClientEventIterator(createGoldenConfiguration()));
+		assertEquals(Files.toByteArray(streamedFile), expected, "streamed");
+
+		File tableFile = createEventListFile("goldenTable");
+		EventDistributor.writeEventTableForPerfLoadClientsToFile(tableFile, headerLines,
+				EventDistributor.createClientEventTable(createGoldenConfiguration()),
+				Collections.<BaseLoadProfileEvent>emptyList());
+		assertEquals(Files.toByteArray(tableFile), expected, "table");
+	}
+
 	private File createPlotFile(final String name) {
-		File file = new File("data/plots", "Plot_" + name + ".csv");
+		File file = new File("target/data/plots", "Plot_" + name + ".csv");
 		file.getParentFile().mkdirs();
 		return file;
 	}
 
 	private File createEventListFile(final String name) {
-		File file = new File("data/eventlists", "EventList_" + name + ".perfload");
+		File file = new File("target/data/eventlists", "EventList_" + name + ".perfload");
 		file.getParentFile().mkdirs();
 		return file;
 	}
 
+	private LoadTestConfiguration createGoldenConfiguration() {
+		String name0 = "Registration";
+		String name1 = "Get a product";
+		LoadTestConfiguration loadTestConfiguration = createLoadTestConfiguration(name0, name1);
+
+		// three clients of unequal power, two of which are tied
+		loadTestConfiguration.getClients().get(1).setRelativePower(0.25);
+		Client client3 = new Client();
+		client3.setDaemonId(3);
+		client3.setNumProcesses(2);
+		client3.setRelativePower(0.25);
+		loadTestConfiguration.getClients().add(client3);
+		for (LoadCurveAssignment loadCurveAssignment : loadTestConfiguration.getLoadCurveAssignments()) {
+			loadCurveAssignment.setLoadCurveScaling(loadCurveAssignment.getLoadCurveScaling() / 10.);
+		}
+
+		EventDistributor.addScaledLoadCurvesToAssignments(loadTestConfiguration, generateLoadCurves(name0, name1));
+		return loadTestConfiguration;
+	}
+
 	private LoadTestConfiguration createLoadTestConfiguration(final String loadCurveName1, final String loadCurveName2) {
 		LoadTestConfiguration loadTestConfiguration = new LoadTestConfiguration();
 		loadTestConfiguration.setName("EventDistributorTest");
@@ -367,4 +882,43 @@ public class EventDistributorTest {
 		log.info("Number of events for load curve " + loadCurve1.getName() + " is " + loadCurve1.getNEvents());
 		return loadCurves;
 	}
+
+	/**
+	 * Records the memory allocated by the current thread at the start of every block of
+	 * {@link #BLOCK_SIZE} events, so that the bytes allocated per block can be compared, e. g. by
+	 * their median, which is not affected by the blocks, in which the event times are created.
+	 */
+	private static class AllocationRecorder implements ClientEventHandler {
+		static final int BLOCK_SIZE = 4096;
+
+		private final com.sun.management.ThreadMXBean threadBean;
+		private final long threadId = Thread.currentThread().getId();
+		private final long[] allocatedBytes = new long[1024];
+		private int iEvent;
+		private int numBlocks;
+
+		AllocationRecorder(final com.sun.management.ThreadMXBean threadBean) {
+			this.threadBean = threadBean;
+		}
+
+		@Override
+		public void handleEvent(final double time, final Operation operation, final Target target, final int clientId,
+				final int daemonId, final int processId) {
+			if (iEvent % BLOCK_SIZE == 0 && numBlocks < allocatedBytes.length) {
+				allocatedBytes[numBlocks++] = threadBean.getThreadAllocatedBytes(threadId);
+			}
+			iEvent++;
+		}
+
+		/**
+		 * @return the bytes allocated while handling each complete block of events
+		 */
+		long[] getAllocatedBytesPerBlock() {
+			long[] blockBytes = new long[Math.max(0, numBlocks - 1)];
+			for (int i = 0; i < blockBytes.length; i++) {
+				blockBytes[i] = allocatedBytes[i + 1] - allocatedBytes[i];
+			}
+			return blockBytes;
+		}
+	}
 }
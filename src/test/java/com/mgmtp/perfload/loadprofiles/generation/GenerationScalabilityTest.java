@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.generation;
+
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.mgmtp.perfload.loadprofiles.model.LoadTestConfiguration;
+import com.mgmtp.perfload.loadprofiles.model.Operation;
+import com.mgmtp.perfload.loadprofiles.model.Target;
+
+/**
+ * Grows one dimension of a synthetic configuration at a time and records wall time, peak heap and
+ * events per second of the event generation. The growth exponent of the wall time, i. e. the slope
+ * of log(time) over log(size), is reported and checked, so that super-linear regressions of the
+ * {@link EventDistributor} are caught early. The results are written as CSV files to
+ * {@code target/scalability}.
+ * <p>
+ * The sizes are multiplied by the system property {@code perfload.scalability.scale}, which
+ * defaults to {@code 1}, so that the suite runs quickly by default and at production scale on
+ * demand.
+ */
+public class GenerationScalabilityTest {
+	private static final Logger log = LoggerFactory.getLogger(GenerationScalabilityTest.class);
+
+	private static final int SCALE = Integer.getInteger("perfload.scalability.scale", 1);
+	private static final int REPETITIONS = 3;
+	private static final int[] FACTORS = { 1, 2, 4, 8 };
+
+	/**
+	 * A dimension of the configuration, which is grown by the test.
+	 */
+	private abstract static class Dimension {
+		private final String name;
+		private final int baseSize;
+		private final double maxExponent;
+
+		Dimension(final String name, final int baseSize, final double maxExponent) {
+			this.name = name;
+			this.baseSize = baseSize;
+			this.maxExponent = maxExponent;
+		}
+
+		abstract void setSize(SyntheticConfigurationFactory factory, int size);
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	@BeforeClass
+	public void warmUp() {
+		measure(createFactory());
+	}
+
+	@DataProvider(name = "dimensions")
+	public Object[][] dimensions() {
+		return new Object[][] {
+				// the time is proportional to the number of events
+				{ new Dimension("totalEvents", 25000 * SCALE, 1.5) {
+					@Override
+					void setSize(final SyntheticConfigurationFactory factory, final int size) {
+						factory.setTotalEvents(size);
+					}
+				} },
+				// equally loaded clients of a power class are tied, the selection of the first
+				// maximum must not depend on the size of a class
+				{ new Dimension("numClients", 25 * SCALE, 0.75) {
+					@Override
+					void setSize(final SyntheticConfigurationFactory factory, final int size) {
+						factory.setNumClients(size);
+					}
+				} },
+				// the time per event grows at most logarithmically with the following dimensions, too
+				{ new Dimension("processesPerClient", 2 * SCALE, 0.75) {
+					@Override
+					void setSize(final SyntheticConfigurationFactory factory, final int size) {
+						factory.setProcessesPerClient(size);
+					}
+				} },
+				{ new Dimension("numAssignments", 4 * SCALE, 0.75) {
+					@Override
+					void setSize(final SyntheticConfigurationFactory factory, final int size) {
+						factory.setNumAssignments(size);
+						factory.setNumOperations(size);
+					}
+				} },
+				{ new Dimension("pointsPerCurve", 250 * SCALE, 0.75) {
+					@Override
+					void setSize(final SyntheticConfigurationFactory factory, final int size) {
+						factory.setPointsPerCurve(size);
+					}
+				} }
+		};
+	}
+
+	@Test(dataProvider = "dimensions")
+	public void testGrowthExponent(final Dimension dimension) throws IOException {
+		StringBuilder csv = new StringBuilder("size;events;wallTimeMillis;peakHeapBytes;eventsPerSecond\n");
+		double[] logSizes = new double[FACTORS.length];
+		double[] logTimes = new double[FACTORS.length];
+		for (int i = 0; i < FACTORS.length; i++) {
+			int size = dimension.baseSize * FACTORS[i];
+			SyntheticConfigurationFactory factory = createFactory();
+			dimension.setSize(factory, size);
+			Measurement measurement = measure(factory);
+
+			logSizes[i] = Math.log(size);
+			logTimes[i] = Math.log(measurement.wallTimeNanos);
+			double eventsPerSecond = measurement.numEvents * 1e9 / measurement.wallTimeNanos;
+			csv.append(String.format(Locale.ENGLISH, "%d;%d;%.3f;%d;%.0f%n", size, measurement.numEvents,
+					measurement.wallTimeNanos / 1e6, measurement.peakHeapBytes, eventsPerSecond));
+		}
+		double exponent = slope(logSizes, logTimes);
+		csv.append(String.format(Locale.ENGLISH, "# growth exponent %.3f%n", exponent));
+
+		File file = new File("target/scalability", dimension.name + ".csv");
+		file.getParentFile().mkdirs();
+		Files.write(csv, file, Charsets.UTF_8);
+		log.info("Scalability of {}:\n{}", dimension.name, csv);
+
+		assertTrue(exponent < dimension.maxExponent, "growth exponent of " + dimension.name + " is " + exponent
+				+ ", allowed is " + dimension.maxExponent);
+	}
+
+	private SyntheticConfigurationFactory createFactory() {
+		SyntheticConfigurationFactory factory = new SyntheticConfigurationFactory();
+		factory.setTotalEvents(100000L * SCALE);
+		factory.setNumClients(50);
+		return factory;
+	}
+
+	private static class Measurement {
+		long numEvents;
+		long wallTimeNanos = Long.MAX_VALUE;
+		long peakHeapBytes;
+	}
+
+	/**
+	 * Generates the events of the configuration several times and keeps the fastest run and the
+	 * largest peak heap.
+	 */
+	private Measurement measure(final SyntheticConfigurationFactory factory) {
+		GenerationOptions options = new GenerationOptions();
+		options.setParallelism(1);
+		options.setTrace(GenerationTrace.NONE);
+		ClientEventHandler handler = new ClientEventHandler() {
+			@Override
+			public void handleEvent(final double time, final Operation operation, final Target target, final int clientId,
+					final int daemonId, final int processId) {
+				// only the generation is measured
+			}
+		};
+
+		Measurement measurement = new Measurement();
+		for (int iRepetition = 0; iRepetition < REPETITIONS; iRepetition++) {
+			LoadTestConfiguration loadTestConfiguration = factory.create();
+			System.gc();
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+				if (pool.getType() == MemoryType.HEAP) {
+					pool.resetPeakUsage();
+				}
+			}
+			long start = System.nanoTime();
+			measurement.numEvents = EventDistributor.generateClientEvents(loadTestConfiguration, options, handler);
+			measurement.wallTimeNanos = Math.min(measurement.wallTimeNanos, System.nanoTime() - start);
+
+			long peakHeapBytes = 0L;
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+				if (pool.getType() == MemoryType.HEAP) {
+					peakHeapBytes += pool.getPeakUsage().getUsed();
+				}
+			}
+			measurement.peakHeapBytes = Math.max(measurement.peakHeapBytes, peakHeapBytes);
+		}
+		return measurement;
+	}
+
+	/**
+	 * @return the slope of the least squares line through the given points
+	 */
+	private static double slope(final double[] x, final double[] y) {
+		double meanX = 0.;
+		double meanY = 0.;
+		for (int i = 0; i < x.length; i++) {
+			meanX += x[i] / x.length;
+			meanY += y[i] / y.length;
+		}
+		double covariance = 0.;
+		double variance = 0.;
+		for (int i = 0; i < x.length; i++) {
+			covariance += (x[i] - meanX) * (y[i] - meanY);
+			variance += (x[i] - meanX) * (x[i] - meanX);
+		}
+		return covariance / variance;
+	}
+}
@@ -182,7 +182,8 @@ public class LoadCurveCalculatorTest {
 		double nEvents = testLoadCurve.getNEvents();
 		double[] timeValues = testLoadCurve.getTimeValues();
 		double[] histogram = new double[segmentsNEvents.length];
-		java.io.PrintWriter pw = new java.io.PrintWriter("data/plots/LoadCurveCalculatorTest_StartTimes");
+		new java.io.File("target/data/plots").mkdirs();
+		java.io.PrintWriter pw = new java.io.PrintWriter("target/data/plots/LoadCurveCalculatorTest_StartTimes");
 		pw.println("BaseLoadProfileEvent start time; Rate");
 		pw.println("0,0; 0,0");
 		for (int iEvent = 1; iEvent <= nEvents; iEvent++) {
@@ -205,4 +206,31 @@ public class LoadCurveCalculatorTest {
 					segmentsNEvents[ind] + ", found " + histogram[ind] + ", a deviation < 1.1 is accepted,");
 		}
 	}
+
+	@Test
+	/**
+	 * Compares the start times derived in batches with the start times derived for each event
+	 * separately. Both must be exactly the same, including the events beyond the end of the load
+	 * curve.
+	 */
+	public void testDeriveStartTimes() {
+		LoadCurve testLoadCurve = generateLoadCurve();
+		LoadCurveCalculator.fillStatisticsAndNormValuesOfLoadCurve(testLoadCurve);
+		int nEvents = (int) testLoadCurve.getNEvents() + 2;
+		double shift = 0.5;
+
+		double[] startTimes = new double[nEvents];
+		int batchSize = 37;
+		for (int firstIndex = 0; firstIndex < nEvents; firstIndex += batchSize) {
+			int count = Math.min(batchSize, nEvents - firstIndex);
+			double[] batch = new double[count];
+			LoadCurveCalculator.deriveStartTimes(testLoadCurve, firstIndex, count, shift, batch);
+			System.arraycopy(batch, 0, startTimes, firstIndex, count);
+		}
+
+		for (int iEvent = 0; iEvent < nEvents; iEvent++) {
+			assertEquals(startTimes[iEvent], LoadCurveCalculator.deriveStartTime(testLoadCurve, iEvent + shift),
+					"Start time of event " + iEvent);
+		}
+	}
 }
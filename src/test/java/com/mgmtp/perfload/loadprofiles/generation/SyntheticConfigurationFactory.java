@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.generation;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Random;
+
+import com.mgmtp.perfload.loadprofiles.model.Client;
+import com.mgmtp.perfload.loadprofiles.model.LoadCurve;
+import com.mgmtp.perfload.loadprofiles.model.LoadCurveAssignment;
+import com.mgmtp.perfload.loadprofiles.model.LoadTestConfiguration;
+import com.mgmtp.perfload.loadprofiles.model.Operation;
+import com.mgmtp.perfload.loadprofiles.model.Target;
+
+/**
+ * Creates reproducible load test configurations of arbitrary size for benchmarks and scalability
+ * tests. The load curves span one hour and are scaled so that all assignments together create the
+ * requested number of events. The clients are randomly assigned to a few classes of relative power
+ * like machines of a few types, the assignments use the operations and targets in turns. Equal settings always yield the same configuration.
+ * {@link #production()} creates a factory with the dimensions of a large production profile.
+ */
+public class SyntheticConfigurationFactory {
+
+	/**
+	 * The shape of the load curves.
+	 */
+	public static enum CurveShape {
+		/** Random rates at equidistant points. */
+		RANDOM,
+		/** Ascending stairs with sloped steps like the load curves of the functional tests. */
+		TILTED_STAIRS
+	}
+
+	private CurveShape curveShape = CurveShape.RANDOM;
+	private int pointsPerCurve = 100;
+	private int numAssignments = 4;
+	private int numOperations = 4;
+	private int numClients = 10;
+	private int processesPerClient = 5;
+	private int numPowerClasses = 4;
+	private int numTargets = 4;
+	private int targetsPerAssignment = 2;
+	private long totalEvents = 100000L;
+	private long seed = 42L;
+
+	/**
+	 * @return a factory for a production scale profile with hundreds of clients, dozens of
+	 *         operations and targets and load curves with thousands of points
+	 */
+	public static SyntheticConfigurationFactory production() {
+		SyntheticConfigurationFactory factory = new SyntheticConfigurationFactory();
+		factory.setCurveShape(CurveShape.TILTED_STAIRS);
+		factory.setPointsPerCurve(2000);
+		factory.setNumAssignments(48);
+		factory.setNumOperations(36);
+		factory.setNumClients(300);
+		factory.setProcessesPerClient(8);
+		factory.setNumTargets(24);
+		factory.setTargetsPerAssignment(4);
+		factory.setTotalEvents(5000000L);
+		return factory;
+	}
+
+	public CurveShape getCurveShape() {
+		return curveShape;
+	}
+
+	public void setCurveShape(final CurveShape curveShape) {
+		this.curveShape = curveShape;
+	}
+
+	public int getPointsPerCurve() {
+		return pointsPerCurve;
+	}
+
+	public void setPointsPerCurve(final int pointsPerCurve) {
+		checkArgument(pointsPerCurve >= 2, "pointsPerCurve must be at least 2: %s", pointsPerCurve);
+		this.pointsPerCurve = pointsPerCurve;
+	}
+
+	public int getNumAssignments() {
+		return numAssignments;
+	}
+
+	public void setNumAssignments(final int numAssignments) {
+		checkArgument(numAssignments > 0, "numAssignments must be positive: %s", numAssignments);
+		this.numAssignments = numAssignments;
+	}
+
+	public int getNumOperations() {
+		return numOperations;
+	}
+
+	/**
+	 * @param numOperations
+	 *            the number of operations; if there are more assignments than operations,
+	 *            several assignments share an operation
+	 */
+	public void setNumOperations(final int numOperations) {
+		checkArgument(numOperations > 0, "numOperations must be positive: %s", numOperations);
+		this.numOperations = numOperations;
+	}
+
+	public int getNumClients() {
+		return numClients;
+	}
+
+	public void setNumClients(final int numClients) {
+		checkArgument(numClients > 0, "numClients must be positive: %s", numClients);
+		this.numClients = numClients;
+	}
+
+	public int getProcessesPerClient() {
+		return processesPerClient;
+	}
+
+	public void setProcessesPerClient(final int processesPerClient) {
+		checkArgument(processesPerClient > 0, "processesPerClient must be positive: %s", processesPerClient);
+		this.processesPerClient = processesPerClient;
+	}
+
+	public int getNumPowerClasses() {
+		return numPowerClasses;
+	}
+
+	/**
+	 * @param numPowerClasses
+	 *            the number of distinct relative powers of the clients; the cost of selecting the
+	 *            client of an event grows with this number
+	 */
+	public void setNumPowerClasses(final int numPowerClasses) {
+		checkArgument(numPowerClasses > 0, "numPowerClasses must be positive: %s", numPowerClasses);
+		this.numPowerClasses = numPowerClasses;
+	}
+
+	public int getNumTargets() {
+		return numTargets;
+	}
+
+	public void setNumTargets(final int numTargets) {
+		checkArgument(numTargets > 0, "numTargets must be positive: %s", numTargets);
+		this.numTargets = numTargets;
+	}
+
+	public int getTargetsPerAssignment() {
+		return targetsPerAssignment;
+	}
+
+	public void setTargetsPerAssignment(final int targetsPerAssignment) {
+		checkArgument(targetsPerAssignment > 0, "targetsPerAssignment must be positive: %s", targetsPerAssignment);
+		this.targetsPerAssignment = targetsPerAssignment;
+	}
+
+	public long getTotalEvents() {
+		return totalEvents;
+	}
+
+	public void setTotalEvents(final long totalEvents) {
+		checkArgument(totalEvents > 0L, "totalEvents must be positive: %s", totalEvents);
+		this.totalEvents = totalEvents;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public void setSeed(final long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Creates a load curve over one hour with the configured shape, which integrates to the given
+	 * number of events.
+	 */
+	public LoadCurve createLoadCurve(final String name, final double numEvents, final Random random) {
+		double[] timeValues = new double[pointsPerCurve];
+		double[] rateValues = new double[pointsPerCurve];
+		for (int iPoint = 0; iPoint < pointsPerCurve; iPoint++) {
+			timeValues[iPoint] = (double) iPoint / (pointsPerCurve - 1);
+			if (iPoint == 0 || iPoint == pointsPerCurve - 1) {
+				rateValues[iPoint] = 0.;
+			} else if (curveShape == CurveShape.TILTED_STAIRS) {
+				// each step consists of two points with the same rate, the rate rises between steps
+				rateValues[iPoint] = (iPoint + 1) / 2;
+			} else {
+				rateValues[iPoint] = 0.1 + random.nextDouble();
+			}
+		}
+		if (pointsPerCurve == 2) {
+			rateValues[1] = 1.;
+		}
+		LoadCurve loadCurve = new LoadCurve();
+		loadCurve.setName(name);
+		loadCurve.setTimeValues(timeValues);
+		loadCurve.setRateValues(rateValues);
+		loadCurve.setTimeUnit(LoadCurveCalculator.timeUnit_hour);
+		loadCurve.setRateUnit(LoadCurveCalculator.rateUnit_perHour);
+		LoadCurveCalculator.fillStatisticsAndNormValuesOfLoadCurve(loadCurve);
+		return LoadCurveCalculator.scaleLoadCurve(loadCurve, numEvents / loadCurve.getNEvents());
+	}
+
+	/**
+	 * Creates a configuration according to the current settings.
+	 */
+	public LoadTestConfiguration create() {
+		Random random = new Random(seed);
+		LoadTestConfiguration loadTestConfiguration = new LoadTestConfiguration();
+		loadTestConfiguration.setName("Synthetic");
+
+		for (int iClient = 0; iClient < numClients; iClient++) {
+			Client client = new Client();
+			client.setName("client" + iClient);
+			client.setDaemonId(iClient + 1);
+			client.setNumProcesses(processesPerClient);
+			client.setRelativePower(0.5 + random.nextInt(numPowerClasses) * 0.25);
+			loadTestConfiguration.getClients().add(client);
+		}
+
+		Target[] targets = new Target[numTargets];
+		for (int iTarget = 0; iTarget < numTargets; iTarget++) {
+			targets[iTarget] = new Target();
+			targets[iTarget].setName("target" + iTarget);
+		}
+
+		for (int iOperation = 0; iOperation < numOperations; iOperation++) {
+			Operation operation = new Operation();
+			operation.setName("operation" + iOperation);
+			operation.setRelativeClientLoad(1. + random.nextInt(3));
+			loadTestConfiguration.getOperations().add(operation);
+		}
+
+		double eventsPerAssignment = (double) totalEvents / numAssignments;
+		for (int iAssignment = 0; iAssignment < numAssignments; iAssignment++) {
+			Operation operation = loadTestConfiguration.getOperations().get(iAssignment % numOperations);
+			LoadCurveAssignment assignment = new LoadCurveAssignment();
+			assignment.setOperation(operation);
+			assignment.setOperationName(operation.getName());
+			assignment.setLoadCurveName("curve" + iAssignment);
+			assignment.setLoadCurve(createLoadCurve(assignment.getLoadCurveName(), eventsPerAssignment, random));
+			for (int iTarget = 0; iTarget < Math.min(targetsPerAssignment, numTargets); iTarget++) {
+				assignment.getTargets().add(targets[(iAssignment + iTarget) % numTargets]);
+			}
+			loadTestConfiguration.getLoadCurveAssignments().add(assignment);
+		}
+		return loadTestConfiguration;
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.generation;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.testng.annotations.Test;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.mgmtp.perfload.loadprofiles.model.MarkerEvent;
+import com.mgmtp.perfload.loadprofiles.model.Operation;
+import com.mgmtp.perfload.loadprofiles.model.Target;
+
+/**
+ * Compares the output of the {@link TextEventFileWriter} with lines printed by a
+ * {@link PrintWriter} and with its compressed output.
+ */
+public class TextEventFileWriterTest {
+
+	@Test
+	public void testOutputEqualsPrintWriter() throws IOException {
+		Operation[] operations = { createOperation("Registration"), createOperation("\u00dcberweisung \u20ac") };
+		Target[] targets = { createTarget("server1"), createTarget("\u30b5\u30fc\u30d0\u30fc2") };
+
+		File expectedFile = createFile("printWriter");
+		File file = createFile("encoder");
+		PrintWriter pw = new PrintWriter(expectedFile, "UTF-8");
+		TextEventFileWriter writer = new TextEventFileWriter(file, "# header\n# second line");
+		try {
+			pw.println("# header\n# second line");
+			Random random = new Random(17L);
+			double time = 0.;
+			// more lines than fit into the buffer of the writer
+			for (int i = 0; i < 100000; i++) {
+				time += random.nextDouble() * (i % 1000 == 0 ? 1000. : 0.001);
+				Operation operation = operations[random.nextInt(operations.length)];
+				Target target = targets[random.nextInt(targets.length)];
+				int daemonId = random.nextInt(100000);
+				int processId = random.nextInt(100);
+				writer.writeLoadEvent(time, operation, target, daemonId, processId);
+				pw.println(Math.round(time * 60. * 60. * 1000.) + ";" + operation.getName() + ";" + target.getName() + ";"
+						+ daemonId + ";" + (processId + 1));
+				if (i % 10000 == 0) {
+					MarkerEvent marker = new MarkerEvent("Marker " + i, time, MarkerEvent.Type.left);
+					writer.writeMarker(marker);
+					pw.println(Math.round(time * 60. * 60. * 1000.) + ";[[marker]];" + marker.getName() + ";"
+							+ marker.getType() + ";");
+				}
+			}
+		} finally {
+			writer.close();
+			pw.close();
+		}
+
+		assertEquals(Files.toByteArray(file), Files.toByteArray(expectedFile));
+	}
+
+	@Test
+	public void testCompressedOutputEqualsUncompressed() throws IOException {
+		Operation[] operations = { createOperation("Registration"), createOperation("Get a product") };
+		Target[] targets = { createTarget("server1"), createTarget("server2") };
+
+		CompressionOptions serial = new CompressionOptions();
+		serial.setLevel(Deflater.BEST_SPEED);
+		CompressionOptions parallel = new CompressionOptions();
+		parallel.setParallelism(3);
+		// many small blocks
+		parallel.setBlockSize(10000);
+		CompressionOptions[] compressions = { null, serial, parallel };
+
+		File[] files = new File[compressions.length];
+		for (int iFile = 0; iFile < files.length; iFile++) {
+			files[iFile] = createFile("compressed" + iFile);
+			TextEventFileWriter writer = new TextEventFileWriter(files[iFile], "# header", compressions[iFile]);
+			try {
+				Random random = new Random(4711L);
+				double time = 0.;
+				for (int i = 0; i < 50000; i++) {
+					time += random.nextDouble() * 0.001;
+					writer.writeLoadEvent(time, operations[random.nextInt(operations.length)],
+							targets[random.nextInt(targets.length)], random.nextInt(10), random.nextInt(4));
+				}
+			} finally {
+				writer.close();
+			}
+		}
+
+		byte[] expected = Files.toByteArray(files[0]);
+		for (int iFile = 1; iFile < files.length; iFile++) {
+			assertTrue(files[iFile].length() < expected.length / 3, "file not compressed: " + files[iFile].length());
+			assertEquals(gunzip(files[iFile]), expected);
+		}
+
+		// an empty output is a valid gzip file, too
+		File emptyFile = createFile("compressedEmpty");
+		new TextEventFileWriter(emptyFile, "# header", parallel).close();
+		assertEquals(gunzip(emptyFile), ("# header" + System.getProperty("line.separator")).getBytes("UTF-8"));
+	}
+
+	private byte[] gunzip(final File file) throws IOException {
+		InputStream is = new GZIPInputStream(new FileInputStream(file));
+		try {
+			return ByteStreams.toByteArray(is);
+		} finally {
+			is.close();
+		}
+	}
+
+	private Operation createOperation(final String name) {
+		Operation operation = new Operation();
+		operation.setName(name);
+		return operation;
+	}
+
+	private Target createTarget(final String name) {
+		Target target = new Target();
+		target.setName(name);
+		return target;
+	}
+
+	private File createFile(final String name) {
+		File file = new File("target/data/eventlists", "EventList_" + name + ".perfload");
+		file.getParentFile().mkdirs();
+		return file;
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.generation;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+/**
+ * Compares the sequence of the {@link WeightedScheduler} with the deficit scan formerly used for
+ * the distribution of events onto targets.
+ */
+public class WeightedSchedulerTest {
+
+	@Test
+	public void testSequenceEqualsDeficitScan() {
+		Random random = new Random(4711L);
+		double[][] weightSets = {
+				{ 1. },
+				{ 0.5, 0.5 },
+				{ 0.2, 0.3, 0.5 },
+				{ 0.1, 0.2, 0.1, 0.2, 0.1, 0.3 },
+				createWeights(60, new double[] { 1. / 60. }),
+				createWeights(60, new double[] { 0.01, 0.02, 0.03 })
+		};
+
+		for (double[] weights : weightSets) {
+			WeightedScheduler scheduler = new WeightedScheduler(weights);
+			double[] cumulatedLoad = new double[weights.length];
+			double cumulatedNevent = 0.;
+			for (int iEvent = 0; iEvent < 10000; iEvent++) {
+				double amount = random.nextBoolean() ? 1. : 0.3;
+				cumulatedNevent += amount;
+				int iMax = 0;
+				double deficitMax = 0.;
+				for (int i = 0; i < weights.length; i++) {
+					double deficit = cumulatedNevent * weights[i] - cumulatedLoad[i];
+					if (i == 0 || deficit > deficitMax) {
+						deficitMax = deficit;
+						iMax = i;
+					}
+				}
+				cumulatedLoad[iMax] += amount;
+
+				assertEquals(scheduler.next(amount), iMax, "event " + iEvent + " of " + weights.length + " slots");
+			}
+			assertEquals(scheduler.getTotalAmount(), cumulatedNevent);
+			for (int i = 0; i < weights.length; i++) {
+				assertEquals(scheduler.getAssignedAmount(i), cumulatedLoad[i]);
+			}
+		}
+	}
+
+	private double[] createWeights(final int size, final double[] values) {
+		double[] weights = new double[size];
+		for (int i = 0; i < size; i++) {
+			weights[i] = values[i % values.length];
+		}
+		return weights;
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.ui.ctrl;
+
+import static java.util.Arrays.asList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import ca.odell.glazedlists.GlazedLists;
+
+import com.google.common.io.Files;
+import com.mgmtp.perfload.loadprofiles.generation.GenerationMonitor;
+import com.mgmtp.perfload.loadprofiles.generation.GenerationOptions;
+import com.mgmtp.perfload.loadprofiles.generation.GenerationReport;
+import com.mgmtp.perfload.loadprofiles.model.Client;
+import com.mgmtp.perfload.loadprofiles.model.Operation;
+import com.mgmtp.perfload.loadprofiles.model.Target;
+import com.mgmtp.perfload.loadprofiles.ui.model.LoadProfileConfig;
+import com.mgmtp.perfload.loadprofiles.ui.model.LoadProfileEntity;
+import com.mgmtp.perfload.loadprofiles.ui.model.OneTime;
+import com.mgmtp.perfload.loadprofiles.ui.model.Stairs;
+
+public class EventFileExportTest {
+
+	private File dir;
+	private File file;
+	private EventFileExport export;
+
+	@BeforeMethod
+	public void createExport() {
+		dir = Files.createTempDir();
+		file = new File(dir, "events.perfload");
+
+		Operation op1 = new Operation();
+		op1.setName("op1");
+		op1.setRelativeClientLoad(1.);
+		Operation op2 = new Operation();
+		op2.setName("op2");
+		op2.setRelativeClientLoad(1.);
+
+		Target target = new Target();
+		target.setName("target");
+		target.setLoadPart(1.);
+
+		Client client1 = new Client();
+		client1.setName("client1");
+		client1.setDaemonId(1);
+		client1.setNumProcesses(1);
+		client1.setRelativePower(.5);
+		Client client2 = new Client();
+		client2.setName("client2");
+		client2.setDaemonId(2);
+		client2.setNumProcesses(1);
+		client2.setRelativePower(.5);
+
+		LoadProfilesController controller = new LoadProfilesController();
+		controller.setOperations(GlazedLists.eventListOf(op1, op2));
+		controller.setTargets(GlazedLists.eventListOf(target));
+		controller.setClients(GlazedLists.eventListOf(client1, client2));
+		controller.setTreeItems(GlazedLists.<LoadProfileEntity>eventListOf(new Stairs(op1, 0, 5, 10, 5, 100, 1),
+				new Stairs(op2, 5, 5, 10, 5, 50, 1), new OneTime(op2, 10, asList(target))));
+
+		LoadProfileConfig lpc = new LoadProfileConfig();
+		lpc.setName("config");
+		export = new EventFileExport(file, EventFileExport.createHeaderLines("config.xml", "config"),
+				controller.createLoadTestConfiguration(lpc, asList(target), asList(client1, client2)),
+				controller.createAdditionalEvents());
+		export.setEventDistributionPlots(true);
+		export.setOperationHistograms(true);
+		export.setClientLoadHistograms(true);
+	}
+
+	@AfterMethod
+	public void deleteDir() throws IOException {
+		FileUtils.deleteDirectory(dir);
+	}
+
+	@Test
+	public void testExportWritesAllFiles() throws IOException {
+		GenerationOptions options = new GenerationOptions();
+		options.setMonitor(new GenerationMonitor());
+		export.run(options);
+
+		assertTrue(file.isFile());
+		assertTrue(GenerationReport.getReportFile(file).isFile());
+		// 2 clients * 2 load curves + 2 operations + 2 clients
+		assertEquals(listPlotFiles().length, 8);
+	}
+
+	@Test
+	public void testCancelledExportDeletesAllFiles() throws IOException {
+		// cancelled as soon as the first plot file has been written
+		GenerationMonitor monitor = new GenerationMonitor() {
+			@Override
+			public boolean isCancelled() {
+				return listPlotFiles().length > 0;
+			}
+		};
+		GenerationOptions options = new GenerationOptions();
+		options.setMonitor(monitor);
+		try {
+			export.run(options);
+			fail("The export has not been cancelled");
+		} catch (CancellationException ex) {
+			// expected
+		}
+
+		assertFalse(file.exists());
+		assertFalse(GenerationReport.getReportFile(file).exists());
+		assertEquals(listPlotFiles().length, 0);
+	}
+
+	@Test
+	public void testFailedExportDeletesAllFiles() throws IOException {
+		// the last plot file cannot be written
+		File lastPlotFile = new File(dir, "events-histogram-client-load-1.csv");
+		assertTrue(lastPlotFile.mkdir());
+		GenerationOptions options = new GenerationOptions();
+		options.setMonitor(new GenerationMonitor());
+		try {
+			export.run(options);
+			fail("The export has not failed");
+		} catch (IOException ex) {
+			// expected
+		}
+
+		assertFalse(file.exists());
+		assertFalse(GenerationReport.getReportFile(file).exists());
+		assertEquals(listPlotFiles().length, 0);
+	}
+
+	private File[] listPlotFiles() {
+		return dir.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(final File f) {
+				return f.getName().endsWith(".csv");
+			}
+		});
+	}
+}
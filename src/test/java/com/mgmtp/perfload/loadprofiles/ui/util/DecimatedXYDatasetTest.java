@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.ui.util;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.jfree.data.Range;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class DecimatedXYDatasetTest {
+
+	private static final int NUM_POINTS = 100000;
+	private static final int WIDTH = 500;
+
+	private List<Point> points;
+	private DecimatedXYDataset dataset;
+
+	@BeforeMethod
+	public void setUp() {
+		// a noisy rate curve with a vertical step every 1000 points
+		Random random = new Random(42L);
+		points = newArrayList();
+		for (int i = 0; i < NUM_POINTS; i++) {
+			double x = i / 100d;
+			points.add(Point.of(x, 100d + 50d * Math.sin(x) + random.nextDouble() * 10d));
+			if (i % 1000 == 999) {
+				points.add(Point.of(x, random.nextDouble() * 300d));
+			}
+		}
+		dataset = new DecimatedXYDataset();
+		dataset.setSeries("op", points);
+		dataset.setSeries("small", newArrayList(Point.of(0, 0), Point.of(3, 3), Point.of(3, 5), Point.of(6, 0)));
+	}
+
+	@Test
+	public void testNoDecimationWithoutViewport() {
+		assertFalse(dataset.isDecimated());
+		assertSeriesEquals(1, 0, 4);
+		assertEquals(dataset.getItemCount(0), points.size());
+	}
+
+	@Test
+	public void testMinMaxPerPixelColumn() {
+		dataset.setViewport(null, WIDTH);
+		assertTrue(dataset.isDecimated());
+		assertTrue(dataset.getItemCount(0) <= DecimatedXYDataset.POINTS_PER_PIXEL * WIDTH + 2);
+		assertSeriesEquals(1, 0, 4);
+
+		// each column has the same first, last, minimum and maximum point as before
+		double lower = points.get(0).getX();
+		double columnWidth = (points.get(points.size() - 1).getX() - lower) / WIDTH;
+		double[][] expected = columnEnvelopes(points, lower, columnWidth);
+		List<Point> visible = newArrayList();
+		for (int i = 0; i < dataset.getItemCount(0); i++) {
+			visible.add(Point.of(dataset.getXValue(0, i), dataset.getYValue(0, i)));
+		}
+		double[][] actual = columnEnvelopes(visible, lower, columnWidth);
+		for (int column = 0; column < WIDTH; column++) {
+			for (int i = 0; i < 4; i++) {
+				assertEquals(actual[column][i], expected[column][i], 0d, "column " + column);
+			}
+		}
+
+		// the axes do not change with the decimation
+		assertEquals(dataset.getDomainBounds(false), new Range(0d, (NUM_POINTS - 1) / 100d));
+		Range yRange = dataset.getRangeBounds(false);
+		for (Point point : points) {
+			assertTrue(yRange.contains(point.getY()));
+		}
+	}
+
+	@Test
+	public void testFullResolutionWhenZoomedIn() {
+		dataset.setViewport(null, WIDTH);
+		assertTrue(dataset.isDecimated());
+
+		// 1000 points in the visible range
+		dataset.setViewport(new Range(200d, 209.99d), WIDTH);
+		assertFalse(dataset.getItemCount(0) > 1003);
+		int start = 0;
+		while (points.get(start).getX() < 200d) {
+			start++;
+		}
+		// including the nearest points beyond the visible range
+		assertSeriesEquals(0, start - 1, dataset.getItemCount(0));
+		assertEquals(dataset.getXValue(0, dataset.getItemCount(0) - 1), 210d);
+
+		dataset.setViewport(null, 0);
+		assertFalse(dataset.isDecimated());
+	}
+
+	@Test
+	public void testSeriesInKeyOrder() {
+		dataset.setSeries("other", points.subList(0, 2));
+		dataset.setSeries("a", points.subList(0, 3));
+		assertEquals(dataset.getSeriesKey(0), "a");
+		assertEquals(dataset.getSeriesKey(1), "op");
+		assertEquals(dataset.getSeriesKey(2), "other");
+		assertEquals(dataset.getSeriesKey(3), "small");
+
+		// replacing the points of a series does not move it
+		dataset.setSeries("op", points.subList(0, 4));
+		dataset.removeSeries(dataset.indexOf("a"));
+		assertEquals(dataset.getSeriesKey(0), "op");
+		assertEquals(dataset.getItemCount(0), 4);
+		assertEquals(dataset.getSeriesKey(1), "other");
+		assertSeriesEquals(2, 0, 4);
+	}
+
+	private void assertSeriesEquals(final int series, final int offset, final int count) {
+		assertEquals(dataset.getItemCount(series), count);
+		List<Point> expected = series == 0 ? points : newArrayList(Point.of(0, 0), Point.of(3, 3), Point.of(3, 5),
+				Point.of(6, 0));
+		for (int i = 0; i < count; i++) {
+			assertEquals(Point.of(dataset.getXValue(series, i), dataset.getYValue(series, i)), expected.get(offset + i));
+		}
+	}
+
+	/**
+	 * @return per column the y-values of the first and last point and the minimum and maximum
+	 */
+	private static double[][] columnEnvelopes(final List<Point> points, final double lower, final double columnWidth) {
+		double[][] envelopes = new double[WIDTH][];
+		for (Point point : points) {
+			int column = Math.min(WIDTH - 1, (int) ((point.getX() - lower) / columnWidth));
+			double y = point.getY();
+			if (envelopes[column] == null) {
+				envelopes[column] = new double[] { y, y, y, y };
+			} else {
+				envelopes[column][1] = y;
+				envelopes[column][2] = Math.min(envelopes[column][2], y);
+				envelopes[column][3] = Math.max(envelopes[column][3], y);
+			}
+		}
+		return envelopes;
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2014 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.perfload.loadprofiles.ui.util;
+
+import static com.google.common.collect.Collections2.filter;
+import static com.google.common.collect.Collections2.transform;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Sets.newHashSet;
+import static java.util.Arrays.asList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import ca.odell.glazedlists.EventList;
+import ca.odell.glazedlists.GlazedLists;
+
+import com.mgmtp.perfload.loadprofiles.model.Operation;
+import com.mgmtp.perfload.loadprofiles.ui.model.LoadProfileEntity;
+import com.mgmtp.perfload.loadprofiles.ui.model.Marker;
+import com.mgmtp.perfload.loadprofiles.ui.model.OneTime;
+import com.mgmtp.perfload.loadprofiles.ui.model.Stairs;
+
+public class GraphPointsCacheTest {
+
+	private Operation op1;
+	private Operation op2;
+	private Stairs stairs1;
+	private Stairs stairs2;
+	private Stairs stairs3;
+	private EventList<LoadProfileEntity> treeItems;
+	private GraphPointsCache cache;
+
+	@BeforeMethod
+	public void setUp() {
+		op1 = new Operation();
+		op1.setName("op1");
+		op2 = new Operation();
+		op2.setName("op2");
+
+		stairs1 = new Stairs(op1, 0, 2, 3, 2, 4, 2);
+		stairs2 = new Stairs(op1, 5, 1, 1, 1, 2, 1);
+		stairs3 = new Stairs(op2, 3, 2, 2, 2, 1, 3);
+		treeItems = GlazedLists.eventListOf();
+		treeItems.addAll(asList(stairs1, stairs2, stairs3));
+
+		cache = new GraphPointsCache(treeItems);
+		cache.update();
+	}
+
+	@Test
+	public void testInitialPoints() {
+		assertEquals(cache.getChangedOperations(), newHashSet("op1", "op2"));
+		assertPointsAsCalculated();
+	}
+
+	@Test
+	public void testOnlyEditedOperationIsRecalculated() {
+		// the editor changes the stairs in place and sets it again
+		stairs2.h = 7;
+		treeItems.set(treeItems.indexOf(stairs2), stairs2);
+		cache.update();
+
+		assertEquals(cache.getChangedOperations(), newHashSet("op1"));
+		assertFalse(cache.isAnnotationsChanged());
+		assertPointsAsCalculated();
+
+		cache.update();
+		assertTrue(cache.getChangedOperations().isEmpty());
+	}
+
+	@Test
+	public void testOperationChangedInPlace() {
+		stairs3.operation = op1;
+		treeItems.set(treeItems.indexOf(stairs3), stairs3);
+		cache.update();
+
+		assertEquals(cache.getChangedOperations(), newHashSet("op1", "op2"));
+		assertFalse(cache.getPointsMap().containsKey("op2"));
+		assertPointsAsCalculated();
+	}
+
+	@Test
+	public void testDeleteAndSort() {
+		treeItems.remove(stairs1);
+		cache.update();
+		assertEquals(cache.getChangedOperations(), newHashSet("op1"));
+		assertPointsAsCalculated();
+
+		Collections.sort(treeItems, Collections.reverseOrder());
+		cache.update();
+		assertTrue(cache.getChangedOperations().isEmpty());
+		assertPointsAsCalculated();
+	}
+
+	@Test
+	public void testAnnotationsChanged() {
+		treeItems.add(new OneTime(op2, 4, null));
+		cache.update();
+		assertTrue(cache.isAnnotationsChanged());
+		assertTrue(cache.getChangedOperations().isEmpty());
+
+		treeItems.add(new Marker("marker", 1, 2));
+		treeItems.clear();
+		cache.update();
+		assertTrue(cache.isAnnotationsChanged());
+		assertEquals(cache.getChangedOperations(), newHashSet("op1", "op2"));
+		assertTrue(cache.getPointsMap().isEmpty());
+	}
+
+	@Test
+	public void testDiscardedUpdateIsPendingAgain() throws Exception {
+		stairs2.h = 7;
+		treeItems.set(treeItems.indexOf(stairs2), stairs2);
+		final GraphPointsCache.Update update = cache.prepareUpdate();
+		assertFalse(update.isEmpty());
+
+		// the list is edited while the update is calculated on another thread
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		Future<?> future = executor.submit(new Runnable() {
+			@Override
+			public void run() {
+				update.calculate();
+			}
+		});
+		stairs3.numSteps = 1;
+		treeItems.set(treeItems.indexOf(stairs3), stairs3);
+		future.get();
+		executor.shutdown();
+
+		// the update is superseded by the next one
+		cache.discard(update);
+		cache.update();
+		assertEquals(cache.getChangedOperations(), newHashSet("op1", "op2"));
+		assertPointsAsCalculated();
+	}
+
+	private void assertPointsAsCalculated() {
+		List<Stairs> stairways = newArrayList(transform(filter(treeItems, new IsStairsPredicate()),
+				new LoadProfileEntityToStairsFunction()));
+		assertEquals(cache.getPointsMap(), new GraphPointsCalculator().calculatePoints(stairways));
+	}
+}
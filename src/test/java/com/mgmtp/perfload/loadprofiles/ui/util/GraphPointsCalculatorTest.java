@@ -20,6 +20,7 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 
 import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -132,6 +133,147 @@ public class GraphPointsCalculatorTest {
 		assertEqualsEveryPoint(points, expectedPoints);
 	}
 
+	@Test
+	public void testCurveToAddStartingFirst() {
+		logInfoStartingTest("testCurveToAddStartingFirst");
+
+		Operation operation = new Operation();
+		operation.setName("test");
+
+		Stairs stairs1 = new Stairs(operation, 2, 1, 1, 1, 1, 1);
+		Stairs stairs2 = new Stairs(operation, 0, 1, 1, 1, 2, 1);
+
+		GraphPointsCalculator calc = new GraphPointsCalculator();
+		List<Stairs> curves = newArrayList(stairs1, stairs2);
+
+		List<Point> points = calc.calculatePoints(curves).get("test");
+
+		List<Point> expectedPoints = Lists.newArrayList(Point.of(0, 0), Point.of(1, 2), Point.of(2, 2), Point.of(3, 1),
+				Point.of(4, 1), Point.of(5, 0));
+		assertThat(points.size(), equalTo(expectedPoints.size()));
+		assertEqualsEveryPoint(points, expectedPoints);
+	}
+
+	@Test
+	public void testVerticalStepOnSlope() {
+		logInfoStartingTest("testVerticalStepOnSlope");
+
+		Operation operation = new Operation();
+		operation.setName("test");
+
+		Stairs stairs1 = new Stairs(operation, 15, 0, 1, 2, 3, 3);
+		Stairs stairs2 = new Stairs(operation, 16, 2, 1, 0, 2, 1);
+
+		GraphPointsCalculator calc = new GraphPointsCalculator();
+		List<Stairs> curves = newArrayList(stairs1, stairs2);
+
+		List<Point> points = calc.calculatePoints(curves).get("test");
+
+		List<Point> expectedPoints = Lists.newArrayList(Point.of(15, 0), Point.of(15, 3), Point.of(16, 3),
+				Point.of(16, 6), Point.of(17, 7), Point.of(17, 10), Point.of(18, 11), Point.of(19, 6.5),
+				Point.of(19, 4.5), Point.of(20, 0));
+		assertThat(points.size(), equalTo(expectedPoints.size()));
+		assertEqualsEveryPoint(points, expectedPoints);
+	}
+
+	@Test
+	public void testZeroWidthStairs() {
+		logInfoStartingTest("testZeroWidthStairs");
+
+		Operation operation = new Operation();
+		operation.setName("test");
+
+		// vertical steps up and down (a = 0, c = 0) and a triangle (b = 0)
+		Stairs stairs1 = new Stairs(operation, 0, 0, 2, 0, 3, 1);
+		Stairs stairs2 = new Stairs(operation, 0, 2, 0, 2, 2, 1);
+
+		GraphPointsCalculator calc = new GraphPointsCalculator();
+		List<Point> points = calc.calculatePoints(newArrayList(stairs1, stairs2)).get("test");
+
+		List<Point> expectedPoints = Lists.newArrayList(Point.of(0, 0), Point.of(0, 3), Point.of(2, 5), Point.of(2, 2),
+				Point.of(4, 0));
+		assertThat(points.size(), equalTo(expectedPoints.size()));
+		assertEqualsEveryPoint(points, expectedPoints);
+	}
+
+	@Test
+	public void testCoincidentStepsCancel() {
+		logInfoStartingTest("testCoincidentStepsCancel");
+
+		Operation operation = new Operation();
+		operation.setName("test");
+
+		// the second stairway steps up where the first one steps down
+		Stairs stairs1 = new Stairs(operation, 0, 0, 2, 0, 3, 1);
+		Stairs stairs2 = new Stairs(operation, 2, 0, 2, 0, 3, 1);
+
+		GraphPointsCalculator calc = new GraphPointsCalculator();
+		List<Point> points = calc.calculatePoints(newArrayList(stairs1, stairs2)).get("test");
+
+		List<Point> expectedPoints = Lists.newArrayList(Point.of(0, 0), Point.of(0, 3), Point.of(2, 3), Point.of(4, 3),
+				Point.of(4, 0));
+		assertThat(points.size(), equalTo(expectedPoints.size()));
+		assertEqualsEveryPoint(points, expectedPoints);
+	}
+
+	@Test
+	public void testInterleavedOperations() {
+		logInfoStartingTest("testInterleavedOperations");
+
+		Operation operation1 = new Operation();
+		operation1.setName("test1");
+		Operation operation2 = new Operation();
+		operation2.setName("test2");
+
+		// the stairways of both operations overlap in time and alternate in the list
+		Stairs stairs1 = new Stairs(operation2, 0, 2, 2, 2, 2, 1);
+		Stairs stairs2 = new Stairs(operation1, 1, 1, 1, 1, 1, 1);
+		Stairs stairs3 = new Stairs(operation2, 3, 1, 0, 1, 4, 1);
+
+		GraphPointsCalculator calc = new GraphPointsCalculator();
+		Map<String, List<Point>> pointsMap = calc.calculatePoints(newArrayList(stairs1, stairs2, stairs3));
+		assertThat(newArrayList(pointsMap.keySet()), equalTo((List<String>) newArrayList("test1", "test2")));
+
+		List<Point> points = pointsMap.get("test1");
+		List<Point> expectedPoints = Lists.newArrayList(Point.of(1, 0), Point.of(2, 1), Point.of(3, 1), Point.of(4, 0));
+		assertThat(points.size(), equalTo(expectedPoints.size()));
+		assertEqualsEveryPoint(points, expectedPoints);
+
+		points = pointsMap.get("test2");
+		expectedPoints = Lists.newArrayList(Point.of(0, 0), Point.of(2, 2), Point.of(3, 2), Point.of(4, 6),
+				Point.of(5, 1), Point.of(6, 0));
+		assertThat(points.size(), equalTo(expectedPoints.size()));
+		assertEqualsEveryPoint(points, expectedPoints);
+	}
+
+	@Test
+	public void testManyOverlappingStairs() {
+		logInfoStartingTest("testManyOverlappingStairs");
+
+		Operation operation = new Operation();
+		operation.setName("test");
+
+		// two groups of stairways with slopes, which are not exact in binary, separated by a gap
+		List<Stairs> curves = newArrayList();
+		for (int i = 0; i < 500; ++i) {
+			curves.add(new Stairs(operation, i % 10, 3, i % 4, 7, 1 + i % 3, 1 + i % 2));
+			curves.add(new Stairs(operation, 50 + i % 10, 3, i % 4, 7, 1 + i % 3, 1 + i % 2));
+		}
+
+		GraphPointsCalculator calc = new GraphPointsCalculator();
+		List<Point> points = calc.calculatePoints(curves).get("test");
+
+		// the last stairway of the first group ends at 9 + 2 * (3 + 3) + 7
+		for (Point point : points) {
+			assertThat(point.getY() >= 0., equalTo(true));
+			if (point.getX() >= 28 && point.getX() <= 50) {
+				assertThat(point.getY(), equalTo(0.));
+			}
+		}
+		assertThat(points.get(0), equalTo(Point.of(0, 0)));
+		assertThat(points.get(points.size() - 1), equalTo(Point.of(78, 0)));
+	}
+
 	private void assertEqualsEveryPoint(List<Point> points, List<Point> expectedPoints) {
 		for (int i = 0; i < expectedPoints.size(); i++) {
 			assertThat(points.get(i), equalTo(expectedPoints.get(i)));